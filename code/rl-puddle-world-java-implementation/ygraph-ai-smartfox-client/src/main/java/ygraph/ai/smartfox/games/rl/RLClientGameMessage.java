@@ -22,6 +22,7 @@ public class RLClientGameMessage {
     public static final String GAME_V_UPDATE = "GAME_V_UPDATE";
     public static final String GAME_INFO = "GAME_INFO";
     public static final String GAME_TRAINING_COMPLETE = "GAME_TRAINING_COMPLETE";
+    public static final String GAME_POLICY_EVALUATE = "GAME_POLICY_EVALUATE";
     public static final String GAME_STATE_RESPONSE = "GAME_STATE_RESPONSE";
     public static final String GAME_AVAILABLE_ACTIONS_RESPONSE = "GAME_AVAILABLE_ACTIONS_RESPONSE";
     public static final String GAME_AVAILABLE_REWARDS_RESPONSE = "GAME_AVAILABLE_REWARDS_RESPONSE";
@@ -30,6 +31,7 @@ public class RLClientGameMessage {
     public static final String GAME_RESET_RESPONSE = "GAME_RESET_RESPONSE";
     public static final String GAME_INFO_RESPONSE = "GAME_INFO_RESPONSE";
     public static final String GAME_ERROR = "GAME_ERROR";
+    public static final String GAME_POLICY_EVALUATE_RESPONSE = "GAME_POLICY_EVALUATE_RESPONSE";
     
     // Message Fields
     private String messageType;
@@ -37,6 +39,8 @@ public class RLClientGameMessage {
     private int stateId;
     private int action;
     private double reward;
+    private double rawReward;
+    private double shapingReward;
     private int nextStateId;
     private int[] availableActions;
     private double[] availableRewards;
@@ -51,6 +55,20 @@ public class RLClientGameMessage {
     private int totalEpisodes;
     private int successfulEpisodes;
 
+    // Fields for server-side policy evaluation
+    private byte[] policy;
+    private int episodes;
+    private int successes;
+    private double successRate;
+    private double meanReturn;
+    private double returnStd;
+    private double meanSteps;
+    private double expectedReturn;
+    private int[] stepHistogram;
+    private int binWidth;
+    private int maxSteps;
+    private double elapsedMs;
+
     // Constructors for RLClientGameMessage for multiple modes of access
     public RLClientGameMessage() {
         this.messageType = "";
@@ -92,6 +110,15 @@ public class RLClientGameMessage {
         return msg;
     }
 
+    // Asks the server to roll out a greedy policy, policy[stateId] is the action taken in the state
+    public static RLClientGameMessage policyEvaluateMessage(String userName, byte[] policy, int episodes) {
+        RLClientGameMessage msg = new RLClientGameMessage(GAME_POLICY_EVALUATE);
+        msg.setUserName(userName);
+        msg.policy = policy;
+        msg.episodes = episodes;
+        return msg;
+    }
+
     // Converting RLClientGameMessage into an ISFSObject for sending data to the server
     public ISFSObject toSFSObject() {
         ISFSObject params = new SFSObject();
@@ -172,6 +199,12 @@ public class RLClientGameMessage {
                     params.putUtfString("errorMessage", this.userName);
                 }
                 break;
+            case GAME_POLICY_EVALUATE:
+                params.putByteArray("policy", this.policy);
+                if (this.episodes > 0) {
+                    params.putInt("episodes", this.episodes);
+                }
+                break;
             default:
                 break;
         }
@@ -228,6 +261,9 @@ public class RLClientGameMessage {
                 this.action = params.getInt("action");
                 this.reward = params.getDouble("reward");
                 this.nextStateId = params.getInt("nextStateId");
+                // Servers with REWARD_SHAPING=POTENTIAL report the environment reward and the shaping term separately, reward is their sum
+                this.rawReward = params.containsKey("rawReward") ? params.getDouble("rawReward") : this.reward;
+                this.shapingReward = params.containsKey("shapingReward") ? params.getDouble("shapingReward") : 0.0;
                 break;
             case GAME_FINAL_STATE_RESPONSE:
                 if (params.containsKey("isTerminal") && params.containsKey("cumulativeReward") 
@@ -294,6 +330,28 @@ public class RLClientGameMessage {
                     System.err.println("Missing 'errorMessage' field in GAME_ERROR message.");
                 }
                 break;
+            case GAME_POLICY_EVALUATE_RESPONSE:
+                if (params.containsKey("episodes") && params.containsKey("successRate") && params.containsKey("meanReturn")) {
+                    this.episodes = params.getInt("episodes");
+                    this.successes = params.getInt("successes");
+                    this.successRate = params.getDouble("successRate");
+                    this.meanReturn = params.getDouble("meanReturn");
+                    this.returnStd = params.getDouble("returnStd");
+                    this.meanSteps = params.getDouble("meanSteps");
+                    this.binWidth = params.getInt("binWidth");
+                    this.maxSteps = params.getInt("maxSteps");
+                    this.elapsedMs = params.getDouble("elapsedMs");
+                    this.expectedReturn = params.containsKey("expectedReturn") ? params.getDouble("expectedReturn") : Double.NaN;
+                    List<Integer> histogramList = (List<Integer>) params.getIntArray("stepHistogram");
+                    if (histogramList != null) {
+                        this.stepHistogram = histogramList.stream().mapToInt(Integer::intValue).toArray();
+                    } else {
+                        this.stepHistogram = new int[0];
+                    }
+                } else {
+                    System.err.println("Missing fields in GAME_POLICY_EVALUATE_RESPONSE message.");
+                }
+                break;
             default:
                 System.err.println("Unhandled message type in fromSFSObject: " + this.messageType);
                 break;
@@ -325,6 +383,16 @@ public class RLClientGameMessage {
         this.action = action;
     }
 
+    // Environment reward of the last move, without shaping
+    public double getRawReward() {
+        return rawReward;
+    }
+
+    // Shaping term of the last move, 0 without shaping
+    public double getShapingReward() {
+        return shapingReward;
+    }
+
     public double getReward() {
         return reward;
     }
@@ -444,4 +512,53 @@ public class RLClientGameMessage {
     public void setSuccessfulEpisodes(int successfulEpisodes) {
         this.successfulEpisodes = successfulEpisodes;
     }
-}
\ No newline at end of file
+
+    public int getEpisodes() {
+        return episodes;
+    }
+
+    // Evaluated episodes that reached the goal within maxSteps
+    public int getSuccesses() {
+        return successes;
+    }
+
+    public double getSuccessRate() {
+        return successRate;
+    }
+
+    // Mean discounted return of the evaluated episodes, without shaping
+    public double getMeanReturn() {
+        return meanReturn;
+    }
+
+    // Exact expected discounted return of the policy from state 0, NaN if the server did not compute it
+    public double getExpectedReturn() {
+        return expectedReturn;
+    }
+
+    public double getReturnStd() {
+        return returnStd;
+    }
+
+    public double getMeanSteps() {
+        return meanSteps;
+    }
+
+    // Episode counts by length, bin i holds episodes of i * binWidth + 1 to (i + 1) * binWidth steps
+    public int[] getStepHistogram() {
+        return stepHistogram;
+    }
+
+    public int getBinWidth() {
+        return binWidth;
+    }
+
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    // Time the server spent rolling out the episodes
+    public double getElapsedMs() {
+        return elapsedMs;
+    }
+}
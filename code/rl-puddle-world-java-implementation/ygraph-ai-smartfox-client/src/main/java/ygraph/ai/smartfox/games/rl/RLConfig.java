@@ -0,0 +1,242 @@
+package ygraph.ai.smartfox.games.rl;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+// This class is the typed, validated and immutable client configuration, loaded once and shared by RLGamePlayer and RLGameModel
+// Each key is resolved from the first source that sets it:
+// 1. a system property with the key's name (-DGRID_SIZE=8)
+// 2. an environment variable with the key's name
+// 3. the .env file in the working directory (RL_ENV_FILE names another file)
+// 4. the default below
+// Values are parsed and range checked once when the configuration is loaded, invalid values fail the load with an IllegalArgumentException naming the key
+// reload() builds a new configuration and swaps it in atomically, a player or model keeps the values it was created with
+public final class RLConfig {
+    public static final String ENV_FILE_KEY = "RL_ENV_FILE";
+
+    private static final AtomicReference<RLConfig> CURRENT = new AtomicReference<>();
+
+    // Keys that system properties and environment variables may set even when the .env file does not mention them
+    private static final Set<String> KNOWN_KEYS = new HashSet<>(Arrays.asList(
+            "STOP_METHOD", "MAX_STEPS", "EPISODE_COUNT", "SUCCESS_REWARD_THRESHOLD",
+            "ALPHA", "GAMMA", "EPSILON", "GRID_SIZE", "GOAL_REWARD", "TABLE_MODE", "POLICY_EVAL_EPISODES", "LOG_LEVEL"));
+
+    // Resolved raw values of every key that was set, for keys without a typed getter
+    private final Map<String, String> values;
+
+    private final int stopMethod;
+    private final int maxSteps;
+    private final int episodeCount;
+    private final double successRewardThreshold;
+    private final double alpha;
+    private final double gamma;
+    private final double epsilon;
+    private final int gridSize;
+    private final double goalReward;
+    private final boolean sparseTables;
+    private final int policyEvalEpisodes;
+    private final boolean debugLogging;
+
+    private RLConfig(Map<String, String> values) {
+        this.values = Collections.unmodifiableMap(new HashMap<>(values));
+        this.stopMethod = intValue("STOP_METHOD", 0, 0, 3);
+        this.maxSteps = intValue("MAX_STEPS", 10, 1, Integer.MAX_VALUE);
+        this.episodeCount = intValue("EPISODE_COUNT", 2, 0, Integer.MAX_VALUE);
+        this.successRewardThreshold = doubleValue("SUCCESS_REWARD_THRESHOLD", 1.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        this.alpha = doubleValue("ALPHA", 0.1, 0.0, 1.0);
+        this.gamma = doubleValue("GAMMA", 0.9, 0.0, 1.0);
+        this.epsilon = doubleValue("EPSILON", 1.0, 0.0, 1.0);
+        this.gridSize = intValue("GRID_SIZE", 5, 1, Integer.MAX_VALUE);
+        this.goalReward = doubleValue("GOAL_REWARD", 10.0, -Double.MAX_VALUE, Double.MAX_VALUE);
+        String tableMode = stringValue("TABLE_MODE", "DENSE").toUpperCase();
+        if (!tableMode.equals("DENSE") && !tableMode.equals("SPARSE") && !tableMode.equals("MAPPED")) {
+            throw new IllegalArgumentException("Unknown TABLE_MODE: " + tableMode);
+        }
+        this.sparseTables = tableMode.equals("SPARSE");
+        this.policyEvalEpisodes = intValue("POLICY_EVAL_EPISODES", 0, 0, Integer.MAX_VALUE);
+        String logLevel = stringValue("LOG_LEVEL", "INFO").toUpperCase();
+        if (!logLevel.equals("INFO") && !logLevel.equals("DEBUG")) {
+            throw new IllegalArgumentException("Unknown LOG_LEVEL: " + logLevel);
+        }
+        this.debugLogging = logLevel.equals("DEBUG");
+    }
+
+    // Gets the current configuration, loading it on first use
+    public static RLConfig get() {
+        RLConfig config = CURRENT.get();
+        if (config == null) {
+            CURRENT.compareAndSet(null, load());
+            config = CURRENT.get();
+        }
+        return config;
+    }
+
+    // Loads the configuration again and swaps it in, an invalid configuration is logged and the current one is kept
+    public static RLConfig reload() {
+        RLConfig previous = get();
+        try {
+            RLConfig config = load();
+            CURRENT.set(config);
+            System.out.println("RLConfig reloaded.");
+            return config;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Failed to reload configuration, keeping the current one: " + e.getMessage());
+            return previous;
+        }
+    }
+
+    // Installs a configuration built elsewhere (for example with fromMap) as the current one
+    public static void set(RLConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("Configuration cannot be null.");
+        }
+        CURRENT.set(config);
+    }
+
+    // Builds a configuration from the system properties, the environment, the .env file and the defaults
+    public static RLConfig load() {
+        String envFile = System.getProperty(ENV_FILE_KEY, System.getenv().getOrDefault(ENV_FILE_KEY, ".env"));
+        Map<String, String> values = readEnvFile(envFile);
+        for (Map.Entry<String, String> entry : System.getenv().entrySet()) {
+            if (values.containsKey(entry.getKey()) || KNOWN_KEYS.contains(entry.getKey())) {
+                values.put(entry.getKey(), entry.getValue().trim());
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (values.containsKey(key) || KNOWN_KEYS.contains(key)) {
+                values.put(key, System.getProperty(key).trim());
+            }
+        }
+        return fromMap(values);
+    }
+
+    // Builds a configuration from raw key-value pairs, missing keys take their defaults
+    public static RLConfig fromMap(Map<String, String> values) {
+        return new RLConfig(values);
+    }
+
+    // Loading in .env file
+    private static Map<String, String> readEnvFile(String path) {
+        Map<String, String> env = new HashMap<>();
+        System.out.println("Current Working Directory: " + System.getProperty("user.dir"));
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] parts = line.split("=", 2);
+                if (parts.length == 2) {
+                    env.put(parts[0].trim(), parts[1].trim());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read .env file: " + e.getMessage());
+        }
+        return env;
+    }
+
+    private String stringValue(String key, String defaultValue) {
+        String value = values.get(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    private int intValue(String key, int defaultValue, int min, int max) {
+        String value = stringValue(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer: " + value);
+        }
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException(key + " must be in [" + min + ", " + max + "]: " + parsed);
+        }
+        return parsed;
+    }
+
+    private double doubleValue(String key, double defaultValue, double min, double max) {
+        String value = stringValue(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        double parsed;
+        try {
+            parsed = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number: " + value);
+        }
+        if (Double.isNaN(parsed) || parsed < min || parsed > max) {
+            throw new IllegalArgumentException(key + " must be in [" + min + ", " + max + "]: " + value);
+        }
+        return parsed;
+    }
+
+    // Gets the raw value of a key, or the default if it is not set
+    public String getString(String key, String defaultValue) {
+        return stringValue(key, defaultValue);
+    }
+
+    // 0 - max steps, 1 - goal only, 2 - probabilistic stopping (decided by the server), 3 - custom server policy
+    public int getStopMethod() {
+        return stopMethod;
+    }
+
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    public int getEpisodeCount() {
+        return episodeCount;
+    }
+
+    public double getSuccessRewardThreshold() {
+        return successRewardThreshold;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public double getGoalReward() {
+        return goalReward;
+    }
+
+    // TABLE_MODE=SPARSE, Q and V entries are created on first touch
+    public boolean isSparseTables() {
+        return sparseTables;
+    }
+
+    // Episodes the server rolls out to evaluate the final greedy policy after training, 0 skips the evaluation
+    public int getPolicyEvalEpisodes() {
+        return policyEvalEpisodes;
+    }
+
+    // LOG_LEVEL=DEBUG, logs every Q-update and not only the per-episode messages
+    public boolean isDebugLogging() {
+        return debugLogging;
+    }
+}
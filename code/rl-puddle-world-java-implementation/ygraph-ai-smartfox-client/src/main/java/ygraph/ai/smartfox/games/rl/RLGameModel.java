@@ -1,10 +1,6 @@
 package ygraph.ai.smartfox.games.rl;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
 
 // This class holds the game's state specific to RL puddle world parameters like: state, available actions, rewards and the final state check.
 public class RLGameModel {
@@ -12,19 +8,21 @@ public class RLGameModel {
     private int[] availableActions;
     private double[] availableRewards;
     private boolean isTerminal;
-    private static final HashMap<String, String> ENV = loadEnv();
+    // Configuration the model was created with, the values below are copied from it so a later RLConfig.reload() does not change a running model
+    private final RLConfig config;
+    private final int stopMethod;
     private double cumulativeReward;
     private int stepsThisEpisode;
-    private int maxStepsPerEpisode = Integer.parseInt(ENV.getOrDefault("MAX_STEPS", "10"));
+    private int maxStepsPerEpisode;
     private boolean success;
-    private double gamma = Double.parseDouble(ENV.getOrDefault("GAMMA", "0.9"));
+    private double gamma;
     private static final String EPISODE_SEPARATOR = "\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n";
 
     // Number of episodes completed - for testing purposes, will be cleaned up soon
-    private int totalEpisodes = Integer.parseInt(ENV.getOrDefault("EPISODE_COUNT", "2"));
+    private int totalEpisodes;
 
     // Number of episodes possible - for testing purposes, will be cleaned up soon
-    private int maxEpisodes = Integer.parseInt(ENV.getOrDefault("EPISODE_COUNT", "2"));
+    private int maxEpisodes;
 
     private int successfulEpisodes = 0;
     public void setSuccessfulEpisodes(int successfulEpisodes) {
@@ -32,19 +30,17 @@ public class RLGameModel {
     }
 
     // Reward threshold to determine the agent succeeded in navigating the world efficiently
-    private double successRewardThreshold = Double.parseDouble(ENV.getOrDefault("SUCCESS_REWARD_THRESHOLD", "1.0"));
-    private int gridSize = Integer.parseInt(ENV.getOrDefault("GRID_SIZE", "5"));
-    private static final int MAX_EPISODES = Integer.parseInt(ENV.getOrDefault("EPISODE_COUNT", "2"));
+    private double successRewardThreshold;
+    private int gridSize;
     private double episodeReward = 0.0;
     private double totalReward = 0.0;
     private int currentEpisode = 0;
     private int totalSteps = 0;
     private boolean episodeComplete = false;
     private boolean trainingComplete = false;
-    private static final int MAX_STEPS = Integer.parseInt(ENV.getOrDefault("MAX_STEPS", "10"));
     private boolean isGoalReached = false;
-    private int GOAL_STATE = (gridSize * gridSize) - 1;
-    private static final double GOAL_REWARD = Double.parseDouble(ENV.getOrDefault("GOAL_REWARD", "10.0"));;
+    private int GOAL_STATE;
+    private final double goalReward;
 
     private RLGamePlayer gamePlayer;
 
@@ -52,8 +48,26 @@ public class RLGameModel {
         this.gamePlayer = player;
     }
 
-    // Initialize game model with state, available actions, rewards, final state check, cumulative reward, and success check
+    // Initialize game model with the current configuration
     public RLGameModel() {
+        this(RLConfig.get());
+    }
+
+    // Initialize game model with state, available actions, rewards, final state check, cumulative reward, and success check
+    public RLGameModel(RLConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("Configuration cannot be null.");
+        }
+        this.config = config;
+        this.stopMethod = config.getStopMethod();
+        this.maxStepsPerEpisode = config.getMaxSteps();
+        this.gamma = config.getGamma();
+        this.totalEpisodes = config.getEpisodeCount();
+        this.maxEpisodes = config.getEpisodeCount();
+        this.successRewardThreshold = config.getSuccessRewardThreshold();
+        this.gridSize = config.getGridSize();
+        this.GOAL_STATE = (gridSize * gridSize) - 1;
+        this.goalReward = config.getGoalReward();
         this.stateId = 0;
         this.availableActions = new int[0];
         this.availableRewards = new double[0];
@@ -62,28 +76,6 @@ public class RLGameModel {
         this.success = false;
     }
 
-    // Loading in .env file into a hashmap for instance variables
-    private static HashMap<String, String> loadEnv() {
-        HashMap<String, String> env = new HashMap<>();
-        String workingDir = System.getProperty("user.dir");
-        System.out.println("Current Working Directory: " + workingDir);
-        try (BufferedReader br = new BufferedReader(new FileReader(".env"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) 
-                    continue;
-                String[] parts = line.split("=", 2);
-                if (parts.length == 2) {
-                    env.put(parts[0].trim(), parts[1].trim());
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to read .env file: " + e.getMessage());
-        }
-        return env;
-    }
-
     // Updates state of agent on client side
     public void updateState(int newStateId) {
         int oldState = this.stateId;
@@ -171,13 +163,13 @@ public class RLGameModel {
             this.episodeReward += discountedReward;
             System.out.println(String.format(
                 "Episode %d/%d - Step %d/%d - Reward: %.2f (Discounted Episode Total: %.2f)", 
-                currentEpisode + 1, MAX_EPISODES,
-                stepsThisEpisode + 1, MAX_STEPS,
+                currentEpisode + 1, maxEpisodes,
+                stepsThisEpisode + 1, maxStepsPerEpisode,
                 reward, episodeReward
             ));
 
             // Check for goal state reward
-            if (Math.abs(reward - GOAL_REWARD) < 0.0001) {
+            if (Math.abs(reward - goalReward) < 0.0001) {
                 System.out.println("\n!!! GOAL REWARD RECEIVED !!!");
                 this.isGoalReached = true;
                 completeEpisode("Goal reward received!");
@@ -195,6 +187,9 @@ public class RLGameModel {
         return success;
     }
 
+    // Gets the configuration the model was created with
+    public RLConfig getConfig() { return config; }
+
     public int getTotalEpisodes() { return totalEpisodes; }
     public void incrementTotalEpisodes() { totalEpisodes++; }
 
@@ -215,10 +210,8 @@ public class RLGameModel {
     // Keeps the training of the agent going based on the stop method = 0 (max number of steps), 1 (goal state reached), 2 (probabilistic stopping)
     public void incrementStepsThisEpisode() {
         this.stepsThisEpisode++;
-        int stopMethod = Integer.parseInt(ENV.getOrDefault("STOP_METHOD", "0"));
-        System.out.println("DEBUG: stopMethod=" + stopMethod);
-        if (stopMethod == 0 && this.stepsThisEpisode >= MAX_STEPS && !episodeComplete) {
-            completeEpisode("Maximum steps (" + MAX_STEPS + ") reached");
+        if (stopMethod == 0 && this.stepsThisEpisode >= maxStepsPerEpisode && !episodeComplete) {
+            completeEpisode("Maximum steps (" + maxStepsPerEpisode + ") reached");
         }
     }
 
@@ -249,7 +242,7 @@ public class RLGameModel {
 
     // Resetting episode variables for new episode
     public void resetForNewEpisode() {
-        if (currentEpisode + 1 >= MAX_EPISODES) {
+        if (currentEpisode + 1 >= maxEpisodes) {
             return;
         }
         
@@ -260,8 +253,8 @@ public class RLGameModel {
         this.episodeComplete = false;
         this.isGoalReached = false;
 
-        System.out.println("\n=== Starting Episode " + (currentEpisode + 1) + "/" + MAX_EPISODES + " ===");
-        System.out.println("Steps: 0/" + MAX_STEPS);
+        System.out.println("\n=== Starting Episode " + (currentEpisode + 1) + "/" + maxEpisodes + " ===");
+        System.out.println("Steps: 0/" + maxStepsPerEpisode);
         System.out.println("Discounted Episode Reward: 0.0");
         System.out.println("===========================\n");
 
@@ -272,7 +265,6 @@ public class RLGameModel {
 
     // Episode termination based on the stopping methods
     private void completeEpisode(String reason) {
-        int stopMethod = Integer.parseInt(ENV.getOrDefault("STOP_METHOD", "0"));
         // If the termination condition is reaching goal state, then ignore the max steps and exit out of this code
         if (stopMethod == 1 && reason.contains("Maximum steps")) {
             System.out.println("Ignoring max steps end condition for STOP_METHOD=1");
@@ -292,7 +284,7 @@ public class RLGameModel {
                 gamePlayer.sendFinalStateMessage();
             }
 
-            if (currentEpisode + 1 < MAX_EPISODES) {
+            if (currentEpisode + 1 < maxEpisodes) {
                 resetForNewEpisode();
             } else if (!trainingComplete) {
                 trainingComplete = true;
@@ -326,14 +318,13 @@ public class RLGameModel {
     }
 
     public boolean isTrainingComplete() {
-        int stopMethod = Integer.parseInt(ENV.getOrDefault("STOP_METHOD", "0"));
         // Ignore max steps if stop method is 1, and stop if goal state is reached within the permitted number of episodes
         if (stopMethod == 1) {
-            return trainingComplete || (currentEpisode + 1 >= MAX_EPISODES && isGoalReached);
+            return trainingComplete || (currentEpisode + 1 >= maxEpisodes && isGoalReached);
         } 
         // Else if stop methods are 0 or 2, then keep going till the goal state is reached or max number of steps (probabilistic stopping handled on server side)
         else {
-            return trainingComplete || (currentEpisode + 1 >= MAX_EPISODES && (stepsThisEpisode >= MAX_STEPS || isGoalReached));
+            return trainingComplete || (currentEpisode + 1 >= maxEpisodes && (stepsThisEpisode >= maxStepsPerEpisode || isGoalReached));
         }
     }
 
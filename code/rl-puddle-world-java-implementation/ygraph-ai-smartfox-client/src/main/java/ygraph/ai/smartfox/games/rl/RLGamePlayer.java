@@ -14,12 +14,7 @@ import sfs2x.client.requests.LoginRequest;
 import sfs2x.client.requests.LogoutRequest;
 import com.smartfoxserver.v2.exceptions.SFSException;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
 
 // This class represents an RL agent's core logic and interactions with the Puddle World environment along with handling the connection and message processing to and from the server.
 // This would be provided to the students with the connection details filled in, but the core logic would be left to them to implement
@@ -33,8 +28,8 @@ public class RLGamePlayer implements IEventListener {
     private String zoneName;
     private String roomName;
 
-    // Hashmap to store loaded in ENV variables
-    private static final HashMap<String, String> ENV = loadEnv();
+    // Configuration loaded once from system properties, the environment and the .env file (see RLConfig)
+    private final RLConfig config = RLConfig.get();
 
     // Creating a smartfox instance to connect to the server
     private SmartFox smartFox;
@@ -43,26 +38,34 @@ public class RLGamePlayer implements IEventListener {
     private User currentUser;
     private Room currentRoom;
 
-    // RL Components: model representation of the game, Q-table and V-table
+    // RL Components: model representation of the game, and the Q-table and V-table in flat primitive arrays (see RLLearnerCore)
     protected RLGameModel gameModel;
-    private Map<Integer, double[]> qTable;
-    private Map<Integer, Double> vTable;
+    private RLLearnerCore learner;
 
     // Checks if the client is awaiting a response from the server
     private boolean isAwaitingResponse = false;
     
     // Grid size of puddle world loading in from .env file
-    private final int gridSize = Integer.parseInt(ENV.getOrDefault("GRID_SIZE", "5"));
+    private final int gridSize = config.getGridSize();
+
+    // TABLE_MODE=SPARSE keeps Q and V in an open-addressing hash table with an entry per visited state instead of every state up front, for very large grids
+    private final boolean sparseTables = config.isSparseTables();
 
     // Training completion check
     @SuppressWarnings("unused")
     private boolean trainingComplete = false;
 
+    // POLICY_EVAL_EPISODES > 0 has the server roll out the final greedy policy before training is reported complete
+    private final int policyEvalEpisodes = config.getPolicyEvalEpisodes();
+    // Logs every Q-update when LOG_LEVEL=DEBUG
+    private final boolean debugLogging = config.isDebugLogging();
+    private boolean awaitingPolicyEvaluation = false;
+
     // Learning Parameters: learning rate (prioritizes immediate over future rewards), discount factor (future rewards prioritized over immediate rewards), exploration rate (probability of choosing random action over best action given current knowledge of puddle world)
     // Set in server, so students don't need to worry about this
-    private double alpha = Double.parseDouble(ENV.getOrDefault("ALPHA", "0.1"));
-    private double gamma = Double.parseDouble(ENV.getOrDefault("GAMMA", "0.9"));
-    private double epsilon = Double.parseDouble(ENV.getOrDefault("EPSILON", "1.0"));
+    private double alpha = config.getAlpha();
+    private double gamma = config.getGamma();
+    private double epsilon = config.getEpsilon();
 
     private static final String EPISODE_SEPARATOR = "\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n";
 
@@ -76,12 +79,9 @@ public class RLGamePlayer implements IEventListener {
         this.roomName = roomName;
 
         // Initializes RL game model, Q-Table, and V-Table
-        this.gameModel = new RLGameModel();
+        this.gameModel = new RLGameModel(config);
         this.gameModel.setGamePlayer(this);
-        this.qTable = new HashMap<>();
-        this.vTable = new HashMap<>();
-        initializeQTable();
-        initializeVTable();
+        this.learner = new RLLearnerCore(gridSize * gridSize, alpha, gamma, sparseTables);
 
         // Initializes the SmartFox client and event listeners for different events and for communication with the server
         this.smartFox = new SmartFox(false);
@@ -96,48 +96,9 @@ public class RLGamePlayer implements IEventListener {
         this.smartFox.connect(this.serverIP, this.serverPort);
     }
 
-    // Loading in ENV variables
-    private static HashMap<String, String> loadEnv() {
-        HashMap<String, String> env = new HashMap<>();
-        String workingDir = System.getProperty("user.dir");
-        System.out.println("Current Working Directory: " + workingDir);
-        try (BufferedReader br = new BufferedReader(new FileReader(".env"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) 
-                    continue;
-                String[] parts = line.split("=", 2);
-                if (parts.length == 2) {
-                    env.put(parts[0].trim(), parts[1].trim());
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to read .env file: " + e.getMessage());
-        }
-        return env;
-    }
-
-    // Q-table initialization with values set to 0
-    // State IDs range: (0, ((gridSize^2) - 1)) [400 states on 20x20 grid]
-    // actions => 0=UP, 1=DOWN, 2=LEFT, 3=RIGHT
-    // Given to students
-    private void initializeQTable() {
-        for (int state = 0; state < gridSize * gridSize; state++) {
-            double[] actions = new double[4];
-            for (int a = 0; a < 4; a++) {
-                actions[a] = 0.0;
-            }
-            qTable.put(state, actions);
-        }
-    }
-
-    // V-table initialized with 0 values
-    // Given to students
-    private void initializeVTable() {
-        for (int state = 0; state < gridSize * gridSize; state++) {
-            vTable.put(state, 0.0);
-        }
+    // Gets the learner holding the Q and V tables
+    public RLLearnerCore getLearner() {
+        return learner;
     }
 
     // Handles events from the SmartfoxServer like connection, login, errors, and responses from the server side extension
@@ -277,6 +238,9 @@ public class RLGamePlayer implements IEventListener {
                 case RLClientGameMessage.GAME_TRAINING_COMPLETE:
                     processTrainingComplete(params);
                     break;
+                case RLClientGameMessage.GAME_POLICY_EVALUATE_RESPONSE:
+                    processPolicyEvaluation(params);
+                    break;
                 default:
                     System.out.println("Unknown messageType: " + messageType);
                     break;
@@ -332,6 +296,64 @@ public class RLGamePlayer implements IEventListener {
         msg.fromSFSObject(params);
         String error = params.getUtfString("error");
         System.out.println("Received GAME_ERROR: " + error);
+        if (awaitingPolicyEvaluation) {
+            // The server rejected the policy evaluation, finish training without it
+            awaitingPolicyEvaluation = false;
+            sendTrainingCompleteMessage();
+        }
+    }
+
+    // Processes the GAME_POLICY_EVALUATE_RESPONSE message with the statistics of the server-side rollouts of the greedy policy
+    private void processPolicyEvaluation(ISFSObject params) {
+        RLClientGameMessage msg = new RLClientGameMessage();
+        msg.fromSFSObject(params);
+
+        System.out.println("=== Greedy Policy Evaluation ===");
+        System.out.println("Episodes: " + msg.getEpisodes() + " (max " + msg.getMaxSteps() + " steps)");
+        System.out.println("Success Rate: " + msg.getSuccessRate() + " (" + msg.getSuccesses() + " episodes)");
+        System.out.println("Discounted Return: " + msg.getMeanReturn() + " +/- " + msg.getReturnStd());
+        System.out.println("Expected Discounted Return (exact): " + msg.getExpectedReturn());
+        System.out.println("Mean Steps: " + msg.getMeanSteps());
+        System.out.println("Steps Histogram (bins of " + msg.getBinWidth() + "): " + Arrays.toString(msg.getStepHistogram()));
+        System.out.println("Evaluated in " + msg.getElapsedMs() + " ms on the server.");
+        System.out.println("================================");
+
+        if (awaitingPolicyEvaluation) {
+            awaitingPolicyEvaluation = false;
+            sendTrainingCompleteMessage();
+        }
+    }
+
+    // Asks the server to roll out the greedy policy of the Q-table for a number of episodes, 0 uses the server's default
+    // The whole policy is sent once as one action byte per state, instead of one message per step
+    public void requestPolicyEvaluation(int episodes) {
+        RLClientGameMessage evaluateMsg = RLClientGameMessage.policyEvaluateMessage(this.userName, buildGreedyPolicy(), episodes);
+        ISFSObject params = evaluateMsg.toSFSObject();
+        ExtensionRequest req = new ExtensionRequest("rl.action", params, this.currentRoom);
+        smartFox.send(req);
+        System.out.println("Sent GAME_POLICY_EVALUATE request for " + episodes + " episodes.");
+    }
+
+    // Builds the greedy policy of the Q-table, the best action that stays on the grid in each state
+    // States that were never updated take their first action that stays on the grid
+    private byte[] buildGreedyPolicy() {
+        int stateCount = gridSize * gridSize;
+        byte[] policy = new byte[stateCount];
+        int[] available = new int[4];
+        for (int state = 0; state < stateCount; state++) {
+            int row = state / gridSize;
+            int col = state % gridSize;
+            int count = 0;
+            if (row > 0) available[count++] = 0;
+            if (row < gridSize - 1) available[count++] = 1;
+            if (col > 0) available[count++] = 2;
+            if (col < gridSize - 1) available[count++] = 3;
+            if (count == 0) {
+                continue;
+            }
+            policy[state] = (byte) learner.argmax(state, available, count);
+        }
+        return policy;
     }
 
     // Handles info messages about the game's episodes from the server
@@ -469,28 +491,25 @@ public class RLGamePlayer implements IEventListener {
             return;
         }
         
-        if (nextStateId < 0 || nextStateId >= gridSize * gridSize) {
+        if (!learner.isValidState(nextStateId)) {
             System.err.println("Invalid next state ID received: " + nextStateId);
             return;
         }
 
+        if (!learner.isValidState(previousStateId) || action < 0 || action >= RLLearnerCore.ACTION_COUNT) {
+            System.err.println("Invalid state-action pair for Q-update: state " + previousStateId + ", action " + action);
+            return;
+        }
+
         // Update state and steps in this episode
         this.gameModel.updateState(nextStateId);
         this.gameModel.incrementStepsThisEpisode();
 
-        updateQTable(previousStateId, action, reward, nextStateId);
-        updateVTable(previousStateId, reward, nextStateId);
+        updateTables(previousStateId, action, reward, nextStateId);
         
-        // Updates for Q and V tables sent to server
-        sendQUpdate(
-            new int[]{previousStateId},
-            new int[]{action},
-            new double[]{this.qTable.get(previousStateId)[action]}
-        );
-        sendVUpdate(
-            new int[]{previousStateId},
-            new double[]{this.vTable.get(previousStateId)}
-        );
+        // Updates for Q and V tables sent to server, read from the learner's reused outbound buffers
+        sendQUpdate(learner.getQStateBuffer(), learner.getQActionBuffer(), learner.getQValueBuffer());
+        sendVUpdate(learner.getVStateBuffer(), learner.getVValueBuffer());
 
         updateEpsilon();        
         isAwaitingResponse = false;
@@ -547,7 +566,12 @@ public class RLGamePlayer implements IEventListener {
             requestInitialState();
         } else {
             System.out.println("Training completed after " + totalEpisodes + " episodes.");
-            sendTrainingCompleteMessage();
+            if (policyEvalEpisodes > 0) {
+                awaitingPolicyEvaluation = true;
+                requestPolicyEvaluation(policyEvalEpisodes);
+            } else {
+                sendTrainingCompleteMessage();
+            }
         }
     }          
     
@@ -617,23 +641,10 @@ public class RLGamePlayer implements IEventListener {
         if (availableActions.length == 0) {
             throw new IllegalArgumentException("No available actions to choose from.");
         }
-        double[] actions = qTable.get(stateId);
-        if (actions == null) {
+        if (!learner.isValidState(stateId)) {
             throw new IllegalStateException("Q-Table not initialized for stateId: " + stateId);
         }
-        double maxQ = Double.NEGATIVE_INFINITY;
-        int bestAction = availableActions[0];
-        for (int action : availableActions) {
-            if (action < 0 || action >= actions.length) {
-                System.err.println("Invalid action index: " + action + " for stateId: " + stateId);
-                continue;
-            }
-            if (actions[action] > maxQ) {
-                maxQ = actions[action];
-                bestAction = action;
-            }
-        }
-        return bestAction;
+        return learner.argmax(stateId, availableActions, availableActions.length);
     }
     
     // Converts action indexes to strings
@@ -676,12 +687,16 @@ public class RLGamePlayer implements IEventListener {
     }
 
     // Sends Q-Table updates to the server
+    // Only the learner's update is free of allocation: the SmartFox API takes boxed lists and may serialize the request after send() returns,
+    // so each update still builds a new message, ISFSObject and request
     private void sendQUpdate(int[] qStateIds, int[] qActionIndices, double[] qValues) {
         RLClientGameMessage qUpdateMsg = new RLClientGameMessage(qStateIds, qActionIndices, qValues);
         ISFSObject params = qUpdateMsg.toSFSObject();
         ExtensionRequest qUpdateReq = new ExtensionRequest("rl.action", params, this.currentRoom);
         smartFox.send(qUpdateReq);
-        System.out.println("Sent Q-Table updates to the server.");
+        if (debugLogging) {
+            System.out.println("Sent Q-Table updates to the server.");
+        }
     }
 
     // Sends V-Table updates to the server
@@ -690,34 +705,17 @@ public class RLGamePlayer implements IEventListener {
         ISFSObject params = vUpdateMsg.toSFSObject();
         ExtensionRequest vUpdateReq = new ExtensionRequest("rl.action", params, this.currentRoom);
         smartFox.send(vUpdateReq);
-        System.out.println("Sent V-Table updates to the server.");
-    }
-
-    // Updates the Q-table based on the update formula and sends updates to the server
-    private void updateQTable(int stateId, int action, double reward, int nextStateId) {
-        double[] currentQ = qTable.get(stateId);
-        if (currentQ == null) {
-            System.err.println("Q-Table entry missing for stateId: " + stateId);
-            return;
+        if (debugLogging) {
+            System.out.println("Sent V-Table updates to the server.");
         }
-        double[] nextQ = qTable.get(nextStateId);
-        if (nextQ == null) {
-            System.err.println("Q-Table entry missing for nextStateId: " + nextStateId);
-            return;
-        }
-        double maxNextQ = getMaxQ(nextQ);
-        currentQ[action] = currentQ[action] + alpha * (reward + gamma * maxNextQ - currentQ[action]);
-        qTable.put(stateId, currentQ);
-
-        System.out.println("Updated Q-value for state " + stateId + ", action " + action + ": " + currentQ[action]);
     }
 
-    // Updates the V-table based on TD error and sends updates to the server
-    private void updateVTable(int stateId, double reward, int nextStateId) {
-        double currentV = vTable.get(stateId);
-        double nextV = vTable.get(nextStateId);
-        double updatedV = currentV + alpha * (reward + gamma * nextV - currentV);
-        vTable.put(stateId, updatedV);
+    // Updates the Q-table with the Q-learning update and the V-table with the TD error, in place in the learner's arrays
+    private void updateTables(int stateId, int action, double reward, int nextStateId) {
+        double q = learner.update(stateId, action, reward, nextStateId);
+        if (debugLogging) {
+            System.out.println("Updated Q-value for state " + stateId + ", action " + action + ": " + q);
+        }
     }
 
     // Sends a GAME_INFO request to the server
@@ -730,18 +728,6 @@ public class RLGamePlayer implements IEventListener {
         System.out.println("Sent GAME_INFO request to the server.");
     }
 
-    // Gets the maximum Q-value from the array of Q-values for an action-state pair
-    // Students must implement this
-    private double getMaxQ(double[] qValues) {
-        double max = Double.NEGATIVE_INFINITY;
-        for (double q : qValues) {
-            if (q > max) {
-                max = q;
-            }
-        }
-        return max;
-    }
-
     // Resets the puddle world environment with an extension request to the server and resets the reward for the episode (if something goes wrong)
     // Given to students
     protected void resetEnvironment() {
@@ -0,0 +1,329 @@
+package ygraph.ai.smartfox.games.rl;
+
+import java.util.Arrays;
+
+// This class is the client's Q-learning core: primitive Q and V tables that are updated and read without allocating or boxing
+// (sending an update to the server still allocates, see RLGamePlayer.sendQUpdate)
+// Q-values are stored row-major in flat double arrays, index = stateId * 4 + action (actions => 0=UP, 1=DOWN, 2=LEFT, 3=RIGHT), V-values by stateId
+// Dense tables are split into pages of PAGE_STATES states that are all allocated up front
+// Sparse tables (TABLE_MODE=SPARSE) are a primitive int-keyed open-addressing hash table (see SparseTable) that gives a state storage on its first write,
+// so memory grows with the visited states and not with gridSize^2 even when the visits are scattered over the grid
+// States that were never written read as 0 in both modes
+// Each update also fills the outbound buffers, the one-entry arrays sent with GAME_Q_UPDATE and GAME_V_UPDATE, which are overwritten by the next update
+// It has no connection to the server, so a headless trainer can drive it directly with its own transport
+public final class RLLearnerCore {
+    public static final int ACTION_COUNT = 4;
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_STATES = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_STATES - 1;
+
+    private final int stateCount;
+    private final double alpha;
+    private final double gamma;
+    // Dense pages, null in sparse mode
+    private final double[][] qPages;
+    private final double[][] vPages;
+    // Sparse table, null in dense mode
+    private final SparseTable sparseTable;
+
+    // Outbound buffers holding the last update
+    private final int[] qStateBuffer = new int[1];
+    private final int[] qActionBuffer = new int[1];
+    private final double[] qValueBuffer = new double[1];
+    private final int[] vStateBuffer = new int[1];
+    private final double[] vValueBuffer = new double[1];
+
+    private long updates;
+
+    public RLLearnerCore(int stateCount, double alpha, double gamma, boolean sparse) {
+        if (stateCount <= 0) {
+            throw new IllegalArgumentException("State count must be positive: " + stateCount);
+        }
+        this.stateCount = stateCount;
+        this.alpha = alpha;
+        this.gamma = gamma;
+        if (sparse) {
+            this.qPages = null;
+            this.vPages = null;
+            this.sparseTable = new SparseTable();
+        } else {
+            int pages = (stateCount + PAGE_STATES - 1) >>> PAGE_BITS;
+            this.qPages = new double[pages][];
+            this.vPages = new double[pages][];
+            for (int p = 0; p < pages; p++) {
+                qPages[p] = new double[pageStates(p) * ACTION_COUNT];
+                vPages[p] = new double[pageStates(p)];
+            }
+            this.sparseTable = null;
+        }
+    }
+
+    // Creates a core for the GRID_SIZE, ALPHA, GAMMA and TABLE_MODE settings
+    public static RLLearnerCore fromConfig(RLConfig config) {
+        return new RLLearnerCore(config.getGridSize() * config.getGridSize(), config.getAlpha(), config.getGamma(), config.isSparseTables());
+    }
+
+    // Number of states in the last page may be smaller than PAGE_STATES
+    private int pageStates(int page) {
+        return Math.min(PAGE_STATES, stateCount - (page << PAGE_BITS));
+    }
+
+    // Checks if a state ID lies within the tables
+    public boolean isValidState(int stateId) {
+        return stateId >= 0 && stateId < stateCount;
+    }
+
+    // Checks if the tables are a sparse hash table
+    public boolean isSparse() {
+        return sparseTable != null;
+    }
+
+    public double getQ(int stateId, int action) {
+        if (sparseTable != null) {
+            int slot = sparseTable.find(stateId);
+            return slot < 0 ? 0.0 : sparseTable.qValues[slot * ACTION_COUNT + action];
+        }
+        return qPages[stateId >>> PAGE_BITS][(stateId & PAGE_MASK) * ACTION_COUNT + action];
+    }
+
+    public double getV(int stateId) {
+        if (sparseTable != null) {
+            int slot = sparseTable.find(stateId);
+            return slot < 0 ? 0.0 : sparseTable.vValues[slot];
+        }
+        return vPages[stateId >>> PAGE_BITS][stateId & PAGE_MASK];
+    }
+
+    // Gets the highest Q-value of a state over all 4 actions
+    public double maxQ(int stateId) {
+        double[] page;
+        int base;
+        if (sparseTable != null) {
+            int slot = sparseTable.find(stateId);
+            if (slot < 0) {
+                return 0.0;
+            }
+            page = sparseTable.qValues;
+            base = slot * ACTION_COUNT;
+        } else {
+            page = qPages[stateId >>> PAGE_BITS];
+            base = (stateId & PAGE_MASK) * ACTION_COUNT;
+        }
+        double max = page[base];
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            if (page[base + a] > max) {
+                max = page[base + a];
+            }
+        }
+        return max;
+    }
+
+    // Gets the action with the highest Q-value among the first count actions given (ties go to the earliest), invalid action indices are skipped
+    public int argmax(int stateId, int[] actions, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("No available actions to choose from.");
+        }
+        int bestAction = actions[0];
+        double maxQ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            int action = actions[i];
+            if (action < 0 || action >= ACTION_COUNT) {
+                continue;
+            }
+            double q = getQ(stateId, action);
+            if (q > maxQ) {
+                maxQ = q;
+                bestAction = action;
+            }
+        }
+        return bestAction;
+    }
+
+    // Applies the Q-learning update of one transition and the TD(0) update of V, and fills the outbound buffers
+    // Q(s, a) += alpha * (r + gamma * max_a' Q(s', a') - Q(s, a)), V(s) += alpha * (r + gamma * V(s') - V(s)), returns the new Q(s, a)
+    public double update(int stateId, int action, double reward, int nextStateId) {
+        double target = reward + gamma * maxQ(nextStateId);
+        double vTarget = reward + gamma * getV(nextStateId);
+        double[] qValues;
+        double[] vValues;
+        int index;
+        int vIndex;
+        if (sparseTable != null) {
+            // The slot is looked up first, since inserting may replace the value arrays
+            int slot = sparseTable.findOrInsert(stateId);
+            qValues = sparseTable.qValues;
+            vValues = sparseTable.vValues;
+            index = slot * ACTION_COUNT + action;
+            vIndex = slot;
+        } else {
+            qValues = qPages[stateId >>> PAGE_BITS];
+            vValues = vPages[stateId >>> PAGE_BITS];
+            index = (stateId & PAGE_MASK) * ACTION_COUNT + action;
+            vIndex = stateId & PAGE_MASK;
+        }
+        double q = qValues[index] + alpha * (target - qValues[index]);
+        qValues[index] = q;
+        double v = vValues[vIndex] + alpha * (vTarget - vValues[vIndex]);
+        vValues[vIndex] = v;
+
+        qStateBuffer[0] = stateId;
+        qActionBuffer[0] = action;
+        qValueBuffer[0] = q;
+        vStateBuffer[0] = stateId;
+        vValueBuffer[0] = v;
+        updates++;
+        return q;
+    }
+
+    // Sets every Q and V value back to 0, a sparse table drops its entries and shrinks back to its initial capacity
+    public void clear() {
+        if (sparseTable != null) {
+            sparseTable.allocate(SparseTable.INITIAL_CAPACITY);
+        } else {
+            for (double[] page : qPages) {
+                Arrays.fill(page, 0.0);
+            }
+            for (double[] page : vPages) {
+                Arrays.fill(page, 0.0);
+            }
+        }
+        updates = 0;
+    }
+
+    // State IDs of the last Q-update, reused by every update
+    public int[] getQStateBuffer() {
+        return qStateBuffer;
+    }
+
+    public int[] getQActionBuffer() {
+        return qActionBuffer;
+    }
+
+    public double[] getQValueBuffer() {
+        return qValueBuffer;
+    }
+
+    // State IDs of the last V-update, reused by every update
+    public int[] getVStateBuffer() {
+        return vStateBuffer;
+    }
+
+    public double[] getVValueBuffer() {
+        return vValueBuffer;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    // Number of updates applied since the core was created or cleared
+    public long getUpdateCount() {
+        return updates;
+    }
+
+    // Number of states that have storage, every state for dense tables
+    public int getStoredStateCount() {
+        return sparseTable != null ? sparseTable.size : stateCount;
+    }
+
+    // Approximate heap size of the table arrays in bytes
+    public long getMemoryUsageBytes() {
+        if (sparseTable != null) {
+            return (long) sparseTable.keys.length * (Integer.BYTES + (ACTION_COUNT + 1) * Double.BYTES);
+        }
+        long bytes = 0;
+        for (int p = 0; p < qPages.length; p++) {
+            bytes += (long) (qPages[p].length + vPages[p].length) * Double.BYTES;
+        }
+        return bytes;
+    }
+
+    // Open-addressing hash table of the sparse mode, like the server's RLSparseTableStore:
+    // slot i holds keys[i] = stateId + 1 (0 marks an empty slot), its 4 Q-values at qValues[i * 4 .. i * 4 + 3] and its V-value at vValues[i]
+    // Lookups use linear probing over a power of two capacity that doubles once the table is half full, entries are only removed by clear()
+    private static final class SparseTable {
+        static final int INITIAL_CAPACITY = 64;
+
+        int[] keys;
+        double[] qValues;
+        double[] vValues;
+        int size;
+        private int mask;
+
+        SparseTable() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        void allocate(int capacity) {
+            keys = new int[capacity];
+            qValues = new double[capacity * ACTION_COUNT];
+            vValues = new double[capacity];
+            mask = capacity - 1;
+            size = 0;
+        }
+
+        // Spreads the state ID bits so that neighbouring states do not fill consecutive slots
+        private static int hash(int stateId) {
+            int h = stateId * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        // Gets the slot holding a state, or -1 if the state has no entry
+        int find(int stateId) {
+            int key = stateId + 1;
+            int slot = hash(stateId) & mask;
+            while (true) {
+                int k = keys[slot];
+                if (k == key) {
+                    return slot;
+                }
+                if (k == 0) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        // Gets the slot holding a state, creating a zeroed entry on first touch
+        int findOrInsert(int stateId) {
+            int key = stateId + 1;
+            int slot = hash(stateId) & mask;
+            while (true) {
+                int k = keys[slot];
+                if (k == key) {
+                    return slot;
+                }
+                if (k == 0) {
+                    if ((size + 1) * 2 > keys.length) {
+                        grow();
+                        return findOrInsert(stateId);
+                    }
+                    keys[slot] = key;
+                    size++;
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+
+        // Doubles the capacity and reinserts every entry
+        private void grow() {
+            int[] oldKeys = keys;
+            double[] oldQ = qValues;
+            double[] oldV = vValues;
+            allocate(oldKeys.length * 2);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = hash(oldKeys[i] - 1) & mask;
+                    while (keys[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    keys[slot] = oldKeys[i];
+                    System.arraycopy(oldQ, i * ACTION_COUNT, qValues, slot * ACTION_COUNT, ACTION_COUNT);
+                    vValues[slot] = oldV[i];
+                    size++;
+                }
+            }
+        }
+    }
+}
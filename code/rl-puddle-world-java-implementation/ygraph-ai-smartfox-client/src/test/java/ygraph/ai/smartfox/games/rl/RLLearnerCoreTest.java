@@ -0,0 +1,102 @@
+package ygraph.ai.smartfox.games.rl;
+
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests the Q-learning update, argmax and clear of the learner core on dense and sparse tables
+public class RLLearnerCoreTest {
+    private static final double ALPHA = 0.5;
+    private static final double GAMMA = 0.9;
+
+    @Test
+    public void testUpdateFillsTablesAndBuffers() {
+        for (boolean sparse : new boolean[]{false, true}) {
+            RLLearnerCore core = new RLLearnerCore(16, ALPHA, GAMMA, sparse);
+            assertEquals(sparse, core.isSparse());
+            assertEquals(0.5, core.update(3, 2, 1.0, 4), 0.0);
+            assertEquals(0.5, core.getQ(3, 2), 0.0);
+            assertEquals(0.5, core.getV(3), 0.0);
+            assertEquals(0.0, core.getQ(3, 1), 0.0);
+
+            // The target uses the best Q-value and the V-value of the next state
+            double q = core.update(2, 3, 0.0, 3);
+            assertEquals(ALPHA * GAMMA * 0.5, q, 1e-12);
+            assertEquals(ALPHA * GAMMA * 0.5, core.getV(2), 1e-12);
+            assertArrayEquals(new int[]{2}, core.getQStateBuffer());
+            assertArrayEquals(new int[]{3}, core.getQActionBuffer());
+            assertArrayEquals(new double[]{q}, core.getQValueBuffer(), 0.0);
+            assertArrayEquals(new int[]{2}, core.getVStateBuffer());
+            assertArrayEquals(new double[]{core.getV(2)}, core.getVValueBuffer(), 0.0);
+            assertEquals(2, core.getUpdateCount());
+        }
+    }
+
+    @Test
+    public void testSparseTablesMatchDenseTables() {
+        int stateCount = 300 * 300;
+        RLLearnerCore dense = new RLLearnerCore(stateCount, ALPHA, GAMMA, false);
+        RLLearnerCore sparse = new RLLearnerCore(stateCount, ALPHA, GAMMA, true);
+        SplittableRandom random = new SplittableRandom(5L);
+        for (int i = 0; i < 20000; i++) {
+            int stateId = random.nextInt(stateCount);
+            int action = random.nextInt(RLLearnerCore.ACTION_COUNT);
+            int nextStateId = random.nextInt(stateCount);
+            double reward = random.nextDouble() - 0.5;
+            assertEquals(dense.update(stateId, action, reward, nextStateId), sparse.update(stateId, action, reward, nextStateId), 0.0);
+        }
+        // Scattered writes grow the sparse table several times, every state keeps its values through the rehashes
+        assertTrue(sparse.getStoredStateCount() > 10000);
+        assertTrue(sparse.getStoredStateCount() < stateCount);
+        assertEquals(stateCount, dense.getStoredStateCount());
+        for (int s = 0; s < stateCount; s++) {
+            assertEquals(dense.getV(s), sparse.getV(s), 0.0);
+            assertEquals(dense.maxQ(s), sparse.maxQ(s), 0.0);
+            for (int a = 0; a < RLLearnerCore.ACTION_COUNT; a++) {
+                assertEquals(dense.getQ(s, a), sparse.getQ(s, a), 0.0);
+            }
+        }
+    }
+
+    @Test
+    public void testArgmaxSkipsInvalidActions() {
+        for (boolean sparse : new boolean[]{false, true}) {
+            RLLearnerCore core = new RLLearnerCore(4, ALPHA, GAMMA, sparse);
+            core.update(0, 1, 2.0, 3);
+            core.update(0, 3, 1.0, 3);
+            assertEquals(1, core.argmax(0, new int[]{0, 1, 2, 3}, 4));
+            assertEquals(3, core.argmax(0, new int[]{-1, 7, 3, 0, 1}, 4));
+            // Ties go to the earliest action, an unwritten state reads 0 everywhere
+            assertEquals(2, core.argmax(1, new int[]{9, 2, 0}, 3));
+            try {
+                core.argmax(0, new int[]{0}, 0);
+                fail("An empty action list should be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testClearResetsEveryValue() {
+        for (boolean sparse : new boolean[]{false, true}) {
+            RLLearnerCore core = new RLLearnerCore(10000, ALPHA, GAMMA, sparse);
+            for (int s = 0; s < 10000; s += 7) {
+                core.update(s, s % RLLearnerCore.ACTION_COUNT, 1.0, (s + 1) % 10000);
+            }
+            long memory = core.getMemoryUsageBytes();
+            core.clear();
+            assertEquals(0, core.getUpdateCount());
+            for (int s = 0; s < 10000; s++) {
+                assertEquals(0.0, core.getV(s), 0.0);
+                assertEquals(0.0, core.maxQ(s), 0.0);
+            }
+            if (sparse) {
+                assertEquals(0, core.getStoredStateCount());
+                assertTrue(core.getMemoryUsageBytes() < memory);
+            } else {
+                assertEquals(memory, core.getMemoryUsageBytes());
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.stream.Collectors;
+
+// This class grades the mirrored Q-tables of live sessions against the reference solutions of their layouts, replacing the parsing of client logs
+// Each user is graded from an RLTableSnapshot of their tables, so grading never blocks or sees a half-applied client update (see RLGrade for the metrics)
+// Users are graded in parallel on the common fork-join pool, the reference solutions come from RLPlanner's cache so users sharing a layout share one solve
+// A user's layout and transitions are read together under the user's lock, so a reset on a request thread cannot pair one episode's layout with another's solution
+// Large worlds (compressed layouts, see RLConfig.isLargeWorld) are refused before anything is solved, their dense solve does not fit the grader
+// Grades are cached per table store and kept while the store's version, the reference solution and the step limit are unchanged,
+// so re-grading a user who has not sent an update since costs a version check
+public class RLBatchGrader {
+    private static final int UNKNOWN = -2;
+    private static final int ON_PATH = -3;
+
+    private final RLPlanner planner;
+    private final Map<RLValueStore, RLGrade> grades = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // Creates a grader that evaluates policies with the PLANNER_TOLERANCE and PLANNER_MAX_SWEEPS settings
+    public RLBatchGrader() {
+        this(RLPlanner.fromConfig(RLConfig.get()));
+    }
+
+    public RLBatchGrader(RLPlanner planner) {
+        if (planner == null) {
+            throw new IllegalArgumentException("Planner cannot be null.");
+        }
+        this.planner = planner;
+    }
+
+    // Grades every user in parallel and returns the grades sorted by username, users that cannot be graded are logged and left out
+    public Map<String, RLGrade> gradeAll(Map<String, RLGameUser> users) {
+        long start = System.nanoTime();
+        Map<String, RLGrade> result = users.entrySet().parallelStream()
+                .map(entry -> gradeOrNull(entry.getKey(), entry.getValue()))
+                .filter(grade -> grade != null)
+                .collect(Collectors.toMap(RLGrade::getUserName, grade -> grade, (a, b) -> a, TreeMap::new));
+        System.out.println("RLBatchGrader graded " + result.size() + " of " + users.size() + " users in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        return result;
+    }
+
+    private RLGrade gradeOrNull(String userName, RLGameUser rlUser) {
+        try {
+            RLWorld world;
+            RLTransitionModel layout;
+            RLStochasticTransitions transitions;
+            int maxSteps;
+            synchronized (rlUser) {
+                world = rlUser.getWorld();
+                if (world == null) {
+                    throw new IllegalArgumentException("Game world not initialized.");
+                }
+                layout = world.getLayout();
+                transitions = world.getTransitions();
+                maxSteps = rlUser.getMaxStepsPerEpisode();
+            }
+            return grade(userName, world, layout, transitions, maxSteps);
+        } catch (RuntimeException e) {
+            System.err.println("Failed to grade user " + userName + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Grades one world's tables on a layout and transitions captured together from the world,
+    // returning the cached grade if the tables and the reference solution are unchanged since it was made
+    public RLGrade grade(String userName, RLWorld world, RLTransitionModel layout, RLStochasticTransitions transitions, int maxSteps) {
+        if (world.isLargeWorld() || layout instanceof RLCompressedLayout) {
+            throw new IllegalArgumentException("Large worlds (" + layout.getGridSize() + "x" + layout.getGridSize() + ") cannot be graded.");
+        }
+        RLValueStore tables = world.getTables();
+        RLSolution solution = world.getReferenceSolution(layout, transitions);
+        RLGrade cached = grades.get(tables);
+        if (cached != null && cached.getTableVersion() == tables.getVersion() && cached.getSolution() == solution && cached.getMaxSteps() == maxSteps) {
+            return cached;
+        }
+        RLGrade grade = grade(userName, tables.snapshot(), layout, transitions, solution, maxSteps);
+        grades.put(tables, grade);
+        return grade;
+    }
+
+    // Grades a snapshot of a Q-table against the reference solution of a layout
+    public RLGrade grade(String userName, RLTableSnapshot snapshot, RLTransitionModel layout, RLStochasticTransitions transitions, RLSolution solution, int maxSteps) {
+        int stateCount = layout.getStateCount();
+        if (snapshot.getStateCount() != stateCount || solution.getStateCount() != stateCount) {
+            throw new IllegalArgumentException("Tables have " + snapshot.getStateCount() + " states and the solution " + solution.getStateCount()
+                    + ", the layout has " + stateCount + ".");
+        }
+        long start = System.nanoTime();
+        int[] policy = new int[stateCount];
+        double qDistance = 0.0;
+        for (int s = 0; s < stateCount; s++) {
+            int best = -1;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for (int a : layout.validActions(s)) {
+                double q = snapshot.getQ(s, a);
+                if (best < 0 || q > bestValue) {
+                    best = a;
+                    bestValue = q;
+                }
+                double distance = Math.abs(q - solution.getQ(s, a));
+                if (!(distance <= qDistance)) {
+                    qDistance = Double.isNaN(distance) ? Double.POSITIVE_INFINITY : distance;
+                }
+            }
+            policy[s] = best;
+        }
+
+        int[] steps = pathLengths(layout, policy);
+        double[] values = planner.evaluate(layout, transitions, solution.getGamma(), policy);
+        double actionTolerance = 2 * Math.max(planner.getTolerance(), solution.getErrorBound());
+        int nonTerminal = 0;
+        int successes = 0;
+        long successSteps = 0;
+        int optimalActions = 0;
+        double regretSum = 0.0;
+        for (int s = 0; s < stateCount; s++) {
+            if (layout.isTerminal(s)) {
+                continue;
+            }
+            nonTerminal++;
+            if (steps[s] >= 0 && steps[s] <= maxSteps) {
+                successes++;
+                successSteps += steps[s];
+            }
+            regretSum += solution.getV(s) - values[s];
+            if (solution.getV(s) - solution.getQ(s, policy[s]) <= actionTolerance) {
+                optimalActions++;
+            }
+        }
+        int pathLength = steps[0] <= maxSteps ? steps[0] : -1;
+        int optimalSteps = optimalPathLength(layout, solution, maxSteps);
+        RLGrade grade = new RLGrade(userName, snapshot.getVersion(), solution, maxSteps,
+                nonTerminal == 0 ? 1.0 : (double) successes / nonTerminal,
+                pathLength, optimalSteps,
+                successes == 0 ? Double.NaN : (double) successSteps / successes,
+                solution.getV(0) - values[0],
+                nonTerminal == 0 ? 0.0 : regretSum / nonTerminal,
+                qDistance,
+                nonTerminal == 0 ? 1.0 : (double) optimalActions / nonTerminal,
+                System.nanoTime() - start);
+        System.out.println("Graded " + userName + ": " + grade);
+        return grade;
+    }
+
+    // Steps from every state to the goal following the intended moves of a policy, -1 if the path loops
+    // The policy makes every state point to one next state, so each state is walked once and the lengths are filled in backwards along the walk
+    static int[] pathLengths(RLTransitionModel layout, int[] policy) {
+        int stateCount = layout.getStateCount();
+        int[] steps = new int[stateCount];
+        int[] path = new int[stateCount];
+        Arrays.fill(steps, UNKNOWN);
+        for (int s = 0; s < stateCount; s++) {
+            if (layout.isTerminal(s)) {
+                steps[s] = 0;
+            }
+        }
+        for (int s = 0; s < stateCount; s++) {
+            int length = 0;
+            int current = s;
+            while (steps[current] == UNKNOWN) {
+                steps[current] = ON_PATH;
+                path[length++] = current;
+                current = layout.nextState(current, policy[current]);
+            }
+            int next = steps[current] == ON_PATH ? -1 : steps[current];
+            while (length > 0) {
+                next = next < 0 ? -1 : next + 1;
+                steps[path[--length]] = next;
+            }
+        }
+        return steps;
+    }
+
+    // Steps of the optimal policy's path from state 0 to the goal, -1 if it does not arrive within maxSteps
+    private static int optimalPathLength(RLTransitionModel layout, RLSolution solution, int maxSteps) {
+        int s = 0;
+        for (int step = 0; step <= maxSteps; step++) {
+            if (layout.isTerminal(s)) {
+                return step;
+            }
+            s = layout.nextState(s, solution.getAction(s));
+        }
+        return -1;
+    }
+
+    // Drops every cached grade
+    public void clear() {
+        grades.clear();
+    }
+
+    public RLPlanner getPlanner() {
+        return planner;
+    }
+}
@@ -0,0 +1,238 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+// This class is a compiled puddle layout for very large grids (10^6 to 10^8 cells) where the dense tables of RLLayout do not fit in memory
+// Puddles are stored per row as run-length encoded column intervals: rowRuns[row] = {start0, end0, start1, end1, ...} with sorted, non-overlapping [start, end) runs
+// Rows without puddles share one empty array, so memory scales with the number of puddle rows instead of the number of cells
+// Transitions, rewards and valid actions are computed from the row/column arithmetic and the runs, giving the same step contract as RLLayout
+public final class RLCompressedLayout implements RLTransitionModel {
+    private static final int[] NO_RUNS = new int[0];
+
+    private final int gridSize;
+    private final int stateCount;
+    private final int goalStateId;
+    private final int puddleSize;
+    private final List<int[]> puddlePositions;
+
+    private final double defaultReward;
+    private final double puddleReward;
+    private final double goalReward;
+
+    private final int[][] rowRuns;
+    private final long puddleCellCount;
+
+    private RLCompressedLayout(int gridSize, int puddleSize, List<int[]> puddlePositions, double defaultReward, double puddleReward, double goalReward) {
+        this.gridSize = gridSize;
+        this.stateCount = gridSize * gridSize;
+        this.goalStateId = stateCount - 1;
+        this.puddleSize = puddleSize;
+        this.puddlePositions = puddlePositions;
+        this.defaultReward = defaultReward;
+        this.puddleReward = puddleReward;
+        this.goalReward = goalReward;
+        this.rowRuns = new int[gridSize][];
+        Arrays.fill(rowRuns, NO_RUNS);
+        this.puddleCellCount = buildRuns();
+    }
+
+    // Compiles the puddle positions (top-left corners of puddleSize x puddleSize squares) and rewards into run-length encoded rows
+    public static RLCompressedLayout compile(int gridSize, int puddleSize, List<int[]> puddles, double defaultReward, double puddleReward, double goalReward) {
+        if (gridSize <= 0 || (long) gridSize * gridSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Grid size out of range for int state IDs: " + gridSize);
+        }
+        List<int[]> copy = new ArrayList<>(puddles.size());
+        for (int[] puddle : puddles) {
+            copy.add(new int[]{puddle[0], puddle[1]});
+        }
+        return new RLCompressedLayout(gridSize, puddleSize, Collections.unmodifiableList(copy), defaultReward, puddleReward, goalReward);
+    }
+
+    // Builds the runs of every row from the puddle squares and returns the number of puddle cells
+    // Every square adds one [col, col + puddleSize) interval to each row it covers, the intervals are sorted by (row, start) and merged
+    private long buildRuns() {
+        if (puddlePositions.isEmpty() || puddleSize <= 0) {
+            return 0;
+        }
+        long[] starts = new long[puddlePositions.size() * puddleSize];
+        int count = 0;
+        for (int[] puddle : puddlePositions) {
+            int rowEnd = Math.min(puddle[0] + puddleSize, gridSize);
+            int col = Math.max(puddle[1], 0);
+            if (col >= gridSize) {
+                continue;
+            }
+            for (int row = Math.max(puddle[0], 0); row < rowEnd; row++) {
+                starts[count++] = (long) row * gridSize + col;
+            }
+        }
+        Arrays.sort(starts, 0, count);
+
+        long cells = 0;
+        int i = 0;
+        int[] runs = new int[8];
+        while (i < count) {
+            int row = (int) (starts[i] / gridSize);
+            int runLength = 0;
+            while (i < count && starts[i] / gridSize == row) {
+                int start = (int) (starts[i] % gridSize);
+                int end = Math.min(start + puddleSize, gridSize);
+                if (runLength > 0 && start <= runs[runLength - 1]) {
+                    runs[runLength - 1] = Math.max(runs[runLength - 1], end);
+                } else {
+                    if (runLength + 2 > runs.length) {
+                        runs = Arrays.copyOf(runs, runs.length * 2);
+                    }
+                    runs[runLength++] = start;
+                    runs[runLength++] = end;
+                }
+                i++;
+            }
+            rowRuns[row] = Arrays.copyOf(runs, runLength);
+            for (int r = 0; r < runLength; r += 2) {
+                cells += runs[r + 1] - runs[r];
+            }
+        }
+        return cells;
+    }
+
+    // Checks if a column lies in one of the runs of a row using binary search over the run starts
+    private static boolean inRuns(int[] runs, int col) {
+        int low = 0;
+        int high = (runs.length >>> 1) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = runs[mid << 1];
+            if (col < start) {
+                high = mid - 1;
+            } else if (col >= runs[(mid << 1) + 1]) {
+                low = mid + 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int nextState(int stateId, int action) {
+        int row = stateId / gridSize;
+        int col = stateId - row * gridSize;
+        switch (action) {
+            case RLLayout.ACTION_UP:
+                return row > 0 ? stateId - gridSize : stateId;
+            case RLLayout.ACTION_DOWN:
+                return row < gridSize - 1 ? stateId + gridSize : stateId;
+            case RLLayout.ACTION_LEFT:
+                return col > 0 ? stateId - 1 : stateId;
+            case RLLayout.ACTION_RIGHT:
+                return col < gridSize - 1 ? stateId + 1 : stateId;
+            default:
+                throw new IllegalArgumentException("Invalid action index: " + action);
+        }
+    }
+
+    @Override
+    public double reward(int stateId, int action) {
+        return stateReward(nextState(stateId, action));
+    }
+
+    @Override
+    public double stateReward(int stateId) {
+        if (stateId == goalStateId) {
+            return goalReward;
+        }
+        return isPuddle(stateId) ? puddleReward : defaultReward;
+    }
+
+    @Override
+    public boolean isPuddle(int stateId) {
+        if (!isValidState(stateId)) {
+            return false;
+        }
+        int row = stateId / gridSize;
+        int[] runs = rowRuns[row];
+        return runs.length != 0 && inRuns(runs, stateId - row * gridSize);
+    }
+
+    @Override
+    public boolean isTerminal(int stateId) {
+        return stateId == goalStateId;
+    }
+
+    @Override
+    public boolean isValidState(int stateId) {
+        return stateId >= 0 && stateId < stateCount;
+    }
+
+    @Override
+    public int validActionMask(int stateId) {
+        int row = stateId / gridSize;
+        return RLLayout.edgeMask(row, stateId - row * gridSize, gridSize);
+    }
+
+    @Override
+    public int[] validActions(int stateId) {
+        return RLLayout.actionsForMask(validActionMask(stateId));
+    }
+
+    // Number of cells covered by puddles
+    public long getPuddleCellCount() {
+        return puddleCellCount;
+    }
+
+    // Approximate heap size of the run-length encoded rows in bytes
+    @Override
+    public long getMemoryUsageBytes() {
+        long bytes = 16L + 8L * gridSize;
+        for (int[] runs : rowRuns) {
+            if (runs != NO_RUNS) {
+                bytes += 16L + 4L * runs.length;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    @Override
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    @Override
+    public int getGoalStateId() {
+        return goalStateId;
+    }
+
+    @Override
+    public int getPuddleSize() {
+        return puddleSize;
+    }
+
+    @Override
+    public List<int[]> getPuddlePositions() {
+        return puddlePositions;
+    }
+
+    @Override
+    public double getDefaultReward() {
+        return defaultReward;
+    }
+
+    @Override
+    public double getPuddleReward() {
+        return puddleReward;
+    }
+
+    @Override
+    public double getGoalReward() {
+        return goalReward;
+    }
+}
@@ -0,0 +1,610 @@
+package ygraph.ai.smartfox.rl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// This class is the typed, validated and immutable server configuration, loaded once and shared by every class that used to read the .env file itself
+// Each key is resolved from the first source that sets it:
+// 1. a system property with the key's name (-DGRID_SIZE=8)
+// 2. an environment variable with the key's name
+// 3. the .env file in the working directory (RL_ENV_FILE names another file)
+// 4. the default below
+// Values are parsed and range checked once when the configuration is loaded, invalid values fail the load with an IllegalArgumentException naming the key
+// reload() builds a new configuration and swaps it in atomically, objects that already copied values from the old one (worlds, users) keep them until they are recreated
+// reloadIfChanged() reloads only when the .env file was modified since the last load, RLGameExtension polls it so edits to the file take effect without a restart
+public final class RLConfig {
+    public static final String ENV_FILE_KEY = "RL_ENV_FILE";
+
+    private static final AtomicReference<RLConfig> CURRENT = new AtomicReference<>();
+    // Modification time of the .env file when it was last read, 0 if it did not exist
+    private static final AtomicLong ENV_FILE_MODIFIED = new AtomicLong();
+
+    // Keys that system properties and environment variables may set even when the .env file does not mention them
+    // They are the keys the constructor reads, collected by parsing an empty configuration, so every key must be read whatever the other values are
+    private static final Set<String> KNOWN_KEYS = Collections.unmodifiableSet(new RLConfig(Collections.<String, String>emptyMap()).parsedKeys);
+
+    // Resolved raw values of every key that was set, for keys without a typed getter (for example the settings of a custom termination policy)
+    private final Map<String, String> values;
+    // Keys read by the constructor's typed parsing, only written while the configuration is built
+    private final Set<String> parsedKeys = new HashSet<>();
+
+    // Episodes and stopping
+    private final int stopMethod;
+    private final int maxSteps;
+    private final int episodeCount;
+    private final double stopProb;
+    private final String stopPolicyClass;
+    private final double successRewardThreshold;
+
+    // Learning parameters
+    private final double alpha;
+    private final double gamma;
+    private final double epsilon;
+
+    // World and rewards
+    private final int gridSize;
+    private final int maxPuddles;
+    private final int puddleSize;
+    private final double defaultReward;
+    private final double puddleReward;
+    private final double goalReward;
+    private final String worldMode;
+    private final int largeGridThreshold;
+
+    // Layouts and seeds
+    private final RLLayoutMode layoutMode;
+    private final int layoutPoolSize;
+    private final int layoutCacheSize;
+    private final int layoutCacheMaxMb;
+    private final Long layoutSeed;
+    private final Long rootSeed;
+
+    // Master tables
+    private final RLTableMode tableMode;
+    private final RLTablePrecision tablePrecision;
+    private final String tableDir;
+
+    // Transitions
+    private final boolean slippery;
+    private final double slipProb;
+    private final double puddleSlipProb;
+    private final double stayProb;
+
+    // Reward shaping
+    private final boolean potentialShaping;
+    private final double shapingScale;
+
+    // Reference planner
+    private final RLPlanner.Method plannerMethod;
+    private final double plannerTolerance;
+    private final int plannerMaxSweeps;
+
+    // TD-update auditor
+    private final double auditTolerance;
+    private final double auditFlagRate;
+    private final int auditMinUpdates;
+
+    // Server-side policy evaluation
+    private final int policyEvalEpisodes;
+    private final int policyEvalMaxEpisodes;
+    private final int policyEvalMaxSteps;
+    private final int policyEvalStepBudget;
+    private final int policyEvalThreads;
+
+    // Exact policy evaluation
+    private final int exactEvalMaxSweeps;
+    private final int exactEvalMaxMillis;
+    private final int exactEvalCacheStates;
+
+    // Near-duplicate table detection
+    private final int similarityMaxDistance;
+    private final int similarityMinUpdates;
+    private final double similarityMinAgreement;
+    private final double similarityMinCosine;
+    private final int similarityCheckSeconds;
+
+    // Batch grading
+    private final int gradeIntervalSeconds;
+
+    // Logging
+    private final boolean debugLogging;
+
+    private RLConfig(Map<String, String> values) {
+        this.values = Collections.unmodifiableMap(new HashMap<>(values));
+        this.stopMethod = intValue("STOP_METHOD", 0, 0, 3);
+        this.maxSteps = intValue("MAX_STEPS", 10, 1, Integer.MAX_VALUE);
+        this.episodeCount = intValue("EPISODE_COUNT", 2, 0, Integer.MAX_VALUE);
+        this.stopProb = doubleValue("STOP_PROB", 0.1, 0.0, 1.0);
+        this.stopPolicyClass = stringValue("STOP_POLICY_CLASS", null);
+        if (stopMethod == 3 && stopPolicyClass == null) {
+            throw new IllegalArgumentException("STOP_METHOD=3 needs STOP_POLICY_CLASS.");
+        }
+        this.successRewardThreshold = doubleValue("SUCCESS_REWARD_THRESHOLD", 1.0, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        this.alpha = doubleValue("ALPHA", 0.1, 0.0, 1.0);
+        this.gamma = doubleValue("GAMMA", 0.9, 0.0, 1.0);
+        this.epsilon = doubleValue("EPSILON", 1.0, 0.0, 1.0);
+        this.gridSize = intValue("GRID_SIZE", 5, 1, Integer.MAX_VALUE);
+        this.maxPuddles = intValue("MAX_PUDDLES", 2, 0, Integer.MAX_VALUE);
+        this.puddleSize = intValue("PUDDLE_SIZE", 2, 1, Integer.MAX_VALUE);
+        this.defaultReward = doubleValue("DEFAULT_REWARD", -0.01, -Double.MAX_VALUE, Double.MAX_VALUE);
+        this.puddleReward = doubleValue("PUDDLE_REWARD", -1.0, -Double.MAX_VALUE, Double.MAX_VALUE);
+        this.goalReward = doubleValue("GOAL_REWARD", 10.0, -Double.MAX_VALUE, Double.MAX_VALUE);
+        this.worldMode = stringValue("WORLD_MODE", "AUTO").toUpperCase();
+        if (!worldMode.equals("AUTO") && !worldMode.equals("LARGE") && !worldMode.equals("DENSE")) {
+            throw new IllegalArgumentException("WORLD_MODE must be AUTO, LARGE or DENSE: " + worldMode);
+        }
+        this.largeGridThreshold = intValue("LARGE_GRID_THRESHOLD", 1024, 1, Integer.MAX_VALUE);
+        this.layoutMode = enumValue("LAYOUT_MODE", RLLayoutMode.class, RLLayoutMode.EPISODE);
+        this.layoutPoolSize = intValue("LAYOUT_POOL_SIZE", 64, 1, Integer.MAX_VALUE);
+        this.layoutCacheSize = intValue("LAYOUT_CACHE_SIZE", 256, 1, Integer.MAX_VALUE);
+        this.layoutCacheMaxMb = intValue("LAYOUT_CACHE_MAX_MB", 1024, 1, Integer.MAX_VALUE);
+        this.layoutSeed = longValue("LAYOUT_SEED");
+        this.rootSeed = longValue("ROOT_SEED");
+        this.tableMode = enumValue("TABLE_MODE", RLTableMode.class, null);
+        this.tablePrecision = enumValue("TABLE_PRECISION", RLTablePrecision.class, RLTablePrecision.DOUBLE);
+        this.tableDir = stringValue("TABLE_DIR", "qtables");
+        String transitionMode = stringValue("TRANSITION_MODE", "DETERMINISTIC").toUpperCase();
+        if (!transitionMode.equals("DETERMINISTIC") && !transitionMode.equals("SLIPPERY")) {
+            throw new IllegalArgumentException("TRANSITION_MODE must be DETERMINISTIC or SLIPPERY: " + transitionMode);
+        }
+        this.slippery = transitionMode.equals("SLIPPERY");
+        this.slipProb = doubleValue("SLIP_PROB", 0.2, 0.0, 1.0);
+        this.puddleSlipProb = doubleValue("PUDDLE_SLIP_PROB", slipProb, 0.0, 1.0);
+        this.stayProb = doubleValue("STAY_PROB", 0.0, 0.0, 1.0);
+        String rewardShaping = stringValue("REWARD_SHAPING", "NONE").toUpperCase();
+        if (!rewardShaping.equals("NONE") && !rewardShaping.equals("POTENTIAL")) {
+            throw new IllegalArgumentException("REWARD_SHAPING must be NONE or POTENTIAL: " + rewardShaping);
+        }
+        this.potentialShaping = rewardShaping.equals("POTENTIAL");
+        this.shapingScale = doubleValue("SHAPING_SCALE", 1.0, 0.0, Double.MAX_VALUE);
+        this.plannerMethod = enumValue("PLANNER_METHOD", RLPlanner.Method.class, RLPlanner.Method.GAUSS_SEIDEL);
+        this.plannerTolerance = doubleValue("PLANNER_TOLERANCE", 1e-6, Double.MIN_VALUE, Double.MAX_VALUE);
+        this.plannerMaxSweeps = intValue("PLANNER_MAX_SWEEPS", 10000, 1, Integer.MAX_VALUE);
+        this.auditTolerance = doubleValue("AUDIT_TOLERANCE", 1e-6, 0.0, Double.MAX_VALUE);
+        this.auditFlagRate = doubleValue("AUDIT_FLAG_RATE", 0.2, 0.0, 1.0);
+        this.auditMinUpdates = intValue("AUDIT_MIN_UPDATES", 20, 1, Integer.MAX_VALUE);
+        this.policyEvalMaxEpisodes = intValue("POLICY_EVAL_MAX_EPISODES", 100000, 1, Integer.MAX_VALUE);
+        this.policyEvalEpisodes = intValue("POLICY_EVAL_EPISODES", Math.min(1000, policyEvalMaxEpisodes), 1, policyEvalMaxEpisodes);
+        this.policyEvalMaxSteps = intValue("POLICY_EVAL_MAX_STEPS", 100000, 1, Integer.MAX_VALUE);
+        this.policyEvalStepBudget = intValue("POLICY_EVAL_STEP_BUDGET", 100000000, 1, Integer.MAX_VALUE);
+        this.policyEvalThreads = intValue("POLICY_EVAL_THREADS", 2, 1, 64);
+        this.exactEvalMaxSweeps = intValue("EXACT_EVAL_MAX_SWEEPS", 2000, 1, Integer.MAX_VALUE);
+        this.exactEvalMaxMillis = intValue("EXACT_EVAL_MAX_MILLIS", 2000, 1, Integer.MAX_VALUE);
+        this.exactEvalCacheStates = intValue("EXACT_EVAL_CACHE_STATES", 4000000, 0, Integer.MAX_VALUE);
+        this.similarityMaxDistance = intValue("SIMILARITY_MAX_DISTANCE", 4, 0, RLSimilarityIndex.BANDS - 1);
+        this.similarityMinUpdates = intValue("SIMILARITY_MIN_UPDATES", 100, 0, Integer.MAX_VALUE);
+        this.similarityMinAgreement = doubleValue("SIMILARITY_MIN_AGREEMENT", 0.95, 0.0, 1.0);
+        this.similarityMinCosine = doubleValue("SIMILARITY_MIN_COSINE", 0.99, -1.0, 1.0);
+        this.similarityCheckSeconds = intValue("SIMILARITY_CHECK_SECONDS", 60, 0, Integer.MAX_VALUE);
+        this.gradeIntervalSeconds = intValue("GRADE_INTERVAL_SECONDS", 300, 0, Integer.MAX_VALUE);
+        String logLevel = stringValue("LOG_LEVEL", "INFO").toUpperCase();
+        if (!logLevel.equals("INFO") && !logLevel.equals("DEBUG")) {
+            throw new IllegalArgumentException("Unknown LOG_LEVEL: " + logLevel);
+        }
+        this.debugLogging = logLevel.equals("DEBUG");
+    }
+
+    // Gets the current configuration, loading it on first use
+    public static RLConfig get() {
+        RLConfig config = CURRENT.get();
+        if (config == null) {
+            CURRENT.compareAndSet(null, load());
+            config = CURRENT.get();
+        }
+        return config;
+    }
+
+    // Loads the configuration again and swaps it in, an invalid configuration is logged and the current one is kept
+    public static RLConfig reload() {
+        RLConfig previous = get();
+        try {
+            RLConfig config = load();
+            CURRENT.set(config);
+            System.out.println("RLConfig reloaded.");
+            return config;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Failed to reload configuration, keeping the current one: " + e.getMessage());
+            return previous;
+        }
+    }
+
+    // Reloads the configuration if the .env file was modified, created or removed since it was last read, returns true if it was reloaded
+    public static boolean reloadIfChanged() {
+        get();
+        long modified = new File(envFilePath()).lastModified();
+        if (modified == ENV_FILE_MODIFIED.get()) {
+            return false;
+        }
+        System.out.println("Configuration file changed, reloading.");
+        reload();
+        return true;
+    }
+
+    // Installs a configuration built elsewhere (for example with fromMap) as the current one
+    public static void set(RLConfig config) {
+        if (config == null) {
+            throw new IllegalArgumentException("Configuration cannot be null.");
+        }
+        CURRENT.set(config);
+    }
+
+    // Builds a configuration from the system properties, the environment, the .env file and the defaults
+    public static RLConfig load() {
+        String envFile = envFilePath();
+        ENV_FILE_MODIFIED.set(new File(envFile).lastModified());
+        Map<String, String> values = readEnvFile(envFile);
+        for (Map.Entry<String, String> entry : System.getenv().entrySet()) {
+            if (values.containsKey(entry.getKey()) || KNOWN_KEYS.contains(entry.getKey())) {
+                values.put(entry.getKey(), entry.getValue().trim());
+            }
+        }
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (values.containsKey(key) || KNOWN_KEYS.contains(key)) {
+                values.put(key, System.getProperty(key).trim());
+            }
+        }
+        return fromMap(values);
+    }
+
+    // Path of the .env file, RL_ENV_FILE names another file
+    private static String envFilePath() {
+        return System.getProperty(ENV_FILE_KEY, System.getenv().getOrDefault(ENV_FILE_KEY, ".env"));
+    }
+
+    // Builds a configuration from raw key-value pairs, missing keys take their defaults
+    public static RLConfig fromMap(Map<String, String> values) {
+        return new RLConfig(values);
+    }
+
+    // Loading in .env file
+    private static Map<String, String> readEnvFile(String path) {
+        Map<String, String> env = new HashMap<>();
+        System.out.println("Current Working Directory: " + System.getProperty("user.dir"));
+        try (BufferedReader br = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] parts = line.split("=", 2);
+                if (parts.length == 2) {
+                    env.put(parts[0].trim(), parts[1].trim());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to read .env file: " + e.getMessage());
+        }
+        return env;
+    }
+
+    private String stringValue(String key, String defaultValue) {
+        parsedKeys.add(key);
+        return rawValue(key, defaultValue);
+    }
+
+    private String rawValue(String key, String defaultValue) {
+        String value = values.get(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    private int intValue(String key, int defaultValue, int min, int max) {
+        String value = stringValue(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        int parsed;
+        try {
+            parsed = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be an integer: " + value);
+        }
+        if (parsed < min || parsed > max) {
+            throw new IllegalArgumentException(key + " must be in [" + min + ", " + max + "]: " + parsed);
+        }
+        return parsed;
+    }
+
+    private double doubleValue(String key, double defaultValue, double min, double max) {
+        String value = stringValue(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        double parsed;
+        try {
+            parsed = Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a number: " + value);
+        }
+        if (Double.isNaN(parsed) || parsed < min || parsed > max) {
+            throw new IllegalArgumentException(key + " must be in [" + min + ", " + max + "]: " + value);
+        }
+        return parsed;
+    }
+
+    private Long longValue(String key) {
+        String value = stringValue(key, null);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " must be a 64-bit integer: " + value);
+        }
+    }
+
+    private <E extends Enum<E>> E enumValue(String key, Class<E> type, E defaultValue) {
+        String value = stringValue(key, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown " + key + ": " + value);
+        }
+    }
+
+    // Gets the raw value of a key, or the default if it is not set
+    public String getString(String key, String defaultValue) {
+        return rawValue(key, defaultValue);
+    }
+
+    // Checks if a grid should use the compressed large-world layout
+    // WORLD_MODE=LARGE forces it, WORLD_MODE=DENSE disables it, otherwise grids larger than LARGE_GRID_THRESHOLD are large
+    public boolean isLargeWorld(int gridSize) {
+        if (worldMode.equals("LARGE")) {
+            return true;
+        }
+        if (worldMode.equals("DENSE")) {
+            return false;
+        }
+        return gridSize > largeGridThreshold;
+    }
+
+    // Gets the table mode, large worlds default to SPARSE and the rest to DENSE when TABLE_MODE is not set
+    public RLTableMode getTableMode(boolean largeWorld) {
+        if (tableMode != null) {
+            return tableMode;
+        }
+        return largeWorld ? RLTableMode.SPARSE : RLTableMode.DENSE;
+    }
+
+    public int getStopMethod() {
+        return stopMethod;
+    }
+
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    public int getEpisodeCount() {
+        return episodeCount;
+    }
+
+    public double getStopProb() {
+        return stopProb;
+    }
+
+    // Class name of the custom termination policy (STOP_METHOD=3), or null
+    public String getStopPolicyClass() {
+        return stopPolicyClass;
+    }
+
+    public double getSuccessRewardThreshold() {
+        return successRewardThreshold;
+    }
+
+    public double getAlpha() {
+        return alpha;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public double getEpsilon() {
+        return epsilon;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public int getMaxPuddles() {
+        return maxPuddles;
+    }
+
+    public int getPuddleSize() {
+        return puddleSize;
+    }
+
+    public double getDefaultReward() {
+        return defaultReward;
+    }
+
+    public double getPuddleReward() {
+        return puddleReward;
+    }
+
+    public double getGoalReward() {
+        return goalReward;
+    }
+
+    public RLLayoutMode getLayoutMode() {
+        return layoutMode;
+    }
+
+    public int getLayoutPoolSize() {
+        return layoutPoolSize;
+    }
+
+    // Most layouts and most transition tables kept by the layout cache, each kind is counted separately
+    // EPISODE mode adds a layout per session and episode, so without LAYOUT_CACHE_MAX_MB the worst case is LAYOUT_CACHE_SIZE dense layouts
+    // (about 50 bytes per state) plus as many transition tables (about 370 bytes per state), gigabytes on large dense grids
+    public int getLayoutCacheSize() {
+        return layoutCacheSize;
+    }
+
+    // Most memory the layout cache holds over its layouts and transition tables, in megabytes, the least recently used entries are evicted first
+    public long getLayoutCacheMaxBytes() {
+        return layoutCacheMaxMb * 1024L * 1024L;
+    }
+
+    // Class-wide layout seed, or null to derive it from the root seed
+    public Long getLayoutSeed() {
+        return layoutSeed;
+    }
+
+    // Root seed, or null to draw a fresh one
+    public Long getRootSeed() {
+        return rootSeed;
+    }
+
+    public RLTablePrecision getTablePrecision() {
+        return tablePrecision;
+    }
+
+    public String getTableDir() {
+        return tableDir;
+    }
+
+    public boolean isSlippery() {
+        return slippery;
+    }
+
+    public double getSlipProb() {
+        return slipProb;
+    }
+
+    public double getPuddleSlipProb() {
+        return puddleSlipProb;
+    }
+
+    public double getStayProb() {
+        return stayProb;
+    }
+
+    // REWARD_SHAPING=POTENTIAL adds gamma * potential(s') - potential(s) to every reward (see RLGoalDistanceField)
+    public boolean isPotentialShaping() {
+        return potentialShaping;
+    }
+
+    // Reward per unit of goal distance in the shaping potential
+    public double getShapingScale() {
+        return shapingScale;
+    }
+
+    public RLPlanner.Method getPlannerMethod() {
+        return plannerMethod;
+    }
+
+    // Largest change of a V-value in a sweep at which the planner stops
+    public double getPlannerTolerance() {
+        return plannerTolerance;
+    }
+
+    public int getPlannerMaxSweeps() {
+        return plannerMaxSweeps;
+    }
+
+    // Largest difference between a client's Q-update and the recomputed Q-learning update that still counts as a match
+    public double getAuditTolerance() {
+        return auditTolerance;
+    }
+
+    // Share of mismatched Q-updates above which a user is flagged
+    public double getAuditFlagRate() {
+        return auditFlagRate;
+    }
+
+    // Audited Q-updates a user needs before they can be flagged
+    public int getAuditMinUpdates() {
+        return auditMinUpdates;
+    }
+
+    // Episodes rolled out for a GAME_POLICY_EVALUATE request that does not ask for a number
+    public int getPolicyEvalEpisodes() {
+        return policyEvalEpisodes;
+    }
+
+    // Most episodes a single GAME_POLICY_EVALUATE request may ask for
+    public int getPolicyEvalMaxEpisodes() {
+        return policyEvalMaxEpisodes;
+    }
+
+    // Largest step limit per episode a single GAME_POLICY_EVALUATE request may ask for
+    public int getPolicyEvalMaxSteps() {
+        return policyEvalMaxSteps;
+    }
+
+    // Most steps (episodes rolled out times the step limit) a single GAME_POLICY_EVALUATE request may cost
+    public int getPolicyEvalStepBudget() {
+        return policyEvalStepBudget;
+    }
+
+    // Worker threads that run GAME_POLICY_EVALUATE requests off the request threads
+    public int getPolicyEvalThreads() {
+        return policyEvalThreads;
+    }
+
+    // Most Gauss-Seidel sweeps of one exact policy evaluation
+    public int getExactEvalMaxSweeps() {
+        return exactEvalMaxSweeps;
+    }
+
+    // Most milliseconds of sweeping for one exact policy evaluation
+    public int getExactEvalMaxMillis() {
+        return exactEvalMaxMillis;
+    }
+
+    // Most V-values (states over all entries) the cache of exact policy values holds, 0 disables the cache
+    public int getExactEvalCacheStates() {
+        return exactEvalCacheStates;
+    }
+
+    // Largest Hamming distance between two table signatures that makes the tables a near-duplicate candidate
+    public int getSimilarityMaxDistance() {
+        return similarityMaxDistance;
+    }
+
+    // Q-updates a user's tables need before they are compared with others
+    public int getSimilarityMinUpdates() {
+        return similarityMinUpdates;
+    }
+
+    // Share of states with the same greedy action that flags a candidate pair
+    public double getSimilarityMinAgreement() {
+        return similarityMinAgreement;
+    }
+
+    // Cosine between the Q-tables that flags a candidate pair
+    public double getSimilarityMinCosine() {
+        return similarityMinCosine;
+    }
+
+    // Seconds between the extension's near-duplicate table checks, 0 disables them
+    public int getSimilarityCheckSeconds() {
+        return similarityCheckSeconds;
+    }
+
+    // Seconds between the extension's grading of every active user's tables, 0 disables it
+    public int getGradeIntervalSeconds() {
+        return gradeIntervalSeconds;
+    }
+
+    // LOG_LEVEL=DEBUG, logs every move, Q-update and V-update and not only the per-episode messages
+    public boolean isDebugLogging() {
+        return debugLogging;
+    }
+}
@@ -0,0 +1,104 @@
+package ygraph.ai.smartfox.rl;
+
+// This class lets tabular clients play the continuous puddle world through the same integer state and action contract as RLWorld
+// The unit square is cut into gridSize x gridSize cells and a position maps to stateId = row * gridSize + col with row = floor(y * gridSize) and col = floor(x * gridSize)
+// The adapter keeps the true continuous position of one agent, moves it with RLContinuousWorld and reports the discretized state, the reward and whether the goal was reached
+// Valid actions follow the edge masks of the grid, so the actions a tabular client sees are the same as in RLWorld
+// It is a library class for offline experiments and headless trainers, the request handler and RLGameManager still serve every session from an RLWorld
+public class RLContinuousGridAdapter {
+    private final RLContinuousWorld world;
+    private final int gridSize;
+
+    // Single agent batch of size 1, reused for every step
+    private final double[] xs = new double[1];
+    private final double[] ys = new double[1];
+    private final int[] actions = new int[1];
+    private final double[] rewards = new double[1];
+    private final boolean[] dones = new boolean[1];
+
+    private int currentStateId;
+    private double lastReward;
+    private boolean isTerminal;
+
+    public RLContinuousGridAdapter(RLContinuousWorld world, int gridSize) {
+        if (gridSize <= 0) {
+            throw new IllegalArgumentException("Grid size must be positive: " + gridSize);
+        }
+        this.world = world;
+        this.gridSize = gridSize;
+        reset();
+    }
+
+    // Maps a position to the grid state ID of its cell
+    public int toStateId(double x, double y) {
+        int row = Math.min((int) (y * gridSize), gridSize - 1);
+        int col = Math.min((int) (x * gridSize), gridSize - 1);
+        return Math.max(row, 0) * gridSize + Math.max(col, 0);
+    }
+
+    // Maps the first n positions to grid state IDs
+    public int[] toStateIds(int n, double[] xs, double[] ys, int[] stateIdsOut) {
+        for (int i = 0; i < n; i++) {
+            stateIdsOut[i] = toStateId(xs[i], ys[i]);
+        }
+        return stateIdsOut;
+    }
+
+    // Moves the agent to a random start position outside the goal
+    public void reset() {
+        world.resetAgent(0, xs, ys);
+        this.currentStateId = toStateId(xs[0], ys[0]);
+        this.isTerminal = false;
+    }
+
+    // Moves the agent with an action (0=UP, 1=DOWN, 2=LEFT, 3=RIGHT) and returns the discretized next state
+    // Reaching the goal returns the goal state (the last grid state) and restarts the agent at a new random position
+    public int moveAgentWithAction(int action) {
+        if (action < 0 || action >= RLLayout.ACTION_COUNT) {
+            throw new IllegalArgumentException("Invalid action index: " + action);
+        }
+        actions[0] = action;
+        world.step(1, xs, ys, actions, rewards, dones);
+        this.lastReward = rewards[0];
+        this.isTerminal = dones[0];
+        this.currentStateId = isTerminal ? gridSize * gridSize - 1 : toStateId(xs[0], ys[0]);
+        return currentStateId;
+    }
+
+    // Gets the valid action indices from a state using the grid edge masks, the returned array is shared and must not be modified
+    public int[] getAvailableActionIndices(int stateId) {
+        if (stateId < 0 || stateId >= gridSize * gridSize) {
+            return RLLayout.actionsForMask(0);
+        }
+        return RLLayout.actionsForMask(RLLayout.edgeMask(stateId / gridSize, stateId % gridSize, gridSize));
+    }
+
+    public int getCurrentStateId() {
+        return currentStateId;
+    }
+
+    public double getLastReward() {
+        return lastReward;
+    }
+
+    public boolean isTerminal() {
+        return isTerminal;
+    }
+
+    // Continuous position of the agent
+    public double getX() {
+        return xs[0];
+    }
+
+    public double getY() {
+        return ys[0];
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public RLContinuousWorld getWorld() {
+        return world;
+    }
+}
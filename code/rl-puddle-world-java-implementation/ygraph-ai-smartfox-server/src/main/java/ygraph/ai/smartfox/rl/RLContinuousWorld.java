@@ -0,0 +1,225 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.SplittableRandom;
+
+// This class is the continuous puddle world (Boyan & Moore, Sutton) next to the discretized RLWorld
+// The state is a point (x, y) in [0, 1]^2, with x growing to the right and y growing downward so that it lines up with the grid rows and columns of RLWorld:
+// the agent starts at a uniformly random point of the square outside the goal, and the goal is the corner x + y >= goalThreshold (bottom right, the last state of the grid)
+// Actions use the grid indices (0=UP, 1=DOWN, 2=LEFT, 3=RIGHT) and move the agent stepSize in that direction plus Gaussian noise on each axis, clipped to the unit square
+// Puddles are capsules: a segment plus a radius, a point inside a capsule gets puddlePenalty * (radius - distance to the segment) on top of the step reward
+// Capsules are stored struct-of-arrays with their segment direction and inverse squared length precomputed, and many agents are stepped per call over primitive double arrays
+// Noise comes from an unsynchronized SplittableRandom with the polar method, which yields the x and y noise of a step from one accepted pair of draws
+// A world is meant to be stepped by one thread at a time
+public class RLContinuousWorld {
+    // Classic settings with the puddles mirrored to the y-down convention
+    public static final double CLASSIC_STEP_SIZE = 0.05;
+    public static final double CLASSIC_NOISE_STD = 0.01;
+    public static final double CLASSIC_PUDDLE_RADIUS = 0.1;
+    public static final double CLASSIC_PUDDLE_PENALTY = 400.0;
+    public static final double CLASSIC_STEP_REWARD = -1.0;
+    public static final double CLASSIC_GOAL_THRESHOLD = 1.9;
+
+    private final double stepSize;
+    private final double noiseStd;
+    private final double puddleRadius;
+    private final double puddlePenalty;
+    private final double stepReward;
+    private final double goalReward;
+    private final double goalThreshold;
+
+    // Capsule segments: start (ax, ay), direction (dx, dy) and 1 / |d|^2 (0 for a point capsule)
+    private final int capsuleCount;
+    private final double[] ax;
+    private final double[] ay;
+    private final double[] dx;
+    private final double[] dy;
+    private final double[] invLengthSquared;
+
+    private final SplittableRandom random;
+
+    // Creates a world with capsules given as {x1, y1, x2, y2} segments
+    public RLContinuousWorld(double[][] segments, double puddleRadius, double puddlePenalty, double stepSize, double noiseStd,
+                             double stepReward, double goalReward, double goalThreshold, long seed) {
+        if (stepSize <= 0 || noiseStd < 0 || puddleRadius < 0) {
+            throw new IllegalArgumentException("Invalid continuous world settings: stepSize=" + stepSize + ", noiseStd=" + noiseStd + ", puddleRadius=" + puddleRadius);
+        }
+        this.stepSize = stepSize;
+        this.noiseStd = noiseStd;
+        this.puddleRadius = puddleRadius;
+        this.puddlePenalty = puddlePenalty;
+        this.stepReward = stepReward;
+        this.goalReward = goalReward;
+        this.goalThreshold = goalThreshold;
+        this.random = new SplittableRandom(seed);
+        this.capsuleCount = segments.length;
+        this.ax = new double[capsuleCount];
+        this.ay = new double[capsuleCount];
+        this.dx = new double[capsuleCount];
+        this.dy = new double[capsuleCount];
+        this.invLengthSquared = new double[capsuleCount];
+        for (int i = 0; i < capsuleCount; i++) {
+            double[] segment = segments[i];
+            if (segment == null || segment.length != 4) {
+                throw new IllegalArgumentException("Each puddle segment must be {x1, y1, x2, y2}.");
+            }
+            ax[i] = segment[0];
+            ay[i] = segment[1];
+            dx[i] = segment[2] - segment[0];
+            dy[i] = segment[3] - segment[1];
+            double lengthSquared = dx[i] * dx[i] + dy[i] * dy[i];
+            invLengthSquared[i] = lengthSquared > 0 ? 1.0 / lengthSquared : 0.0;
+        }
+    }
+
+    // Creates the classic two-puddle world
+    public static RLContinuousWorld classic(long seed) {
+        double[][] segments = {
+            {0.10, 0.25, 0.45, 0.25},
+            {0.45, 0.20, 0.45, 0.60}
+        };
+        return new RLContinuousWorld(segments, CLASSIC_PUDDLE_RADIUS, CLASSIC_PUDDLE_PENALTY, CLASSIC_STEP_SIZE, CLASSIC_NOISE_STD,
+                CLASSIC_STEP_REWARD, 0.0, CLASSIC_GOAL_THRESHOLD, seed);
+    }
+
+    // Total puddle depth at a point: sum over capsules of max(0, radius - distance to the segment)
+    public double puddleDepth(double x, double y) {
+        double depth = 0.0;
+        for (int i = 0; i < capsuleCount; i++) {
+            double px = x - ax[i];
+            double py = y - ay[i];
+            double t = (px * dx[i] + py * dy[i]) * invLengthSquared[i];
+            t = t < 0 ? 0 : (t > 1 ? 1 : t);
+            double ex = px - t * dx[i];
+            double ey = py - t * dy[i];
+            double distanceSquared = ex * ex + ey * ey;
+            if (distanceSquared < puddleRadius * puddleRadius) {
+                depth += puddleRadius - Math.sqrt(distanceSquared);
+            }
+        }
+        return depth;
+    }
+
+    // Reward for arriving at a point
+    public double reward(double x, double y) {
+        if (isGoal(x, y)) {
+            return goalReward;
+        }
+        return stepReward - puddlePenalty * puddleDepth(x, y);
+    }
+
+    // Checks if a point lies in the goal corner
+    public boolean isGoal(double x, double y) {
+        return x + y >= goalThreshold;
+    }
+
+    // Steps n agents: (xs[i], ys[i]) moves with actions[i], rewards[i] and dones[i] receive the transition
+    // Positions are updated in place, an agent that reaches the goal is moved to a new random start position in the same call
+    // Every action is validated before any agent moves, so a rejected call changes neither the positions nor the random stream
+    public void step(int n, double[] xs, double[] ys, int[] actions, double[] rewards, boolean[] dones) {
+        if (xs.length < n || ys.length < n || actions.length < n || rewards.length < n || dones.length < n) {
+            throw new IllegalArgumentException("Batch arrays must have at least " + n + " entries.");
+        }
+        for (int i = 0; i < n; i++) {
+            if (actions[i] < 0 || actions[i] >= RLLayout.ACTION_COUNT) {
+                throw new IllegalArgumentException("Invalid action index " + actions[i] + " for agent " + i);
+            }
+        }
+        final double stepSize = this.stepSize;
+        final double noiseStd = this.noiseStd;
+        for (int i = 0; i < n; i++) {
+            double x = xs[i];
+            double y = ys[i];
+            switch (actions[i]) {
+                case RLLayout.ACTION_UP:
+                    y -= stepSize;
+                    break;
+                case RLLayout.ACTION_DOWN:
+                    y += stepSize;
+                    break;
+                case RLLayout.ACTION_LEFT:
+                    x -= stepSize;
+                    break;
+                default: // RLLayout.ACTION_RIGHT, the actions were validated above
+                    x += stepSize;
+                    break;
+            }
+            if (noiseStd > 0) {
+                // Marsaglia polar method: both coordinates of an accepted point in the unit disc give independent normals
+                double u;
+                double v;
+                double r;
+                do {
+                    u = 2 * random.nextDouble() - 1;
+                    v = 2 * random.nextDouble() - 1;
+                    r = u * u + v * v;
+                } while (r >= 1 || r == 0);
+                double factor = noiseStd * Math.sqrt(-2 * Math.log(r) / r);
+                x += u * factor;
+                y += v * factor;
+            }
+            x = x < 0 ? 0 : (x > 1 ? 1 : x);
+            y = y < 0 ? 0 : (y > 1 ? 1 : y);
+
+            boolean done = isGoal(x, y);
+            rewards[i] = done ? goalReward : stepReward - puddlePenalty * puddleDepth(x, y);
+            dones[i] = done;
+            if (done) {
+                resetAgent(i, xs, ys);
+            } else {
+                xs[i] = x;
+                ys[i] = y;
+            }
+        }
+    }
+
+    // Puts agent i at a uniformly random start position outside the goal corner
+    public void resetAgent(int i, double[] xs, double[] ys) {
+        double x;
+        double y;
+        do {
+            x = random.nextDouble();
+            y = random.nextDouble();
+        } while (isGoal(x, y));
+        xs[i] = x;
+        ys[i] = y;
+    }
+
+    // Puts the first n agents at random start positions
+    public void reset(int n, double[] xs, double[] ys) {
+        for (int i = 0; i < n; i++) {
+            resetAgent(i, xs, ys);
+        }
+    }
+
+    public int getCapsuleCount() {
+        return capsuleCount;
+    }
+
+    public double getStepSize() {
+        return stepSize;
+    }
+
+    public double getNoiseStd() {
+        return noiseStd;
+    }
+
+    public double getPuddleRadius() {
+        return puddleRadius;
+    }
+
+    public double getPuddlePenalty() {
+        return puddlePenalty;
+    }
+
+    public double getStepReward() {
+        return stepReward;
+    }
+
+    public double getGoalReward() {
+        return goalReward;
+    }
+
+    public double getGoalThreshold() {
+        return goalThreshold;
+    }
+}
@@ -0,0 +1,276 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+// This class computes the exact value V^pi of every state under a fixed policy by solving (I - gamma * P_pi) V = r_pi on the policy's RLPolicyMatrix,
+// so a policy's expected discounted return is known without the sampling noise of rollouts (see RLPolicyEvaluator)
+// A greedy policy on deterministic moves has at most one entry per row: each state leads to one next state, so V^pi is solved directly
+// by walking every state's path to the goal once and filling the values in backwards, loops that never reach the goal are summed as geometric series
+// Other policies are solved with Gauss-Seidel sweeps over the CSR rows, the self-transition of a row is moved to the left-hand side:
+// V(s) = (r_pi(s) + gamma * sum_{j != s} P(s, j) V(j)) / (1 - gamma * P(s, s))
+// Like RLPlanner, values start at DEFAULT_REWARD / (1 - gamma), sweeps alternate between forward and backward state order,
+// and grids with at least RLPlanner.PARALLEL_THRESHOLD states are swept in parallel, first the even blocks of rows and then the odd ones,
+// which is safe because a move only reaches neighbouring rows
+// Sweeps stop when the largest change of a V-value falls below the tolerance, after the sweep limit or once the time limit has passed,
+// solve reports whether the values converged, a policy that nearly never terminates with gamma close to 1 runs into the limits instead of holding a thread for minutes
+public final class RLExactPolicyEvaluator {
+    private static final int UNKNOWN = 0;
+    private static final int ON_PATH = 1;
+    private static final int DONE = 2;
+
+    private final double tolerance;
+    private final int maxSweeps;
+    private final long maxNanos;
+
+    public RLExactPolicyEvaluator(double tolerance, int maxSweeps) {
+        this(tolerance, maxSweeps, Long.MAX_VALUE);
+    }
+
+    // maxMillis limits the time spent sweeping, Long.MAX_VALUE for no limit
+    public RLExactPolicyEvaluator(double tolerance, int maxSweeps, long maxMillis) {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Evaluation tolerance must be positive: " + tolerance);
+        }
+        if (maxSweeps <= 0) {
+            throw new IllegalArgumentException("Evaluation sweep limit must be positive: " + maxSweeps);
+        }
+        if (maxMillis <= 0) {
+            throw new IllegalArgumentException("Evaluation time limit must be positive: " + maxMillis);
+        }
+        this.tolerance = tolerance;
+        this.maxSweeps = maxSweeps;
+        this.maxNanos = maxMillis >= Long.MAX_VALUE / 1_000_000 ? Long.MAX_VALUE : maxMillis * 1_000_000;
+    }
+
+    // Creates an evaluator with the PLANNER_TOLERANCE, EXACT_EVAL_MAX_SWEEPS and EXACT_EVAL_MAX_MILLIS settings
+    public static RLExactPolicyEvaluator fromConfig(RLConfig config) {
+        return new RLExactPolicyEvaluator(config.getPlannerTolerance(), config.getExactEvalMaxSweeps(), config.getExactEvalMaxMillis());
+    }
+
+    // Evaluates a greedy policy on a world's layout, transitions and discount
+    public double[] evaluate(RLWorld world, int[] policy) {
+        return evaluate(RLPolicyMatrix.forPolicy(world.getLayout(), world.getTransitions(), policy), world.getGamma());
+    }
+
+    // Solves V^pi of a compiled policy for a discount
+    public double[] evaluate(RLPolicyMatrix matrix, double gamma) {
+        return solve(matrix, gamma).getValues();
+    }
+
+    // Solves V^pi of a compiled policy for a discount and reports whether the values converged within the limits
+    public Result solve(RLPolicyMatrix matrix, double gamma) {
+        if (gamma < 0 || gamma > 1 || Double.isNaN(gamma)) {
+            throw new IllegalArgumentException("Discount must be in [0, 1]: " + gamma);
+        }
+        long start = System.nanoTime();
+        Result result;
+        String method;
+        if (matrix.isDeterministic()) {
+            result = new Result(solvePaths(matrix, gamma), true, 0, 0.0, System.nanoTime() - start);
+            method = "path walk";
+        } else {
+            Sweeps sweeps = new Sweeps(matrix, gamma);
+            sweeps.run(start);
+            result = new Result(sweeps.values, sweeps.residual < tolerance, sweeps.sweeps, sweeps.residual, System.nanoTime() - start);
+            method = sweeps.sweeps + " sweeps, residual " + sweeps.residual + (result.isConverged() ? "" : ", stopped at the limits");
+        }
+        RLTransitionModel layout = matrix.getLayout();
+        System.out.println("RLExactPolicyEvaluator evaluated a policy on a " + layout.getGridSize() + "x" + layout.getGridSize() + " layout ("
+                + method + ") in " + result.getElapsedNanos() / 1_000_000.0 + " ms, V(0) = " + result.getValues()[0]);
+        return result;
+    }
+
+    // Direct solve of a chain with at most one next state per state
+    private static double[] solvePaths(RLPolicyMatrix matrix, double gamma) {
+        int stateCount = matrix.getStateCount();
+        double[] values = new double[stateCount];
+        byte[] status = new byte[stateCount];
+        int[] path = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            if (matrix.rowStart(s) == matrix.rowEnd(s)) {
+                values[s] = matrix.reward(s);
+                status[s] = DONE;
+            }
+        }
+        for (int s = 0; s < stateCount; s++) {
+            int length = 0;
+            int current = s;
+            while (status[current] == UNKNOWN) {
+                status[current] = ON_PATH;
+                path[length++] = current;
+                current = matrix.column(matrix.rowStart(current));
+            }
+            if (status[current] == ON_PATH) {
+                // The path closed a loop: sum the loop's discounted rewards once around and solve V(first) = sum + gamma^loop * V(first)
+                int first = length - 1;
+                while (path[first] != current) {
+                    first--;
+                }
+                double sum = 0.0;
+                double discount = 1.0;
+                for (int i = first; i < length; i++) {
+                    sum += discount * matrix.reward(path[i]);
+                    discount *= gamma;
+                }
+                values[current] = discount < 1 ? sum / (1 - discount) : divergent(sum);
+                status[current] = DONE;
+                length = length - 1;
+                while (length > first) {
+                    int state = path[length--];
+                    values[state] = matrix.reward(state) + gamma * values[matrix.column(matrix.rowStart(state))];
+                    status[state] = DONE;
+                }
+                length = first;
+            }
+            while (length > 0) {
+                int state = path[--length];
+                values[state] = matrix.reward(state) + gamma * values[matrix.column(matrix.rowStart(state))];
+                status[state] = DONE;
+            }
+        }
+        return values;
+    }
+
+    // Value of repeating a loop forever without discounting
+    private static double divergent(double loopSum) {
+        return loopSum == 0 ? 0.0 : loopSum * Double.POSITIVE_INFINITY;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public int getMaxSweeps() {
+        return maxSweeps;
+    }
+
+    // V^pi of one solve with the sweeps it took, values that did not converge are the last sweep's estimate
+    public static final class Result {
+        private final double[] values;
+        private final boolean converged;
+        private final int sweeps;
+        private final double residual;
+        private final long elapsedNanos;
+
+        Result(double[] values, boolean converged, int sweeps, double residual, long elapsedNanos) {
+            this.values = values;
+            this.converged = converged;
+            this.sweeps = sweeps;
+            this.residual = residual;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double[] getValues() {
+            return values;
+        }
+
+        // Value of the start state 0, the expected discounted return of an episode
+        public double getStartValue() {
+            return values[0];
+        }
+
+        public boolean isConverged() {
+            return converged;
+        }
+
+        // Gauss-Seidel sweeps, 0 for the direct path walk
+        public int getSweeps() {
+            return sweeps;
+        }
+
+        // Largest change of a V-value in the last sweep
+        public double getResidual() {
+            return residual;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    // State of one iterative solve: the matrix, the values and the row blocks used for parallel sweeps
+    private final class Sweeps {
+        private final RLPolicyMatrix matrix;
+        private final double gamma;
+        private final int gridSize;
+        private final int stateCount;
+        private final boolean parallel;
+        private final int blockRows;
+        private final int blockCount;
+        private final double[] values;
+        private int sweeps;
+        private double residual = Double.POSITIVE_INFINITY;
+
+        Sweeps(RLPolicyMatrix matrix, double gamma) {
+            RLTransitionModel layout = matrix.getLayout();
+            int parallelism = ForkJoinPool.commonPool().getParallelism();
+            this.matrix = matrix;
+            this.gamma = gamma;
+            this.gridSize = layout.getGridSize();
+            this.stateCount = matrix.getStateCount();
+            this.parallel = stateCount >= RLPlanner.PARALLEL_THRESHOLD && parallelism > 1;
+            this.blockRows = Math.max(1, gridSize / (parallelism * 8));
+            this.blockCount = (gridSize + blockRows - 1) / blockRows;
+            this.values = new double[stateCount];
+            if (gamma < 1) {
+                Arrays.fill(values, layout.getDefaultReward() / (1 - gamma));
+            }
+            for (int s = 0; s < stateCount; s++) {
+                if (layout.isTerminal(s)) {
+                    values[s] = 0.0;
+                }
+            }
+        }
+
+        void run(long start) {
+            while (sweeps < maxSweeps && residual >= tolerance && System.nanoTime() - start < maxNanos) {
+                boolean backward = (sweeps & 1) == 1;
+                if (parallel) {
+                    residual = Math.max(sweepBlocks(0, backward), sweepBlocks(1, backward));
+                } else {
+                    residual = sweepStates(0, stateCount, backward);
+                }
+                sweeps++;
+            }
+        }
+
+        // Sweeps the row blocks first, first + 2, ... in parallel
+        private double sweepBlocks(int first, boolean backward) {
+            return IntStream.range(0, (blockCount - first + 1) / 2).parallel()
+                    .mapToDouble(i -> {
+                        int fromRow = (first + 2 * i) * blockRows;
+                        int toRow = Math.min(fromRow + blockRows, gridSize);
+                        return sweepStates(fromRow * gridSize, toRow * gridSize, backward);
+                    })
+                    .max().orElse(0.0);
+        }
+
+        // Updates the states [from, to) in place and returns the largest change
+        private double sweepStates(int from, int to, boolean backward) {
+            double result = 0.0;
+            for (int i = from; i < to; i++) {
+                int s = backward ? from + to - 1 - i : i;
+                double sum = matrix.reward(s);
+                double stay = 0.0;
+                for (int e = matrix.rowStart(s); e < matrix.rowEnd(s); e++) {
+                    int next = matrix.column(e);
+                    if (next == s) {
+                        stay += matrix.probability(e);
+                    } else {
+                        sum += gamma * matrix.probability(e) * values[next];
+                    }
+                }
+                double keep = 1 - gamma * stay;
+                double value = keep > 0 ? sum / keep : divergent(sum);
+                double change = value == values[s] ? 0.0 : Math.abs(value - values[s]);
+                values[s] = value;
+                if (!(change <= result)) {
+                    result = Double.isNaN(change) ? Double.POSITIVE_INFINITY : change;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -30,6 +30,15 @@ public class RLGameExtension extends SFSExtension {
         currentUsers = new HashSet<>();
         scheduler = Executors.newSingleThreadScheduledExecutor();
         scheduler.scheduleAtFixedRate(this::checkUserList, 0, 5, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(this::checkConfig, 5, 5, TimeUnit.SECONDS);
+        int similaritySeconds = RLConfig.get().getSimilarityCheckSeconds();
+        if (similaritySeconds > 0) {
+            scheduler.scheduleWithFixedDelay(this::checkSimilarTables, similaritySeconds, similaritySeconds, TimeUnit.SECONDS);
+        }
+        int gradeSeconds = RLConfig.get().getGradeIntervalSeconds();
+        if (gradeSeconds > 0) {
+            scheduler.scheduleWithFixedDelay(this::gradeUsers, gradeSeconds, gradeSeconds, TimeUnit.SECONDS);
+        }
     }
 
     // Extension killer post game finish
@@ -37,6 +46,7 @@ public class RLGameExtension extends SFSExtension {
     public void destroy() {
         System.out.println("RLGameExtension destroyed for COSC 322.");
         gameManager.clearAllUsers();
+        gameManager.shutdown();
         if (scheduler != null && !scheduler.isShutdown()) {
             scheduler.shutdown();
             try {
@@ -51,6 +61,33 @@ public class RLGameExtension extends SFSExtension {
         super.destroy();
     }
 
+    // Reloads the configuration when the .env file changed, new worlds and users pick up the new values
+    private void checkConfig() {
+        try {
+            RLConfig.reloadIfChanged();
+        } catch (Exception e) {
+            System.out.println("Error during configuration check: " + e.getMessage());
+        }
+    }
+
+    // Looks for users with near-duplicate Q-tables, RLSimilarityIndex logs the flagged pairs
+    private void checkSimilarTables() {
+        try {
+            gameManager.findSimilarUsers();
+        } catch (Exception e) {
+            System.out.println("Error during similarity check: " + e.getMessage());
+        }
+    }
+
+    // Grades the tables of every active user, RLBatchGrader logs each new grade and reuses the grades of users whose tables did not change
+    private void gradeUsers() {
+        try {
+            gameManager.gradeAllUsers();
+        } catch (Exception e) {
+            System.out.println("Error during grading: " + e.getMessage());
+        }
+    }
+
     // Check and update RLGameManager
     private void checkUserList() {
         try {
@@ -2,62 +2,62 @@ package ygraph.ai.smartfox.rl;
 
 import com.smartfoxserver.v2.entities.User;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 // This class takes RLGameUser instances and binds them with RLWorld intances allowing for concurrent usage of the application
 // Key - username of RLGameUser
 // Value - RLGameUser object, which has an RLWorld linked to it in RLGameUser.java
 public class RLGameManager {
-    private static final HashMap<String, String> ENV = loadEnv();
+    // Configuration the manager was created with, worlds created for new users read the current one
+    private final RLConfig config = RLConfig.get();
     // Thread-safe map to store username and their corresponding RLGameUser
     private final ConcurrentMap<String, RLGameUser> userMap = new ConcurrentHashMap<>();
     private double alpha;
     private double gamma;
     private double epsilon;
 
+    // Compiled puddle layouts shared by the worlds of this manager, the layout mode, and the seed every layout seed is derived from
+    private final RLLayoutCache layoutCache = new RLLayoutCache(config.getLayoutCacheSize(), config.getLayoutCacheMaxBytes());
+    private final RLLayoutMode layoutMode = config.getLayoutMode();
+    private final long rootSeed = config.getRootSeed() != null ? config.getRootSeed() : RLSeeds.rootSeed();
+    private final long classLayoutSeed = config.getLayoutSeed() != null ? config.getLayoutSeed() : RLSeeds.purposeSeed(rootSeed, RLSeeds.Purpose.LAYOUT);
+
+    // Grades the mirrored Q-tables of the active users, caching each grade until the user's tables change
+    private final RLBatchGrader grader = new RLBatchGrader();
+
+    // Finds active users with near-duplicate Q-tables from the sketches kept by their RLGameUser
+    private final RLSimilarityIndex similarityIndex = RLSimilarityIndex.fromConfig(config);
+
+    // Runs GAME_POLICY_EVALUATE requests off the request threads, with at most one pending evaluation per user
+    private final ExecutorService evaluationExecutor = newEvaluationExecutor(config.getPolicyEvalThreads());
+    private final Set<String> evaluatingUsers = ConcurrentHashMap.newKeySet();
+
+    // Exact policy values shared by the evaluations of every user, keyed by policy and layout
+    private final RLPolicyValueCache policyValueCache = new RLPolicyValueCache(config.getExactEvalCacheStates());
+
     // RLGameManager constructor that initializes a concurrent hashmap to store the user and their corresponding world instances distinctly from other users' instances
     public RLGameManager() {
-        this.alpha = Double.parseDouble(ENV.getOrDefault("ALPHA", "0.1"));
-        this.gamma = Double.parseDouble(ENV.getOrDefault("GAMMA", "0.9"));
-        this.epsilon = Double.parseDouble(ENV.getOrDefault("EPSILON", "1"));
+        this.alpha = config.getAlpha();
+        this.gamma = config.getGamma();
+        this.epsilon = config.getEpsilon();
     }
 
     public RLGameManager(double alpha, double gamma, double epsilon) {
-        this.alpha = Double.parseDouble(ENV.getOrDefault("ALPHA", "0.1"));
-        this.gamma = Double.parseDouble(ENV.getOrDefault("GAMMA", "0.9"));
-        this.epsilon = Double.parseDouble(ENV.getOrDefault("EPSILON", "1"));
+        this.alpha = config.getAlpha();
+        this.gamma = config.getGamma();
+        this.epsilon = config.getEpsilon();
         System.out.println("RLGameManager instantiated. Instance ID: " + System.identityHashCode(this));
     }
 
-    // Loading in .env file
-    private static HashMap<String, String> loadEnv() {
-        HashMap<String, String> env = new HashMap<>();
-        String workingDir = System.getProperty("user.dir");
-        System.out.println("Current Working Directory: " + workingDir);
-        try (BufferedReader br = new BufferedReader(new FileReader(".env"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) 
-                    continue;
-                String[] parts = line.split("=", 2);
-                if (parts.length == 2) {
-                    env.put(parts[0].trim(), parts[1].trim());
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to read .env file: " + e.getMessage());
-        }
-        return env;
-    }
-
     // Adds a user to an RL puddle world game by creating an RL world and binding the RLGameUser to it
     // Then inserting the pair into the hashmap
     public synchronized boolean addUser(User user) {
@@ -69,7 +69,8 @@ public class RLGameManager {
             return false;
         }
     
-        RLWorld world = new RLWorld(user, alpha, gamma, epsilon);
+        long sessionSeed = RLSeeds.sessionSeed(rootSeed, userName);
+        RLWorld world = new RLWorld(layoutCache, layoutMode, layoutSeedFor(sessionSeed), userName, sessionSeed);
         RLGameUser rlUser = new RLGameUser(user, world);
         RLGameUser existing = userMap.putIfAbsent(userName, rlUser);
     
@@ -85,9 +86,28 @@ public class RLGameManager {
         }
     
         System.out.println("Current number of active users: " + userMap.size());
+        System.out.println("Table memory for " + userName + ": " + world.getTableMemoryReport() + ". All users: " + getTableMemoryUsageBytes() + " bytes.");
         return true;
     }    
 
+    // Gets the layout seed of a session: CLASS and EPISODE modes use the class seed for everyone (EPISODE derives its pool from it), SESSION mode mixes in the session seed
+    private long layoutSeedFor(long sessionSeed) {
+        if (layoutMode == RLLayoutMode.SESSION) {
+            return RLSeeds.purposeSeed(classLayoutSeed ^ sessionSeed, RLSeeds.Purpose.LAYOUT);
+        }
+        return classLayoutSeed;
+    }
+
+    // Root seed all session, episode and layout seeds are derived from
+    public long getRootSeed() {
+        return rootSeed;
+    }
+
+    // Gets the layout cache shared by the worlds of this manager
+    public RLLayoutCache getLayoutCache() {
+        return layoutCache;
+    }
+
     // Getting a user by their username in the room
     public RLGameUser getUserByUsername(String userName) {
         if (userName == null) return null;
@@ -153,4 +173,77 @@ public class RLGameManager {
     public int getActiveUserCount() {
         return userMap.size();
     }
+
+    // Grades every active user's mirrored Q-table against the reference solution of their layout, in parallel
+    // RLGameExtension runs it every GRADE_INTERVAL_SECONDS
+    public Map<String, RLGrade> gradeAllUsers() {
+        return grader.gradeAll(userMap);
+    }
+
+    // Gets the grader used by gradeAllUsers
+    public RLBatchGrader getGrader() {
+        return grader;
+    }
+
+    // Runs a user's policy evaluation on the evaluation threads, returns false if the user already has one pending or the manager is shut down
+    public boolean submitEvaluation(String userName, Runnable evaluation) {
+        String key = userName.trim().toLowerCase();
+        if (!evaluatingUsers.add(key)) {
+            return false;
+        }
+        try {
+            evaluationExecutor.execute(() -> {
+                try {
+                    evaluation.run();
+                } catch (RuntimeException e) {
+                    System.err.println("Policy evaluation failed for user " + key + ": " + e);
+                } finally {
+                    evaluatingUsers.remove(key);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            evaluatingUsers.remove(key);
+            return false;
+        }
+    }
+
+    // Gets the cache of exact policy values used by policy evaluations
+    public RLPolicyValueCache getPolicyValueCache() {
+        return policyValueCache;
+    }
+
+    // Stops the evaluation threads, evaluations still running are interrupted
+    public void shutdown() {
+        evaluationExecutor.shutdownNow();
+    }
+
+    private static ExecutorService newEvaluationExecutor(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "rl-policy-eval-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Finds pairs of active users whose Q-tables are near-duplicates, most alike first
+    // RLGameExtension runs it every SIMILARITY_CHECK_SECONDS
+    public List<RLSimilarPair> findSimilarUsers() {
+        return similarityIndex.findSimilar(userMap);
+    }
+
+    // Gets the index used by findSimilarUsers
+    public RLSimilarityIndex getSimilarityIndex() {
+        return similarityIndex;
+    }
+
+    // Gets the total memory used by the mirrored Q and V tables of every active user, in bytes
+    public long getTableMemoryUsageBytes() {
+        long bytes = 0;
+        for (RLGameUser rlUser : userMap.values()) {
+            bytes += rlUser.getWorld().getTables().getMemoryUsageBytes();
+        }
+        return bytes;
+    }
 }
\ No newline at end of file
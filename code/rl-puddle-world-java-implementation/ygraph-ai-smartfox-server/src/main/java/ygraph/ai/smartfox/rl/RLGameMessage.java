@@ -19,6 +19,7 @@ public class RLGameMessage {
     public static final String GAME_Q_UPDATE = "GAME_Q_UPDATE";
     public static final String GAME_V_UPDATE = "GAME_V_UPDATE";
     public static final String GAME_INFO = "GAME_INFO";
+    public static final String GAME_POLICY_EVALUATE = "GAME_POLICY_EVALUATE";
     public static final String FORWARD_ACTION = "FORWARD_ACTION";
     public static final String GAME_STATE_RESPONSE = "GAME_STATE_RESPONSE";
     public static final String GAME_AVAILABLE_ACTIONS_RESPONSE = "GAME_AVAILABLE_ACTIONS_RESPONSE";
@@ -29,6 +30,7 @@ public class RLGameMessage {
     public static final String GAME_ERROR = "GAME_ERROR";
     public static final String GAME_INFO_RESPONSE = "GAME_INFO_RESPONSE";
     public static final String GAME_TRAINING_COMPLETE = "GAME_TRAINING_COMPLETE";
+    public static final String GAME_POLICY_EVALUATE_RESPONSE = "GAME_POLICY_EVALUATE_RESPONSE";
 
     // Fields for Q-Table updates
     private int[] qStateIds;
@@ -38,7 +40,9 @@ public class RLGameMessage {
     String userName;
     private int stateId;
     private int action;
-    private double reward; // reward for action x
+    private double reward; // reward for action x (raw plus shaping)
+    private double rawReward;
+    private double shapingReward;
     private int nextStateId;
     private int[] availableActions;
     private double[] availableRewards;
@@ -48,6 +52,7 @@ public class RLGameMessage {
     private int stepsThisEpisode;
     private int totalEpisodes;
     private int successfulEpisodes;
+    private long episodeSeed;
 
     // Fields for V-Table updates
     private int[] vStateIds;
@@ -127,6 +132,8 @@ public class RLGameMessage {
             case GAME_ACTION_REWARD_RESPONSE:
                 params.putInt("action", this.action);
                 params.putDouble("reward", this.reward);
+                params.putDouble("rawReward", this.rawReward);
+                params.putDouble("shapingReward", this.shapingReward);
                 params.putInt("nextStateId", this.nextStateId);
                 break;
             case GAME_FINAL_STATE_RESPONSE:
@@ -135,6 +142,7 @@ public class RLGameMessage {
                 params.putInt("stepsThisEpisode", this.stepsThisEpisode);
                 params.putInt("totalEpisodes", this.totalEpisodes);
                 params.putInt("successfulEpisodes", this.successfulEpisodes);
+                params.putLong("episodeSeed", this.episodeSeed);
                 break;
             case GAME_RESET:
                 params.putUtfString("userName", this.userName);
@@ -240,6 +248,9 @@ public class RLGameMessage {
                     this.stepsThisEpisode = params.getInt("stepsThisEpisode");
                     this.totalEpisodes = params.getInt("totalEpisodes"); // Added line
                     this.successfulEpisodes = params.getInt("successfulEpisodes"); // Added line
+                    if (params.containsKey("episodeSeed")) {
+                        this.episodeSeed = params.getLong("episodeSeed");
+                    }
                 } else {
                     System.err.println("Missing fields in GAME_FINAL_STATE_RESPONSE message.");
                 }
@@ -338,6 +349,22 @@ public class RLGameMessage {
         this.reward = reward;
     }
 
+    public double getRawReward() {
+        return rawReward;
+    }
+
+    public void setRawReward(double rawReward) {
+        this.rawReward = rawReward;
+    }
+
+    public double getShapingReward() {
+        return shapingReward;
+    }
+
+    public void setShapingReward(double shapingReward) {
+        this.shapingReward = shapingReward;
+    }
+
     public int getNextStateId() {
         return nextStateId;
     }
@@ -455,6 +482,14 @@ public class RLGameMessage {
         this.successfulEpisodes = successfulEpisodes;
     }
 
+    public long getEpisodeSeed() {
+        return episodeSeed;
+    }
+
+    public void setEpisodeSeed(long episodeSeed) {
+        this.episodeSeed = episodeSeed;
+    }
+
     public String getErrorMessage() {
         return errorMessage;
     }
@@ -6,44 +6,17 @@ import com.smartfoxserver.v2.extensions.BaseClientRequestHandler;
 import com.smartfoxserver.v2.entities.data.ISFSObject;
 import com.smartfoxserver.v2.entities.data.SFSObject;
 import java.util.List;
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 // This class handles RL-specific client-side requests and sends responses back to the client
 public class RLGameRequestHandler extends BaseClientRequestHandler {
 
     private RLGameManager gameManager;
-    private static final HashMap<String, String> ENV = loadEnv();
     
     public RLGameRequestHandler(RLGameManager gameManager) {
         this.gameManager = gameManager;
     }
 
-    // Loading in .env file
-     private static HashMap<String, String> loadEnv() {
-        HashMap<String, String> env = new HashMap<>();
-        String workingDir = System.getProperty("user.dir");
-        System.out.println("Current Working Directory: " + workingDir);
-        try (BufferedReader br = new BufferedReader(new FileReader(".env"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) 
-                    continue;
-                String[] parts = line.split("=", 2);
-                if (parts.length == 2) {
-                    env.put(parts[0].trim(), parts[1].trim());
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to read .env file: " + e.getMessage());
-        }
-        return env;
-    }
-
     // Handles various client requests like actions, resets, available actions, available rewards, training completion, action rewards, Q and V updates, and game info
     @Override
     public void handleClientRequest(User user, ISFSObject params) {
@@ -87,12 +60,19 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
             }
         }  
 
-        if (rlUser.isTrainingComplete()) {
+        // A finished user may still have their final policy evaluated
+        if (rlUser.isTrainingComplete() && !messageType.equals(RLGameMessage.GAME_POLICY_EVALUATE)) {
             System.out.println("User " + user.getName() + " has completed training.");
             sendTrainingCompleteMessage(user);
             return;
         }
 
+        // Policy evaluation only reads the world it captures, so the rollouts run without holding the user lock
+        if (messageType.equals(RLGameMessage.GAME_POLICY_EVALUATE)) {
+            handlePolicyEvaluate(user, params, gameManager);
+            return;
+        }
+
         synchronized (rlUser) {
             switch (messageType) {
                 case RLGameMessage.GAME_STATE:
@@ -142,10 +122,8 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
     }
 
     // Sends the initial state and available actions & rewards to the client to start off a new episode
+    // The world has already been reset for the new episode by RLGameUser.concludeEpisode
     private void sendInitialState(User user, RLGameUser rlUser) {
-        // Reset the RLWorld for the new episode
-        rlUser.resetGame();
-
         int initialStateId = rlUser.getCurrentStateId();
 
         // Send GAME_STATE_RESPONSE
@@ -157,11 +135,7 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
         System.out.println("Sent GAME_STATE_RESPONSE for new episode");
 
         // Send GAME_AVAILABLE_ACTIONS_RESPONSE
-        String[] availableActions = rlUser.getWorld().getAvailableActions(initialStateId);
-        int[] actionIndices = new int[availableActions.length];
-        for (int i = 0; i < availableActions.length; i++) {
-            actionIndices[i] = mapActionStringToIndex(availableActions[i]);
-        }        
+        int[] actionIndices = rlUser.getWorld().getAvailableActionIndices(initialStateId);
         ISFSObject actionsResponse = new SFSObject();
         actionsResponse.putUtfString("messageType", RLGameMessage.GAME_AVAILABLE_ACTIONS_RESPONSE);
         actionsResponse.putIntArray("availableActions", convertIntArrayToList(actionIndices));
@@ -169,12 +143,7 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
         System.out.println("Sent GAME_AVAILABLE_ACTIONS_RESPONSE for new episode");
 
         // Send GAME_AVAILABLE_REWARDS_RESPONSE
-        double[] availableRewards = new double[availableActions.length];
-        for (int i = 0; i < availableActions.length; i++) {
-            String actionString = availableActions[i];
-            int nextStateId = rlUser.getWorld().simulateAction(initialStateId, actionString);
-            availableRewards[i] = rlUser.getWorld().getReward(initialStateId, actionString, nextStateId);
-        }
+        double[] availableRewards = rlUser.getWorld().getAvailableRewards(initialStateId);
 
         ISFSObject rewardsResponse = new SFSObject();
         rewardsResponse.putUtfString("messageType", RLGameMessage.GAME_AVAILABLE_REWARDS_RESPONSE);
@@ -209,23 +178,14 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
         send("rl.action", stateResponse, user);
 
         // Sends GAME_AVAILABLE_ACTIONS_RESPONSE
-        String[] availableActions = rlUser.getWorld().getAvailableActions(stateId);
-        int[] actionIndices = new int[availableActions.length];
-        for (int i = 0; i < availableActions.length; i++) {
-            actionIndices[i] = mapActionStringToIndex(availableActions[i]);
-        }        
+        int[] actionIndices = rlUser.getWorld().getAvailableActionIndices(stateId);
         ISFSObject actionsResponse = new SFSObject();
         actionsResponse.putUtfString("messageType", RLGameMessage.GAME_AVAILABLE_ACTIONS_RESPONSE);
         actionsResponse.putIntArray("availableActions", convertIntArrayToList(actionIndices));
         send("rl.action", actionsResponse, user);
 
         // Sends GAME_AVAILABLE_REWARDS_RESPONSE
-        double[] availableRewards = new double[availableActions.length];
-        for (int i = 0; i < availableActions.length; i++) {
-            String action = availableActions[i];
-            int nextStateId = rlUser.getWorld().simulateAction(stateId, action);
-            availableRewards[i] = rlUser.getWorld().getReward(stateId, action, nextStateId);
-        }
+        double[] availableRewards = rlUser.getWorld().getAvailableRewards(stateId);
         ISFSObject rewardsResponse = new SFSObject();
         rewardsResponse.putUtfString("messageType", RLGameMessage.GAME_AVAILABLE_REWARDS_RESPONSE);
         rewardsResponse.putDoubleArray("availableRewards", convertDoubleArrayToList(availableRewards));
@@ -252,34 +212,14 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
             int stateId = params.getInt("stateId");
             System.out.println("Handling Available Actions Request for stateId: " + stateId);
     
-            String[] availableActions = world.getAvailableActions(stateId);
-    
-            if (availableActions == null) {
-                System.err.println("Available Actions is null for stateId: " + stateId);
-                sendErrorMessage(user, "Available actions are null.");
-                return;
-            }
+            int[] actionIndices = world.getAvailableActionIndices(stateId);
     
-            if (availableActions.length == 0) {
+            if (actionIndices.length == 0) {
                 System.err.println("No available actions for stateId: " + stateId);
                 sendErrorMessage(user, "No available actions for the current state.");
                 return;
             }
     
-            System.out.println("Available Actions Length: " + availableActions.length);
-            System.out.println("Available Actions: " + String.join(", ", availableActions));
-    
-            int[] actionIndices = new int[availableActions.length];
-            for (int i = 0; i < availableActions.length; i++) {
-                int actionIndex = mapActionStringToIndex(availableActions[i]);
-                if (actionIndex == -1) {
-                    System.err.println("Invalid action string: " + availableActions[i]);
-                    sendErrorMessage(user, "Invalid action received: " + availableActions[i]);
-                    return;
-                }
-                actionIndices[i] = actionIndex;
-            }
-    
             List<Integer> actionsList = convertIntArrayToList(actionIndices);
             if (actionsList == null) {
                 System.err.println("convertIntArrayToList returned null.");
@@ -320,46 +260,14 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
             int stateId = params.getInt("stateId");
             System.out.println("Handling Available Rewards Request for stateId: " + stateId);
     
-            String[] availableActions = world.getAvailableActions(stateId);
-    
-            if (availableActions == null) {
-                System.err.println("Available Actions is null for stateId: " + stateId);
-                sendErrorMessage(user, "Available actions are null.");
-                return;
-            }
+            double[] availableRewards = world.getAvailableRewards(stateId);
     
-            if (availableActions.length == 0) {
+            if (availableRewards.length == 0) {
                 System.err.println("No available actions for stateId: " + stateId);
                 sendErrorMessage(user, "No available actions for the current state.");
                 return;
             }
     
-            System.out.println("Available Actions Length: " + availableActions.length);
-            System.out.println("Available Actions: " + String.join(", ", availableActions));
-    
-            double[] availableRewards = new double[availableActions.length];
-            System.out.println("State ID: " + stateId);
-            System.out.println("Available rewards array initialized with length: " + availableRewards.length);
-    
-            for (int i = 0; i < availableActions.length; i++) {
-                String actionStr = availableActions[i];
-                if (actionStr == null || actionStr.isEmpty()) {
-                    System.err.println("Invalid action string at index " + i);
-                    sendErrorMessage(user, "Invalid action received at index " + i + ".");
-                    return;
-                }
-                System.out.println("Processing Action: " + actionStr);
-                int nextStateId = world.simulateAction(stateId, actionStr);
-                double reward = world.getReward(stateId, actionStr, nextStateId);
-                availableRewards[i] = reward;
-                System.out.println("Action '" + actionStr + "' leads to state " + nextStateId + " with reward " + reward);
-                if (Double.isNaN(reward)) {
-                    System.err.println("Received invalid reward for action: " + actionStr);
-                    sendErrorMessage(user, "Invalid reward received for action: " + actionStr);
-                    return;
-                }
-            }
-    
             List<Double> rewardsList = convertDoubleArrayToList(availableRewards);
             if (rewardsList == null) {
                 System.err.println("convertDoubleArrayToList returned null.");
@@ -436,21 +344,24 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
                 return;
             }
             
-            RLWorld world = rlUser.getWorld();
-            for (int i = 0; i < qStateIds.length; i++) {
-                int stateId = qStateIds[i];
-                int action = qActionIndices[i];
-                double qValue = qValues[i];
-                
-                if (!isValidStateAction(stateId, action, world)) {
-                    System.err.println("Invalid stateId or action index: StateId=" + stateId + ", Action=" + action);
-                    continue;
-                }
-                
-                world.setQValue(stateId, action, qValue);
+            // Audit the update against the transition just served before it overwrites the old Q-value
+            RLValueStore tables = rlUser.getWorld().getTables();
+            RLTdAuditor auditor = rlUser.getAuditor();
+            if (auditor.audit(tables, qStateIds, qActionIndices, qValues) > 0) {
+                System.err.println("Q-update from user " + user.getName() + " does not match the Q-learning update of the served transition. " + auditor.describe());
+            }
+
+            // Bulk write straight into the primitive Q-table, invalid state-action pairs are skipped by the store
+            // The sketch follows the written rows from their state before the write
+            RLTableSketch sketch = rlUser.getSketch();
+            double[] rowsBefore = sketch.captureRows(tables, qStateIds);
+            int applied = tables.setQValues(qStateIds, qActionIndices, qValues);
+            sketch.update(tables, qStateIds, rowsBefore);
+            if (applied != qStateIds.length) {
+                System.err.println("Skipped " + (qStateIds.length - applied) + " Q-Table updates with invalid stateId or action index from user: " + user.getName());
             }
             
-            System.out.println("Applied Q-Table updates from user: " + user.getName());
+            System.out.println("Applied " + applied + " Q-Table updates from user: " + user.getName());
         } catch (Exception e) {
             System.err.println("Exception in handleQUpdate: " + e.getMessage());
             e.printStackTrace();
@@ -458,17 +369,6 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
         }
     }
 
-    private boolean isValidStateAction(int stateId, int action, RLWorld world) {
-        final int gridSize =  Integer.parseInt(ENV.getOrDefault("GRID_SIZE", "5"));
-        if (stateId < 0 || stateId >= gridSize * gridSize) {
-            return false;
-        }
-        if (action < 0 || action >= 4) {
-            return false;
-        }
-        return true;
-    }    
-
     // Handles V-Table updates from the client
     private void handleVUpdate(User user, ISFSObject params, RLGameManager gameManager) {
         try {
@@ -490,20 +390,13 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
                 return;
             }
             
-            RLWorld world = rlUser.getWorld();
-            for (int i = 0; i < vStateIds.length; i++) {
-                int stateId = vStateIds[i];
-                double vValue = vValues[i];
-                
-                if (!isValidState(stateId, world)) {
-                    System.err.println("Invalid stateId: " + stateId);
-                    continue;
-                }
-                
-                world.setVValue(stateId, vValue);
+            // Bulk write straight into the primitive V-table, invalid state IDs are skipped by the store
+            int applied = rlUser.getWorld().getTables().setVValues(vStateIds, vValues);
+            if (applied != vStateIds.length) {
+                System.err.println("Skipped " + (vStateIds.length - applied) + " V-Table updates with invalid stateId from user: " + user.getName());
             }
             
-            System.out.println("Applied V-Table updates from user: " + user.getName());
+            System.out.println("Applied " + applied + " V-Table updates from user: " + user.getName());
         } catch (Exception e) {
             System.err.println("Exception in handleVUpdate: " + e.getMessage());
             e.printStackTrace();
@@ -511,11 +404,6 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
         }
     }
 
-    private boolean isValidState(int stateId, RLWorld world) {
-        final int gridSize =  Integer.parseInt(ENV.getOrDefault("GRID_SIZE", "5"));
-        return stateId >= 0 && stateId < gridSize * gridSize;
-    }        
-
     // Handles the GAME_INFO request by sending a summary of the RL agent's current training episode
     private void handleInfoRequest(User user, ISFSObject params, RLGameManager gameManager) {
         RLGameUser rlUser = gameManager.getUser(user);
@@ -547,6 +435,121 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
         send("rl.action", infoResponse, user);
     }
 
+    // Handles the GAME_POLICY_EVALUATE request by rolling out the uploaded policy on the user's layout and responding with the episode statistics
+    // The policy is either "policy", one action byte per state, or "policyWeights", four action weight bytes per state (see RLPolicyEvaluator)
+    // Requests are held to POLICY_EVAL_MAX_EPISODES, POLICY_EVAL_MAX_STEPS and POLICY_EVAL_STEP_BUDGET, and run outside the user lock on the layout captured under it
+    private void handlePolicyEvaluate(User user, ISFSObject params, RLGameManager gameManager) {
+        RLGameUser rlUser = gameManager.getUser(user);
+        if (rlUser == null) {
+            System.out.println("RLGameUser not found for user: " + user.getName());
+            sendErrorMessage(user, "User not found.");
+            return;
+        }
+
+        RLConfig config = RLConfig.get();
+        int episodes = params.containsKey("episodes") ? params.getInt("episodes") : config.getPolicyEvalEpisodes();
+        if (episodes <= 0 || episodes > config.getPolicyEvalMaxEpisodes()) {
+            sendErrorMessage(user, "Policy evaluation episodes must be in [1, " + config.getPolicyEvalMaxEpisodes() + "]: " + episodes);
+            return;
+        }
+
+        // Captures the layout, its transitions and the seeds together, so a reset on another request cannot mix two episodes' layouts
+        RLTransitionModel layout;
+        RLStochasticTransitions transitions;
+        double gamma;
+        int maxSteps;
+        long seed;
+        synchronized (rlUser) {
+            RLWorld world = rlUser.getWorld();
+            if (world == null) {
+                sendErrorMessage(user, "Game world not initialized.");
+                return;
+            }
+            layout = world.getLayout();
+            transitions = world.getTransitions();
+            gamma = world.getGamma();
+            maxSteps = params.containsKey("maxSteps") ? params.getInt("maxSteps") : rlUser.getMaxStepsPerEpisode();
+            seed = params.containsKey("seed") ? params.getLong("seed") : RLSeeds.purposeSeed(world.getEpisodeSeed(), RLSeeds.Purpose.EVALUATION);
+        }
+        if (maxSteps <= 0 || maxSteps > config.getPolicyEvalMaxSteps()) {
+            sendErrorMessage(user, "Policy evaluation step limit must be in [1, " + config.getPolicyEvalMaxSteps() + "]: " + maxSteps);
+            return;
+        }
+
+        boolean greedy = params.containsKey("policy");
+        if (!greedy && !params.containsKey("policyWeights")) {
+            sendErrorMessage(user, "Missing 'policy' or 'policyWeights' in GAME_POLICY_EVALUATE message.");
+            return;
+        }
+        byte[] policy = greedy ? params.getByteArray("policy") : params.getByteArray("policyWeights");
+        RLPolicyEvaluator evaluator;
+        try {
+            evaluator = new RLPolicyEvaluator(layout, transitions, gamma, maxSteps);
+        } catch (IllegalArgumentException e) {
+            sendErrorMessage(user, e.getMessage());
+            return;
+        }
+        long worstCaseSteps = evaluator.getWorstCaseSteps(greedy, episodes);
+        if (worstCaseSteps > config.getPolicyEvalStepBudget()) {
+            sendErrorMessage(user, "Policy evaluation of " + episodes + " episodes of up to " + maxSteps + " steps exceeds the budget of "
+                    + config.getPolicyEvalStepBudget() + " steps.");
+            return;
+        }
+
+        // The rollouts and the exact solve run on the evaluation threads, the response is sent from there
+        int requestedEpisodes = episodes;
+        boolean submitted = gameManager.submitEvaluation(user.getName(), () -> {
+            try {
+                sendPolicyEvaluation(user, config, gameManager.getPolicyValueCache(), evaluator, layout, transitions, gamma,
+                        greedy, policy, requestedEpisodes, seed);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Rejected policy evaluation for user " + user.getName() + ": " + e.getMessage());
+                sendErrorMessage(user, e.getMessage());
+            }
+        });
+        if (!submitted) {
+            sendErrorMessage(user, "A policy evaluation is already running for this user.");
+        }
+    }
+
+    // Rolls out the policy, looks up or solves its exact value and sends both to the user, runs on an evaluation thread
+    private void sendPolicyEvaluation(User user, RLConfig config, RLPolicyValueCache cache, RLPolicyEvaluator evaluator, RLTransitionModel layout,
+                                      RLStochasticTransitions transitions, double gamma, boolean greedy, byte[] policy, int episodes, long seed) {
+        RLPolicyEvaluation evaluation = greedy
+                ? evaluator.evaluateGreedy(policy, episodes, seed)
+                : evaluator.evaluateStochastic(policy, episodes, seed);
+        // Exact V^pi(0), the value the mean return of the rollouts estimates (no step limit), within the sweep and time budget of the config
+        RLExactPolicyEvaluator.Result exact = cache.get(layout, transitions, gamma, greedy, policy, RLExactPolicyEvaluator.fromConfig(config), () -> {
+            if (!greedy) {
+                return RLPolicyMatrix.forWeights(layout, transitions, policy);
+            }
+            int[] actions = new int[policy.length];
+            for (int s = 0; s < policy.length; s++) {
+                actions[s] = policy[s];
+            }
+            return RLPolicyMatrix.forPolicy(layout, transitions, actions);
+        });
+        System.out.println("Evaluated policy of " + user.getName() + ": " + evaluation + ", expected return " + exact.getStartValue()
+                + (exact.isConverged() ? "" : " (not converged after " + exact.getSweeps() + " sweeps)"));
+
+        ISFSObject response = new SFSObject();
+        response.putUtfString("messageType", RLGameMessage.GAME_POLICY_EVALUATE_RESPONSE);
+        response.putInt("episodes", evaluation.getEpisodes());
+        response.putInt("successes", evaluation.getSuccesses());
+        response.putDouble("successRate", evaluation.getSuccessRate());
+        response.putDouble("meanReturn", evaluation.getMeanReturn());
+        response.putDouble("returnStd", evaluation.getReturnStd());
+        response.putDouble("meanSteps", evaluation.getMeanSteps());
+        response.putDouble("expectedReturn", exact.getStartValue());
+        response.putBool("expectedReturnConverged", exact.isConverged());
+        response.putIntArray("stepHistogram", convertIntArrayToList(evaluation.getStepHistogram()));
+        response.putInt("binWidth", evaluation.getBinWidth());
+        response.putInt("maxSteps", evaluation.getMaxSteps());
+        response.putLong("seed", evaluation.getSeed());
+        response.putDouble("elapsedMs", evaluation.getElapsedNanos() / 1_000_000.0);
+        send("rl.action", response, user);
+    }
+
     // Handles the GAME_ACTION_MOVE request by performing the action, updating the state, calculating the reward and responding with the reward, state, available actions and available rewards
     private void handleActionMove(User user, ISFSObject params, RLGameManager gameManager) {
         RLGameUser rlUser = gameManager.getUser(user);
@@ -563,14 +566,13 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
             return;
         }
     
-        String actionStr = mapActionIndexToString(action);
-        if (actionStr == null) {
+        if (action < 0 || action >= RLLayout.ACTION_COUNT) {
             System.out.println("Invalid action index received: " + action);
             sendErrorMessage(user, "Invalid action index: " + action);
             return;
         }
         // Make the move
-        rlUser.takeAction(actionStr);
+        rlUser.takeAction(action);
         int updatedStateId = rlUser.getCurrentStateId();
         double reward = rlUser.getLastReward();
 
@@ -579,13 +581,19 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
         actionRewardResponse.putUtfString("messageType", RLGameMessage.GAME_ACTION_REWARD_RESPONSE);
         actionRewardResponse.putInt("action", action);
         actionRewardResponse.putDouble("reward", reward);
+        actionRewardResponse.putDouble("rawReward", rlUser.getLastRawReward());
+        actionRewardResponse.putDouble("shapingReward", rlUser.getLastShapingReward());
         actionRewardResponse.putInt("nextStateId", updatedStateId);
         send("rl.action", actionRewardResponse, user);
-        System.out.println("Sent GAME_ACTION_REWARD_RESPONSE with action: " + action + ", reward: " + reward + ", nextStateId: " + updatedStateId);
-        int stopMethod = Integer.parseInt(ENV.getOrDefault("STOP_METHOD", "0"));
+        // The per-step responses are only logged when LOG_LEVEL=DEBUG
+        boolean debugLogging = rlUser.getWorld().getConfig().isDebugLogging();
+        if (debugLogging) {
+            System.out.println("Sent GAME_ACTION_REWARD_RESPONSE with action: " + action + ", reward: " + reward + " (raw " + rlUser.getLastRawReward()
+                    + ", shaping " + rlUser.getLastShapingReward() + "), nextStateId: " + updatedStateId);
+        }
         
-        // Episode ending check based on stop method
-        if (rlUser.isTerminal() || (stopMethod == 0 && rlUser.getStepsThisEpisode() >= rlUser.getMaxStepsPerEpisode())) {
+        // Episode ending check, the goal and the user's termination policy both set the terminal flag in takeAction
+        if (rlUser.isTerminal()) {
             // Send GAME_FINAL_STATE_RESPONSE
             RLGameMessage finalStateMsg = new RLGameMessage();
             finalStateMsg.setMessageType(RLGameMessage.GAME_FINAL_STATE_RESPONSE);
@@ -594,6 +602,7 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
             finalStateMsg.setTotalEpisodes(rlUser.getTotalEpisodes());
             finalStateMsg.setSuccessfulEpisodes(rlUser.getSuccessfulEpisodes());
             finalStateMsg.setTerminal(rlUser.isTerminal());
+            finalStateMsg.setEpisodeSeed(rlUser.getWorld().getEpisodeSeed());
             ISFSObject finalStateResponse = finalStateMsg.toSFSObject();
             send("rl.action", finalStateResponse, user);
             System.out.println("Sent GAME_FINAL_STATE_RESPONSE");
@@ -606,30 +615,25 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
             }
         } else {    
             // Send GAME_AVAILABLE_ACTIONS_RESPONSE
-            String[] availableActions = rlUser.getWorld().getAvailableActions(updatedStateId);
-            int[] actionIndices = new int[availableActions.length];
-            for (int i = 0; i < availableActions.length; i++) {
-                actionIndices[i] = mapActionStringToIndex(availableActions[i]);
-            }        
+            int[] actionIndices = rlUser.getWorld().getAvailableActionIndices(updatedStateId);
             ISFSObject actionsResponse = new SFSObject();
             actionsResponse.putUtfString("messageType", RLGameMessage.GAME_AVAILABLE_ACTIONS_RESPONSE);
             actionsResponse.putIntArray("availableActions", convertIntArrayToList(actionIndices));
             send("rl.action", actionsResponse, user);
-            System.out.println("Sent GAME_AVAILABLE_ACTIONS_RESPONSE");
+            if (debugLogging) {
+                System.out.println("Sent GAME_AVAILABLE_ACTIONS_RESPONSE");
+            }
     
             // Send GAME_AVAILABLE_REWARDS_RESPONSE
-            double[] availableRewards = new double[availableActions.length];
-            for (int i = 0; i < availableActions.length; i++) {
-                String actionString = availableActions[i];
-                int nextStateId = rlUser.getWorld().simulateAction(updatedStateId, actionString);
-                availableRewards[i] = rlUser.getWorld().getReward(updatedStateId, actionString, nextStateId);
-            }
+            double[] availableRewards = rlUser.getWorld().getAvailableRewards(updatedStateId);
     
             ISFSObject rewardsResponse = new SFSObject();
             rewardsResponse.putUtfString("messageType", RLGameMessage.GAME_AVAILABLE_REWARDS_RESPONSE);
             rewardsResponse.putDoubleArray("availableRewards", convertDoubleArrayToList(availableRewards));
             send("rl.action", rewardsResponse, user);
-            System.out.println("Sent GAME_AVAILABLE_REWARDS_RESPONSE");
+            if (debugLogging) {
+                System.out.println("Sent GAME_AVAILABLE_REWARDS_RESPONSE");
+            }
         }        
     }       
 
@@ -652,11 +656,7 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
         System.out.println("Sent GAME_RESET_RESPONSE with stateId: " + rlUser.getCurrentStateId());
     
         // Sent GAME_AVAILABLE_ACTIONS_RESPONSE
-        String[] availableActions = rlUser.getWorld().getAvailableActions(rlUser.getCurrentStateId());
-        int[] actionIndices = new int[availableActions.length];
-        for (int i = 0; i < availableActions.length; i++) {
-            actionIndices[i] = mapActionStringToIndex(availableActions[i]);
-        }
+        int[] actionIndices = rlUser.getWorld().getAvailableActionIndices(rlUser.getCurrentStateId());
         ISFSObject actionsResponse = new SFSObject();
         actionsResponse.putUtfString("messageType", RLGameMessage.GAME_AVAILABLE_ACTIONS_RESPONSE);
         actionsResponse.putIntArray("availableActions", convertIntArrayToList(actionIndices));
@@ -664,12 +664,7 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
         System.out.println("Sent GAME_AVAILABLE_ACTIONS_RESPONSE");
     
         // Sent GAME_AVAILABLE_REWARDS_RESPONSE
-        double[] availableRewards = new double[availableActions.length];
-        for (int i = 0; i < availableActions.length; i++) {
-            String action = availableActions[i];
-            int nextStateId = rlUser.getWorld().simulateAction(rlUser.getCurrentStateId(), action);
-            availableRewards[i] = rlUser.getWorld().getReward(rlUser.getCurrentStateId(), action, nextStateId);
-        }
+        double[] availableRewards = rlUser.getWorld().getAvailableRewards(rlUser.getCurrentStateId());
         ISFSObject rewardsResponse = new SFSObject();
         rewardsResponse.putUtfString("messageType", RLGameMessage.GAME_AVAILABLE_REWARDS_RESPONSE);
         rewardsResponse.putDoubleArray("availableRewards", convertDoubleArrayToList(availableRewards));
@@ -708,38 +703,6 @@ public class RLGameRequestHandler extends BaseClientRequestHandler {
         return list;
     }
 
-    // Maps an action's index to its respective action string
-    private String mapActionIndexToString(int index) {
-        switch (index) {
-            case 0:
-                return "UP";
-            case 1:
-                return "DOWN";
-            case 2:
-                return "LEFT";
-            case 3:
-                return "RIGHT";
-            default:
-                return null;
-        }
-    }
-
-    // Maps an action's string to its respective index
-    private int mapActionStringToIndex(String action) {
-        switch (action) {
-            case "UP":
-                return 0;
-            case "DOWN":
-                return 1;
-            case "LEFT":
-                return 2;
-            case "RIGHT":
-                return 3;
-            default:
-                return -1;
-        }
-    }
-
     // Sends an error message to the user
     private void sendErrorMessage(User user, String message) {
         RLGameMessage msg = new RLGameMessage();
@@ -1,9 +1,6 @@
 package ygraph.ai.smartfox.rl;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.HashMap;
+import java.util.SplittableRandom;
 
 import com.smartfoxserver.v2.entities.User;
 
@@ -14,47 +11,70 @@ public class RLGameUser {
     private final User user;
     private final RLWorld world;
 
-    private static final HashMap<String, String> ENV = loadEnv();
+    // Configuration the user was created with
+    private final RLConfig config = RLConfig.get();
+    // Logs every action when LOG_LEVEL=DEBUG
+    private final boolean debugLogging = config.isDebugLogging();
 
     // Creating variables for state ID, a final reward, a terminal state check, maximum episodes, and maximum number of steps in an episode
     private int currentStateId;
     private double lastReward;
+    private double lastRawReward;
+    private double lastShapingReward;
     private boolean isTerminal;
-    private final int maxEpisodes = Integer.parseInt(ENV.getOrDefault("EPISODE_COUNT", "2"));
-    private int maxStepsPerEpisode = Integer.parseInt(ENV.getOrDefault("MAX_STEPS", "10"));
+
+    // Random stream for probabilistic stopping, derived from the world's episode seed
+    private SplittableRandom stoppingRandom;
+
+    // Decides when an episode ends before the goal, resolved once from STOP_METHOD when the user is created
+    private RLTerminationPolicy terminationPolicy;
+    // Checks the client's Q-updates against the transitions served to it
+    private final RLTdAuditor auditor;
+    // SimHash signature of the mirrored Q-table, followed through the client's Q-updates
+    private final RLTableSketch sketch;
+    private final int maxEpisodes = config.getEpisodeCount();
+    private int maxStepsPerEpisode = config.getMaxSteps();
     private static final String EPISODE_SEPARATOR = "\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n";
     public int getMaxEpisodes() {
         return maxEpisodes;
     }
 
-    // Loading in .env file
-    private static HashMap<String, String> loadEnv() {
-        HashMap<String, String> env = new HashMap<>();
-        String workingDir = System.getProperty("user.dir");
-        System.out.println("Current Working Directory: " + workingDir);
-        try (BufferedReader br = new BufferedReader(new FileReader(".env"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) continue;
-                String[] parts = line.split("=", 2);
-                if (parts.length == 2) {
-                    env.put(parts[0].trim(), parts[1].trim());
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to read .env file: " + e.getMessage());
-        }
-        return env;
-    }
-
     // Getters and setters for the attributes
     public int getMaxStepsPerEpisode() {
         return maxStepsPerEpisode;
     }
 
+    // Also updates a MaxSteps termination policy to the new limit
     public void setMaxStepsPerEpisode(int maxStepsPerEpisode) {
         this.maxStepsPerEpisode = maxStepsPerEpisode;
+        if (terminationPolicy instanceof RLTerminationPolicy.MaxSteps) {
+            this.terminationPolicy = new RLTerminationPolicy.MaxSteps(maxStepsPerEpisode);
+        }
+    }
+
+    // Gets the auditor of this user's Q-updates
+    public RLTdAuditor getAuditor() {
+        return auditor;
+    }
+
+    // Gets the sketch of this user's Q-table used to find near-duplicate tables
+    public RLTableSketch getSketch() {
+        return sketch;
+    }
+
+    public RLTerminationPolicy getTerminationPolicy() {
+        return terminationPolicy;
+    }
+
+    // Replaces the termination policy (for custom policies) and starts it on the current episode
+    public void setTerminationPolicy(RLTerminationPolicy terminationPolicy) {
+        if (terminationPolicy == null) {
+            throw new IllegalArgumentException("Termination policy cannot be null.");
+        }
+        this.terminationPolicy = terminationPolicy;
+        if (stoppingRandom != null) {
+            terminationPolicy.beginEpisode(stoppingRandom);
+        }
     }
 
     public void setTotalEpisodes(int totalEpisodes) {
@@ -88,10 +108,10 @@ public class RLGameUser {
     private int stepsThisEpisode = 0;
 
     // Threshold for evaluation
-    private double successRewardThreshold = Double.parseDouble(ENV.getOrDefault("SUCCESS_REWARD_THRESHOLD", "1.0"));
+    private double successRewardThreshold = config.getSuccessRewardThreshold();
 
     // Grid size
-    private final int gridSize = Integer.parseInt(ENV.getOrDefault("GRID_SIZE", "5"));
+    private final int gridSize = config.getGridSize();
 
     // Constructor that links a User object with an RL world and starts the game
     public RLGameUser(User user, RLWorld world) {
@@ -100,17 +120,24 @@ public class RLGameUser {
         this.currentStateId = 0;
         this.lastReward = 0.0;
         this.isTerminal = false;
+        this.terminationPolicy = RLTerminationPolicy.fromConfig(config, maxStepsPerEpisode);
+        this.auditor = RLTdAuditor.fromConfig(config, user.getName(), world.getGamma());
+        this.sketch = new RLTableSketch(world.getTables());
         initializeGame();
+        System.out.println("RLGameUser termination policy: " + terminationPolicy.describe());
         System.out.println("RLGameUser initialized for user: " + user.getName() + " with RLWorld instance: " + System.identityHashCode(world));
     }
 
     // Starts the game by resetting the world and sets the initial state for the user in the RL world, a final reward, and a terminal state check to false
+    // The world starts the episode numbered by the episodes played so far, so its seed (and this user's stopping stream) only depend on the session and the episode index
     public void initializeGame() {
-        world.reset();
+        world.startEpisode(totalEpisodes);
+        stoppingRandom = RLSeeds.stream(world.getEpisodeSeed(), RLSeeds.Purpose.STOPPING);
+        terminationPolicy.beginEpisode(stoppingRandom);
         currentStateId = 0;
         lastReward = 0.0;
         isTerminal = false;
-        System.out.println("Game initialized for user: " + user.getName() + " at state: " + currentStateId);
+        System.out.println("Game initialized for user: " + user.getName() + " at state: " + currentStateId + " (episode " + world.getEpisode() + ", seed " + world.getEpisodeSeed() + ")");
     }
 
     // Gets an RLWorld instance
@@ -129,12 +156,21 @@ public class RLGameUser {
     }
 
     // Processes an action taken by a user for the following actions: "UP", "DOWN", "LEFT", "RIGHT".
+    // Kept for older clients that send action strings, the work is done by takeAction(int)
     public void takeAction(String actionStr) {
+        int actionIndex = world.getActionIndex(actionStr);
+        if (actionIndex == -1) {
+            throw new IllegalArgumentException("Invalid action string: " + actionStr);
+        }
+        takeAction(actionIndex);
+    }
+
+    // Processes an action index taken by a user (0=UP, 1=DOWN, 2=LEFT, 3=RIGHT)
+    public void takeAction(int actionIndex) {
         if (isTerminal) {
             return;
         }
 
-        int actionIndex = mapActionStringToIndex(actionStr);
         int row = currentStateId / gridSize;
         int col = currentStateId % gridSize;
 
@@ -146,12 +182,16 @@ public class RLGameUser {
         // Move the agent
         int newStateId = world.moveAgentWithAction(currentStateId, actionIndex);
         double reward = world.getLastReward();
+        auditor.recordTransition(currentStateId, actionIndex, reward, newStateId);
     
         // Update state and last step reward
+        // The agent learns from the shaped reward, the episode return (and so success) only counts the raw reward
         this.currentStateId = newStateId;
         this.lastReward = reward;
+        this.lastRawReward = world.getLastRawReward();
+        this.lastShapingReward = world.getLastShapingReward();
         stepsThisEpisode++;
-        cumulativeReward += Math.pow(world.getGamma(), stepsThisEpisode - 1) * lastReward;
+        cumulativeReward += Math.pow(world.getGamma(), stepsThisEpisode - 1) * lastRawReward;
 
         // New position of agent
         int newRow = newStateId / gridSize;
@@ -161,49 +201,22 @@ public class RLGameUser {
             return;
         }
 
-        int stopMethod = Integer.parseInt(ENV.getOrDefault("STOP_METHOD", "0"));
-        double stopProb = Double.parseDouble(ENV.getOrDefault("STOP_PROB", "0.1"));
-        System.out.println("DEBUG (Server): stopMethod=" + stopMethod);
-
-        // For probabilistic stopping, apply only after atleast 1 step has been taken
-        if (stopMethod == 2 && stepsThisEpisode > 1) {
-            double rnd = Math.random();
-            if (rnd < stopProb) {
-                isTerminal = true;
-                System.out.println("User " + user.getName() + " stopped due to STOP_METHOD=2 random stopping condition.");
-            }
-        }
-
         if (world.isTerminalState(currentStateId)) {
             isTerminal = true;
             System.out.println("User " + user.getName() + " has reached the terminal state: " + currentStateId);
-        } else if (stopMethod == 0 && stepsThisEpisode >= maxStepsPerEpisode) {
+        } else if (terminationPolicy.shouldStop(stepsThisEpisode)) {
             isTerminal = true;
-            System.out.println("User " + user.getName() + " reached maximum steps per episode.");
+            System.out.println("User " + user.getName() + " stopped by " + terminationPolicy.describe() + " after " + stepsThisEpisode + " steps.");
+        }
+        if (debugLogging) {
+            System.out.println("Action Taken: " + actionIndex + ", New State: " + newStateId + ", Reward: " + reward);
         }
-        System.out.println("Action Taken: " + actionStr + ", New State: " + newStateId + ", Reward: " + reward);
     }    
 
     private boolean isValidPosition(int row, int col) {
         return row >= 0 && row < gridSize && col >= 0 && col < gridSize;
     }    
 
-    // Change action strings to action indices
-    private int mapActionStringToIndex(String actionStr) {
-        switch (actionStr) {
-            case "UP":
-                return 0;
-            case "DOWN":
-                return 1;
-            case "LEFT":
-                return 2;
-            case "RIGHT":
-                return 3;
-            default:
-                throw new IllegalArgumentException("Invalid action string: " + actionStr);
-        }
-    }
-
     public void addToCumulativeReward(double reward) {
         this.cumulativeReward += reward;
     }
@@ -222,6 +235,7 @@ public class RLGameUser {
             System.out.println(" - Successful Episodes: " + successfulEpisodes);
             System.out.println(" - Steps Taken: " + stepsThisEpisode);
             System.out.println(" - Discounted Episode Reward: " + cumulativeReward);
+            System.out.println(" - Episode Seed: " + world.getEpisodeSeed() + " (session seed " + world.getSessionSeed() + ", episode " + world.getEpisode() + ")");
             System.out.println(EPISODE_SEPARATOR);
             if (isTrainingComplete()) {
                 System.out.println("Maximum number of episodes reached. Ending training.");
@@ -232,7 +246,6 @@ public class RLGameUser {
             this.stepsThisEpisode = 0;
             this.cumulativeReward = 0.0;
             this.isTerminal = false;
-            this.world.reset();
             System.out.println("Episode concluded for user: " + user.getName());
         }
     }
@@ -241,10 +254,19 @@ public class RLGameUser {
         return currentStateId;
     }
 
+    // Gets the last reward handed to the agent, raw plus shaping
     public double getLastReward() {
         return lastReward;
     }
 
+    public double getLastRawReward() {
+        return lastRawReward;
+    }
+
+    public double getLastShapingReward() {
+        return lastShapingReward;
+    }
+
     public void setTerminal(boolean isTerminal) {
         this.isTerminal = isTerminal;
     }
@@ -0,0 +1,160 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// This class is the distance from every state to the goal of a layout, used as the potential for reward shaping (see RLWorld)
+// Entering a dry cell costs 1 and entering a puddle costs puddleCost, so paths around puddles count as shorter than paths through them:
+// puddleCost = PUDDLE_REWARD / DEFAULT_REWARD rounded and clamped to [1, MAX_PUDDLE_COST] when both are negative, 1 otherwise
+// Dense layouts get an exact field from a Dijkstra search backwards from the goal over a primitive binary heap, stored as one int per state
+// Compressed large-world layouts would need gigabytes for a dense field, so they use the Manhattan distance to the goal instead (puddle-unaware, no storage)
+// Fields are immutable and cached per layout instance, so every world sharing a layout from RLLayoutCache shares its field too
+public final class RLGoalDistanceField {
+    public static final int MAX_PUDDLE_COST = 1024;
+
+    private static final Map<RLTransitionModel, RLGoalDistanceField> FIELDS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private final int gridSize;
+    private final int goalRow;
+    private final int goalCol;
+    private final int puddleCost;
+
+    // Distance of every state, or null for the Manhattan fallback
+    private final int[] distances;
+    private final int maxDistance;
+
+    private RLGoalDistanceField(RLTransitionModel layout) {
+        this.gridSize = layout.getGridSize();
+        this.goalRow = layout.getGoalStateId() / gridSize;
+        this.goalCol = layout.getGoalStateId() % gridSize;
+        this.puddleCost = puddleCost(layout.getDefaultReward(), layout.getPuddleReward());
+        if (layout instanceof RLCompressedLayout) {
+            this.distances = null;
+            this.maxDistance = goalRow + goalCol;
+        } else {
+            this.distances = search(layout);
+            int max = 0;
+            for (int d : distances) {
+                max = Math.max(max, d);
+            }
+            this.maxDistance = max;
+        }
+    }
+
+    // Gets the field of a layout, computing it on the first request
+    public static RLGoalDistanceField forLayout(RLTransitionModel layout) {
+        RLGoalDistanceField field = FIELDS.get(layout);
+        if (field == null) {
+            field = new RLGoalDistanceField(layout);
+            FIELDS.put(layout, field);
+        }
+        return field;
+    }
+
+    // Cost of entering a puddle cell relative to a dry cell
+    static int puddleCost(double defaultReward, double puddleReward) {
+        if (defaultReward >= 0 || puddleReward >= 0 || puddleReward >= defaultReward) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(MAX_PUDDLE_COST, Math.round(puddleReward / defaultReward)));
+    }
+
+    // Dijkstra from the goal, the grid moves are symmetric so a move from a neighbour into u costs the entry cost of u
+    // Heap entries pack (distance << 32 | stateId), stale entries are skipped when popped
+    private int[] search(RLTransitionModel layout) {
+        int stateCount = layout.getStateCount();
+        int[] dist = new int[stateCount];
+        Arrays.fill(dist, Integer.MAX_VALUE);
+        long[] heap = new long[Math.max(16, stateCount)];
+        int size = 0;
+        int goal = layout.getGoalStateId();
+        dist[goal] = 0;
+        heap[size++] = goal;
+        while (size > 0) {
+            long top = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size);
+            int u = (int) top;
+            int d = (int) (top >>> 32);
+            if (d != dist[u]) {
+                continue;
+            }
+            int candidate = d + (layout.isPuddle(u) ? puddleCost : 1);
+            for (int action : layout.validActions(u)) {
+                int v = layout.nextState(u, action);
+                if (candidate < dist[v]) {
+                    dist[v] = candidate;
+                    if (size == heap.length) {
+                        heap = Arrays.copyOf(heap, heap.length * 2);
+                    }
+                    heap[size] = ((long) candidate << 32) | v;
+                    siftUp(heap, size++);
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        long entry = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent] <= entry) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+        long entry = heap[0];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (entry <= heap[child]) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = entry;
+    }
+
+    // Gets the distance from a state to the goal in cost units
+    public int distance(int stateId) {
+        if (distances != null) {
+            return distances[stateId];
+        }
+        int row = stateId / gridSize;
+        return Math.abs(goalRow - row) + Math.abs(goalCol - (stateId - row * gridSize));
+    }
+
+    // Potential of a state: 0 at the goal and lower the further away the state is
+    public double potential(int stateId, double scale) {
+        return -scale * distance(stateId);
+    }
+
+    // Checks if the field is puddle-aware (dense layouts) rather than the Manhattan fallback
+    public boolean isExact() {
+        return distances != null;
+    }
+
+    public int getPuddleCost() {
+        return puddleCost;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+}
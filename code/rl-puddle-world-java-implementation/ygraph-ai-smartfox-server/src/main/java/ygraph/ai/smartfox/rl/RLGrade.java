@@ -0,0 +1,108 @@
+package ygraph.ai.smartfox.rl;
+
+// This class is an immutable grade of one user's mirrored Q-table against the reference solution of the user's current layout (see RLBatchGrader)
+// The graded policy is greedy on the user's Q-values over the valid actions of each state (ties go to the lowest action index), like the client picks its actions
+// Success and path lengths follow the intended moves of the greedy policy, regret and the values use the layout's real dynamics (slippery if TRANSITION_MODE=SLIPPERY)
+public final class RLGrade {
+    private final String userName;
+    private final long tableVersion;
+    private final RLSolution solution;
+    private final int maxSteps;
+    private final double successRate;
+    private final int pathLength;
+    private final int optimalPathLength;
+    private final double meanPathLength;
+    private final double regret;
+    private final double meanRegret;
+    private final double qDistance;
+    private final double optimalActionRate;
+    private final long elapsedNanos;
+
+    RLGrade(String userName, long tableVersion, RLSolution solution, int maxSteps, double successRate, int pathLength, int optimalPathLength,
+            double meanPathLength, double regret, double meanRegret, double qDistance, double optimalActionRate, long elapsedNanos) {
+        this.userName = userName;
+        this.tableVersion = tableVersion;
+        this.solution = solution;
+        this.maxSteps = maxSteps;
+        this.successRate = successRate;
+        this.pathLength = pathLength;
+        this.optimalPathLength = optimalPathLength;
+        this.meanPathLength = meanPathLength;
+        this.regret = regret;
+        this.meanRegret = meanRegret;
+        this.qDistance = qDistance;
+        this.optimalActionRate = optimalActionRate;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public String getUserName() {
+        return userName;
+    }
+
+    // Version of the user's tables that was graded
+    public long getTableVersion() {
+        return tableVersion;
+    }
+
+    // Reference solution the tables were graded against
+    public RLSolution getSolution() {
+        return solution;
+    }
+
+    // Step limit a greedy path must reach the goal within to count as a success
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    // Fraction of the non-terminal states from which the greedy path reaches the goal within maxSteps
+    public double getSuccessRate() {
+        return successRate;
+    }
+
+    // Steps of the greedy path from the start state 0 to the goal, -1 if it does not reach the goal within maxSteps
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    // Steps of the optimal policy's path from the start state 0 to the goal, -1 if it does not reach the goal within maxSteps
+    public int getOptimalPathLength() {
+        return optimalPathLength;
+    }
+
+    // Mean steps to the goal over the successful start states, NaN if there are none
+    public double getMeanPathLength() {
+        return meanPathLength;
+    }
+
+    // V*(0) - V^pi(0): discounted return lost from the start state by following the greedy policy instead of an optimal one
+    public double getRegret() {
+        return regret;
+    }
+
+    // Mean of V*(s) - V^pi(s) over the non-terminal states
+    public double getMeanRegret() {
+        return meanRegret;
+    }
+
+    // Max-norm distance max |Q(s, a) - Q*(s, a)| over the valid state-action pairs
+    public double getQDistance() {
+        return qDistance;
+    }
+
+    // Fraction of the non-terminal states whose greedy action is optimal (within the planner tolerance)
+    public double getOptimalActionRate() {
+        return optimalActionRate;
+    }
+
+    // Time the grading took, a cached grade keeps the time of the run that produced it
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RLGrade{" + userName + ", version=" + tableVersion + ", success=" + successRate + ", path=" + pathLength + "/" + optimalPathLength
+                + ", meanPath=" + meanPathLength + ", regret=" + regret + ", meanRegret=" + meanRegret + ", qDistance=" + qDistance
+                + ", optimalActions=" + optimalActionRate + ", ms=" + elapsedNanos / 1_000_000 + "}";
+    }
+}
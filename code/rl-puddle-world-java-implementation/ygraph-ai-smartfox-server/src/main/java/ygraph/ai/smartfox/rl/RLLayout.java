@@ -0,0 +1,276 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// This class is a compiled, read-only puddle layout of the puddle world
+// A layout is compiled once from the puddle positions and the reward settings, after which stepping, simulating and reward lookups are array loads:
+// puddle bitmap: bit stateId is set if the state is covered by a puddle
+// nextState[stateId * 4 + action] = state ID reached by taking the action from stateId (moves off the grid keep the agent in place)
+// reward[stateId * 4 + action] = reward for that transition
+// terminal[stateId] = true only for the goal state
+// validActionMask[stateId] = 4-bit mask of the actions that do not move off the grid (bit a set if action a is valid)
+public final class RLLayout implements RLTransitionModel {
+    // Action indices shared with the client protocol
+    public static final int ACTION_UP = 0;
+    public static final int ACTION_DOWN = 1;
+    public static final int ACTION_LEFT = 2;
+    public static final int ACTION_RIGHT = 3;
+    public static final int ACTION_COUNT = RLTableStore.ACTION_COUNT;
+    private static final String[] ACTION_NAMES = {"UP", "DOWN", "LEFT", "RIGHT"};
+
+    // Valid action indices and names for each of the 16 possible 4-bit masks, shared by all layouts
+    private static final int[][] MASK_ACTIONS = new int[1 << ACTION_COUNT][];
+    private static final String[][] MASK_ACTION_NAMES = new String[1 << ACTION_COUNT][];
+    static {
+        for (int mask = 0; mask < MASK_ACTIONS.length; mask++) {
+            int[] indices = new int[Integer.bitCount(mask)];
+            String[] names = new String[indices.length];
+            int i = 0;
+            for (int a = 0; a < ACTION_COUNT; a++) {
+                if ((mask & (1 << a)) != 0) {
+                    indices[i] = a;
+                    names[i] = ACTION_NAMES[a];
+                    i++;
+                }
+            }
+            MASK_ACTIONS[mask] = indices;
+            MASK_ACTION_NAMES[mask] = names;
+        }
+    }
+
+    private final int gridSize;
+    private final int stateCount;
+    private final int goalStateId;
+    private final int puddleSize;
+    private final List<int[]> puddlePositions;
+
+    private final double defaultReward;
+    private final double puddleReward;
+    private final double goalReward;
+
+    private final long[] puddleBits;
+    private final int[] nextState;
+    private final double[] reward;
+    private final boolean[] terminal;
+    private final byte[] validActionMask;
+
+    private RLLayout(int gridSize, int puddleSize, List<int[]> puddlePositions, double defaultReward, double puddleReward, double goalReward) {
+        this.gridSize = gridSize;
+        this.stateCount = gridSize * gridSize;
+        this.goalStateId = stateCount - 1;
+        this.puddleSize = puddleSize;
+        this.puddlePositions = puddlePositions;
+        this.defaultReward = defaultReward;
+        this.puddleReward = puddleReward;
+        this.goalReward = goalReward;
+        this.puddleBits = new long[(stateCount + 63) >>> 6];
+        this.nextState = new int[stateCount * ACTION_COUNT];
+        this.reward = new double[stateCount * ACTION_COUNT];
+        this.terminal = new boolean[stateCount];
+        this.validActionMask = new byte[stateCount];
+    }
+
+    // Compiles the puddle positions (top-left corners of puddleSize x puddleSize squares) and rewards into a layout
+    public static RLLayout compile(int gridSize, int puddleSize, List<int[]> puddles, double defaultReward, double puddleReward, double goalReward) {
+        if (gridSize <= 0) {
+            throw new IllegalArgumentException("Grid size must be positive: " + gridSize);
+        }
+        List<int[]> copy = new ArrayList<>(puddles.size());
+        for (int[] puddle : puddles) {
+            copy.add(new int[]{puddle[0], puddle[1]});
+        }
+        RLLayout layout = new RLLayout(gridSize, puddleSize, Collections.unmodifiableList(copy), defaultReward, puddleReward, goalReward);
+        layout.markPuddles();
+        layout.buildTransitions();
+        return layout;
+    }
+
+    // Sets the puddle bit of every cell covered by a puddle square (clipped to the grid)
+    private void markPuddles() {
+        for (int[] puddle : puddlePositions) {
+            int rowEnd = Math.min(puddle[0] + puddleSize, gridSize);
+            int colEnd = Math.min(puddle[1] + puddleSize, gridSize);
+            for (int row = Math.max(puddle[0], 0); row < rowEnd; row++) {
+                for (int col = Math.max(puddle[1], 0); col < colEnd; col++) {
+                    int stateId = row * gridSize + col;
+                    puddleBits[stateId >>> 6] |= 1L << stateId;
+                }
+            }
+        }
+    }
+
+    // Fills the next state, reward and terminal tables for every state-action pair
+    private void buildTransitions() {
+        terminal[goalStateId] = true;
+        for (int stateId = 0; stateId < stateCount; stateId++) {
+            int row = stateId / gridSize;
+            int col = stateId % gridSize;
+            int base = stateId * ACTION_COUNT;
+            nextState[base + ACTION_UP] = Math.max(row - 1, 0) * gridSize + col;
+            nextState[base + ACTION_DOWN] = Math.min(row + 1, gridSize - 1) * gridSize + col;
+            nextState[base + ACTION_LEFT] = row * gridSize + Math.max(col - 1, 0);
+            nextState[base + ACTION_RIGHT] = row * gridSize + Math.min(col + 1, gridSize - 1);
+            validActionMask[stateId] = (byte) edgeMask(row, col, gridSize);
+            for (int a = 0; a < ACTION_COUNT; a++) {
+                reward[base + a] = stateReward(nextState[base + a]);
+            }
+        }
+    }
+
+    // Computes the valid action mask of a cell, dropping the moves that would leave the grid
+    static int edgeMask(int row, int col, int gridSize) {
+        int mask = (1 << ACTION_COUNT) - 1;
+        if (row == 0) {
+            mask &= ~(1 << ACTION_UP);
+        }
+        if (row == gridSize - 1) {
+            mask &= ~(1 << ACTION_DOWN);
+        }
+        if (col == 0) {
+            mask &= ~(1 << ACTION_LEFT);
+        }
+        if (col == gridSize - 1) {
+            mask &= ~(1 << ACTION_RIGHT);
+        }
+        return mask;
+    }
+
+    // Gets the valid action indices for a mask, the returned array is shared and must not be modified
+    static int[] actionsForMask(int mask) {
+        return MASK_ACTIONS[mask];
+    }
+
+    // Gets the valid action names for a mask, the returned array is shared and must not be modified
+    static String[] actionNamesForMask(int mask) {
+        return MASK_ACTION_NAMES[mask];
+    }
+
+    // Gets the name of an action index, or null if the index is out of range
+    public static String actionName(int action) {
+        return action >= 0 && action < ACTION_COUNT ? ACTION_NAMES[action] : null;
+    }
+
+    // Gets the index of an action name, or -1 if the name is unknown
+    public static int actionIndex(String action) {
+        if (action == null) {
+            return -1;
+        }
+        switch (action) {
+            case "UP":
+                return ACTION_UP;
+            case "DOWN":
+                return ACTION_DOWN;
+            case "LEFT":
+                return ACTION_LEFT;
+            case "RIGHT":
+                return ACTION_RIGHT;
+            default:
+                return -1;
+        }
+    }
+
+    // Gets the 4-bit valid action mask of a state
+    @Override
+    public int validActionMask(int stateId) {
+        return validActionMask[stateId];
+    }
+
+    // Gets the valid action indices of a state, the returned array is shared and must not be modified
+    @Override
+    public int[] validActions(int stateId) {
+        return MASK_ACTIONS[validActionMask[stateId]];
+    }
+
+    // Checks if an action keeps the agent on the grid from a state
+    public boolean isValidAction(int stateId, int action) {
+        return (validActionMask[stateId] & (1 << action)) != 0;
+    }
+
+    // Gets the state ID reached by taking an action from a state
+    @Override
+    public int nextState(int stateId, int action) {
+        return nextState[stateId * ACTION_COUNT + action];
+    }
+
+    // Gets the reward for taking an action from a state
+    @Override
+    public double reward(int stateId, int action) {
+        return reward[stateId * ACTION_COUNT + action];
+    }
+
+    // Gets the reward for entering a state (goal reward, puddle reward or default reward), a state off the grid gets the default reward
+    @Override
+    public double stateReward(int stateId) {
+        if (stateId == goalStateId) {
+            return goalReward;
+        }
+        return isPuddle(stateId) ? puddleReward : defaultReward;
+    }
+
+    // Checks if a state is covered by a puddle, a state off the grid never is
+    @Override
+    public boolean isPuddle(int stateId) {
+        return isValidState(stateId) && (puddleBits[stateId >>> 6] & (1L << stateId)) != 0;
+    }
+
+    // Checks if a state is terminal
+    @Override
+    public boolean isTerminal(int stateId) {
+        return terminal[stateId];
+    }
+
+    // Checks if a state ID lies within the grid
+    @Override
+    public boolean isValidState(int stateId) {
+        return stateId >= 0 && stateId < stateCount;
+    }
+
+    @Override
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    @Override
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    @Override
+    public int getGoalStateId() {
+        return goalStateId;
+    }
+
+    @Override
+    public int getPuddleSize() {
+        return puddleSize;
+    }
+
+    // Gets the (row, col) top-left corners of the puddles, the list is read-only
+    @Override
+    public List<int[]> getPuddlePositions() {
+        return puddlePositions;
+    }
+
+    @Override
+    public double getDefaultReward() {
+        return defaultReward;
+    }
+
+    @Override
+    public double getPuddleReward() {
+        return puddleReward;
+    }
+
+    @Override
+    public double getGoalReward() {
+        return goalReward;
+    }
+
+    // Puddle bits, next states, rewards, terminal flags and action masks, plus array headers
+    @Override
+    public long getMemoryUsageBytes() {
+        return 80L + puddleBits.length * 8L + nextState.length * 4L + reward.length * 8L + terminal.length + validActionMask.length;
+    }
+}
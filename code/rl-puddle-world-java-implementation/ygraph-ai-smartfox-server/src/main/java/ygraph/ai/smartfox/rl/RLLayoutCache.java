@@ -0,0 +1,269 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// This class is a bounded cache of compiled puddle layouts shared across sessions
+// Layouts are immutable (see RLLayout and RLCompressedLayout), so every RLWorld asking for the same seed and configuration gets the same instance instead of regenerating and recompiling it
+// Slippery outcome tables (see RLStochasticTransitions) are cached the same way per (layout instance, slip, puddle slip, stay),
+// so worlds switching between pooled layouts reuse the compiled alias tables, and caches keyed by the transitions instance (see RLPlanner) keep hitting
+// Each kind keeps at most capacity entries, and both together at most maxBytes (see getMemoryUsageBytes), the least recently used entries are evicted first
+// Generating and compiling run outside the cache lock: the first request for a key runs a FutureTask registered per key,
+// concurrent requests for the same key wait on that task, and requests for other keys are served while it runs
+// The result is published to the LRU under the lock before the task is unregistered, a failed compile is unregistered so the next request retries
+public class RLLayoutCache {
+    private final int capacity;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, RLTransitionModel> layouts = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<TransitionsKey, RLStochasticTransitions> transitions = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentHashMap<Key, FutureTask<RLTransitionModel>> pendingLayouts = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<TransitionsKey, FutureTask<RLStochasticTransitions>> pendingTransitions = new ConcurrentHashMap<>();
+    private long storedBytes;
+    private long hits;
+    private long misses;
+
+    public RLLayoutCache(int capacity) {
+        this(capacity, Long.MAX_VALUE);
+    }
+
+    // capacity bounds the entries of each kind, maxBytes the memory of all entries together
+    public RLLayoutCache(int capacity, long maxBytes) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Layout cache capacity must be positive: " + capacity);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Layout cache memory bound must be positive: " + maxBytes);
+        }
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+    }
+
+    // Gets the layout generated from a seed and configuration, generating and compiling it on the first request
+    // large selects the compressed layout used by large worlds
+    public RLTransitionModel getLayout(long seed, boolean large, int gridSize, int maxPuddles, int puddleSize,
+                                       double defaultReward, double puddleReward, double goalReward) {
+        Key key = new Key(seed, large, gridSize, maxPuddles, puddleSize, defaultReward, puddleReward, goalReward);
+        return load(layouts, pendingLayouts, key, () -> {
+            RLTransitionModel layout = RLTransitionModel.compile(large, gridSize, puddleSize,
+                    RLPuddleGenerator.generate(gridSize, maxPuddles, puddleSize, new SplittableRandom(seed)), defaultReward, puddleReward, goalReward);
+            System.out.println("Layout compiled for seed " + seed + " with " + layout.getPuddlePositions().size() + " puddles, "
+                    + layout.getMemoryUsageBytes() + " bytes.");
+            return layout;
+        });
+    }
+
+    // Gets the slippery outcome tables of a cached layout, compiling them on the first request for the probabilities
+    public RLStochasticTransitions getTransitions(RLTransitionModel layout, double slipProb, double puddleSlipProb, double stayProb) {
+        TransitionsKey key = new TransitionsKey(layout, slipProb, puddleSlipProb, stayProb);
+        return load(transitions, pendingTransitions, key, () -> RLStochasticTransitions.compile(layout, slipProb, puddleSlipProb, stayProb));
+    }
+
+    // Gets a cached value, or compiles it once per key outside the cache lock and publishes it
+    private <K, V> V load(LinkedHashMap<K, V> cache, ConcurrentHashMap<K, FutureTask<V>> pending, K key, Callable<V> compiler) {
+        synchronized (this) {
+            V value = cache.get(key);
+            if (value != null) {
+                hits++;
+                return value;
+            }
+        }
+        FutureTask<V> task = new FutureTask<>(() -> {
+            // A task registered after an earlier one was published finds the published value
+            synchronized (this) {
+                V value = cache.get(key);
+                if (value != null) {
+                    hits++;
+                    return value;
+                }
+                misses++;
+            }
+            V value = compiler.call();
+            put(cache, key, value);
+            return value;
+        });
+        FutureTask<V> running = pending.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                pending.remove(key, task);
+            }
+        } else {
+            synchronized (this) {
+                hits++;
+            }
+        }
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException("Failed to compile " + key + ": " + cause, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a layout to compile.", e);
+        }
+    }
+
+    // Publishes a compiled value and evicts the least recently used entries over the entry or memory bounds
+    private synchronized <K, V> void put(LinkedHashMap<K, V> cache, K key, V value) {
+        V previous = cache.put(key, value);
+        if (previous != null) {
+            storedBytes -= bytes(previous);
+        }
+        storedBytes += bytes(value);
+        evict(cache, value);
+        // The other kind is only trimmed for memory, its entry count did not change
+        evict(cache == layouts ? transitions : layouts, value);
+    }
+
+    // Evicts the eldest entries of one map while it is over capacity or the cache is over maxBytes, never the value just published
+    private void evict(LinkedHashMap<?, ?> cache, Object keep) {
+        Iterator<?> eldest = cache.values().iterator();
+        while ((cache.size() > capacity || storedBytes > maxBytes) && eldest.hasNext()) {
+            Object value = eldest.next();
+            if (value == keep) {
+                continue;
+            }
+            storedBytes -= bytes(value);
+            eldest.remove();
+        }
+    }
+
+    private static long bytes(Object value) {
+        if (value instanceof RLTransitionModel) {
+            return ((RLTransitionModel) value).getMemoryUsageBytes();
+        }
+        return ((RLStochasticTransitions) value).getMemoryUsageBytes();
+    }
+
+    // Number of layouts currently cached
+    public synchronized int size() {
+        return layouts.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    // Approximate memory held by the cached layouts and transition tables in bytes
+    public synchronized long getMemoryUsageBytes() {
+        return storedBytes;
+    }
+
+    // Number of compiled transition tables currently cached
+    public synchronized int transitionsSize() {
+        return transitions.size();
+    }
+
+    // Removes every cached layout and transition table, worlds keep the ones they already hold
+    public synchronized void clear() {
+        layouts.clear();
+        transitions.clear();
+        storedBytes = 0;
+    }
+
+    // Cache key: the seed plus every setting that changes the compiled layout
+    private static final class Key {
+        private final long seed;
+        private final boolean large;
+        private final int gridSize;
+        private final int maxPuddles;
+        private final int puddleSize;
+        private final double defaultReward;
+        private final double puddleReward;
+        private final double goalReward;
+
+        Key(long seed, boolean large, int gridSize, int maxPuddles, int puddleSize, double defaultReward, double puddleReward, double goalReward) {
+            this.seed = seed;
+            this.large = large;
+            this.gridSize = gridSize;
+            this.maxPuddles = maxPuddles;
+            this.puddleSize = puddleSize;
+            this.defaultReward = defaultReward;
+            this.puddleReward = puddleReward;
+            this.goalReward = goalReward;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return seed == other.seed && large == other.large && gridSize == other.gridSize && maxPuddles == other.maxPuddles
+                    && puddleSize == other.puddleSize
+                    && Double.compare(defaultReward, other.defaultReward) == 0
+                    && Double.compare(puddleReward, other.puddleReward) == 0
+                    && Double.compare(goalReward, other.goalReward) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(seed, large, gridSize, maxPuddles, puddleSize, defaultReward, puddleReward, goalReward);
+        }
+    }
+
+    // Transition cache key: the layout instance and the three probabilities
+    private static final class TransitionsKey {
+        private final RLTransitionModel layout;
+        private final double slipProb;
+        private final double puddleSlipProb;
+        private final double stayProb;
+
+        TransitionsKey(RLTransitionModel layout, double slipProb, double puddleSlipProb, double stayProb) {
+            this.layout = layout;
+            this.slipProb = slipProb;
+            this.puddleSlipProb = puddleSlipProb;
+            this.stayProb = stayProb;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof TransitionsKey)) {
+                return false;
+            }
+            TransitionsKey other = (TransitionsKey) o;
+            return layout == other.layout
+                    && Double.compare(slipProb, other.slipProb) == 0
+                    && Double.compare(puddleSlipProb, other.puddleSlipProb) == 0
+                    && Double.compare(stayProb, other.stayProb) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(layout) + Objects.hash(slipProb, puddleSlipProb, stayProb);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package ygraph.ai.smartfox.rl;
+
+// This enum defines how often a user's puddle layout changes, set with LAYOUT_MODE in the .env file
+// SESSION - one layout per user session, kept for every episode of that session
+// CLASS - one layout shared by every user in the class (same seed for all sessions)
+// EPISODE - a different layout every episode, drawn from a pool of LAYOUT_POOL_SIZE cached layouts
+public enum RLLayoutMode {
+    SESSION,
+    CLASS,
+    EPISODE
+}
@@ -0,0 +1,452 @@
+package ygraph.ai.smartfox.rl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// This class stores the master Q and V tables in a memory-mapped file, one file per session (the MAPPED table mode)
+// Values are read and written straight in the mapped region, so they live off the Java heap and survive an extension reload without a serialization step
+// File layout (little endian):
+// header: magic (int), format version (int), state count (int), action count (int), session identity (long), 8 reserved bytes
+// Q-values: stateCount * ACTION_COUNT doubles at HEADER_BYTES + (stateId * ACTION_COUNT + action) * 8
+// V-values: stateCount doubles right after the Q-values
+// A new store on an existing file with a matching header and session identity reattaches to the stored values, a mismatched file is reset to zeros
+// close() copies every page the snapshots still read onto the heap and drops the mapping, the region is unmapped once it is garbage collected
+// Writes are synchronized on the store like RLTableStore, the operating system writes the pages back to the file and flush() forces it
+// Snapshots do not copy the file: a snapshot reads pages from the file until a page is about to be written, the store then copies that page
+// (RLTableSnapshot.PAGE_STATES states) onto the heap for the newest snapshot before writing, older snapshots read the pages they never copied from the next newer snapshot
+public class RLMappedTableStore implements RLValueStore {
+    private static final int MAGIC = 0x524C5154; // "RLQT"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+
+    private final int stateCount;
+    private final File file;
+    private final long sessionId;
+    // Mapped region of the file, null once the store is closed
+    private volatile MappedByteBuffer buffer;
+    private final int vOffset;
+    private final boolean reattached;
+
+    // Version of the tables and the last snapshot handed out, which is the snapshot that copies pages before they are written
+    private volatile long version;
+    private MappedSnapshot lastSnapshot;
+
+    // Maps (creating if needed) the table file of a gridSize x gridSize world that is not tied to a session
+    public RLMappedTableStore(int gridSize, File file) throws IOException {
+        this(gridSize, file, null);
+    }
+
+    // Maps (creating if needed) the table file of a session, a file written by another session is reset
+    public RLMappedTableStore(int gridSize, File file, String sessionName) throws IOException {
+        if (gridSize <= 0) {
+            throw new IllegalArgumentException("Grid size must be positive: " + gridSize);
+        }
+        long states = (long) gridSize * gridSize;
+        long length = HEADER_BYTES + states * (ACTION_COUNT + 1) * 8L;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Grid size too large for a mapped table file: " + gridSize);
+        }
+        this.stateCount = (int) states;
+        this.file = file;
+        this.sessionId = sessionId(sessionName);
+        this.vOffset = HEADER_BYTES + stateCount * ACTION_COUNT * 8;
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Could not create table directory: " + parent);
+        }
+        boolean existed = file.exists() && file.length() == length;
+        MappedByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(length);
+            // The mapping stays valid after the channel is closed
+            mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        }
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        this.buffer = mapped;
+
+        boolean shape = existed && mapped.getInt(0) == MAGIC && mapped.getInt(4) == FORMAT_VERSION
+                && mapped.getInt(8) == stateCount && mapped.getInt(12) == ACTION_COUNT;
+        this.reattached = shape && mapped.getLong(16) == sessionId;
+        if (shape && !reattached) {
+            System.err.println("Table file " + file.getAbsolutePath() + " belongs to another session. Resetting it.");
+        }
+        if (!reattached) {
+            clear();
+        }
+        // Version 0 promises tables of zeros, values picked up from the file count as one write
+        this.version = reattached ? 1 : 0;
+    }
+
+    // 64-bit identity of a session name stored in the header, 0 for a store without a session
+    static long sessionId(String sessionName) {
+        if (sessionName == null) {
+            return 0L;
+        }
+        long id = sessionName.length();
+        for (byte b : sessionName.getBytes(StandardCharsets.UTF_8)) {
+            id = RLSeeds.mix(id ^ (b & 0xFF));
+        }
+        return id == 0L ? 1L : id;
+    }
+
+    // Gets the mapped region, the store cannot be used once it is closed
+    private MappedByteBuffer mapped() {
+        MappedByteBuffer mapped = buffer;
+        if (mapped == null) {
+            throw new IllegalStateException("Mapped table file is closed: " + file.getAbsolutePath());
+        }
+        return mapped;
+    }
+
+    // Writes the header that identifies the file format and table shape
+    private void writeHeader() {
+        MappedByteBuffer mapped = mapped();
+        mapped.putInt(0, MAGIC);
+        mapped.putInt(4, FORMAT_VERSION);
+        mapped.putInt(8, stateCount);
+        mapped.putInt(12, ACTION_COUNT);
+        mapped.putLong(16, sessionId);
+    }
+
+    private static int qOffset(int stateId, int action) {
+        return HEADER_BYTES + (stateId * ACTION_COUNT + action) * 8;
+    }
+
+    private int vOffset(int stateId) {
+        return vOffset + stateId * 8;
+    }
+
+    // Checks if the store picked up values written by an earlier session
+    public boolean isReattached() {
+        return reattached;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public boolean isValidState(int stateId) {
+        return stateId >= 0 && stateId < stateCount;
+    }
+
+    public boolean isValidStateAction(int stateId, int action) {
+        return isValidState(stateId) && action >= 0 && action < ACTION_COUNT;
+    }
+
+    public double getQ(int stateId, int action) {
+        return mapped().getDouble(qOffset(stateId, action));
+    }
+
+    public double getV(int stateId) {
+        return mapped().getDouble(vOffset(stateId));
+    }
+
+    public synchronized boolean setQ(int stateId, int action, double qValue) {
+        if (!isValidStateAction(stateId, action)) {
+            return false;
+        }
+        preserveQ(stateId);
+        mapped().putDouble(qOffset(stateId, action), qValue);
+        version++;
+        return true;
+    }
+
+    public synchronized boolean setV(int stateId, double vValue) {
+        if (!isValidState(stateId)) {
+            return false;
+        }
+        preserveV(stateId);
+        mapped().putDouble(vOffset(stateId), vValue);
+        version++;
+        return true;
+    }
+
+    public synchronized int setQValues(int[] stateIds, int[] actions, double[] values) {
+        MappedByteBuffer mapped = mapped();
+        int count = Math.min(stateIds.length, Math.min(actions.length, values.length));
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            if (isValidStateAction(stateIds[i], actions[i])) {
+                preserveQ(stateIds[i]);
+                mapped.putDouble(qOffset(stateIds[i], actions[i]), values[i]);
+                applied++;
+            }
+        }
+        version++;
+        return applied;
+    }
+
+    public synchronized int setVValues(int[] stateIds, double[] values) {
+        MappedByteBuffer mapped = mapped();
+        int count = Math.min(stateIds.length, values.length);
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            if (isValidState(stateIds[i])) {
+                preserveV(stateIds[i]);
+                mapped.putDouble(vOffset(stateIds[i]), values[i]);
+                applied++;
+            }
+        }
+        version++;
+        return applied;
+    }
+
+    public synchronized double[] getQRow(int stateId, double[] out) {
+        MappedByteBuffer mapped = mapped();
+        for (int a = 0; a < ACTION_COUNT; a++) {
+            out[a] = mapped.getDouble(qOffset(stateId, a));
+        }
+        return out;
+    }
+
+    public synchronized void setQRow(int stateId, double[] row) {
+        MappedByteBuffer mapped = mapped();
+        preserveQ(stateId);
+        for (int a = 0; a < ACTION_COUNT; a++) {
+            mapped.putDouble(qOffset(stateId, a), row[a]);
+        }
+        version++;
+    }
+
+    public int argmaxQ(int stateId) {
+        int best = 0;
+        double bestValue = getQ(stateId, 0);
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            double value = getQ(stateId, a);
+            if (value > bestValue) {
+                bestValue = value;
+                best = a;
+            }
+        }
+        return best;
+    }
+
+    public double maxQ(int stateId) {
+        double best = getQ(stateId, 0);
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            best = Math.max(best, getQ(stateId, a));
+        }
+        return best;
+    }
+
+    public synchronized int[] greedyPolicy(int[] policyOut) {
+        for (int s = 0; s < stateCount; s++) {
+            policyOut[s] = argmaxQ(s);
+        }
+        return policyOut;
+    }
+
+    public synchronized double[] copyQValues() {
+        MappedByteBuffer mapped = mapped();
+        double[] copy = new double[stateCount * ACTION_COUNT];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = mapped.getDouble(HEADER_BYTES + i * 8);
+        }
+        return copy;
+    }
+
+    public synchronized double[] copyVValues() {
+        MappedByteBuffer mapped = mapped();
+        double[] copy = new double[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            copy[s] = mapped.getDouble(vOffset(s));
+        }
+        return copy;
+    }
+
+    // Zeros every value in the file and rewrites the header, after copying every page the last snapshot still reads from the file
+    public synchronized void clear() {
+        MappedByteBuffer mapped = mapped();
+        preserveAll();
+        byte[] zeros = new byte[8192];
+        int limit = mapped.capacity();
+        for (int position = HEADER_BYTES; position < limit; position += zeros.length) {
+            mapped.position(position);
+            mapped.put(zeros, 0, Math.min(zeros.length, limit - position));
+        }
+        mapped.position(0);
+        writeHeader();
+        version++;
+    }
+
+    // Every state has storage in the file
+    public int getStoredStateCount() {
+        return stateCount;
+    }
+
+    // The values live in the mapped file, not on the heap
+    public long getMemoryUsageBytes() {
+        return 0L;
+    }
+
+    // Size of the mapped file in bytes
+    public long getMappedBytes() {
+        MappedByteBuffer mapped = buffer;
+        return mapped != null ? mapped.capacity() : 0L;
+    }
+
+    // Forces the mapped pages out to the file, a no-op once the store is closed
+    @Override
+    public synchronized void flush() {
+        MappedByteBuffer mapped = buffer;
+        if (mapped != null) {
+            mapped.force();
+        }
+    }
+
+    // Copies every page the last snapshot still reads from the file onto the heap, forces the values out and drops the mapping
+    // The region is not unmapped explicitly, a reader that raced the close could otherwise fault on it, it is released once garbage collected
+    @Override
+    public synchronized void close() {
+        MappedByteBuffer mapped = buffer;
+        if (mapped == null) {
+            return;
+        }
+        preserveAll();
+        mapped.force();
+        buffer = null;
+    }
+
+    public boolean isClosed() {
+        return buffer == null;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Starts a new snapshot on the file unless nothing was written since the last one, no values are copied
+    public synchronized RLTableSnapshot snapshot() {
+        if (lastSnapshot == null || lastSnapshot.getVersion() != version) {
+            mapped();
+            MappedSnapshot snapshot = new MappedSnapshot(this, version);
+            if (lastSnapshot != null) {
+                lastSnapshot.next = snapshot;
+            }
+            lastSnapshot = snapshot;
+        }
+        return lastSnapshot;
+    }
+
+    // Copies every page the last snapshot still reads from the file, callers hold the store lock
+    private void preserveAll() {
+        if (lastSnapshot != null) {
+            for (int page = 0; page < RLTableSnapshot.pageCount(stateCount); page++) {
+                lastSnapshot.qPage(page);
+                lastSnapshot.vPage(page);
+            }
+        }
+    }
+
+    // Copies the Q page of a state for the last snapshot before it is written, callers hold the store lock
+    private void preserveQ(int stateId) {
+        if (lastSnapshot != null) {
+            lastSnapshot.qPage(stateId >>> RLTableSnapshot.PAGE_BITS);
+        }
+    }
+
+    // Copies the V page of a state for the last snapshot before it is written, callers hold the store lock
+    private void preserveV(int stateId) {
+        if (lastSnapshot != null) {
+            lastSnapshot.vPage(stateId >>> RLTableSnapshot.PAGE_BITS);
+        }
+    }
+
+    // Reads a page of Q-values out of the file, callers hold the store lock
+    private double[] readQPage(int page) {
+        MappedByteBuffer mapped = mapped();
+        int first = page << RLTableSnapshot.PAGE_BITS;
+        double[] values = new double[RLTableSnapshot.pageStates(stateCount, page) * ACTION_COUNT];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = mapped.getDouble(qOffset(first, 0) + i * 8);
+        }
+        return values;
+    }
+
+    // Reads a page of V-values out of the file, callers hold the store lock
+    private double[] readVPage(int page) {
+        MappedByteBuffer mapped = mapped();
+        int first = page << RLTableSnapshot.PAGE_BITS;
+        double[] values = new double[RLTableSnapshot.pageStates(stateCount, page)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = mapped.getDouble(vOffset(first + i));
+        }
+        return values;
+    }
+
+    // Snapshot whose pages are copied out of the file on first use or just before the store writes them
+    // A page of the snapshot never changes once set, so reads of copied pages take no lock
+    // A page this snapshot never copied was not written before the next snapshot was taken, so it is read through that snapshot
+    private static final class MappedSnapshot extends RLTableSnapshot {
+        private final RLMappedTableStore store;
+        private final AtomicReferenceArray<double[]> qPages;
+        private final AtomicReferenceArray<double[]> vPages;
+        // Next newer snapshot of the store, guarded by the store lock
+        private MappedSnapshot next;
+
+        MappedSnapshot(RLMappedTableStore store, long version) {
+            super(version, store.stateCount);
+            this.store = store;
+            int pages = RLTableSnapshot.pageCount(store.stateCount);
+            this.qPages = new AtomicReferenceArray<>(pages);
+            this.vPages = new AtomicReferenceArray<>(pages);
+        }
+
+        double[] qPage(int page) {
+            double[] values = qPages.get(page);
+            return values != null ? values : page(page, true);
+        }
+
+        double[] vPage(int page) {
+            double[] values = vPages.get(page);
+            return values != null ? values : page(page, false);
+        }
+
+        // Finds a page along the chain of newer snapshots (or in the file after the newest) and sets it in every snapshot passed on the way
+        private double[] page(int page, boolean q) {
+            synchronized (store) {
+                double[] values = null;
+                MappedSnapshot holder = this;
+                while (true) {
+                    values = (q ? holder.qPages : holder.vPages).get(page);
+                    if (values != null) {
+                        break;
+                    }
+                    if (holder.next == null) {
+                        values = q ? store.readQPage(page) : store.readVPage(page);
+                        break;
+                    }
+                    holder = holder.next;
+                }
+                for (MappedSnapshot snapshot = this; ; snapshot = snapshot.next) {
+                    (q ? snapshot.qPages : snapshot.vPages).set(page, values);
+                    if (snapshot == holder) {
+                        break;
+                    }
+                }
+                return values;
+            }
+        }
+
+        @Override
+        public double getQ(int stateId, int action) {
+            return qPage(stateId >>> PAGE_BITS)[(stateId & PAGE_MASK) * ACTION_COUNT + action];
+        }
+
+        @Override
+        public double getV(int stateId) {
+            return vPage(stateId >>> PAGE_BITS)[stateId & PAGE_MASK];
+        }
+    }
+}
@@ -0,0 +1,513 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// This class computes reference solutions (V*, Q* and an optimal policy) of a compiled layout, so the mirrored tables of a student can be compared against ground truth
+// Three methods are supported, selected with PLANNER_METHOD in the configuration:
+// VALUE_ITERATION - synchronous (Jacobi) sweeps that read the previous sweep's values and write a second array
+// GAUSS_SEIDEL - in-place sweeps that already use the values updated earlier in the same sweep, usually converging in fewer sweeps
+// POLICY_ITERATION - alternates in-place evaluation of a fixed policy with greedy improvement until the policy stops changing
+// PRIORITIZED_SWEEPING - backs up states in order of their Bellman error instead of sweeping (see RLPrioritizedSweeper, which also re-solves incrementally after a change)
+// The agent can only take the valid actions of a state (moves off the grid are not offered), the goal is terminal with V = 0
+// With slippery transitions the backups use the outcome distributions of RLStochasticTransitions instead of the deterministic next state
+// Grids with at least PARALLEL_THRESHOLD states are swept with fork-join over blocks of rows:
+// synchronous sweeps update all blocks at once, in-place sweeps first update the even blocks and then the odd ones so no two blocks running together touch neighbouring rows
+// Sweeps stop when the largest change of a V-value falls below the tolerance or after the sweep limit
+// Two things keep the sweep count low on large grids:
+// values start at DEFAULT_REWARD / (1 - gamma), the value of never reaching the goal, so states far from the goal start (almost) converged
+// in-place sweeps alternate between forward and backward state order, so the goal's value crosses the grid (goal in the last state) in a single backward sweep
+// A solution holds a dense Q*, so layouts with more than MAX_STATES states are refused before solving
+public final class RLPlanner {
+    public static final int PARALLEL_THRESHOLD = 1 << 14;
+    // Largest state count whose dense Q* fits one array when copied out of a solution (see RLSolution.copyQValues)
+    public static final int MAX_STATES = Integer.MAX_VALUE / RLTableStore.ACTION_COUNT;
+
+    // The planning methods
+    public enum Method {
+        VALUE_ITERATION,
+        GAUSS_SEIDEL,
+        POLICY_ITERATION,
+        PRIORITIZED_SWEEPING
+    }
+
+    // Solutions per model (the stochastic transitions if any, otherwise the layout) and discount, the models are weakly held
+    private static final Map<Object, Map<Double, RLSolution>> CACHE = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private static final int OP_OPTIMAL = 0;
+    private static final int OP_EVALUATE = 1;
+    private static final int OP_IMPROVE = 2;
+
+    private final Method method;
+    private final double tolerance;
+    private final int maxSweeps;
+    private final ForkJoinPool pool;
+
+    public RLPlanner(Method method, double tolerance, int maxSweeps) {
+        if (method == null) {
+            throw new IllegalArgumentException("Planner method cannot be null.");
+        }
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Planner tolerance must be positive: " + tolerance);
+        }
+        if (maxSweeps <= 0) {
+            throw new IllegalArgumentException("Planner sweep limit must be positive: " + maxSweeps);
+        }
+        this.method = method;
+        this.tolerance = tolerance;
+        this.maxSweeps = maxSweeps;
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    // Creates a planner with the PLANNER_METHOD, PLANNER_TOLERANCE and PLANNER_MAX_SWEEPS settings
+    public static RLPlanner fromConfig(RLConfig config) {
+        return new RLPlanner(config.getPlannerMethod(), config.getPlannerTolerance(), config.getPlannerMaxSweeps());
+    }
+
+    // Gets the cached solution of a layout (with its slippery transitions, or null for deterministic moves) for a discount, solving it with the configured planner on the first request
+    // Worlds sharing a layout from RLLayoutCache share its solution
+    public static RLSolution solveCached(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma) {
+        Map<Double, RLSolution> byGamma = cacheEntry(layout, transitions);
+        synchronized (byGamma) {
+            RLSolution solution = byGamma.get(gamma);
+            if (solution == null) {
+                solution = fromConfig(RLConfig.get()).solve(layout, transitions, gamma);
+                byGamma.put(gamma, solution);
+            }
+            return solution;
+        }
+    }
+
+    // Gets the cached solution of a layout for a discount without solving, or null
+    static RLSolution getCached(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma) {
+        Map<Double, RLSolution> byGamma = cacheEntry(layout, transitions);
+        synchronized (byGamma) {
+            return byGamma.get(gamma);
+        }
+    }
+
+    // Caches a solution computed elsewhere (an incremental re-solve) unless one is already cached, and returns the cached one
+    static RLSolution putCached(RLTransitionModel layout, RLStochasticTransitions transitions, RLSolution solution) {
+        Map<Double, RLSolution> byGamma = cacheEntry(layout, transitions);
+        synchronized (byGamma) {
+            RLSolution existing = byGamma.putIfAbsent(solution.getGamma(), solution);
+            return existing != null ? existing : solution;
+        }
+    }
+
+    private static Map<Double, RLSolution> cacheEntry(RLTransitionModel layout, RLStochasticTransitions transitions) {
+        Object key = transitions != null ? transitions : layout;
+        synchronized (CACHE) {
+            return CACHE.computeIfAbsent(key, k -> new HashMap<>());
+        }
+    }
+
+    // One-step lookahead value of an action under the values v
+    static double qValue(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, int s, int a, double[] v) {
+        if (transitions == null) {
+            return layout.reward(s, a) + gamma * v[layout.nextState(s, a)];
+        }
+        double expected = 0.0;
+        int count = transitions.outcomeCount(s, a);
+        for (int k = 0; k < count; k++) {
+            expected += transitions.outcomeProbability(s, a, k) * v[transitions.outcomeState(s, a, k)];
+        }
+        return transitions.expectedReward(s, a) + gamma * expected;
+    }
+
+    // Q-value of an action under values stored in pages of RLTableSnapshot.PAGE_STATES states (see RLSolution)
+    static double qValue(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, int s, int a, double[][] v) {
+        if (transitions == null) {
+            int next = layout.nextState(s, a);
+            return layout.reward(s, a) + gamma * v[next >>> RLTableSnapshot.PAGE_BITS][next & RLTableSnapshot.PAGE_MASK];
+        }
+        double expected = 0.0;
+        int count = transitions.outcomeCount(s, a);
+        for (int k = 0; k < count; k++) {
+            int next = transitions.outcomeState(s, a, k);
+            expected += transitions.outcomeProbability(s, a, k) * v[next >>> RLTableSnapshot.PAGE_BITS][next & RLTableSnapshot.PAGE_MASK];
+        }
+        return transitions.expectedReward(s, a) + gamma * expected;
+    }
+
+    // Bellman optimality backup of a state under the values v, 0 for the terminal goal
+    static double backup(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, int s, double[] v) {
+        if (layout.isTerminal(s)) {
+            return 0.0;
+        }
+        double best = Double.NEGATIVE_INFINITY;
+        for (int a : layout.validActions(s)) {
+            double q = qValue(layout, transitions, gamma, s, a, v);
+            if (q > best) {
+                best = q;
+            }
+        }
+        return best;
+    }
+
+    // Bellman optimality backup of a state under paged values
+    static double backup(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, int s, double[][] v) {
+        if (layout.isTerminal(s)) {
+            return 0.0;
+        }
+        double best = Double.NEGATIVE_INFINITY;
+        for (int a : layout.validActions(s)) {
+            double q = qValue(layout, transitions, gamma, s, a, v);
+            if (q > best) {
+                best = q;
+            }
+        }
+        return best;
+    }
+
+    // Fills the Q row and greedy action of a state from the values v into the pages of a solution (NaN for off-grid actions, ties go to the lowest action index)
+    static void fillRow(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, int s, double[] v, double[][] q, int[][] policy) {
+        fillRow(layout, transitions, gamma, s, v, null, q, policy);
+    }
+
+    // Fills the Q row and greedy action of a state from paged values v
+    static void fillRow(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, int s, double[][] v, double[][] q, int[][] policy) {
+        fillRow(layout, transitions, gamma, s, null, v, q, policy);
+    }
+
+    // Exactly one of flat and paged holds the values
+    private static void fillRow(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, int s, double[] flat, double[][] paged,
+                                double[][] q, int[][] policy) {
+        double[] qPage = q[s >>> RLTableSnapshot.PAGE_BITS];
+        int base = (s & RLTableSnapshot.PAGE_MASK) * RLTableStore.ACTION_COUNT;
+        for (int a = 0; a < RLTableStore.ACTION_COUNT; a++) {
+            qPage[base + a] = Double.NaN;
+        }
+        boolean terminal = layout.isTerminal(s);
+        double best = Double.NEGATIVE_INFINITY;
+        int bestAction = -1;
+        for (int a : layout.validActions(s)) {
+            double value = terminal ? 0.0 : flat != null ? qValue(layout, transitions, gamma, s, a, flat) : qValue(layout, transitions, gamma, s, a, paged);
+            qPage[base + a] = value;
+            if (value > best || bestAction < 0) {
+                best = value;
+                bestAction = a;
+            }
+        }
+        policy[s >>> RLTableSnapshot.PAGE_BITS][s & RLTableSnapshot.PAGE_MASK] = bestAction;
+    }
+
+    // Solves a layout for a discount, transitions may be null for deterministic moves
+    public RLSolution solve(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma) {
+        return solve(layout, transitions, gamma, null);
+    }
+
+    // Solves a layout for a discount starting from the values of an earlier solution (null for a cold start), transitions may be null for deterministic moves
+    // A warm start after a change of the rewards or slip probabilities begins close to the new fixed point, so the sweeps stop sooner
+    // PRIORITIZED_SWEEPING always starts cold here, RLPrioritizedSweeper.resolve warm-starts it
+    public RLSolution solve(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, RLSolution warmStart) {
+        if (warmStart != null && warmStart.getStateCount() != layout.getStateCount()) {
+            throw new IllegalArgumentException("Warm start has " + warmStart.getStateCount() + " states, the layout has " + layout.getStateCount() + ".");
+        }
+        if (transitions != null && transitions.getLayout() != layout) {
+            throw new IllegalArgumentException("Transitions were compiled for a different layout.");
+        }
+        if (gamma < 0 || gamma > 1 || Double.isNaN(gamma)) {
+            throw new IllegalArgumentException("Discount must be in [0, 1]: " + gamma);
+        }
+        if (layout.getStateCount() > MAX_STATES) {
+            throw new IllegalArgumentException("Layout too large to solve: " + layout.getStateCount() + " states, at most " + MAX_STATES + ".");
+        }
+        if (method == Method.PRIORITIZED_SWEEPING) {
+            return new RLPrioritizedSweeper(tolerance, (long) maxSweeps * layout.getStateCount()).solve(layout, transitions, gamma);
+        }
+        long start = System.nanoTime();
+        Run run = new Run(layout, transitions, gamma, warmStart);
+        switch (method) {
+            case VALUE_ITERATION:
+                run.valueIteration(false);
+                break;
+            case GAUSS_SEIDEL:
+                run.valueIteration(true);
+                break;
+            default:
+                run.policyIteration();
+                break;
+        }
+        RLSolution solution = run.finish(System.nanoTime() - start);
+        System.out.println("RLPlanner solved " + layout.getGridSize() + "x" + layout.getGridSize() + " layout" + (warmStart != null ? " from a warm start" : "")
+                + ": " + solution);
+        return solution;
+    }
+
+    // Evaluates a fixed policy (one valid action per state) with in-place sweeps and returns V^pi, transitions may be null for deterministic moves
+    // Stops like a solve, when the largest change of a V-value falls below the tolerance or after the sweep limit
+    public double[] evaluate(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, int[] policy) {
+        if (transitions != null && transitions.getLayout() != layout) {
+            throw new IllegalArgumentException("Transitions were compiled for a different layout.");
+        }
+        if (gamma < 0 || gamma > 1 || Double.isNaN(gamma)) {
+            throw new IllegalArgumentException("Discount must be in [0, 1]: " + gamma);
+        }
+        if (policy == null || policy.length < layout.getStateCount()) {
+            throw new IllegalArgumentException("Policy must have an action for each of the " + layout.getStateCount() + " states.");
+        }
+        Run run = new Run(layout, transitions, gamma, null);
+        run.policyEvaluation(policy);
+        return run.values;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public int getMaxSweeps() {
+        return maxSweeps;
+    }
+
+    // State of one solve: the model, the value arrays and the row blocks used for parallel sweeps
+    private final class Run {
+        private final RLTransitionModel layout;
+        private final RLStochasticTransitions transitions;
+        private final double gamma;
+        private final int gridSize;
+        private final int stateCount;
+        private final boolean parallel;
+        private final int blockRows;
+        private final int blockCount;
+
+        private double[] values;
+        private double[] scratch;
+        private int[] policy;
+        private int sweeps;
+        private int iterations;
+        private double residual = Double.POSITIVE_INFINITY;
+
+        // Values start from the warm start's V, or at DEFAULT_REWARD / (1 - gamma) without one, terminal states always start at 0
+        Run(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, RLSolution warmStart) {
+            this.layout = layout;
+            this.transitions = transitions;
+            this.gamma = gamma;
+            this.gridSize = layout.getGridSize();
+            this.stateCount = layout.getStateCount();
+            this.parallel = stateCount >= PARALLEL_THRESHOLD && pool.getParallelism() > 1;
+            this.blockRows = Math.max(1, gridSize / (pool.getParallelism() * 8));
+            this.blockCount = (gridSize + blockRows - 1) / blockRows;
+            if (warmStart != null) {
+                this.values = warmStart.copyVValues();
+                for (int s = 0; s < stateCount; s++) {
+                    if (layout.isTerminal(s)) {
+                        values[s] = 0.0;
+                    }
+                }
+                lowerWarmStart();
+            } else {
+                this.values = new double[stateCount];
+                if (gamma < 1) {
+                    double far = layout.getDefaultReward() / (1 - gamma);
+                    for (int s = 0; s < stateCount; s++) {
+                        values[s] = layout.isTerminal(s) ? 0.0 : far;
+                    }
+                }
+            }
+        }
+
+        // Lowers the warm start values until no backup decreases them: with e the largest decrease of a backup, V - e / (1 - gamma) is below V*,
+        // and since every backup of it is at least as large, the sweeps only raise values towards V*
+        // Left above V*, the stale high values would only fall by a factor gamma per sweep, slower than a cold start
+        private void lowerWarmStart() {
+            if (gamma >= 1) {
+                return;
+            }
+            double decrease = 0.0;
+            for (int s = 0; s < stateCount; s++) {
+                double drop = values[s] - backup(layout, transitions, gamma, s, values);
+                if (drop > decrease) {
+                    decrease = drop;
+                }
+            }
+            if (decrease > 0) {
+                double shift = decrease / (1 - gamma);
+                for (int s = 0; s < stateCount; s++) {
+                    if (!layout.isTerminal(s)) {
+                        values[s] -= shift;
+                    }
+                }
+            }
+        }
+
+        // Value iteration, in place for Gauss-Seidel
+        void valueIteration(boolean inPlace) {
+            if (!inPlace) {
+                scratch = new double[stateCount];
+            }
+            while (sweeps < maxSweeps && residual >= tolerance) {
+                if (inPlace) {
+                    residual = sweep(OP_OPTIMAL, values, values);
+                } else {
+                    residual = sweep(OP_OPTIMAL, values, scratch);
+                    double[] swap = values;
+                    values = scratch;
+                    scratch = swap;
+                }
+                sweeps++;
+            }
+            iterations = sweeps;
+        }
+
+        // Policy iteration, ties keep the current action so the policy cannot cycle
+        // The first policy is greedy on the values after one forward and one backward in-place optimal sweep: starting from an arbitrary policy,
+        // each improvement only extends the region whose policy reaches the goal by about one cell, so a large grid would need as many improvements as its diameter
+        void policyIteration() {
+            policy = new int[stateCount];
+            for (int s = 0; s < stateCount; s++) {
+                policy[s] = layout.validActions(s)[0];
+            }
+            for (int i = 0; i < 2 && sweeps < maxSweeps; i++) {
+                sweep(OP_OPTIMAL, values, values);
+                sweeps++;
+            }
+            sweep(OP_IMPROVE, values, values);
+            while (sweeps < maxSweeps) {
+                residual = Double.POSITIVE_INFINITY;
+                while (sweeps < maxSweeps && residual >= tolerance) {
+                    residual = sweep(OP_EVALUATE, values, values);
+                    sweeps++;
+                }
+                iterations++;
+                if (sweep(OP_IMPROVE, values, values) == 0) {
+                    break;
+                }
+            }
+        }
+
+        // Evaluation of a fixed policy, the policy array is copied so the caller's array is never written
+        void policyEvaluation(int[] fixedPolicy) {
+            policy = Arrays.copyOf(fixedPolicy, stateCount);
+            while (sweeps < maxSweeps && residual >= tolerance) {
+                residual = sweep(OP_EVALUATE, values, values);
+                sweeps++;
+            }
+            iterations = 1;
+        }
+
+        // Runs one sweep of an operation, returning the largest change of a V-value (or the number of changed actions for OP_IMPROVE)
+        private double sweep(int op, double[] in, double[] out) {
+            if (!parallel) {
+                return sweepStates(op, 0, stateCount, in, out);
+            }
+            if (op == OP_OPTIMAL && in != out) {
+                return pool.invoke(new BlockSweep(op, 0, blockCount, 1, in, out));
+            }
+            int half = (blockCount + 1) / 2;
+            double even = pool.invoke(new BlockSweep(op, 0, half, 2, in, out));
+            double odd = blockCount > 1 ? pool.invoke(new BlockSweep(op, 1, blockCount / 2, 2, in, out)) : 0.0;
+            return op == OP_IMPROVE ? even + odd : Math.max(even, odd);
+        }
+
+        // Sweeps the states [from, to), backwards on odd in-place sweeps
+        private double sweepStates(int op, int from, int to, double[] in, double[] out) {
+            double result = 0.0;
+            boolean backward = in == out && (sweeps & 1) == 1;
+            for (int i = from; i < to; i++) {
+                int s = backward ? from + to - 1 - i : i;
+                if (layout.isTerminal(s)) {
+                    out[s] = 0.0;
+                    continue;
+                }
+                if (op == OP_IMPROVE) {
+                    int current = policy[s];
+                    double best = qValue(s, current, in);
+                    int bestAction = current;
+                    for (int a : layout.validActions(s)) {
+                        double q = qValue(s, a, in);
+                        if (q > best) {
+                            best = q;
+                            bestAction = a;
+                        }
+                    }
+                    if (bestAction != current) {
+                        policy[s] = bestAction;
+                        result++;
+                    }
+                    continue;
+                }
+                double old = in[s];
+                double value;
+                if (op == OP_EVALUATE) {
+                    value = qValue(s, policy[s], in);
+                } else {
+                    value = Double.NEGATIVE_INFINITY;
+                    for (int a : layout.validActions(s)) {
+                        double q = qValue(s, a, in);
+                        if (q > value) {
+                            value = q;
+                        }
+                    }
+                }
+                out[s] = value;
+                double change = Math.abs(value - old);
+                if (change > result) {
+                    result = change;
+                }
+            }
+            return result;
+        }
+
+        private double qValue(int s, int a, double[] v) {
+            return RLPlanner.qValue(layout, transitions, gamma, s, a, v);
+        }
+
+        // Builds Q* and the greedy policy from the final values
+        RLSolution finish(long elapsedNanos) {
+            double[][] q = RLSolution.newPages(stateCount, RLTableStore.ACTION_COUNT);
+            int[][] greedy = RLSolution.newPolicyPages(stateCount);
+            for (int s = 0; s < stateCount; s++) {
+                fillRow(layout, transitions, gamma, s, values, q, greedy);
+            }
+            return new RLSolution(method, gamma, stateCount, RLSolution.toPages(values), q, greedy, sweeps, iterations, (long) sweeps * stateCount,
+                    residual, residual < tolerance, elapsedNanos);
+        }
+
+        // Sweeps the row blocks first, first + stride, ... (count of them), splitting in halves down to single blocks
+        private final class BlockSweep extends RecursiveTask<Double> {
+            private static final long serialVersionUID = 1L;
+
+            private final int op;
+            private final int first;
+            private final int count;
+            private final int stride;
+            private final double[] in;
+            private final double[] out;
+
+            BlockSweep(int op, int first, int count, int stride, double[] in, double[] out) {
+                this.op = op;
+                this.first = first;
+                this.count = count;
+                this.stride = stride;
+                this.in = in;
+                this.out = out;
+            }
+
+            @Override
+            protected Double compute() {
+                if (count == 1) {
+                    int fromRow = first * blockRows;
+                    int toRow = Math.min(fromRow + blockRows, gridSize);
+                    return sweepStates(op, fromRow * gridSize, toRow * gridSize, in, out);
+                }
+                int left = count / 2;
+                BlockSweep leftTask = new BlockSweep(op, first, left, stride, in, out);
+                BlockSweep rightTask = new BlockSweep(op, first + left * stride, count - left, stride, in, out);
+                leftTask.fork();
+                double right = rightTask.compute();
+                double leftResult = leftTask.join();
+                return op == OP_IMPROVE ? leftResult + right : Math.max(leftResult, right);
+            }
+        }
+    }
+}
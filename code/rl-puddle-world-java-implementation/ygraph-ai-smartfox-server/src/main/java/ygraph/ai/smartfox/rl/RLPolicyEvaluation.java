@@ -0,0 +1,87 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+
+// This class is the immutable result of rolling out an uploaded policy on the server (see RLPolicyEvaluator)
+// Returns are discounted and use the raw rewards of the layout (no shaping), like the episode returns of RLGameUser
+// Step counts are binned into histogram bins of binWidth steps: bin i counts episodes of i * binWidth + 1 to (i + 1) * binWidth steps
+public final class RLPolicyEvaluation {
+    private final int episodes;
+    private final int successes;
+    private final int maxSteps;
+    private final double meanReturn;
+    private final double returnStd;
+    private final double meanSteps;
+    private final int[] stepHistogram;
+    private final int binWidth;
+    private final long seed;
+    private final long elapsedNanos;
+
+    RLPolicyEvaluation(int episodes, int successes, int maxSteps, double meanReturn, double returnStd, double meanSteps,
+                       int[] stepHistogram, int binWidth, long seed, long elapsedNanos) {
+        this.episodes = episodes;
+        this.successes = successes;
+        this.maxSteps = maxSteps;
+        this.meanReturn = meanReturn;
+        this.returnStd = returnStd;
+        this.meanSteps = meanSteps;
+        this.stepHistogram = stepHistogram;
+        this.binWidth = binWidth;
+        this.seed = seed;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public int getEpisodes() {
+        return episodes;
+    }
+
+    // Number of episodes that reached the goal within maxSteps
+    public int getSuccesses() {
+        return successes;
+    }
+
+    public double getSuccessRate() {
+        return episodes == 0 ? 0.0 : (double) successes / episodes;
+    }
+
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    public double getMeanReturn() {
+        return meanReturn;
+    }
+
+    // Standard deviation of the episode returns
+    public double getReturnStd() {
+        return returnStd;
+    }
+
+    public double getMeanSteps() {
+        return meanSteps;
+    }
+
+    public int[] getStepHistogram() {
+        return Arrays.copyOf(stepHistogram, stepHistogram.length);
+    }
+
+    public int getBinWidth() {
+        return binWidth;
+    }
+
+    // Seed the rollouts were drawn from, evaluating the same policy with the same seed gives the same result
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RLPolicyEvaluation{episodes=" + episodes + ", success=" + getSuccessRate() + ", meanReturn=" + meanReturn + ", returnStd=" + returnStd
+                + ", meanSteps=" + meanSteps + ", histogram=" + Arrays.toString(stepHistogram) + " (bin " + binWidth + "), seed=" + seed
+                + ", ms=" + elapsedNanos / 1_000_000.0 + "}";
+    }
+}
@@ -0,0 +1,195 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+// This class rolls out a policy uploaded by a client against a layout on the server, replacing one network round trip per step with one request per evaluation
+// A policy is either greedy, one action per state, or stochastic, four unsigned byte weights per state with the action drawn in proportion to its weight
+// Episodes start in state 0 and end at the goal or after maxSteps steps, moves follow the layout's dynamics (slippery if the world's transitions are)
+// Episodes are rolled out in chunks of CHUNK_EPISODES, each chunk draws from its own SplittableRandom seeded from (seed, chunk index),
+// so chunks run in parallel on the common fork-join pool and the result only depends on the policy and the seed
+// A greedy policy on deterministic moves repeats the same episode every time, so it is rolled out once
+// getWorstCaseSteps gives the most steps an evaluation can take, so callers can hold requests to a step budget before running them
+public final class RLPolicyEvaluator {
+    public static final int CHUNK_EPISODES = 1024;
+    public static final int HISTOGRAM_BINS = 20;
+
+    private final RLTransitionModel layout;
+    private final RLStochasticTransitions transitions;
+    private final double gamma;
+    private final int maxSteps;
+
+    public RLPolicyEvaluator(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, int maxSteps) {
+        if (transitions != null && transitions.getLayout() != layout) {
+            throw new IllegalArgumentException("Transitions were compiled for a different layout.");
+        }
+        if (maxSteps <= 0) {
+            throw new IllegalArgumentException("Step limit must be positive: " + maxSteps);
+        }
+        this.layout = layout;
+        this.transitions = transitions;
+        this.gamma = gamma;
+        this.maxSteps = maxSteps;
+    }
+
+    // Rolls out a greedy policy, actions[stateId] is the action taken in the state
+    public RLPolicyEvaluation evaluateGreedy(byte[] actions, int episodes, long seed) {
+        if (actions == null || actions.length != layout.getStateCount()) {
+            throw new IllegalArgumentException("Greedy policy needs one action for each of the " + layout.getStateCount() + " states.");
+        }
+        for (int s = 0; s < actions.length; s++) {
+            if (actions[s] < 0 || actions[s] >= RLTableStore.ACTION_COUNT) {
+                throw new IllegalArgumentException("Invalid action " + actions[s] + " for state " + s + ".");
+            }
+        }
+        return evaluate(actions, null, episodes, seed);
+    }
+
+    // Rolls out a stochastic policy, weights[stateId * 4 + action] is the unsigned weight of the action in the state
+    // A state whose weights are all 0 picks its actions uniformly
+    public RLPolicyEvaluation evaluateStochastic(byte[] weights, int episodes, long seed) {
+        if (weights == null || weights.length != layout.getStateCount() * RLTableStore.ACTION_COUNT) {
+            throw new IllegalArgumentException("Stochastic policy needs four action weights for each of the " + layout.getStateCount() + " states.");
+        }
+        return evaluate(null, weights, episodes, seed);
+    }
+
+    private RLPolicyEvaluation evaluate(byte[] actions, byte[] weights, int episodes, long seed) {
+        if (episodes <= 0) {
+            throw new IllegalArgumentException("Episode count must be positive: " + episodes);
+        }
+        long start = System.nanoTime();
+        int binWidth = (int) (((long) maxSteps + HISTOGRAM_BINS - 1) / HISTOGRAM_BINS);
+        int bins = (int) (((long) maxSteps + binWidth - 1) / binWidth);
+        Tally tally;
+        if (weights == null && transitions == null) {
+            tally = new Tally(bins);
+            rollout(actions, null, null, binWidth, tally);
+            tally.scale(episodes);
+        } else {
+            int chunks = (episodes + CHUNK_EPISODES - 1) / CHUNK_EPISODES;
+            Tally[] parts = IntStream.range(0, chunks).parallel()
+                    .mapToObj(chunk -> {
+                        Tally part = new Tally(bins);
+                        SplittableRandom random = new SplittableRandom(RLSeeds.episodeSeed(seed, chunk));
+                        int count = Math.min(CHUNK_EPISODES, episodes - chunk * CHUNK_EPISODES);
+                        for (int i = 0; i < count; i++) {
+                            rollout(actions, weights, random, binWidth, part);
+                        }
+                        return part;
+                    })
+                    .toArray(Tally[]::new);
+            tally = new Tally(bins);
+            for (Tally part : parts) {
+                tally.merge(part);
+            }
+        }
+        double meanReturn = tally.returnSum / tally.episodes;
+        double variance = Math.max(0.0, tally.returnSquareSum / tally.episodes - meanReturn * meanReturn);
+        return new RLPolicyEvaluation(tally.episodes, tally.successes, maxSteps, meanReturn, Math.sqrt(variance),
+                (double) tally.stepSum / tally.episodes, tally.histogram, binWidth, seed, System.nanoTime() - start);
+    }
+
+    // Rolls out one episode into the tally, random is only used by stochastic policies and slippery moves
+    private void rollout(byte[] actions, byte[] weights, SplittableRandom random, int binWidth, Tally tally) {
+        int state = 0;
+        int steps = 0;
+        double discount = 1.0;
+        double episodeReturn = 0.0;
+        boolean reachedGoal = layout.isTerminal(state);
+        while (!reachedGoal && steps < maxSteps) {
+            int action = weights == null ? actions[state] : sampleAction(weights, state, random);
+            int next;
+            double reward;
+            if (transitions != null) {
+                next = transitions.sample(state, action, random.nextDouble());
+                reward = layout.stateReward(next);
+            } else {
+                next = layout.nextState(state, action);
+                reward = layout.reward(state, action);
+            }
+            episodeReturn += discount * reward;
+            discount *= gamma;
+            steps++;
+            state = next;
+            reachedGoal = layout.isTerminal(state);
+        }
+        tally.add(reachedGoal, steps, episodeReturn, binWidth);
+    }
+
+    private static int sampleAction(byte[] weights, int state, SplittableRandom random) {
+        int base = state * RLTableStore.ACTION_COUNT;
+        int total = 0;
+        for (int a = 0; a < RLTableStore.ACTION_COUNT; a++) {
+            total += weights[base + a] & 0xFF;
+        }
+        if (total == 0) {
+            return random.nextInt(RLTableStore.ACTION_COUNT);
+        }
+        int pick = random.nextInt(total);
+        for (int a = 0; a < RLTableStore.ACTION_COUNT - 1; a++) {
+            pick -= weights[base + a] & 0xFF;
+            if (pick < 0) {
+                return a;
+            }
+        }
+        return RLTableStore.ACTION_COUNT - 1;
+    }
+
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    // Most steps rolling out a number of episodes can take: a greedy policy on deterministic moves is rolled out once
+    public long getWorstCaseSteps(boolean greedy, int episodes) {
+        return (greedy && transitions == null ? 1L : episodes) * maxSteps;
+    }
+
+    // Running sums of a set of episodes
+    private static final class Tally {
+        private final int[] histogram;
+        private int episodes;
+        private int successes;
+        private long stepSum;
+        private double returnSum;
+        private double returnSquareSum;
+
+        Tally(int bins) {
+            this.histogram = new int[bins];
+        }
+
+        void add(boolean success, int steps, double episodeReturn, int binWidth) {
+            episodes++;
+            if (success) {
+                successes++;
+            }
+            stepSum += steps;
+            returnSum += episodeReturn;
+            returnSquareSum += episodeReturn * episodeReturn;
+            histogram[Math.max(0, steps - 1) / binWidth]++;
+        }
+
+        // Turns the tally of one episode into the tally of the same episode repeated n times
+        void scale(int n) {
+            episodes *= n;
+            successes *= n;
+            stepSum *= n;
+            returnSum *= n;
+            returnSquareSum *= n;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] *= n;
+            }
+        }
+
+        void merge(Tally other) {
+            episodes += other.episodes;
+            successes += other.successes;
+            stepSum += other.stepSum;
+            returnSum += other.returnSum;
+            returnSquareSum += other.returnSquareSum;
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] += other.histogram[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.stream.IntStream;
+
+// This class is the Markov chain of a fixed policy on a layout: the sparse transition matrix P_pi and the expected reward vector r_pi
+// P_pi is stored in compressed sparse row (CSR) form: the entries of row s are column[rowStart[s]] .. column[rowStart[s + 1] - 1]
+// with their probabilities in probability[], each next state appears once per row (outcomes of different actions landing on the same state are merged)
+// A move only reaches the state itself or one of its four neighbours, so a row has at most MAX_ROW_ENTRIES entries
+// The terminal goal has an empty row and r_pi = 0, so V^pi = r_pi + gamma * P_pi * V^pi holds for every state
+// Rewards are the raw rewards of the layout (no shaping), the expected reward of an action with slippery transitions
+// A policy is either greedy, one action per state, or stochastic, four unsigned byte weights per state like the uploads of RLPolicyEvaluator
+// Grids with at least RLPlanner.PARALLEL_THRESHOLD states are compiled in parallel over states
+public final class RLPolicyMatrix {
+    public static final int MAX_ROW_ENTRIES = 5;
+
+    private final RLTransitionModel layout;
+    private final int stateCount;
+    private final int[] rowStart;
+    private final int[] column;
+    private final double[] probability;
+    private final double[] reward;
+    private final boolean deterministic;
+
+    private RLPolicyMatrix(RLTransitionModel layout, int[] rowStart, int[] column, double[] probability, double[] reward, boolean deterministic) {
+        this.layout = layout;
+        this.stateCount = layout.getStateCount();
+        this.rowStart = rowStart;
+        this.column = column;
+        this.probability = probability;
+        this.reward = reward;
+        this.deterministic = deterministic;
+    }
+
+    // Compiles the chain of a greedy policy, policy[stateId] is the action taken in the state, transitions may be null for deterministic moves
+    public static RLPolicyMatrix forPolicy(RLTransitionModel layout, RLStochasticTransitions transitions, int[] policy) {
+        checkTransitions(layout, transitions);
+        if (policy == null || policy.length != layout.getStateCount()) {
+            throw new IllegalArgumentException("Policy must have an action for each of the " + layout.getStateCount() + " states.");
+        }
+        for (int s = 0; s < policy.length; s++) {
+            if (policy[s] < 0 || policy[s] >= RLTableStore.ACTION_COUNT) {
+                throw new IllegalArgumentException("Invalid action " + policy[s] + " for state " + s + ".");
+            }
+        }
+        return build(layout, transitions, policy, null);
+    }
+
+    // Compiles the chain of a stochastic policy, weights[stateId * 4 + action] is the unsigned weight of the action in the state
+    // A state whose weights are all 0 picks its actions uniformly
+    public static RLPolicyMatrix forWeights(RLTransitionModel layout, RLStochasticTransitions transitions, byte[] weights) {
+        checkTransitions(layout, transitions);
+        if (weights == null || weights.length != layout.getStateCount() * RLTableStore.ACTION_COUNT) {
+            throw new IllegalArgumentException("Stochastic policy needs four action weights for each of the " + layout.getStateCount() + " states.");
+        }
+        return build(layout, transitions, null, weights);
+    }
+
+    private static void checkTransitions(RLTransitionModel layout, RLStochasticTransitions transitions) {
+        if (transitions != null && transitions.getLayout() != layout) {
+            throw new IllegalArgumentException("Transitions were compiled for a different layout.");
+        }
+    }
+
+    // Fills every row into a fixed stride of MAX_ROW_ENTRIES slots, then compacts the rows into CSR arrays
+    private static RLPolicyMatrix build(RLTransitionModel layout, RLStochasticTransitions transitions, int[] policy, byte[] weights) {
+        int stateCount = layout.getStateCount();
+        int[] slotColumn = new int[stateCount * MAX_ROW_ENTRIES];
+        double[] slotProbability = new double[stateCount * MAX_ROW_ENTRIES];
+        int[] counts = new int[stateCount];
+        double[] reward = new double[stateCount];
+        IntStream states = IntStream.range(0, stateCount);
+        if (stateCount >= RLPlanner.PARALLEL_THRESHOLD) {
+            states = states.parallel();
+        }
+        states.forEach(s -> reward[s] = fillRow(layout, transitions, policy, weights, s, slotColumn, slotProbability, counts));
+
+        int[] rowStart = new int[stateCount + 1];
+        boolean deterministic = true;
+        for (int s = 0; s < stateCount; s++) {
+            rowStart[s + 1] = rowStart[s] + counts[s];
+            if (counts[s] > 1) {
+                deterministic = false;
+            }
+        }
+        int[] column = new int[rowStart[stateCount]];
+        double[] probability = new double[rowStart[stateCount]];
+        for (int s = 0; s < stateCount; s++) {
+            System.arraycopy(slotColumn, s * MAX_ROW_ENTRIES, column, rowStart[s], counts[s]);
+            System.arraycopy(slotProbability, s * MAX_ROW_ENTRIES, probability, rowStart[s], counts[s]);
+        }
+        return new RLPolicyMatrix(layout, rowStart, column, probability, reward, deterministic);
+    }
+
+    // Fills the slots of row s and returns r_pi(s)
+    private static double fillRow(RLTransitionModel layout, RLStochasticTransitions transitions, int[] policy, byte[] weights,
+                                  int s, int[] slotColumn, double[] slotProbability, int[] counts) {
+        if (layout.isTerminal(s)) {
+            return 0.0;
+        }
+        int total = 0;
+        if (weights != null) {
+            for (int a = 0; a < RLTableStore.ACTION_COUNT; a++) {
+                total += weights[s * RLTableStore.ACTION_COUNT + a] & 0xFF;
+            }
+        }
+        double expectedReward = 0.0;
+        for (int a = 0; a < RLTableStore.ACTION_COUNT; a++) {
+            double actionProbability;
+            if (weights == null) {
+                actionProbability = policy[s] == a ? 1.0 : 0.0;
+            } else if (total == 0) {
+                actionProbability = 1.0 / RLTableStore.ACTION_COUNT;
+            } else {
+                actionProbability = (double) (weights[s * RLTableStore.ACTION_COUNT + a] & 0xFF) / total;
+            }
+            if (actionProbability == 0.0) {
+                continue;
+            }
+            if (transitions == null) {
+                expectedReward += actionProbability * layout.reward(s, a);
+                addEntry(s, layout.nextState(s, a), actionProbability, slotColumn, slotProbability, counts);
+            } else {
+                expectedReward += actionProbability * transitions.expectedReward(s, a);
+                int outcomes = transitions.outcomeCount(s, a);
+                for (int k = 0; k < outcomes; k++) {
+                    addEntry(s, transitions.outcomeState(s, a, k), actionProbability * transitions.outcomeProbability(s, a, k),
+                            slotColumn, slotProbability, counts);
+                }
+            }
+        }
+        return expectedReward;
+    }
+
+    // Adds probability to the entry of next in row s, merging it with an existing entry for the same state
+    private static void addEntry(int s, int next, double p, int[] slotColumn, double[] slotProbability, int[] counts) {
+        int base = s * MAX_ROW_ENTRIES;
+        for (int i = 0; i < counts[s]; i++) {
+            if (slotColumn[base + i] == next) {
+                slotProbability[base + i] += p;
+                return;
+            }
+        }
+        if (counts[s] == MAX_ROW_ENTRIES) {
+            throw new IllegalStateException("State " + s + " reaches more than " + MAX_ROW_ENTRIES + " states in one move.");
+        }
+        slotColumn[base + counts[s]] = next;
+        slotProbability[base + counts[s]] = p;
+        counts[s]++;
+    }
+
+    public RLTransitionModel getLayout() {
+        return layout;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    // Number of stored entries of P_pi
+    public int getEntryCount() {
+        return rowStart[stateCount];
+    }
+
+    // Checks if every row has at most one entry, which holds for a greedy policy on deterministic moves
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    public int rowStart(int stateId) {
+        return rowStart[stateId];
+    }
+
+    public int rowEnd(int stateId) {
+        return rowStart[stateId + 1];
+    }
+
+    public int column(int entry) {
+        return column[entry];
+    }
+
+    public double probability(int entry) {
+        return probability[entry];
+    }
+
+    // Expected immediate reward r_pi of a state
+    public double reward(int stateId) {
+        return reward[stateId];
+    }
+}
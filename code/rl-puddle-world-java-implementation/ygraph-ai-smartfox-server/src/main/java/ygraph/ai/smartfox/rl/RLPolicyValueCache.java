@@ -0,0 +1,130 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.function.Supplier;
+
+// This class is a bounded cache of exact policy values (see RLExactPolicyEvaluator) keyed by the uploaded policy and the layout it was solved on
+// Layouts and transitions are shared immutable instances (see RLLayoutCache), so they are compared by identity, the policy bytes by a 64-bit hash and then by content
+// A client that uploads the same policy again, or many clients that upload the same policy on a shared layout, reuse one solve
+// The cache is bounded by the number of V-values it holds, the least recently used entries are evicted first
+// Results that stopped at the sweep or time limit are cached too, so a policy that does not converge costs its budget once
+public class RLPolicyValueCache {
+    private final long capacityStates;
+    private final LinkedHashMap<Key, RLExactPolicyEvaluator.Result> results = new LinkedHashMap<>(16, 0.75f, true);
+    private long storedStates;
+    private long hits;
+    private long misses;
+
+    // capacityStates is the most V-values held over all entries, 0 disables the cache
+    public RLPolicyValueCache(long capacityStates) {
+        if (capacityStates < 0) {
+            throw new IllegalArgumentException("Policy value cache capacity cannot be negative: " + capacityStates);
+        }
+        this.capacityStates = capacityStates;
+    }
+
+    // Gets the values of a policy on a layout, solving the matrix built by the supplier on a miss
+    // greedy tells whether the policy bytes are one action per state or four weights per state
+    public RLExactPolicyEvaluator.Result get(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, boolean greedy, byte[] policy,
+                                             RLExactPolicyEvaluator evaluator, Supplier<RLPolicyMatrix> matrix) {
+        Key key = new Key(layout, transitions, gamma, greedy, policy);
+        synchronized (this) {
+            RLExactPolicyEvaluator.Result result = results.get(key);
+            if (result != null) {
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+        // Solved outside the lock, two threads missing on the same key both solve and the second result replaces the first
+        RLExactPolicyEvaluator.Result result = evaluator.solve(matrix.get(), gamma);
+        put(key, result);
+        return result;
+    }
+
+    private synchronized void put(Key key, RLExactPolicyEvaluator.Result result) {
+        long states = result.getValues().length;
+        if (states > capacityStates) {
+            return;
+        }
+        RLExactPolicyEvaluator.Result previous = results.put(key, result);
+        if (previous != null) {
+            storedStates -= previous.getValues().length;
+        }
+        storedStates += states;
+        Iterator<RLExactPolicyEvaluator.Result> eldest = results.values().iterator();
+        while (storedStates > capacityStates && eldest.hasNext()) {
+            storedStates -= eldest.next().getValues().length;
+            eldest.remove();
+        }
+    }
+
+    // Number of cached policies
+    public synchronized int size() {
+        return results.size();
+    }
+
+    // Number of V-values held over all cached policies
+    public synchronized long getStoredStates() {
+        return storedStates;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        results.clear();
+        storedStates = 0;
+    }
+
+    // Cache key: the layout and transitions instances, the discount and the policy bytes
+    private static final class Key {
+        private final RLTransitionModel layout;
+        private final RLStochasticTransitions transitions;
+        private final long gammaBits;
+        private final boolean greedy;
+        private final byte[] policy;
+        private final long policyHash;
+
+        Key(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, boolean greedy, byte[] policy) {
+            this.layout = layout;
+            this.transitions = transitions;
+            this.gammaBits = Double.doubleToLongBits(gamma);
+            this.greedy = greedy;
+            this.policy = policy;
+            long hash = greedy ? 1L : 2L;
+            for (byte b : policy) {
+                hash = RLSeeds.mix(hash ^ (b & 0xFF));
+            }
+            this.policyHash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return layout == other.layout && transitions == other.transitions && gammaBits == other.gammaBits && greedy == other.greedy
+                    && policyHash == other.policyHash && Arrays.equals(policy, other.policy);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = System.identityHashCode(layout);
+            result = 31 * result + System.identityHashCode(transitions);
+            result = 31 * result + Long.hashCode(gammaBits);
+            return 31 * result + Long.hashCode(policyHash);
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+// This class solves layouts with prioritized sweeping: single-state Bellman backups taken in order of their Bellman error |backup(s) - V(s)|
+// Its main use is re-solving after a puddle edit starting from the previous solution:
+// only the changed cells and their neighbours are queued at first, and a backup of s re-queues the states that can move into s (its grid neighbours and s itself),
+// so the work follows the region whose values actually change instead of sweeping the whole grid
+// A change of DEFAULT_REWARD, PUDDLE_REWARD, GOAL_REWARD or the slip probabilities touches every state, so it is re-solved with Gauss-Seidel sweeps instead,
+// started from the previous values
+// Moves and slips only ever reach a neighbouring cell or stay in place, so the predecessors of a state are always among its neighbours and itself
+// The queue is an indexed binary max-heap over primitive arrays (state -> heap slot), so re-prioritizing a queued state is O(log n) without boxing
+// Backups stop when the largest Bellman error left is below the tolerance (the same bound as a value iteration sweep residual) or after the backup limit
+// Q* and the policy are then rebuilt only for the rows next to a changed value, the pages holding no such row are shared with the previous solution
+// The heap, slot and priority arrays and the marks of changed states live in a Workspace reused across runs of the same state count,
+// a run only resets the entries it touched, so a re-solve costs time and memory in proportion to the states it visits and the pages it changes
+public final class RLPrioritizedSweeper {
+    // States held by idle workspaces before the oldest are dropped, about 21 bytes each
+    static final long MAX_IDLE_STATES = 1 << 22;
+    private static final int UPDATED = 1;
+    private static final int DIRTY = 2;
+
+    private final double tolerance;
+    private final long maxBackups;
+
+    public RLPrioritizedSweeper(double tolerance, long maxBackups) {
+        if (!(tolerance > 0)) {
+            throw new IllegalArgumentException("Planner tolerance must be positive: " + tolerance);
+        }
+        if (maxBackups <= 0) {
+            throw new IllegalArgumentException("Backup limit must be positive: " + maxBackups);
+        }
+        this.tolerance = tolerance;
+        this.maxBackups = maxBackups;
+    }
+
+    // Creates a sweeper with the PLANNER_TOLERANCE setting and a backup limit of PLANNER_MAX_SWEEPS full sweeps of a grid of the given size
+    public static RLPrioritizedSweeper fromConfig(RLConfig config, int stateCount) {
+        return new RLPrioritizedSweeper(config.getPlannerTolerance(), (long) config.getPlannerMaxSweeps() * stateCount);
+    }
+
+    // Solves a layout from scratch: values start at DEFAULT_REWARD / (1 - gamma) like RLPlanner and every state is queued
+    public RLSolution solve(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma) {
+        checkModel(layout, transitions, gamma);
+        long start = System.nanoTime();
+        int stateCount = layout.getStateCount();
+        double[][] values = RLSolution.newPages(stateCount, 1);
+        if (gamma < 1) {
+            double far = layout.getDefaultReward() / (1 - gamma);
+            for (int s = 0; s < stateCount; s++) {
+                values[s >>> RLTableSnapshot.PAGE_BITS][s & RLTableSnapshot.PAGE_MASK] = layout.isTerminal(s) ? 0.0 : far;
+            }
+        }
+        Workspace workspace = Workspace.acquire(stateCount);
+        try {
+            Run run = new Run(layout, transitions, gamma, values, null, workspace);
+            for (int s = 0; s < stateCount; s++) {
+                run.requeue(s);
+            }
+            run.drain();
+            double[][] q = RLSolution.newPages(stateCount, RLTableStore.ACTION_COUNT);
+            int[][] policy = RLSolution.newPolicyPages(stateCount);
+            for (int s = 0; s < stateCount; s++) {
+                RLPlanner.fillRow(layout, transitions, gamma, s, values, q, policy);
+            }
+            RLSolution solution = run.finish(q, policy, System.nanoTime() - start);
+            System.out.println("RLPrioritizedSweeper solved " + layout.getGridSize() + "x" + layout.getGridSize() + " layout: " + solution);
+            return solution;
+        } finally {
+            workspace.release();
+        }
+    }
+
+    // Re-solves a layout starting from the solution of a previous version of it
+    // changedStates lists the cells whose reward or puddle status changed, null means every state may have changed (reward parameters or slip probabilities)
+    // A change of every state leaves nothing to prioritize, every error shrinks by gamma per backup, so that case is solved with Gauss-Seidel sweeps
+    // started from the previous values instead
+    // The new solution shares every page of V, Q and the policy that holds no changed state with the previous one
+    public RLSolution resolve(RLSolution previous, RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, int[] changedStates) {
+        checkModel(layout, transitions, gamma);
+        if (previous == null) {
+            throw new IllegalArgumentException("Previous solution cannot be null.");
+        }
+        if (previous.getStateCount() != layout.getStateCount()) {
+            throw new IllegalArgumentException("Previous solution has " + previous.getStateCount() + " states, the layout has " + layout.getStateCount() + ".");
+        }
+        if (previous.getGamma() != gamma) {
+            throw new IllegalArgumentException("Previous solution was solved for gamma " + previous.getGamma() + ", not " + gamma + ".");
+        }
+        int stateCount = layout.getStateCount();
+        if (changedStates == null) {
+            int maxSweeps = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBackups / stateCount));
+            return new RLPlanner(RLPlanner.Method.GAUSS_SEIDEL, tolerance, maxSweeps).solve(layout, transitions, gamma, previous);
+        }
+        for (int changed : changedStates) {
+            if (!layout.isValidState(changed)) {
+                throw new IllegalArgumentException("Changed state is not on the grid: " + changed);
+            }
+        }
+        long start = System.nanoTime();
+        Workspace workspace = Workspace.acquire(stateCount);
+        try {
+            int pageCount = RLTableSnapshot.pageCount(stateCount);
+            Run run = new Run(layout, transitions, gamma, previous.vPages().clone(), new boolean[pageCount], workspace);
+            for (int changed : changedStates) {
+                // A changed cell alters the rewards of moves into it and, with slippery puddles, its own outcome distribution
+                markWithNeighbours(layout, changed, workspace, DIRTY);
+                run.requeueWithPredecessors(changed);
+            }
+            run.drain();
+
+            // Rows whose Q-values read a changed value: the updated states and the states that can move into them
+            int touched = workspace.touchedCount;
+            for (int i = 0; i < touched; i++) {
+                int s = workspace.touched[i];
+                if ((workspace.marks[s] & UPDATED) != 0) {
+                    markWithNeighbours(layout, s, workspace, DIRTY);
+                }
+            }
+            double[][] q = previous.qPages().clone();
+            int[][] policy = previous.policyPages().clone();
+            boolean[] ownedRows = new boolean[pageCount];
+            for (int i = 0; i < workspace.touchedCount; i++) {
+                int s = workspace.touched[i];
+                if ((workspace.marks[s] & DIRTY) == 0) {
+                    continue;
+                }
+                int page = s >>> RLTableSnapshot.PAGE_BITS;
+                if (!ownedRows[page]) {
+                    q[page] = q[page].clone();
+                    policy[page] = policy[page].clone();
+                    ownedRows[page] = true;
+                }
+                RLPlanner.fillRow(layout, transitions, gamma, s, run.values, q, policy);
+            }
+            RLSolution solution = run.finish(q, policy, System.nanoTime() - start);
+            System.out.println("RLPrioritizedSweeper re-solved " + layout.getGridSize() + "x" + layout.getGridSize() + " layout from "
+                    + changedStates.length + " changed states, " + run.updatedCount + " values changed: " + solution);
+            return solution;
+        } finally {
+            workspace.release();
+        }
+    }
+
+    // Gets the cached solution of a layout, re-solving it from the cached solution of the layout it was edited from when there is one
+    // Falls back to RLPlanner.solveCached when the previous layout has no cached solution or cannot be compared (different grid size)
+    public static RLSolution resolveCached(RLTransitionModel previousLayout, RLStochasticTransitions previousTransitions,
+                                           RLTransitionModel layout, RLStochasticTransitions transitions, double gamma) {
+        RLSolution cached = RLPlanner.getCached(layout, transitions, gamma);
+        if (cached != null) {
+            return cached;
+        }
+        RLSolution previous = previousLayout == null ? null : RLPlanner.getCached(previousLayout, previousTransitions, gamma);
+        if (previous == null || previousLayout.getStateCount() != layout.getStateCount()) {
+            return RLPlanner.solveCached(layout, transitions, gamma);
+        }
+        int[] changed = changedStates(previousLayout, previousTransitions, layout, transitions);
+        if (changed == null) {
+            return RLPlanner.solveCached(layout, transitions, gamma);
+        }
+        RLSolution solution = fromConfig(RLConfig.get(), layout.getStateCount()).resolve(previous, layout, transitions, gamma, changed);
+        return RLPlanner.putCached(layout, transitions, solution);
+    }
+
+    // Gets the cells whose puddle status differs between two versions of a layout, or null if the reward parameters or slip probabilities differ
+    // Only the squares of the puddles of both versions are compared, so the cost is proportional to the puddles rather than to the grid
+    public static int[] changedStates(RLTransitionModel before, RLStochasticTransitions beforeTransitions,
+                                      RLTransitionModel after, RLStochasticTransitions afterTransitions) {
+        if (before.getGridSize() != after.getGridSize()) {
+            throw new IllegalArgumentException("Layouts have different grid sizes: " + before.getGridSize() + " and " + after.getGridSize() + ".");
+        }
+        if (before.getDefaultReward() != after.getDefaultReward() || before.getPuddleReward() != after.getPuddleReward()
+                || before.getGoalReward() != after.getGoalReward()) {
+            return null;
+        }
+        if ((beforeTransitions == null) != (afterTransitions == null)) {
+            return null;
+        }
+        if (beforeTransitions != null && (beforeTransitions.getSlipProb() != afterTransitions.getSlipProb()
+                || beforeTransitions.getPuddleSlipProb() != afterTransitions.getPuddleSlipProb()
+                || beforeTransitions.getStayProb() != afterTransitions.getStayProb())) {
+            return null;
+        }
+        int gridSize = after.getGridSize();
+        BitSet changed = new BitSet();
+        collectChanged(before, before, after, gridSize, changed);
+        collectChanged(after, before, after, gridSize, changed);
+        return changed.stream().toArray();
+    }
+
+    // Checks every cell of the puddles of source for a differing puddle status
+    private static void collectChanged(RLTransitionModel source, RLTransitionModel before, RLTransitionModel after, int gridSize, BitSet changed) {
+        int puddleSize = source.getPuddleSize();
+        List<int[]> puddles = source.getPuddlePositions();
+        for (int[] puddle : puddles) {
+            int rowEnd = Math.min(puddle[0] + puddleSize, gridSize);
+            int colEnd = Math.min(puddle[1] + puddleSize, gridSize);
+            for (int row = Math.max(0, puddle[0]); row < rowEnd; row++) {
+                for (int col = Math.max(0, puddle[1]); col < colEnd; col++) {
+                    int s = row * gridSize + col;
+                    if (before.isPuddle(s) != after.isPuddle(s)) {
+                        changed.set(s);
+                    }
+                }
+            }
+        }
+    }
+
+    private static void markWithNeighbours(RLTransitionModel layout, int s, Workspace workspace, int mark) {
+        workspace.mark(s, mark);
+        for (int a : layout.validActions(s)) {
+            workspace.mark(layout.nextState(s, a), mark);
+        }
+    }
+
+    private static void checkModel(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma) {
+        if (transitions != null && transitions.getLayout() != layout) {
+            throw new IllegalArgumentException("Transitions were compiled for a different layout.");
+        }
+        if (gamma < 0 || gamma > 1 || Double.isNaN(gamma)) {
+            throw new IllegalArgumentException("Discount must be in [0, 1]: " + gamma);
+        }
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public long getMaxBackups() {
+        return maxBackups;
+    }
+
+    // State of one solve: the values being updated, the queue of Bellman errors and the states whose value changed
+    // Values are paged like RLSolution, a re-solve starts from the previous solution's pages and copies a page on its first write (owned[page] records the copy)
+    private final class Run {
+        private final RLTransitionModel layout;
+        private final RLStochasticTransitions transitions;
+        private final double gamma;
+        private final double[][] values;
+        private final boolean[] owned;
+        private final int stateCount;
+        private final Workspace workspace;
+
+        // Indexed max-heap: heap[slot] is a state, slot[state] its position or -1, priority[state] its Bellman error
+        private final int[] heap;
+        private final int[] slot;
+        private final double[] priority;
+        private long backups;
+        private int updatedCount;
+
+        // owned is null when every page of values belongs to this run
+        Run(RLTransitionModel layout, RLStochasticTransitions transitions, double gamma, double[][] values, boolean[] owned, Workspace workspace) {
+            this.layout = layout;
+            this.transitions = transitions;
+            this.gamma = gamma;
+            this.values = values;
+            this.owned = owned;
+            this.stateCount = layout.getStateCount();
+            this.workspace = workspace;
+            this.heap = workspace.heap;
+            this.slot = workspace.slot;
+            this.priority = workspace.priority;
+        }
+
+        private double value(int s) {
+            return values[s >>> RLTableSnapshot.PAGE_BITS][s & RLTableSnapshot.PAGE_MASK];
+        }
+
+        private void setValue(int s, double value) {
+            int page = s >>> RLTableSnapshot.PAGE_BITS;
+            if (owned != null && !owned[page]) {
+                values[page] = values[page].clone();
+                owned[page] = true;
+            }
+            values[page][s & RLTableSnapshot.PAGE_MASK] = value;
+        }
+
+        // Backs up the state with the largest Bellman error until every error is below the tolerance
+        void drain() {
+            while (workspace.size > 0 && priority[heap[0]] >= tolerance && backups < maxBackups) {
+                int s = heap[0];
+                remove(0);
+                double value = RLPlanner.backup(layout, transitions, gamma, s, values);
+                backups++;
+                if (value != value(s)) {
+                    setValue(s, value);
+                    if ((workspace.marks[s] & UPDATED) == 0) {
+                        workspace.mark(s, UPDATED);
+                        updatedCount++;
+                    }
+                    requeueWithPredecessors(s);
+                }
+            }
+        }
+
+        // Recomputes the Bellman errors of a state and of the states that can move into it
+        void requeueWithPredecessors(int s) {
+            requeue(s);
+            for (int a : layout.validActions(s)) {
+                requeue(layout.nextState(s, a));
+            }
+        }
+
+        // Recomputes the Bellman error of a state and queues, re-prioritizes or drops it
+        void requeue(int s) {
+            double error = Math.abs(RLPlanner.backup(layout, transitions, gamma, s, values) - value(s));
+            int i = slot[s];
+            if (error < tolerance) {
+                if (i >= 0) {
+                    remove(i);
+                }
+                return;
+            }
+            if (i < 0) {
+                i = workspace.size++;
+                heap[i] = s;
+                slot[s] = i;
+                priority[s] = error;
+                siftUp(i);
+            } else {
+                double old = priority[s];
+                priority[s] = error;
+                if (error > old) {
+                    siftUp(i);
+                } else {
+                    siftDown(i);
+                }
+            }
+        }
+
+        private void remove(int i) {
+            int s = heap[i];
+            slot[s] = -1;
+            workspace.size--;
+            if (i == workspace.size) {
+                return;
+            }
+            int last = heap[workspace.size];
+            heap[i] = last;
+            slot[last] = i;
+            siftUp(i);
+            siftDown(slot[last]);
+        }
+
+        private void siftUp(int i) {
+            int s = heap[i];
+            double key = priority[s];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                int p = heap[parent];
+                if (priority[p] >= key) {
+                    break;
+                }
+                heap[i] = p;
+                slot[p] = i;
+                i = parent;
+            }
+            heap[i] = s;
+            slot[s] = i;
+        }
+
+        private void siftDown(int i) {
+            int s = heap[i];
+            double key = priority[s];
+            int half = workspace.size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                if (child + 1 < workspace.size && priority[heap[child + 1]] > priority[heap[child]]) {
+                    child++;
+                }
+                int c = heap[child];
+                if (key >= priority[c]) {
+                    break;
+                }
+                heap[i] = c;
+                slot[c] = i;
+                i = child;
+            }
+            heap[i] = s;
+            slot[s] = i;
+        }
+
+        // Builds the solution, the states still queued stay in the workspace's heap until it is released
+        RLSolution finish(double[][] q, int[][] policy, long elapsedNanos) {
+            double residual = workspace.size > 0 ? priority[heap[0]] : 0.0;
+            int sweeps = (int) Math.min(Integer.MAX_VALUE, (backups + stateCount - 1) / Math.max(1, stateCount));
+            return new RLSolution(RLPlanner.Method.PRIORITIZED_SWEEPING, gamma, stateCount, values, q, policy, sweeps, sweeps, backups,
+                    residual, residual < tolerance, elapsedNanos);
+        }
+    }
+
+    // Queue and mark arrays for one state count, reused across runs so a re-solve touching a few states does not allocate O(stateCount) arrays
+    // Only the entries a run touched are reset when it ends, also when it failed: the slots of the states still queued and the marks listed in touched
+    // Idle workspaces are pooled until they hold more than MAX_IDLE_STATES states together, the oldest are dropped first
+    private static final class Workspace {
+        private static final ArrayDeque<Workspace> IDLE = new ArrayDeque<>();
+        private static long idleStates;
+
+        final int stateCount;
+        final int[] heap;
+        final int[] slot;
+        final double[] priority;
+        final byte[] marks;
+        final int[] touched;
+        int touchedCount;
+        // Number of states in the heap
+        int size;
+
+        private Workspace(int stateCount) {
+            this.stateCount = stateCount;
+            this.heap = new int[stateCount];
+            this.slot = new int[stateCount];
+            this.priority = new double[stateCount];
+            this.marks = new byte[stateCount];
+            this.touched = new int[stateCount];
+            Arrays.fill(slot, -1);
+        }
+
+        // Takes an idle workspace of the state count from the pool, or creates one
+        static Workspace acquire(int stateCount) {
+            synchronized (IDLE) {
+                Iterator<Workspace> idle = IDLE.iterator();
+                while (idle.hasNext()) {
+                    Workspace workspace = idle.next();
+                    if (workspace.stateCount == stateCount) {
+                        idle.remove();
+                        idleStates -= stateCount;
+                        return workspace;
+                    }
+                }
+            }
+            return new Workspace(stateCount);
+        }
+
+        // Sets a mark on a state, listing the state the first time it is marked
+        void mark(int s, int mark) {
+            if (marks[s] == 0) {
+                touched[touchedCount++] = s;
+            }
+            marks[s] |= mark;
+        }
+
+        // Resets the touched entries and returns the workspace to the pool
+        void release() {
+            for (int i = 0; i < size; i++) {
+                slot[heap[i]] = -1;
+            }
+            size = 0;
+            for (int i = 0; i < touchedCount; i++) {
+                marks[touched[i]] = 0;
+            }
+            touchedCount = 0;
+            synchronized (IDLE) {
+                IDLE.addFirst(this);
+                idleStates += stateCount;
+                while (idleStates > MAX_IDLE_STATES) {
+                    idleStates -= IDLE.removeLast().stateCount;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+// This class places puddles constructively instead of by unbounded rejection sampling
+// Every anchor cell (top-left corner of a puddleSize x puddleSize square that fits in the grid) is drawn at most once, in random order, using a lazy Fisher-Yates shuffle
+// An anchor is kept if its square covers neither the start state nor the goal state and does not overlap an already placed puddle, so generation stops after at most (gridSize - puddleSize + 1)^2 draws
+// After placement a BFS checks that the goal can be reached from the start without stepping into a puddle, dropping the most recently placed puddles until it can
+// The BFS is not restarted after a drop, it continues from the freed cells that touch the cells already reached, so all drops together cost one BFS
+public final class RLPuddleGenerator {
+
+    private RLPuddleGenerator() {
+    }
+
+    // Generates up to maxPuddles non-overlapping puddle positions as (row, col) top-left corners
+    // Fewer puddles are returned if the grid cannot fit maxPuddles of them
+    public static List<int[]> generate(int gridSize, int maxPuddles, int puddleSize, SplittableRandom random) {
+        List<int[]> puddles = new ArrayList<>();
+        if (gridSize <= 0 || maxPuddles <= 0 || puddleSize <= 0 || puddleSize > gridSize) {
+            return puddles;
+        }
+
+        int span = gridSize - puddleSize + 1;
+        long anchorCountLong = (long) span * span;
+        if (anchorCountLong > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Grid size too large for puddle generation: " + gridSize);
+        }
+        int anchorCount = (int) anchorCountLong;
+        int goalStateId = gridSize * gridSize - 1;
+        BitSet occupied = new BitSet(gridSize * gridSize);
+
+        // Lazy Fisher-Yates: only the swapped slots are stored, so memory stays proportional to the number of draws
+        Map<Integer, Integer> swapped = new HashMap<>();
+        for (int drawn = 0; drawn < anchorCount && puddles.size() < maxPuddles; drawn++) {
+            int pick = drawn + random.nextInt(anchorCount - drawn);
+            int anchor = swapped.getOrDefault(pick, pick);
+            swapped.put(pick, swapped.getOrDefault(drawn, drawn));
+
+            int row = anchor / span;
+            int col = anchor % span;
+            if (covers(row, col, puddleSize, 0, gridSize) || covers(row, col, puddleSize, goalStateId, gridSize)) {
+                continue;
+            }
+            if (overlaps(occupied, row, col, puddleSize, gridSize)) {
+                continue;
+            }
+            mark(occupied, row, col, puddleSize, gridSize, true);
+            puddles.add(new int[]{row, col});
+        }
+
+        // Drop the most recently placed puddles until the goal has a puddle-free path from the start, growing one BFS as cells are freed
+        Reach reach = new Reach(occupied, gridSize);
+        int placed = puddles.size();
+        while (!puddles.isEmpty() && !reach.expand()) {
+            int[] removed = puddles.remove(puddles.size() - 1);
+            mark(occupied, removed[0], removed[1], puddleSize, gridSize, false);
+            reach.free(removed[0], removed[1], puddleSize);
+        }
+        if (puddles.size() < placed) {
+            System.out.println("Removed " + (placed - puddles.size()) + " of " + placed + " puddles to keep the goal reachable.");
+        }
+        return puddles;
+    }
+
+    // Checks if the square anchored at (row, col) covers a state
+    private static boolean covers(int row, int col, int puddleSize, int stateId, int gridSize) {
+        int stateRow = stateId / gridSize;
+        int stateCol = stateId % gridSize;
+        return stateRow >= row && stateRow < row + puddleSize && stateCol >= col && stateCol < col + puddleSize;
+    }
+
+    // Checks if the square anchored at (row, col) overlaps any occupied cell
+    private static boolean overlaps(BitSet occupied, int row, int col, int puddleSize, int gridSize) {
+        for (int r = row; r < row + puddleSize; r++) {
+            int rowStart = r * gridSize + col;
+            int next = occupied.nextSetBit(rowStart);
+            if (next >= 0 && next < rowStart + puddleSize) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Sets or clears the cells of the square anchored at (row, col)
+    private static void mark(BitSet occupied, int row, int col, int puddleSize, int gridSize, boolean value) {
+        for (int r = row; r < row + puddleSize; r++) {
+            int rowStart = r * gridSize + col;
+            occupied.set(rowStart, rowStart + puddleSize, value);
+        }
+    }
+
+    // BFS from state 0 over cells that are not puddles, returns true if the goal state is reached
+    static boolean isGoalReachable(BitSet puddles, int gridSize) {
+        if (puddles.get(0) || puddles.get(gridSize * gridSize - 1)) {
+            return false;
+        }
+        return new Reach(puddles, gridSize).expand();
+    }
+
+    // Cells reachable from state 0 without stepping into a puddle, grown as puddles are removed
+    // Removing a puddle only frees cells, so the reached set never shrinks: a freed cell next to a reached one is queued and the BFS continues from it,
+    // and every cell is visited at most once over all removals
+    // The queue is a growable ring buffer, on a grid the BFS frontier stays close to O(gridSize) so memory does not scale with the cell count
+    private static final class Reach {
+        private final BitSet puddles;
+        private final int gridSize;
+        private final int goalStateId;
+        private final BitSet visited;
+        private int[] queue;
+        private int head;
+        private int size;
+
+        Reach(BitSet puddles, int gridSize) {
+            this.puddles = puddles;
+            this.gridSize = gridSize;
+            this.goalStateId = gridSize * gridSize - 1;
+            this.visited = new BitSet(gridSize * gridSize);
+            this.queue = new int[Math.max(16, 4 * gridSize)];
+            visit(0);
+        }
+
+        // Continues the BFS until the goal is reached or the queue is empty, returns true if the goal has been reached
+        boolean expand() {
+            while (size > 0 && !visited.get(goalStateId)) {
+                int stateId = queue[head];
+                head = (head + 1) % queue.length;
+                size--;
+                int row = stateId / gridSize;
+                int col = stateId % gridSize;
+                if (row > 0) {
+                    visitFree(stateId - gridSize);
+                }
+                if (row < gridSize - 1) {
+                    visitFree(stateId + gridSize);
+                }
+                if (col > 0) {
+                    visitFree(stateId - 1);
+                }
+                if (col < gridSize - 1) {
+                    visitFree(stateId + 1);
+                }
+            }
+            return visited.get(goalStateId);
+        }
+
+        // Queues the cells of a removed square that touch the reached set, the caller has already cleared them in puddles
+        void free(int row, int col, int puddleSize) {
+            for (int r = row; r < Math.min(row + puddleSize, gridSize); r++) {
+                for (int c = col; c < Math.min(col + puddleSize, gridSize); c++) {
+                    int stateId = r * gridSize + c;
+                    if ((r > 0 && visited.get(stateId - gridSize)) || (r < gridSize - 1 && visited.get(stateId + gridSize))
+                            || (c > 0 && visited.get(stateId - 1)) || (c < gridSize - 1 && visited.get(stateId + 1))) {
+                        visitFree(stateId);
+                    }
+                }
+            }
+        }
+
+        private void visitFree(int stateId) {
+            if (!visited.get(stateId) && !puddles.get(stateId)) {
+                visit(stateId);
+            }
+        }
+
+        private void visit(int stateId) {
+            visited.set(stateId);
+            if (size == queue.length) {
+                int[] grown = new int[queue.length * 2];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = queue[(head + i) % queue.length];
+                }
+                queue = grown;
+                head = 0;
+            }
+            queue[(head + size) % queue.length] = stateId;
+            size++;
+        }
+    }
+}
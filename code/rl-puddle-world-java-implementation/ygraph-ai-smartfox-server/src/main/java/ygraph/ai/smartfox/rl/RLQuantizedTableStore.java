@@ -0,0 +1,454 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+
+// This class stores the master Q and V tables at reduced precision to cut the memory of the server-side mirror
+// FLOAT32 keeps every value as a float, FIXED16 keeps every value as a short holding round(value / scale)
+// Each of the two tables (Q and V) has its own FIXED16 scale, a power of two starting at 2^-10 (range about +-32)
+// When a finite write does not fit the current range the scale is doubled until it does and the stored values are requantized, so the scale only grows and the range adapts to the largest value seen
+// The scale stops at 2^MAX_SCALE_EXPONENT (range about +-2^31): Q and V are bounded by max |reward| / (1 - gamma), which stays far below that for any reward scale the game uses
+// Values beyond the range at the largest scale, and infinite values at any scale, are clamped to the largest stored short without rescaling, and counted as clamped writes
+// NaN writes are rejected (setQ and setV return false, batches skip them) and counted, the stored value is left as it was
+// Reads, copies and policy extraction dequantize to double, so grading and export code sees the same interface as RLTableStore
+// The store records the largest absolute error between a written value and the value stored at write time, next to the worst case bound of the current precision (which also covers later rescales)
+// The stored values are paged like RLTableStore and snapshots share the pages copy-on-write: a write copies only its page, a rescale copies the pages a snapshot still holds
+public class RLQuantizedTableStore implements RLValueStore {
+    private static final int INITIAL_SCALE_EXPONENT = -10;
+    private static final int MAX_SCALE_EXPONENT = 16;
+
+    private final int stateCount;
+    private final RLTablePrecision precision;
+    private final Lane qLane;
+    private final Lane vLane;
+
+    // Version of the tables and the last snapshot handed out
+    private volatile long version;
+    private RLTableSnapshot lastSnapshot;
+
+    // Creates the Q and V tables for a gridSize x gridSize puddle world with every value set to 0
+    public RLQuantizedTableStore(int gridSize, RLTablePrecision precision) {
+        if (gridSize <= 0 || (long) gridSize * gridSize * ACTION_COUNT > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Grid size out of range for quantized tables: " + gridSize);
+        }
+        if (precision == RLTablePrecision.DOUBLE) {
+            throw new IllegalArgumentException("DOUBLE precision tables are stored by RLTableStore.");
+        }
+        this.stateCount = gridSize * gridSize;
+        this.precision = precision;
+        this.qLane = new Lane(precision, stateCount, ACTION_COUNT);
+        this.vLane = new Lane(precision, stateCount, 1);
+    }
+
+    // One quantized table: the stored values in pages of RLTableSnapshot.PAGE_STATES states, plus the scale and the error statistics
+    private static final class Lane {
+        private final int pageShift;
+        private final int pageMask;
+        private final float[][] floats;
+        private final short[][] shorts;
+        // Epoch in which each page was last copied, a page from an earlier epoch may be held by a snapshot
+        private final long[] pageEpochs;
+        private long epoch;
+        private int scaleExponent = INITIAL_SCALE_EXPONENT;
+        private double scale = Math.scalb(1.0, INITIAL_SCALE_EXPONENT);
+        private boolean rescaled;
+        private double maxAbsValue;
+        private double maxError;
+        private long clampedWrites;
+        private long rejectedWrites;
+
+        // width is the number of values per state, 4 for Q and 1 for V
+        Lane(RLTablePrecision precision, int stateCount, int width) {
+            this.pageShift = RLTableSnapshot.PAGE_BITS + Integer.numberOfTrailingZeros(width);
+            this.pageMask = (1 << pageShift) - 1;
+            int pages = RLTableSnapshot.pageCount(stateCount);
+            this.floats = precision == RLTablePrecision.FLOAT32 ? new float[pages][] : null;
+            this.shorts = precision == RLTablePrecision.FIXED16 ? new short[pages][] : null;
+            for (int p = 0; p < pages; p++) {
+                int length = RLTableSnapshot.pageStates(stateCount, p) * width;
+                if (floats != null) {
+                    floats[p] = new float[length];
+                } else {
+                    shorts[p] = new short[length];
+                }
+            }
+            this.pageEpochs = new long[pages];
+        }
+
+        double get(int index) {
+            return read(floats, shorts, scale, pageShift, pageMask, index);
+        }
+
+        static double read(float[][] floats, short[][] shorts, double scale, int pageShift, int pageMask, int index) {
+            return floats != null ? floats[index >>> pageShift][index & pageMask] : shorts[index >>> pageShift][index & pageMask] * scale;
+        }
+
+        // Copies a page before its first write in the current epoch
+        private void ensureWritable(int page) {
+            if (pageEpochs[page] != epoch) {
+                if (floats != null) {
+                    floats[page] = floats[page].clone();
+                } else {
+                    shorts[page] = shorts[page].clone();
+                }
+                pageEpochs[page] = epoch;
+            }
+        }
+
+        // Hands the current pages to a snapshot: starts a new epoch, so every page is copied on its next write
+        View share() {
+            epoch++;
+            return new View(floats != null ? floats.clone() : null, shorts != null ? shorts.clone() : null, scale, pageShift, pageMask);
+        }
+
+        // Stores a value and returns false if it is NaN and was rejected
+        boolean set(int index, double value) {
+            if (Double.isNaN(value)) {
+                rejectedWrites++;
+                return false;
+            }
+            boolean finite = !Double.isInfinite(value);
+            int page = index >>> pageShift;
+            int offset = index & pageMask;
+            if (floats != null) {
+                ensureWritable(page);
+                float stored = (float) value;
+                if (finite && Float.isInfinite(stored)) {
+                    stored = value > 0 ? Float.MAX_VALUE : -Float.MAX_VALUE;
+                    clampedWrites++;
+                }
+                floats[page][offset] = stored;
+            } else {
+                // Only finite values grow the scale, so one infinite or huge write costs at most the rescales up to MAX_SCALE_EXPONENT
+                while (finite && Math.abs(value) / scale > Short.MAX_VALUE && scaleExponent < MAX_SCALE_EXPONENT) {
+                    rescale();
+                }
+                ensureWritable(page);
+                double scaled = Math.rint(value / scale);
+                if (scaled > Short.MAX_VALUE || scaled < Short.MIN_VALUE) {
+                    shorts[page][offset] = scaled > 0 ? Short.MAX_VALUE : Short.MIN_VALUE;
+                    clampedWrites++;
+                } else {
+                    shorts[page][offset] = (short) scaled;
+                }
+            }
+            if (finite) {
+                maxAbsValue = Math.max(maxAbsValue, Math.abs(value));
+                maxError = Math.max(maxError, Math.abs(get(index) - value));
+            }
+            return true;
+        }
+
+        // Doubles the scale, halving every stored value with rounding half away from zero
+        // Pages a snapshot may hold are replaced by halved copies, the snapshot keeps the old pages and the old scale
+        private void rescale() {
+            for (int p = 0; p < shorts.length; p++) {
+                short[] page = shorts[p];
+                short[] halved = pageEpochs[p] == epoch ? page : new short[page.length];
+                for (int i = 0; i < page.length; i++) {
+                    halved[i] = (short) ((page[i] + (page[i] >= 0 ? 1 : -1)) / 2);
+                }
+                shorts[p] = halved;
+                pageEpochs[p] = epoch;
+            }
+            scaleExponent++;
+            scale = Math.scalb(1.0, scaleExponent);
+            rescaled = true;
+        }
+
+        // Worst case absolute error of any value stored at the current precision and scale, clamped writes are not covered
+        // Each rescale moves a value by at most half the new scale, so over every rescale the errors add up to less than the current scale
+        double errorBound() {
+            if (floats != null) {
+                return maxAbsValue * Math.ulp(1.0f) / 2;
+            }
+            return rescaled ? scale : scale / 2;
+        }
+
+        // Pages a snapshot may hold are replaced by new zeroed pages
+        void clear() {
+            for (int p = 0; p < pageEpochs.length; p++) {
+                boolean owned = pageEpochs[p] == epoch;
+                if (floats != null) {
+                    if (owned) {
+                        Arrays.fill(floats[p], 0f);
+                    } else {
+                        floats[p] = new float[floats[p].length];
+                    }
+                } else {
+                    if (owned) {
+                        Arrays.fill(shorts[p], (short) 0);
+                    } else {
+                        shorts[p] = new short[shorts[p].length];
+                    }
+                }
+                pageEpochs[p] = epoch;
+            }
+            if (shorts != null) {
+                scaleExponent = INITIAL_SCALE_EXPONENT;
+                scale = Math.scalb(1.0, INITIAL_SCALE_EXPONENT);
+                rescaled = false;
+            }
+            maxAbsValue = 0.0;
+            maxError = 0.0;
+            clampedWrites = 0;
+            rejectedWrites = 0;
+        }
+
+        long bytes() {
+            long bytes = 16L + 8L * pageEpochs.length;
+            for (int p = 0; p < pageEpochs.length; p++) {
+                bytes += 16L + (floats != null ? 4L * floats[p].length : 2L * shorts[p].length);
+            }
+            return bytes;
+        }
+    }
+
+    // The pages and scale of a lane at one epoch, never written again
+    private static final class View {
+        private final float[][] floats;
+        private final short[][] shorts;
+        private final double scale;
+        private final int pageShift;
+        private final int pageMask;
+
+        View(float[][] floats, short[][] shorts, double scale, int pageShift, int pageMask) {
+            this.floats = floats;
+            this.shorts = shorts;
+            this.scale = scale;
+            this.pageShift = pageShift;
+            this.pageMask = pageMask;
+        }
+
+        double get(int index) {
+            return Lane.read(floats, shorts, scale, pageShift, pageMask, index);
+        }
+    }
+
+    // Snapshot sharing the quantized pages of both lanes, dequantized on read
+    private static final class QuantizedSnapshot extends RLTableSnapshot {
+        private final View q;
+        private final View v;
+
+        QuantizedSnapshot(long version, int stateCount, View q, View v) {
+            super(version, stateCount);
+            this.q = q;
+            this.v = v;
+        }
+
+        @Override
+        public double getQ(int stateId, int action) {
+            return q.get(stateId * ACTION_COUNT + action);
+        }
+
+        @Override
+        public double getV(int stateId) {
+            return v.get(stateId);
+        }
+    }
+
+    public RLTablePrecision getPrecision() {
+        return precision;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public boolean isValidState(int stateId) {
+        return stateId >= 0 && stateId < stateCount;
+    }
+
+    public boolean isValidStateAction(int stateId, int action) {
+        return isValidState(stateId) && action >= 0 && action < ACTION_COUNT;
+    }
+
+    // Reads are synchronized since a FIXED16 rescale rewrites the stored values and the scale together
+    public synchronized double getQ(int stateId, int action) {
+        return qLane.get(stateId * ACTION_COUNT + action);
+    }
+
+    public synchronized double getV(int stateId) {
+        return vLane.get(stateId);
+    }
+
+    public synchronized boolean setQ(int stateId, int action, double qValue) {
+        if (!isValidStateAction(stateId, action)) {
+            return false;
+        }
+        if (!qLane.set(stateId * ACTION_COUNT + action, qValue)) {
+            return false;
+        }
+        version++;
+        return true;
+    }
+
+    public synchronized boolean setV(int stateId, double vValue) {
+        if (!isValidState(stateId)) {
+            return false;
+        }
+        if (!vLane.set(stateId, vValue)) {
+            return false;
+        }
+        version++;
+        return true;
+    }
+
+    public synchronized int setQValues(int[] stateIds, int[] actions, double[] values) {
+        int count = Math.min(stateIds.length, Math.min(actions.length, values.length));
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            if (isValidStateAction(stateIds[i], actions[i]) && qLane.set(stateIds[i] * ACTION_COUNT + actions[i], values[i])) {
+                applied++;
+            }
+        }
+        version++;
+        return applied;
+    }
+
+    public synchronized int setVValues(int[] stateIds, double[] values) {
+        int count = Math.min(stateIds.length, values.length);
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            if (isValidState(stateIds[i]) && vLane.set(stateIds[i], values[i])) {
+                applied++;
+            }
+        }
+        version++;
+        return applied;
+    }
+
+    public synchronized double[] getQRow(int stateId, double[] out) {
+        int base = stateId * ACTION_COUNT;
+        for (int a = 0; a < ACTION_COUNT; a++) {
+            out[a] = qLane.get(base + a);
+        }
+        return out;
+    }
+
+    public synchronized void setQRow(int stateId, double[] row) {
+        int base = stateId * ACTION_COUNT;
+        for (int a = 0; a < ACTION_COUNT; a++) {
+            qLane.set(base + a, row[a]);
+        }
+        version++;
+    }
+
+    public synchronized int argmaxQ(int stateId) {
+        int base = stateId * ACTION_COUNT;
+        int best = 0;
+        double bestValue = qLane.get(base);
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            double value = qLane.get(base + a);
+            if (value > bestValue) {
+                bestValue = value;
+                best = a;
+            }
+        }
+        return best;
+    }
+
+    public synchronized double maxQ(int stateId) {
+        int base = stateId * ACTION_COUNT;
+        double best = qLane.get(base);
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            best = Math.max(best, qLane.get(base + a));
+        }
+        return best;
+    }
+
+    public synchronized int[] greedyPolicy(int[] policyOut) {
+        for (int s = 0; s < stateCount; s++) {
+            policyOut[s] = argmaxQ(s);
+        }
+        return policyOut;
+    }
+
+    public synchronized double[] copyQValues() {
+        double[] copy = new double[stateCount * ACTION_COUNT];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = qLane.get(i);
+        }
+        return copy;
+    }
+
+    public synchronized double[] copyVValues() {
+        double[] copy = new double[stateCount];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = vLane.get(i);
+        }
+        return copy;
+    }
+
+    public synchronized void clear() {
+        qLane.clear();
+        vLane.clear();
+        version++;
+    }
+
+    public int getStoredStateCount() {
+        return stateCount;
+    }
+
+    public long getMemoryUsageBytes() {
+        return qLane.bytes() + vLane.bytes();
+    }
+
+    // Largest absolute difference seen between a written Q-value and the stored Q-value at write time
+    public synchronized double getMaxQError() {
+        return qLane.maxError;
+    }
+
+    // Largest absolute difference seen between a written V-value and the stored V-value at write time
+    public synchronized double getMaxVError() {
+        return vLane.maxError;
+    }
+
+    // Worst case absolute error of a stored Q-value at the current precision and scale
+    public synchronized double getQErrorBound() {
+        return qLane.errorBound();
+    }
+
+    // Worst case absolute error of a stored V-value at the current precision and scale
+    public synchronized double getVErrorBound() {
+        return vLane.errorBound();
+    }
+
+    // FIXED16 scale of the Q-table (value = stored short * scale), 0 for FLOAT32
+    public synchronized double getQScale() {
+        return qLane.shorts != null ? qLane.scale : 0.0;
+    }
+
+    // FIXED16 scale of the V-table (value = stored short * scale), 0 for FLOAT32
+    public synchronized double getVScale() {
+        return vLane.shorts != null ? vLane.scale : 0.0;
+    }
+
+    // Number of Q and V writes clamped to the stored range (infinite values, or beyond the range at the largest scale)
+    public synchronized long getClampedWrites() {
+        return qLane.clampedWrites + vLane.clampedWrites;
+    }
+
+    // Number of NaN Q and V writes that were rejected
+    public synchronized long getRejectedWrites() {
+        return qLane.rejectedWrites + vLane.rejectedWrites;
+    }
+
+    // Summary of the precision and the observed and worst case errors, for logs
+    public synchronized String getErrorReport() {
+        return precision + " Q error max " + qLane.maxError + " (bound " + qLane.errorBound() + "), V error max "
+                + vLane.maxError + " (bound " + vLane.errorBound() + "), " + getClampedWrites() + " clamped, "
+                + getRejectedWrites() + " rejected writes";
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Shares the pages with a new snapshot unless nothing was written since the last one, no values are copied
+    public synchronized RLTableSnapshot snapshot() {
+        if (lastSnapshot == null || lastSnapshot.getVersion() != version) {
+            lastSnapshot = new QuantizedSnapshot(version, stateCount, qLane.share(), vLane.share());
+        }
+        return lastSnapshot;
+    }
+}
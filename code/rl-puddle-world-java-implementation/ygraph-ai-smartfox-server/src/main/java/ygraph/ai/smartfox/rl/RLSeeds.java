@@ -0,0 +1,63 @@
+package ygraph.ai.smartfox.rl;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+// This class derives every random stream of the server from one root seed, so a whole run (or a single episode) can be replayed exactly
+// The root seed comes from ROOT_SEED in the .env file, or is drawn once at startup and logged
+// Seeds form a tree, each level mixes the parent seed with a label through the SplitMix64 finalizer:
+// root -> session (user name) -> episode (episode index) -> purpose (LAYOUT, STOPPING, EXPLORATION, TRANSITION, EVALUATION)
+// Each purpose seed feeds its own SplittableRandom, owned by one session, so sessions never contend on a shared generator and streams for different purposes stay independent
+public final class RLSeeds {
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // What a random stream is used for
+    public enum Purpose {
+        LAYOUT,
+        STOPPING,
+        EXPLORATION,
+        TRANSITION,
+        EVALUATION
+    }
+
+    private RLSeeds() {
+    }
+
+    // SplitMix64 finalizer, a bijective mix of the 64 bits of z
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Draws a fresh root seed for a run without ROOT_SEED and logs it so the run can be replayed
+    public static long rootSeed() {
+        long seed = new SplittableRandom().nextLong();
+        System.out.println("No ROOT_SEED set, using root seed " + seed + ". Set ROOT_SEED=" + seed + " to replay this run.");
+        return seed;
+    }
+
+    // Seed of a session, derived from the root seed and the user name (64-bit FNV-1a hash of its UTF-8 bytes)
+    public static long sessionSeed(long rootSeed, String sessionName) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : sessionName.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return mix(rootSeed ^ mix(hash));
+    }
+
+    // Seed of an episode of a session
+    public static long episodeSeed(long sessionSeed, int episode) {
+        return mix(sessionSeed + GOLDEN_GAMMA * (episode + 1L));
+    }
+
+    // Seed of one purpose below a parent seed (an episode seed, or the root seed for class-wide streams)
+    public static long purposeSeed(long parentSeed, Purpose purpose) {
+        return mix(parentSeed ^ mix(GOLDEN_GAMMA * (purpose.ordinal() + 1L)));
+    }
+
+    // Creates the stream of one purpose below a parent seed
+    public static SplittableRandom stream(long parentSeed, Purpose purpose) {
+        return new SplittableRandom(purposeSeed(parentSeed, purpose));
+    }
+}
@@ -0,0 +1,54 @@
+package ygraph.ai.smartfox.rl;
+
+// This class is an immutable near-duplicate candidate found by RLSimilarityIndex: two users whose table signatures are close, checked against their actual tables
+// Policy agreement is the share of states where both users have the same greedy action, over the states where either has learned something (a nonzero Q-row)
+// Value cosine is the cosine of the angle between the two Q-tables as vectors of stateCount * 4 values
+public final class RLSimilarPair {
+    private final String userA;
+    private final String userB;
+    private final int hammingDistance;
+    private final double policyAgreement;
+    private final double valueCosine;
+    private final boolean flagged;
+
+    RLSimilarPair(String userA, String userB, int hammingDistance, double policyAgreement, double valueCosine, boolean flagged) {
+        this.userA = userA;
+        this.userB = userB;
+        this.hammingDistance = hammingDistance;
+        this.policyAgreement = policyAgreement;
+        this.valueCosine = valueCosine;
+        this.flagged = flagged;
+    }
+
+    public String getUserA() {
+        return userA;
+    }
+
+    public String getUserB() {
+        return userB;
+    }
+
+    // Number of differing bits of the two 64-bit signatures
+    public int getHammingDistance() {
+        return hammingDistance;
+    }
+
+    public double getPolicyAgreement() {
+        return policyAgreement;
+    }
+
+    public double getValueCosine() {
+        return valueCosine;
+    }
+
+    // Checks if the tables agree at least as much as SIMILARITY_MIN_AGREEMENT and SIMILARITY_MIN_COSINE require
+    public boolean isFlagged() {
+        return flagged;
+    }
+
+    @Override
+    public String toString() {
+        return "RLSimilarPair{" + userA + " ~ " + userB + ", distance=" + hammingDistance + ", agreement=" + policyAgreement
+                + ", cosine=" + valueCosine + (flagged ? ", FLAGGED" : "") + "}";
+    }
+}
@@ -0,0 +1,139 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// This class finds users with near-duplicate Q-tables from the 64-bit signatures of their RLTableSketch, without comparing every pair of tables
+// Signatures are split into BANDS bands of 8 bits and users are bucketed by (state count, band, band bits), only users sharing a bucket become candidate pairs
+// Two signatures that differ in fewer than BANDS bits agree on at least one whole band, so with SIMILARITY_MAX_DISTANCE < BANDS no pair within the distance is missed
+// Candidates within SIMILARITY_MAX_DISTANCE bits are checked against snapshots of the actual tables (policy agreement and value cosine, see RLSimilarPair),
+// in parallel on the common fork-join pool, and flagged when both reach SIMILARITY_MIN_AGREEMENT and SIMILARITY_MIN_COSINE
+// Users with fewer than SIMILARITY_MIN_UPDATES sketched Q-updates are left out, so fresh tables are not reported as copies of each other
+// Bucketing is linear in the number of users, the candidate pairs grow with the number of users that really are alike rather than with all pairs
+public class RLSimilarityIndex {
+    public static final int BANDS = 8;
+    private static final int BAND_BITS = Long.SIZE / BANDS;
+    private static final long BAND_MASK = (1L << BAND_BITS) - 1;
+
+    private final int maxDistance;
+    private final int minUpdates;
+    private final double minAgreement;
+    private final double minCosine;
+
+    public RLSimilarityIndex(int maxDistance, int minUpdates, double minAgreement, double minCosine) {
+        if (maxDistance < 0 || maxDistance >= BANDS) {
+            throw new IllegalArgumentException("Signature distance must be in [0, " + (BANDS - 1) + "]: " + maxDistance);
+        }
+        this.maxDistance = maxDistance;
+        this.minUpdates = minUpdates;
+        this.minAgreement = minAgreement;
+        this.minCosine = minCosine;
+    }
+
+    // Creates an index with the SIMILARITY_* settings
+    public static RLSimilarityIndex fromConfig(RLConfig config) {
+        return new RLSimilarityIndex(config.getSimilarityMaxDistance(), config.getSimilarityMinUpdates(),
+                config.getSimilarityMinAgreement(), config.getSimilarityMinCosine());
+    }
+
+    // Finds the near-duplicate candidates among the users and returns them most alike first, flagged pairs are logged
+    public List<RLSimilarPair> findSimilar(Map<String, RLGameUser> users) {
+        long start = System.nanoTime();
+        List<String> names = new ArrayList<>();
+        List<RLGameUser> members = new ArrayList<>();
+        List<Long> signatures = new ArrayList<>();
+        for (Map.Entry<String, RLGameUser> entry : users.entrySet()) {
+            RLTableSketch sketch = entry.getValue().getSketch();
+            if (sketch.getUpdateCount() >= minUpdates) {
+                names.add(entry.getKey());
+                members.add(entry.getValue());
+                signatures.add(sketch.getSignature());
+            }
+        }
+
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+        for (int i = 0; i < members.size(); i++) {
+            long stateKey = (long) members.get(i).getSketch().getStateCount() << (2 * BAND_BITS);
+            for (int band = 0; band < BANDS; band++) {
+                long bits = (signatures.get(i) >>> (band * BAND_BITS)) & BAND_MASK;
+                buckets.computeIfAbsent(stateKey | ((long) band << BAND_BITS) | bits, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        Set<Long> seen = new HashSet<>();
+        List<int[]> candidates = new ArrayList<>();
+        for (List<Integer> bucket : buckets.values()) {
+            for (int x = 0; x < bucket.size(); x++) {
+                for (int y = x + 1; y < bucket.size(); y++) {
+                    int i = bucket.get(x);
+                    int j = bucket.get(y);
+                    int distance = Long.bitCount(signatures.get(i) ^ signatures.get(j));
+                    if (distance <= maxDistance && seen.add((long) i * members.size() + j)) {
+                        candidates.add(new int[] {i, j, distance});
+                    }
+                }
+            }
+        }
+
+        Map<Integer, RLTableSnapshot> snapshots = new ConcurrentHashMap<>();
+        List<RLSimilarPair> pairs = candidates.parallelStream()
+                .map(c -> compare(names.get(c[0]), snapshots.computeIfAbsent(c[0], i -> members.get(i).getWorld().getTables().snapshot()),
+                        names.get(c[1]), snapshots.computeIfAbsent(c[1], i -> members.get(i).getWorld().getTables().snapshot()), c[2]))
+                .sorted(Comparator.comparingDouble(RLSimilarPair::getPolicyAgreement).thenComparingDouble(RLSimilarPair::getValueCosine).reversed())
+                .collect(Collectors.toList());
+        for (RLSimilarPair pair : pairs) {
+            if (pair.isFlagged()) {
+                System.err.println("Similarity index flagged near-duplicate Q-tables: " + pair);
+            }
+        }
+        System.out.println("RLSimilarityIndex compared " + members.size() + " of " + users.size() + " users: " + candidates.size()
+                + " candidate pairs in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+        return pairs;
+    }
+
+    // Checks a candidate pair against the two tables
+    private RLSimilarPair compare(String userA, RLTableSnapshot a, String userB, RLTableSnapshot b, int distance) {
+        double[] rowA = new double[RLValueStore.ACTION_COUNT];
+        double[] rowB = new double[RLValueStore.ACTION_COUNT];
+        int learned = 0;
+        int agreed = 0;
+        double dot = 0.0;
+        double normA = 0.0;
+        double normB = 0.0;
+        for (int s = 0; s < a.getStateCount(); s++) {
+            for (int action = 0; action < RLValueStore.ACTION_COUNT; action++) {
+                rowA[action] = finite(a.getQ(s, action));
+                rowB[action] = finite(b.getQ(s, action));
+                dot += rowA[action] * rowB[action];
+                normA += rowA[action] * rowA[action];
+                normB += rowB[action] * rowB[action];
+            }
+            int greedyA = RLTableSketch.greedyAction(rowA);
+            int greedyB = RLTableSketch.greedyAction(rowB);
+            if (greedyA >= 0 || greedyB >= 0) {
+                learned++;
+                if (greedyA == greedyB) {
+                    agreed++;
+                }
+            }
+        }
+        double agreement = learned == 0 ? 0.0 : (double) agreed / learned;
+        double cosine = normA == 0 || normB == 0 ? 0.0 : Math.max(-1.0, Math.min(1.0, dot / Math.sqrt(normA * normB)));
+        return new RLSimilarPair(userA, userB, distance, agreement, cosine, agreement >= minAgreement && cosine >= minCosine);
+    }
+
+    private static double finite(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? 0.0 : value;
+    }
+
+    public int getMaxDistance() {
+        return maxDistance;
+    }
+}
@@ -0,0 +1,171 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+
+// This class is an immutable reference solution of a layout computed by RLPlanner: V*, Q*, a greedy policy and how the solve went
+// Q-values are stored row-major like the master tables: qIndex = stateId * 4 + action
+// Actions that would leave the grid are not available to the agent and have Q = NaN, the goal state has V = 0 and Q = 0 for its valid actions
+// The solution keeps no reference to its layout, so it can be cached against the layout without keeping the layout alive
+// V, Q and the policy are stored in pages of RLTableSnapshot.PAGE_STATES states, so a solution re-solved from another one (see RLPrioritizedSweeper)
+// shares every page it did not change with the solution it started from, the pages are never written once the solution is built
+public final class RLSolution {
+    private final RLPlanner.Method method;
+    private final double gamma;
+    private final int stateCount;
+    private final double[][] vPages;
+    private final double[][] qPages;
+    private final int[][] policyPages;
+    private final int sweeps;
+    private final int iterations;
+    private final long backups;
+    private final double residual;
+    private final boolean converged;
+    private final long elapsedNanos;
+
+    RLSolution(RLPlanner.Method method, double gamma, int stateCount, double[][] vPages, double[][] qPages, int[][] policyPages,
+               int sweeps, int iterations, long backups, double residual, boolean converged, long elapsedNanos) {
+        this.method = method;
+        this.gamma = gamma;
+        this.stateCount = stateCount;
+        this.vPages = vPages;
+        this.qPages = qPages;
+        this.policyPages = policyPages;
+        this.sweeps = sweeps;
+        this.iterations = iterations;
+        this.backups = backups;
+        this.residual = residual;
+        this.converged = converged;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    // Allocates zeroed pages holding width doubles per state
+    static double[][] newPages(int stateCount, int width) {
+        double[][] pages = new double[RLTableSnapshot.pageCount(stateCount)][];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = new double[RLTableSnapshot.pageStates(stateCount, page) * width];
+        }
+        return pages;
+    }
+
+    // Allocates zeroed policy pages
+    static int[][] newPolicyPages(int stateCount) {
+        int[][] pages = new int[RLTableSnapshot.pageCount(stateCount)][];
+        for (int page = 0; page < pages.length; page++) {
+            pages[page] = new int[RLTableSnapshot.pageStates(stateCount, page)];
+        }
+        return pages;
+    }
+
+    // Splits flat values into pages of one value per state
+    static double[][] toPages(double[] values) {
+        double[][] pages = new double[RLTableSnapshot.pageCount(values.length)][];
+        for (int page = 0; page < pages.length; page++) {
+            int from = page << RLTableSnapshot.PAGE_BITS;
+            pages[page] = Arrays.copyOfRange(values, from, from + RLTableSnapshot.pageStates(values.length, page));
+        }
+        return pages;
+    }
+
+    public double getV(int stateId) {
+        return vPages[stateId >>> RLTableSnapshot.PAGE_BITS][stateId & RLTableSnapshot.PAGE_MASK];
+    }
+
+    // Gets Q*(s, a), NaN if the action is not available in the state
+    public double getQ(int stateId, int action) {
+        return qPages[stateId >>> RLTableSnapshot.PAGE_BITS][(stateId & RLTableSnapshot.PAGE_MASK) * RLTableStore.ACTION_COUNT + action];
+    }
+
+    // Gets the optimal action of a state (ties go to the lowest action index)
+    public int getAction(int stateId) {
+        return policyPages[stateId >>> RLTableSnapshot.PAGE_BITS][stateId & RLTableSnapshot.PAGE_MASK];
+    }
+
+    public double[] copyVValues() {
+        double[] copy = new double[stateCount];
+        for (int page = 0; page < vPages.length; page++) {
+            System.arraycopy(vPages[page], 0, copy, page << RLTableSnapshot.PAGE_BITS, vPages[page].length);
+        }
+        return copy;
+    }
+
+    public double[] copyQValues() {
+        double[] copy = new double[Math.multiplyExact(stateCount, RLTableStore.ACTION_COUNT)];
+        for (int page = 0; page < qPages.length; page++) {
+            System.arraycopy(qPages[page], 0, copy, (page << RLTableSnapshot.PAGE_BITS) * RLTableStore.ACTION_COUNT, qPages[page].length);
+        }
+        return copy;
+    }
+
+    public int[] copyPolicy() {
+        int[] copy = new int[stateCount];
+        for (int page = 0; page < policyPages.length; page++) {
+            System.arraycopy(policyPages[page], 0, copy, page << RLTableSnapshot.PAGE_BITS, policyPages[page].length);
+        }
+        return copy;
+    }
+
+    // The pages themselves, for re-solving from this solution, callers copy a page before changing it
+    double[][] vPages() {
+        return vPages;
+    }
+
+    double[][] qPages() {
+        return qPages;
+    }
+
+    int[][] policyPages() {
+        return policyPages;
+    }
+
+    public RLPlanner.Method getMethod() {
+        return method;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    // Number of full sweeps over the states (policy evaluation sweeps for policy iteration)
+    public int getSweeps() {
+        return sweeps;
+    }
+
+    // Number of policy improvement steps for policy iteration, equal to the sweeps otherwise
+    public int getIterations() {
+        return iterations;
+    }
+
+    // Number of single-state V backups, sweeps times states for the sweeping methods
+    public long getBackups() {
+        return backups;
+    }
+
+    // Largest change of a V-value in the last sweep (largest Bellman error left for prioritized sweeping)
+    public double getResidual() {
+        return residual;
+    }
+
+    // Bound on the max-norm distance of V to the true V*: residual * gamma / (1 - gamma), infinite for gamma = 1
+    public double getErrorBound() {
+        return gamma < 1 ? residual * gamma / (1 - gamma) : Double.POSITIVE_INFINITY;
+    }
+
+    // Checks if the residual fell below the tolerance before the sweep limit
+    public boolean isConverged() {
+        return converged;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "RLSolution{" + method + ", gamma=" + gamma + ", states=" + stateCount + ", sweeps=" + sweeps + ", iterations=" + iterations + ", backups=" + backups
+                + ", residual=" + residual + ", converged=" + converged + ", ms=" + elapsedNanos / 1_000_000 + "}";
+    }
+}
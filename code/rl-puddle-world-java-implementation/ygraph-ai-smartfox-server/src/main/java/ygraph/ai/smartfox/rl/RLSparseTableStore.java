@@ -0,0 +1,394 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+
+// This class stores the master Q and V tables as a primitive int-keyed open-addressing hash table (the SPARSE table mode)
+// On very large grids an agent only visits a tiny fraction of the states, so a state gets storage only when one of its values is first written
+// States that were never written read as 0, matching a freshly initialized dense table, so memory scales with the visited states instead of gridSize^2
+// Slot i holds key(i) = stateId + 1 (0 marks an empty slot), its 4 Q-values at Q[i * 4 .. i * 4 + 3] and its V-value at V[i]
+// The slot arrays are split into pages of RLTableSnapshot.PAGE_STATES slots: slot i lives at [i >> PAGE_BITS][i & PAGE_MASK] of keyPages, qPages and vPages
+// Lookups use linear probing over a power of two capacity that doubles once the table is half full, entries are never removed except by clear()
+// Every access is synchronized on the store since a write may rehash the arrays that a concurrent read is probing
+// Writes look up the slot before touching the value pages, since inserting may replace them
+// Snapshots use paged copy-on-write like RLTableStore: snapshot() shares the slot pages and starts a new epoch, and the first write to a page after that
+// copies only that page, so taking a snapshot never copies the visited entries and never holds the lock for longer than copying the page references
+// grow() rehashes into new pages and leaves the old ones to the snapshots that share them
+public class RLSparseTableStore implements RLValueStore {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int PAGE_BITS = RLTableSnapshot.PAGE_BITS;
+    private static final int PAGE_MASK = RLTableSnapshot.PAGE_MASK;
+
+    private final int stateCount;
+    private int[][] keyPages;
+    private double[][] qPages;
+    private double[][] vPages;
+    private int capacity;
+    private int size;
+    private int mask;
+
+    // Epoch in which each page was last copied, a page from an earlier epoch may be held by a snapshot
+    private long[] keyPageEpochs;
+    private long[] qPageEpochs;
+    private long[] vPageEpochs;
+    private long epoch;
+
+    // Version of the tables and the last snapshot handed out
+    private volatile long version;
+    private volatile RLTableSnapshot lastSnapshot;
+
+    // Creates empty Q and V tables for a gridSize x gridSize puddle world
+    public RLSparseTableStore(int gridSize) {
+        if (gridSize <= 0 || (long) gridSize * gridSize > Integer.MAX_VALUE - 1) {
+            throw new IllegalArgumentException("Grid size out of range for int state IDs: " + gridSize);
+        }
+        this.stateCount = gridSize * gridSize;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    // Allocates empty slot pages for a capacity, the new pages are not shared with any snapshot
+    private void allocate(int capacity) {
+        int pages = Math.max(1, capacity >>> PAGE_BITS);
+        int slots = Math.min(capacity, RLTableSnapshot.PAGE_STATES);
+        this.keyPages = new int[pages][];
+        this.qPages = new double[pages][];
+        this.vPages = new double[pages][];
+        for (int p = 0; p < pages; p++) {
+            keyPages[p] = new int[slots];
+            qPages[p] = new double[slots * ACTION_COUNT];
+            vPages[p] = new double[slots];
+        }
+        this.keyPageEpochs = new long[pages];
+        this.qPageEpochs = new long[pages];
+        this.vPageEpochs = new long[pages];
+        Arrays.fill(keyPageEpochs, epoch);
+        Arrays.fill(qPageEpochs, epoch);
+        Arrays.fill(vPageEpochs, epoch);
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.size = 0;
+    }
+
+    // Spreads the state ID bits so that neighbouring states do not fill consecutive slots
+    private static int hash(int stateId) {
+        int h = stateId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Gets the slot holding a state in a set of key pages, or -1 if the state has no entry
+    private static int find(int[][] keyPages, int mask, int stateId) {
+        int key = stateId + 1;
+        int slot = hash(stateId) & mask;
+        while (true) {
+            int k = keyPages[slot >>> PAGE_BITS][slot & PAGE_MASK];
+            if (k == key) {
+                return slot;
+            }
+            if (k == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int find(int stateId) {
+        return find(keyPages, mask, stateId);
+    }
+
+    // Gets the slot holding a state, creating a zeroed entry on first touch
+    private int findOrInsert(int stateId) {
+        int key = stateId + 1;
+        int slot = hash(stateId) & mask;
+        while (true) {
+            int k = keyPages[slot >>> PAGE_BITS][slot & PAGE_MASK];
+            if (k == key) {
+                return slot;
+            }
+            if (k == 0) {
+                if ((size + 1) * 2 > capacity) {
+                    grow();
+                    return findOrInsert(stateId);
+                }
+                writableKeyPage(slot)[slot & PAGE_MASK] = key;
+                size++;
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    // Doubles the capacity and reinserts every entry into new pages
+    private void grow() {
+        int[][] oldKeys = keyPages;
+        double[][] oldQ = qPages;
+        double[][] oldV = vPages;
+        int oldCapacity = capacity;
+        allocate(oldCapacity * 2);
+        for (int i = 0; i < oldCapacity; i++) {
+            int key = oldKeys[i >>> PAGE_BITS][i & PAGE_MASK];
+            if (key != 0) {
+                int slot = hash(key - 1) & mask;
+                while (keyPages[slot >>> PAGE_BITS][slot & PAGE_MASK] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keyPages[slot >>> PAGE_BITS][slot & PAGE_MASK] = key;
+                System.arraycopy(oldQ[i >>> PAGE_BITS], (i & PAGE_MASK) * ACTION_COUNT, qPages[slot >>> PAGE_BITS], (slot & PAGE_MASK) * ACTION_COUNT, ACTION_COUNT);
+                vPages[slot >>> PAGE_BITS][slot & PAGE_MASK] = oldV[i >>> PAGE_BITS][i & PAGE_MASK];
+                size++;
+            }
+        }
+    }
+
+    // Gets the key page of a slot for writing, copying it first if a snapshot may hold it
+    // Callers hold the store lock
+    private int[] writableKeyPage(int slot) {
+        int page = slot >>> PAGE_BITS;
+        if (keyPageEpochs[page] != epoch) {
+            keyPages[page] = keyPages[page].clone();
+            keyPageEpochs[page] = epoch;
+        }
+        return keyPages[page];
+    }
+
+    // Gets the Q page of a slot for writing, copying it first if a snapshot may hold it
+    // Callers hold the store lock
+    private double[] writableQPage(int slot) {
+        int page = slot >>> PAGE_BITS;
+        if (qPageEpochs[page] != epoch) {
+            qPages[page] = qPages[page].clone();
+            qPageEpochs[page] = epoch;
+        }
+        return qPages[page];
+    }
+
+    // Gets the V page of a slot for writing, copying it first if a snapshot may hold it
+    // Callers hold the store lock
+    private double[] writableVPage(int slot) {
+        int page = slot >>> PAGE_BITS;
+        if (vPageEpochs[page] != epoch) {
+            vPages[page] = vPages[page].clone();
+            vPageEpochs[page] = epoch;
+        }
+        return vPages[page];
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public boolean isValidState(int stateId) {
+        return stateId >= 0 && stateId < stateCount;
+    }
+
+    public boolean isValidStateAction(int stateId, int action) {
+        return isValidState(stateId) && action >= 0 && action < ACTION_COUNT;
+    }
+
+    public synchronized double getQ(int stateId, int action) {
+        int slot = find(stateId);
+        return slot < 0 ? 0.0 : qPages[slot >>> PAGE_BITS][(slot & PAGE_MASK) * ACTION_COUNT + action];
+    }
+
+    public synchronized double getV(int stateId) {
+        int slot = find(stateId);
+        return slot < 0 ? 0.0 : vPages[slot >>> PAGE_BITS][slot & PAGE_MASK];
+    }
+
+    public synchronized boolean setQ(int stateId, int action, double qValue) {
+        if (!isValidStateAction(stateId, action)) {
+            return false;
+        }
+        int slot = findOrInsert(stateId);
+        writableQPage(slot)[(slot & PAGE_MASK) * ACTION_COUNT + action] = qValue;
+        version++;
+        return true;
+    }
+
+    public synchronized boolean setV(int stateId, double vValue) {
+        if (!isValidState(stateId)) {
+            return false;
+        }
+        int slot = findOrInsert(stateId);
+        writableVPage(slot)[slot & PAGE_MASK] = vValue;
+        version++;
+        return true;
+    }
+
+    public synchronized int setQValues(int[] stateIds, int[] actions, double[] values) {
+        int count = Math.min(stateIds.length, Math.min(actions.length, values.length));
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            if (isValidStateAction(stateIds[i], actions[i])) {
+                int slot = findOrInsert(stateIds[i]);
+                writableQPage(slot)[(slot & PAGE_MASK) * ACTION_COUNT + actions[i]] = values[i];
+                applied++;
+            }
+        }
+        version++;
+        return applied;
+    }
+
+    public synchronized int setVValues(int[] stateIds, double[] values) {
+        int count = Math.min(stateIds.length, values.length);
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            if (isValidState(stateIds[i])) {
+                int slot = findOrInsert(stateIds[i]);
+                writableVPage(slot)[slot & PAGE_MASK] = values[i];
+                applied++;
+            }
+        }
+        version++;
+        return applied;
+    }
+
+    public synchronized double[] getQRow(int stateId, double[] out) {
+        int slot = find(stateId);
+        if (slot < 0) {
+            Arrays.fill(out, 0, ACTION_COUNT, 0.0);
+        } else {
+            System.arraycopy(qPages[slot >>> PAGE_BITS], (slot & PAGE_MASK) * ACTION_COUNT, out, 0, ACTION_COUNT);
+        }
+        return out;
+    }
+
+    public synchronized void setQRow(int stateId, double[] row) {
+        int slot = findOrInsert(stateId);
+        System.arraycopy(row, 0, writableQPage(slot), (slot & PAGE_MASK) * ACTION_COUNT, ACTION_COUNT);
+        version++;
+    }
+
+    public synchronized int argmaxQ(int stateId) {
+        int slot = find(stateId);
+        return slot < 0 ? 0 : argmaxSlot(slot);
+    }
+
+    // Greedy action of an occupied slot, ties go to the lowest action index
+    private int argmaxSlot(int slot) {
+        double[] page = qPages[slot >>> PAGE_BITS];
+        int base = (slot & PAGE_MASK) * ACTION_COUNT;
+        int best = 0;
+        double bestValue = page[base];
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            double value = page[base + a];
+            if (value > bestValue) {
+                bestValue = value;
+                best = a;
+            }
+        }
+        return best;
+    }
+
+    public synchronized double maxQ(int stateId) {
+        int slot = find(stateId);
+        if (slot < 0) {
+            return 0.0;
+        }
+        double[] page = qPages[slot >>> PAGE_BITS];
+        int base = (slot & PAGE_MASK) * ACTION_COUNT;
+        double best = page[base];
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            best = Math.max(best, page[base + a]);
+        }
+        return best;
+    }
+
+    // Unvisited states get action 0, the greedy action of an all-zero row
+    public synchronized int[] greedyPolicy(int[] policyOut) {
+        Arrays.fill(policyOut, 0, stateCount, 0);
+        for (int i = 0; i < capacity; i++) {
+            int key = keyPages[i >>> PAGE_BITS][i & PAGE_MASK];
+            if (key != 0) {
+                policyOut[key - 1] = argmaxSlot(i);
+            }
+        }
+        return policyOut;
+    }
+
+    // Expands the stored rows into a dense row-major array, only intended for grids small enough to export
+    public synchronized double[] copyQValues() {
+        double[] copy = new double[Math.multiplyExact(stateCount, ACTION_COUNT)];
+        for (int i = 0; i < capacity; i++) {
+            int key = keyPages[i >>> PAGE_BITS][i & PAGE_MASK];
+            if (key != 0) {
+                System.arraycopy(qPages[i >>> PAGE_BITS], (i & PAGE_MASK) * ACTION_COUNT, copy, (key - 1) * ACTION_COUNT, ACTION_COUNT);
+            }
+        }
+        return copy;
+    }
+
+    // Expands the stored V-values into a dense array, only intended for grids small enough to export
+    public synchronized double[] copyVValues() {
+        double[] copy = new double[stateCount];
+        for (int i = 0; i < capacity; i++) {
+            int key = keyPages[i >>> PAGE_BITS][i & PAGE_MASK];
+            if (key != 0) {
+                copy[key - 1] = vPages[i >>> PAGE_BITS][i & PAGE_MASK];
+            }
+        }
+        return copy;
+    }
+
+    // Drops every entry and shrinks back to the initial capacity, snapshots keep the old pages
+    public synchronized void clear() {
+        allocate(INITIAL_CAPACITY);
+        version++;
+    }
+
+    public synchronized int getStoredStateCount() {
+        return size;
+    }
+
+    // Approximate heap size of the slot pages in bytes (4 byte key, 4 Q doubles and 1 V double per slot, plus array headers)
+    public synchronized long getMemoryUsageBytes() {
+        return 48L * keyPages.length + 44L * capacity;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Shares the slot pages with a new snapshot unless nothing was written since the last one, no entries are copied
+    public RLTableSnapshot snapshot() {
+        RLTableSnapshot snapshot = lastSnapshot;
+        if (snapshot != null && snapshot.getVersion() == version) {
+            return snapshot;
+        }
+        synchronized (this) {
+            snapshot = lastSnapshot;
+            if (snapshot == null || snapshot.getVersion() != version) {
+                epoch++;
+                snapshot = new SparseSnapshot(version, stateCount, keyPages.clone(), qPages.clone(), vPages.clone(), mask);
+                lastSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    // Snapshot holding the slot pages of one epoch, which the store never writes again, probed like the live store
+    private static final class SparseSnapshot extends RLTableSnapshot {
+        private final int[][] keyPages;
+        private final double[][] qPages;
+        private final double[][] vPages;
+        private final int mask;
+
+        SparseSnapshot(long version, int stateCount, int[][] keyPages, double[][] qPages, double[][] vPages, int mask) {
+            super(version, stateCount);
+            this.keyPages = keyPages;
+            this.qPages = qPages;
+            this.vPages = vPages;
+            this.mask = mask;
+        }
+
+        @Override
+        public double getQ(int stateId, int action) {
+            int slot = find(keyPages, mask, stateId);
+            return slot < 0 ? 0.0 : qPages[slot >>> PAGE_BITS][(slot & PAGE_MASK) * ACTION_COUNT + action];
+        }
+
+        @Override
+        public double getV(int stateId) {
+            int slot = find(keyPages, mask, stateId);
+            return slot < 0 ? 0.0 : vPages[slot >>> PAGE_BITS][slot & PAGE_MASK];
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package ygraph.ai.smartfox.rl;
+
+// This class compiles slippery dynamics on top of a layout: every action picks one of several outcomes with fixed probabilities
+// From a state, an action moves in the intended direction with probability 1 - slip - stay, slips to each of the two perpendicular directions with probability slip / 2 and stays in place with probability stay
+// Puddle cells use their own slip probability, so the distribution depends on the state and is compiled per (state, action)
+// Outcomes that land on the same next state (for example a slip into a wall and staying in place) are merged, so each (state, action) has 1 to 4 distinct outcomes
+// Each (state, action) gets a Walker/Vose alias table over its outcomes, so sampling is O(1) with a single uniform draw:
+// x = u * count, slot = floor(x), the outcome is slot if x - slot < aliasProb[slot], otherwise alias[slot]
+// Tables are stored flat with MAX_OUTCOMES slots per (state, action): index = (stateId * 4 + action) * MAX_OUTCOMES + slot
+public final class RLStochasticTransitions {
+    public static final int MAX_OUTCOMES = 4;
+    private static final int ACTION_COUNT = RLLayout.ACTION_COUNT;
+    // Largest state count compiled, about 93 bytes per state-action pair
+    private static final int MAX_STATES = 1 << 22;
+
+    private final RLTransitionModel layout;
+    private final double slipProb;
+    private final double puddleSlipProb;
+    private final double stayProb;
+
+    private final byte[] outcomeCount;
+    private final int[] outcomeState;
+    private final double[] outcomeProb;
+    private final double[] aliasProb;
+    private final byte[] alias;
+    private final double[] expectedReward;
+
+    private RLStochasticTransitions(RLTransitionModel layout, double slipProb, double puddleSlipProb, double stayProb) {
+        int pairs = layout.getStateCount() * ACTION_COUNT;
+        this.layout = layout;
+        this.slipProb = slipProb;
+        this.puddleSlipProb = puddleSlipProb;
+        this.stayProb = stayProb;
+        this.outcomeCount = new byte[pairs];
+        this.outcomeState = new int[pairs * MAX_OUTCOMES];
+        this.outcomeProb = new double[pairs * MAX_OUTCOMES];
+        this.aliasProb = new double[pairs * MAX_OUTCOMES];
+        this.alias = new byte[pairs * MAX_OUTCOMES];
+        this.expectedReward = new double[pairs];
+    }
+
+    // Compiles the outcome distributions and alias tables of every (state, action) of a layout
+    public static RLStochasticTransitions compile(RLTransitionModel layout, double slipProb, double puddleSlipProb, double stayProb) {
+        checkProbabilities(slipProb, stayProb);
+        checkProbabilities(puddleSlipProb, stayProb);
+        if (layout.getStateCount() > MAX_STATES) {
+            throw new IllegalArgumentException("Grid too large for stochastic transition tables: " + layout.getStateCount() + " states.");
+        }
+        RLStochasticTransitions transitions = new RLStochasticTransitions(layout, slipProb, puddleSlipProb, stayProb);
+        transitions.build();
+        return transitions;
+    }
+
+    private static void checkProbabilities(double slip, double stay) {
+        if (slip < 0 || stay < 0 || slip + stay > 1) {
+            throw new IllegalArgumentException("Invalid transition probabilities: slip=" + slip + ", stay=" + stay);
+        }
+    }
+
+    // The two directions perpendicular to an action
+    private static int perpendicular(int action, int side) {
+        if (action == RLLayout.ACTION_UP || action == RLLayout.ACTION_DOWN) {
+            return side == 0 ? RLLayout.ACTION_LEFT : RLLayout.ACTION_RIGHT;
+        }
+        return side == 0 ? RLLayout.ACTION_UP : RLLayout.ACTION_DOWN;
+    }
+
+    private void build() {
+        int[] states = new int[MAX_OUTCOMES];
+        double[] probs = new double[MAX_OUTCOMES];
+        int[] small = new int[MAX_OUTCOMES];
+        int[] large = new int[MAX_OUTCOMES];
+        double[] scaled = new double[MAX_OUTCOMES];
+        for (int stateId = 0; stateId < layout.getStateCount(); stateId++) {
+            double slip = layout.isPuddle(stateId) ? puddleSlipProb : slipProb;
+            for (int action = 0; action < ACTION_COUNT; action++) {
+                int pair = stateId * ACTION_COUNT + action;
+                int count = 0;
+                count = addOutcome(states, probs, count, layout.nextState(stateId, action), 1.0 - slip - stayProb);
+                count = addOutcome(states, probs, count, layout.nextState(stateId, perpendicular(action, 0)), slip / 2);
+                count = addOutcome(states, probs, count, layout.nextState(stateId, perpendicular(action, 1)), slip / 2);
+                count = addOutcome(states, probs, count, stateId, stayProb);
+
+                int base = pair * MAX_OUTCOMES;
+                double reward = 0.0;
+                for (int k = 0; k < count; k++) {
+                    outcomeState[base + k] = states[k];
+                    outcomeProb[base + k] = probs[k];
+                    reward += probs[k] * layout.stateReward(states[k]);
+                }
+                outcomeCount[pair] = (byte) count;
+                expectedReward[pair] = reward;
+                buildAlias(base, probs, count, small, large, scaled);
+            }
+        }
+    }
+
+    // Adds probability mass to an outcome, merging it with an earlier outcome on the same state, and drops zero probability outcomes
+    private static int addOutcome(int[] states, double[] probs, int count, int state, double prob) {
+        if (prob <= 0) {
+            return count;
+        }
+        for (int k = 0; k < count; k++) {
+            if (states[k] == state) {
+                probs[k] += prob;
+                return count;
+            }
+        }
+        states[count] = state;
+        probs[count] = prob;
+        return count + 1;
+    }
+
+    // Vose's alias method over count outcomes
+    private void buildAlias(int base, double[] probs, int count, int[] small, int[] large, double[] scaled) {
+        int smallSize = 0;
+        int largeSize = 0;
+        for (int k = 0; k < count; k++) {
+            scaled[k] = probs[k] * count;
+            if (scaled[k] < 1.0) {
+                small[smallSize++] = k;
+            } else {
+                large[largeSize++] = k;
+            }
+        }
+        while (smallSize > 0 && largeSize > 0) {
+            int less = small[--smallSize];
+            int more = large[--largeSize];
+            aliasProb[base + less] = scaled[less];
+            alias[base + less] = (byte) more;
+            scaled[more] = (scaled[more] + scaled[less]) - 1.0;
+            if (scaled[more] < 1.0) {
+                small[smallSize++] = more;
+            } else {
+                large[largeSize++] = more;
+            }
+        }
+        // Leftovers are 1 up to rounding error
+        while (largeSize > 0) {
+            int k = large[--largeSize];
+            aliasProb[base + k] = 1.0;
+            alias[base + k] = (byte) k;
+        }
+        while (smallSize > 0) {
+            int k = small[--smallSize];
+            aliasProb[base + k] = 1.0;
+            alias[base + k] = (byte) k;
+        }
+    }
+
+    // Samples the next state of taking an action from a state using one uniform draw u in [0, 1)
+    public int sample(int stateId, int action, double u) {
+        int pair = stateId * ACTION_COUNT + action;
+        int count = outcomeCount[pair];
+        double x = u * count;
+        int slot = (int) x;
+        int base = pair * MAX_OUTCOMES;
+        if (x - slot >= aliasProb[base + slot]) {
+            slot = alias[base + slot];
+        }
+        return outcomeState[base + slot];
+    }
+
+    // Number of distinct next states of taking an action from a state
+    public int outcomeCount(int stateId, int action) {
+        return outcomeCount[stateId * ACTION_COUNT + action];
+    }
+
+    // The k-th next state of taking an action from a state (k < outcomeCount)
+    public int outcomeState(int stateId, int action, int k) {
+        return outcomeState[(stateId * ACTION_COUNT + action) * MAX_OUTCOMES + k];
+    }
+
+    // Probability of the k-th next state of taking an action from a state (k < outcomeCount)
+    public double outcomeProbability(int stateId, int action, int k) {
+        return outcomeProb[(stateId * ACTION_COUNT + action) * MAX_OUTCOMES + k];
+    }
+
+    // Expected reward of taking an action from a state over all its outcomes
+    public double expectedReward(int stateId, int action) {
+        return expectedReward[stateId * ACTION_COUNT + action];
+    }
+
+    // Layout the transitions were compiled from
+    public RLTransitionModel getLayout() {
+        return layout;
+    }
+
+    public double getSlipProb() {
+        return slipProb;
+    }
+
+    public double getPuddleSlipProb() {
+        return puddleSlipProb;
+    }
+
+    public double getStayProb() {
+        return stayProb;
+    }
+
+    // Approximate heap size of the outcome and alias tables in bytes, about 93 bytes per state-action pair
+    public long getMemoryUsageBytes() {
+        return 96L + outcomeCount.length + outcomeState.length * 4L + outcomeProb.length * 8L + aliasProb.length * 8L + alias.length
+                + expectedReward.length * 8L;
+    }
+}
@@ -0,0 +1,11 @@
+package ygraph.ai.smartfox.rl;
+
+// This enum defines how the master Q and V tables of a world are stored, set with TABLE_MODE in the .env file
+// DENSE - flat arrays with an entry for every state (RLTableStore)
+// SPARSE - open-addressing hash with entries created when a state is first written (RLSparseTableStore), the default for large worlds
+// MAPPED - a memory-mapped file per session under TABLE_DIR (RLMappedTableStore), kept across extension reloads
+public enum RLTableMode {
+    DENSE,
+    SPARSE,
+    MAPPED
+}
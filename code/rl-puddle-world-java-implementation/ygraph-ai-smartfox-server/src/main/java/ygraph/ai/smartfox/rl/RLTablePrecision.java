@@ -0,0 +1,11 @@
+package ygraph.ai.smartfox.rl;
+
+// This enum defines the precision of the dense master Q and V tables, set with TABLE_PRECISION in the .env file
+// DOUBLE - 8 bytes per value, exact copy of the client's values (RLTableStore)
+// FLOAT32 - 4 bytes per value, relative error at most 2^-24 (RLQuantizedTableStore)
+// FIXED16 - 2 bytes per value, 16-bit fixed point with one power of two scale per table, absolute error at most half the scale (RLQuantizedTableStore)
+public enum RLTablePrecision {
+    DOUBLE,
+    FLOAT32,
+    FIXED16
+}
@@ -0,0 +1,172 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+
+// This class keeps a 64-bit SimHash signature of a user's mirrored Q-table, updated in O(1) per written state so RLSimilarityIndex can compare sessions without reading their tables
+// The low VALUE_BITS bits sketch the Q-values, the high POLICY_BITS bits sketch the greedy policy:
+// value bit b is the sign of sum over (s, a) of w_b(s, a) * Q(s, a), policy bit b the sign of sum over visited states s of w'_b(s, greedy(s))
+// The weights w_b are +1 or -1, bit b of a SplitMix64 hash of (s, a), so every sketch of the same grid uses the same random hyperplanes without storing them
+// A sign does not change when all values are scaled by the same positive factor, so tables learned with different reward scales or learning rates still match
+// Two tables with a small angle between their Q-vectors (and mostly the same greedy actions) get signatures with a small Hamming distance
+// States whose Q-row is still all 0 have no greedy action and add nothing, so two fresh tables do not look alike just because neither has learned anything
+// The sums are kept in accumulators and updated with the difference between a state's row before and after each Q-update,
+// writes that bypass handleQUpdate (for example RLWorld.setQValue) are not followed until rebuild is called
+public final class RLTableSketch {
+    public static final int VALUE_BITS = 32;
+    public static final int POLICY_BITS = 32;
+
+    private static final long VALUE_SALT = 0x5DEECE66DL;
+    private static final long POLICY_SALT = 0x2545F4914F6CDD1DL;
+
+    private final int stateCount;
+    private final double[] valueSums = new double[VALUE_BITS];
+    private final long[] policySums = new long[POLICY_BITS];
+    private long updates;
+
+    // Sketches the current contents of a table store
+    // A store at version 0 was never written and holds only zeros, which sketch to all-zero sums, so the O(stateCount) rebuild is skipped for new users
+    public RLTableSketch(RLValueStore tables) {
+        this.stateCount = tables.getStateCount();
+        if (tables.getVersion() != 0) {
+            rebuild(tables);
+        }
+    }
+
+    // Sketches the whole table again, O(stateCount)
+    public synchronized void rebuild(RLValueStore tables) {
+        if (tables.getStateCount() != stateCount) {
+            throw new IllegalArgumentException("Tables have " + tables.getStateCount() + " states, the sketch " + stateCount + ".");
+        }
+        Arrays.fill(valueSums, 0.0);
+        Arrays.fill(policySums, 0L);
+        double[] row = new double[RLValueStore.ACTION_COUNT];
+        for (int s = 0; s < stateCount; s++) {
+            tables.getQRow(s, row);
+            for (int a = 0; a < RLValueStore.ACTION_COUNT; a++) {
+                addValue(s, a, finite(row[a]));
+            }
+            int greedy = greedyAction(row);
+            if (greedy >= 0) {
+                addPolicy(s, greedy, 1);
+            }
+        }
+    }
+
+    // Copies the rows of the states about to be written, call before the update is applied to the tables
+    public double[] captureRows(RLValueStore tables, int[] stateIds) {
+        double[] rows = new double[stateIds.length * RLValueStore.ACTION_COUNT];
+        double[] row = new double[RLValueStore.ACTION_COUNT];
+        for (int i = 0; i < stateIds.length; i++) {
+            if (tables.isValidState(stateIds[i])) {
+                tables.getQRow(stateIds[i], row);
+                System.arraycopy(row, 0, rows, i * RLValueStore.ACTION_COUNT, RLValueStore.ACTION_COUNT);
+            }
+        }
+        return rows;
+    }
+
+    // Moves the sketch from the captured rows to the rows now in the tables, call after the update was applied
+    // A state written several times in one batch is counted once, with its row from before the batch
+    public synchronized void update(RLValueStore tables, int[] stateIds, double[] capturedRows) {
+        double[] before = new double[RLValueStore.ACTION_COUNT];
+        double[] after = new double[RLValueStore.ACTION_COUNT];
+        for (int i = 0; i < stateIds.length; i++) {
+            int s = stateIds[i];
+            if (!tables.isValidState(s) || seenEarlier(stateIds, i)) {
+                continue;
+            }
+            System.arraycopy(capturedRows, i * RLValueStore.ACTION_COUNT, before, 0, RLValueStore.ACTION_COUNT);
+            tables.getQRow(s, after);
+            for (int a = 0; a < RLValueStore.ACTION_COUNT; a++) {
+                double delta = finite(after[a]) - finite(before[a]);
+                if (delta != 0) {
+                    addValue(s, a, delta);
+                }
+            }
+            int oldGreedy = greedyAction(before);
+            int newGreedy = greedyAction(after);
+            if (oldGreedy != newGreedy) {
+                if (oldGreedy >= 0) {
+                    addPolicy(s, oldGreedy, -1);
+                }
+                if (newGreedy >= 0) {
+                    addPolicy(s, newGreedy, 1);
+                }
+            }
+            updates++;
+        }
+    }
+
+    private static boolean seenEarlier(int[] stateIds, int index) {
+        for (int j = 0; j < index; j++) {
+            if (stateIds[j] == stateIds[index]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addValue(int s, int a, double value) {
+        if (value == 0) {
+            return;
+        }
+        long bits = RLSeeds.mix(VALUE_SALT + (long) s * RLValueStore.ACTION_COUNT + a);
+        for (int b = 0; b < VALUE_BITS; b++) {
+            valueSums[b] += ((bits >>> b) & 1) != 0 ? value : -value;
+        }
+    }
+
+    private void addPolicy(int s, int a, int count) {
+        long bits = RLSeeds.mix(POLICY_SALT + (long) s * RLValueStore.ACTION_COUNT + a);
+        for (int b = 0; b < POLICY_BITS; b++) {
+            policySums[b] += ((bits >>> b) & 1) != 0 ? count : -count;
+        }
+    }
+
+    // Action with the highest Q-value (ties go to the lowest action index), -1 for a row that is still all 0
+    static int greedyAction(double[] row) {
+        int best = -1;
+        double bestValue = 0.0;
+        boolean touched = false;
+        for (int a = 0; a < RLValueStore.ACTION_COUNT; a++) {
+            double q = finite(row[a]);
+            if (q != 0) {
+                touched = true;
+            }
+            if (best < 0 || q > bestValue) {
+                best = a;
+                bestValue = q;
+            }
+        }
+        return touched ? best : -1;
+    }
+
+    private static double finite(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? 0.0 : value;
+    }
+
+    // The 64-bit signature, value bits low and policy bits high
+    public synchronized long getSignature() {
+        long signature = 0L;
+        for (int b = 0; b < VALUE_BITS; b++) {
+            if (valueSums[b] > 0) {
+                signature |= 1L << b;
+            }
+        }
+        for (int b = 0; b < POLICY_BITS; b++) {
+            if (policySums[b] > 0) {
+                signature |= 1L << (VALUE_BITS + b);
+            }
+        }
+        return signature;
+    }
+
+    // Number of state rows the sketch followed through Q-updates
+    public synchronized long getUpdateCount() {
+        return updates;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+}
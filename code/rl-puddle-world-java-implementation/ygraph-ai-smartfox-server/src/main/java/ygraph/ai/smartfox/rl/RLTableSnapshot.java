@@ -0,0 +1,104 @@
+package ygraph.ai.smartfox.rl;
+
+// This class is an immutable, consistent view of a user's master Q and V tables at one table version
+// Graders and dashboards read from a snapshot while the request handler keeps writing into the live store, so they never see a half-applied update
+// Each table store has its own snapshot subclass that shares the store's storage instead of copying it:
+// RLTableStore, RLQuantizedTableStore and RLSparseTableStore (whose pages hold hash slots) share their pages and copy a page on its first write after the snapshot
+// (paged copy-on-write), RLMappedTableStore copies a page out of the file just before it is first written
+// Tables are split into pages of PAGE_STATES states, so a write never copies more than one page of Q-values and one page of V-values
+public abstract class RLTableSnapshot {
+    static final int PAGE_BITS = 10;
+    static final int PAGE_STATES = 1 << PAGE_BITS;
+    static final int PAGE_MASK = PAGE_STATES - 1;
+    private static final int ACTION_COUNT = RLValueStore.ACTION_COUNT;
+
+    private final long version;
+    private final int stateCount;
+
+    RLTableSnapshot(long version, int stateCount) {
+        this.version = version;
+        this.stateCount = stateCount;
+    }
+
+    // Number of pages needed for a number of states
+    static int pageCount(int stateCount) {
+        return (int) (((long) stateCount + PAGE_STATES - 1) >>> PAGE_BITS);
+    }
+
+    // Number of states in a page, the last page may be smaller than PAGE_STATES
+    static int pageStates(int stateCount, int page) {
+        return Math.min(PAGE_STATES, stateCount - (page << PAGE_BITS));
+    }
+
+    // Version of the store when the snapshot was taken
+    public long getVersion() {
+        return version;
+    }
+
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    public abstract double getQ(int stateId, int action);
+
+    public abstract double getV(int stateId);
+
+    // Copies the 4 action values of a state into the given array (length >= 4) and returns it
+    public double[] getQRow(int stateId, double[] out) {
+        for (int a = 0; a < ACTION_COUNT; a++) {
+            out[a] = getQ(stateId, a);
+        }
+        return out;
+    }
+
+    // Gets the action with the highest Q-value for a state (ties go to the lowest action index)
+    public int argmaxQ(int stateId) {
+        int best = 0;
+        double bestValue = getQ(stateId, 0);
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            double value = getQ(stateId, a);
+            if (value > bestValue) {
+                bestValue = value;
+                best = a;
+            }
+        }
+        return best;
+    }
+
+    // Gets the highest Q-value for a state
+    public double maxQ(int stateId) {
+        double best = getQ(stateId, 0);
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            best = Math.max(best, getQ(stateId, a));
+        }
+        return best;
+    }
+
+    // Fills policyOut with the greedy action of every state (length >= stateCount) and returns it
+    public int[] greedyPolicy(int[] policyOut) {
+        for (int s = 0; s < stateCount; s++) {
+            policyOut[s] = argmaxQ(s);
+        }
+        return policyOut;
+    }
+
+    // Copies the Q-table (row-major) into a new dense array, only intended for grids small enough to export
+    public double[] copyQValues() {
+        double[] copy = new double[Math.multiplyExact(stateCount, ACTION_COUNT)];
+        for (int s = 0; s < stateCount; s++) {
+            for (int a = 0; a < ACTION_COUNT; a++) {
+                copy[s * ACTION_COUNT + a] = getQ(s, a);
+            }
+        }
+        return copy;
+    }
+
+    // Copies the V-table into a new dense array
+    public double[] copyVValues() {
+        double[] copy = new double[stateCount];
+        for (int s = 0; s < stateCount; s++) {
+            copy[s] = getV(s);
+        }
+        return copy;
+    }
+}
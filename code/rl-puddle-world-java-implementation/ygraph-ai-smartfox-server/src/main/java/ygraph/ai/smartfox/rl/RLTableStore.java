@@ -0,0 +1,293 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+
+// This class stores the master Q and V tables mirrored from a client as paged primitive arrays
+// Q-values are stored row-major, so the 4 action values of a state sit next to each other in memory:
+// qPages[stateId >> PAGE_BITS][(stateId & PAGE_MASK) * ACTION_COUNT + action]
+// V-values are stored one per state: vPages[stateId >> PAGE_BITS][stateId & PAGE_MASK]
+// Writes are synchronized on the store so that bulk updates from the request handler are applied atomically with respect to each other
+// This is the DENSE table mode, memory is fixed at 40 bytes per state whether or not the state is ever visited
+// Snapshots use paged copy-on-write: snapshot() shares the live pages with the snapshot and starts a new epoch,
+// and the first write to a page after that copies only that page (RLTableSnapshot.PAGE_STATES states), so the step path never copies the whole table
+// Every write that changes the tables increments the version, so a reader can tell if its snapshot is stale
+public class RLTableStore implements RLValueStore {
+    public static final int ACTION_COUNT = 4;
+    private static final int PAGE_BITS = RLTableSnapshot.PAGE_BITS;
+    private static final int PAGE_MASK = RLTableSnapshot.PAGE_MASK;
+
+    private final int stateCount;
+    private final double[][] qPages;
+    private final double[][] vPages;
+
+    // Epoch in which each page was last copied, a page from an earlier epoch may be held by a snapshot
+    private final long[] qPageEpochs;
+    private final long[] vPageEpochs;
+    private long epoch;
+
+    // Version of the tables and the last snapshot handed out
+    private volatile long version;
+    private volatile RLTableSnapshot lastSnapshot;
+
+    // Creates the Q and V tables for a gridSize x gridSize puddle world with every value set to 0
+    public RLTableStore(int gridSize) {
+        if (gridSize <= 0) {
+            throw new IllegalArgumentException("Grid size must be positive: " + gridSize);
+        }
+        if ((long) gridSize * gridSize * ACTION_COUNT > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Grid size too large for dense tables: " + gridSize + ". Use TABLE_MODE=SPARSE.");
+        }
+        this.stateCount = gridSize * gridSize;
+        int pages = RLTableSnapshot.pageCount(stateCount);
+        this.qPages = new double[pages][];
+        this.vPages = new double[pages][];
+        for (int p = 0; p < pages; p++) {
+            int states = RLTableSnapshot.pageStates(stateCount, p);
+            qPages[p] = new double[states * ACTION_COUNT];
+            vPages[p] = new double[states];
+        }
+        this.qPageEpochs = new long[pages];
+        this.vPageEpochs = new long[pages];
+    }
+
+    // Number of states held in the tables
+    public int getStateCount() {
+        return stateCount;
+    }
+
+    // Checks if a state ID lies within the tables
+    public boolean isValidState(int stateId) {
+        return stateId >= 0 && stateId < stateCount;
+    }
+
+    // Checks if a state-action pair lies within the Q-table
+    public boolean isValidStateAction(int stateId, int action) {
+        return isValidState(stateId) && action >= 0 && action < ACTION_COUNT;
+    }
+
+    // Gets the Q-value for a state-action pair (no bounds logging, callers validate with isValidStateAction)
+    public double getQ(int stateId, int action) {
+        return qPages[stateId >>> PAGE_BITS][(stateId & PAGE_MASK) * ACTION_COUNT + action];
+    }
+
+    // Gets the V-value for a state
+    public double getV(int stateId) {
+        return vPages[stateId >>> PAGE_BITS][stateId & PAGE_MASK];
+    }
+
+    // Gets the Q page of a state for writing, copying it first if a snapshot may hold it
+    // Callers hold the store lock
+    private double[] writableQPage(int stateId) {
+        int page = stateId >>> PAGE_BITS;
+        if (qPageEpochs[page] != epoch) {
+            qPages[page] = qPages[page].clone();
+            qPageEpochs[page] = epoch;
+        }
+        return qPages[page];
+    }
+
+    // Gets the V page of a state for writing, copying it first if a snapshot may hold it
+    // Callers hold the store lock
+    private double[] writableVPage(int stateId) {
+        int page = stateId >>> PAGE_BITS;
+        if (vPageEpochs[page] != epoch) {
+            vPages[page] = vPages[page].clone();
+            vPageEpochs[page] = epoch;
+        }
+        return vPages[page];
+    }
+
+    // Sets the Q-value for a state-action pair and returns false if the pair is out of range
+    public synchronized boolean setQ(int stateId, int action, double qValue) {
+        if (!isValidStateAction(stateId, action)) {
+            return false;
+        }
+        writableQPage(stateId)[(stateId & PAGE_MASK) * ACTION_COUNT + action] = qValue;
+        version++;
+        return true;
+    }
+
+    // Sets the V-value for a state and returns false if the state is out of range
+    public synchronized boolean setV(int stateId, double vValue) {
+        if (!isValidState(stateId)) {
+            return false;
+        }
+        writableVPage(stateId)[stateId & PAGE_MASK] = vValue;
+        version++;
+        return true;
+    }
+
+    // Applies a batch of Q-updates as sent in a GAME_Q_UPDATE message
+    // Out of range entries are skipped and the number of applied entries is returned
+    public synchronized int setQValues(int[] stateIds, int[] actions, double[] values) {
+        int count = Math.min(stateIds.length, Math.min(actions.length, values.length));
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            int stateId = stateIds[i];
+            int action = actions[i];
+            if (stateId >= 0 && stateId < stateCount && action >= 0 && action < ACTION_COUNT) {
+                writableQPage(stateId)[(stateId & PAGE_MASK) * ACTION_COUNT + action] = values[i];
+                applied++;
+            }
+        }
+        version++;
+        return applied;
+    }
+
+    // Applies a batch of V-updates as sent in a GAME_V_UPDATE message
+    // Out of range entries are skipped and the number of applied entries is returned
+    public synchronized int setVValues(int[] stateIds, double[] values) {
+        int count = Math.min(stateIds.length, values.length);
+        int applied = 0;
+        for (int i = 0; i < count; i++) {
+            int stateId = stateIds[i];
+            if (stateId >= 0 && stateId < stateCount) {
+                writableVPage(stateId)[stateId & PAGE_MASK] = values[i];
+                applied++;
+            }
+        }
+        version++;
+        return applied;
+    }
+
+    // Copies the 4 action values of a state into the given array (length >= 4) and returns it
+    public synchronized double[] getQRow(int stateId, double[] out) {
+        System.arraycopy(qPages[stateId >>> PAGE_BITS], (stateId & PAGE_MASK) * ACTION_COUNT, out, 0, ACTION_COUNT);
+        return out;
+    }
+
+    // Overwrites the 4 action values of a state from the given array (length >= 4)
+    public synchronized void setQRow(int stateId, double[] row) {
+        System.arraycopy(row, 0, writableQPage(stateId), (stateId & PAGE_MASK) * ACTION_COUNT, ACTION_COUNT);
+        version++;
+    }
+
+    // Gets the action with the highest Q-value for a state (ties go to the lowest action index)
+    public int argmaxQ(int stateId) {
+        double[] page = qPages[stateId >>> PAGE_BITS];
+        int base = (stateId & PAGE_MASK) * ACTION_COUNT;
+        int best = 0;
+        double bestValue = page[base];
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            double value = page[base + a];
+            if (value > bestValue) {
+                bestValue = value;
+                best = a;
+            }
+        }
+        return best;
+    }
+
+    // Gets the highest Q-value for a state
+    public double maxQ(int stateId) {
+        double[] page = qPages[stateId >>> PAGE_BITS];
+        int base = (stateId & PAGE_MASK) * ACTION_COUNT;
+        double best = page[base];
+        for (int a = 1; a < ACTION_COUNT; a++) {
+            double value = page[base + a];
+            if (value > best) {
+                best = value;
+            }
+        }
+        return best;
+    }
+
+    // Fills policyOut with the greedy action of every state (length >= stateCount) and returns it
+    public synchronized int[] greedyPolicy(int[] policyOut) {
+        for (int s = 0; s < stateCount; s++) {
+            policyOut[s] = argmaxQ(s);
+        }
+        return policyOut;
+    }
+
+    // Copies the whole Q-table (row-major) into a new array
+    public synchronized double[] copyQValues() {
+        double[] copy = new double[stateCount * ACTION_COUNT];
+        for (int p = 0; p < qPages.length; p++) {
+            System.arraycopy(qPages[p], 0, copy, (p << PAGE_BITS) * ACTION_COUNT, qPages[p].length);
+        }
+        return copy;
+    }
+
+    // Copies the whole V-table into a new array
+    public synchronized double[] copyVValues() {
+        double[] copy = new double[stateCount];
+        for (int p = 0; p < vPages.length; p++) {
+            System.arraycopy(vPages[p], 0, copy, p << PAGE_BITS, vPages[p].length);
+        }
+        return copy;
+    }
+
+    // Sets every Q and V value back to 0, pages held by a snapshot are replaced instead of zeroed
+    public synchronized void clear() {
+        for (int p = 0; p < qPages.length; p++) {
+            if (qPageEpochs[p] == epoch) {
+                Arrays.fill(qPages[p], 0.0);
+            } else {
+                qPages[p] = new double[qPages[p].length];
+                qPageEpochs[p] = epoch;
+            }
+            if (vPageEpochs[p] == epoch) {
+                Arrays.fill(vPages[p], 0.0);
+            } else {
+                vPages[p] = new double[vPages[p].length];
+                vPageEpochs[p] = epoch;
+            }
+        }
+        version++;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Returns the cached snapshot if nothing was written since, otherwise shares the live pages with a new snapshot
+    // Costs one copy of the page references (stateCount / PAGE_STATES entries), no values are copied
+    public RLTableSnapshot snapshot() {
+        RLTableSnapshot snapshot = lastSnapshot;
+        if (snapshot != null && snapshot.getVersion() == version) {
+            return snapshot;
+        }
+        synchronized (this) {
+            snapshot = lastSnapshot;
+            if (snapshot == null || snapshot.getVersion() != version) {
+                epoch++;
+                snapshot = new PagedSnapshot(version, stateCount, qPages.clone(), vPages.clone());
+                lastSnapshot = snapshot;
+            }
+            return snapshot;
+        }
+    }
+
+    // Snapshot holding the pages of one epoch, which the store never writes again
+    private static final class PagedSnapshot extends RLTableSnapshot {
+        private final double[][] qPages;
+        private final double[][] vPages;
+
+        PagedSnapshot(long version, int stateCount, double[][] qPages, double[][] vPages) {
+            super(version, stateCount);
+            this.qPages = qPages;
+            this.vPages = vPages;
+        }
+
+        @Override
+        public double getQ(int stateId, int action) {
+            return qPages[stateId >>> PAGE_BITS][(stateId & PAGE_MASK) * ACTION_COUNT + action];
+        }
+
+        @Override
+        public double getV(int stateId) {
+            return vPages[stateId >>> PAGE_BITS][stateId & PAGE_MASK];
+        }
+    }
+
+    // Every state has storage in the dense tables
+    public int getStoredStateCount() {
+        return stateCount;
+    }
+
+    // Approximate heap size of the pages in bytes (16 byte array headers plus 8 bytes per double)
+    public long getMemoryUsageBytes() {
+        return 32L * (qPages.length + 1) + 8L * stateCount * (ACTION_COUNT + 1);
+    }
+}
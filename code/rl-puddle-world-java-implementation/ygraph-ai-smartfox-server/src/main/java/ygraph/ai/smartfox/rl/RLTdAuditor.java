@@ -0,0 +1,180 @@
+package ygraph.ai.smartfox.rl;
+
+// This class audits the Q-updates a client sends against the transition the server just served it, so agents with a bugged update rule are flagged live
+// RLGameUser records every served transition (s, a, r, s'), where r is the reward handed to the agent (shaping included)
+// When the matching GAME_Q_UPDATE arrives, and before it is applied, the expected Q-learning update is recomputed from the mirrored table:
+// expected = Q(s, a) + alpha * (r + gamma * max_a' Q(s', a') - Q(s, a)), the max runs over all 4 actions of s' like the reference client
+// The error (reported - expected) feeds running statistics (Welford's mean and variance, the largest error, the number of mismatches), O(1) per update
+// A user is flagged once at least AUDIT_MIN_UPDATES updates were audited and more than AUDIT_FLAG_RATE of them differ by more than the tolerance
+// Updates for other state-action pairs than the last served one (replays, batched or late updates) are counted as unmatched and not audited
+public class RLTdAuditor {
+    private final String userName;
+    private final double alpha;
+    private final double gamma;
+    private final double tolerance;
+    private final double flagRate;
+    private final int minUpdates;
+
+    // Last served transition, consumed by the Q-update that matches it
+    private boolean pending;
+    private int pendingState;
+    private int pendingAction;
+    private double pendingReward;
+    private int pendingNextState;
+
+    // Running error statistics
+    private long audited;
+    private long mismatches;
+    private long unmatched;
+    // Welford's running mean and sum of squared deviations over the finite errors
+    private long finite;
+    private double meanError;
+    private double m2;
+    private double maxAbsError;
+    private boolean flagged;
+
+    public RLTdAuditor(String userName, double alpha, double gamma, double tolerance, double flagRate, int minUpdates) {
+        if (tolerance < 0 || Double.isNaN(tolerance)) {
+            throw new IllegalArgumentException("Audit tolerance cannot be negative: " + tolerance);
+        }
+        this.userName = userName;
+        this.alpha = alpha;
+        this.gamma = gamma;
+        this.tolerance = tolerance;
+        this.flagRate = flagRate;
+        this.minUpdates = minUpdates;
+    }
+
+    // Creates an auditor with the ALPHA and AUDIT_* settings for a world's discount
+    public static RLTdAuditor fromConfig(RLConfig config, String userName, double gamma) {
+        return new RLTdAuditor(userName, config.getAlpha(), gamma, config.getAuditTolerance(), config.getAuditFlagRate(), config.getAuditMinUpdates());
+    }
+
+    // Records the transition just served to the client, replacing one whose update never arrived
+    public synchronized void recordTransition(int stateId, int action, double reward, int nextStateId) {
+        pending = true;
+        pendingState = stateId;
+        pendingAction = action;
+        pendingReward = reward;
+        pendingNextState = nextStateId;
+    }
+
+    // Audits a batch of Q-updates before it is written into the tables and returns the number of mismatched entries
+    public synchronized int audit(RLValueStore tables, int[] stateIds, int[] actions, double[] values) {
+        int found = 0;
+        for (int i = 0; i < stateIds.length; i++) {
+            if (!pending || stateIds[i] != pendingState || actions[i] != pendingAction) {
+                unmatched++;
+                continue;
+            }
+            pending = false;
+            if (!tables.isValidStateAction(pendingState, pendingAction) || !tables.isValidState(pendingNextState)) {
+                unmatched++;
+                continue;
+            }
+            double error = values[i] - expectedValue(tables);
+            if (Double.isNaN(error)) {
+                error = Double.POSITIVE_INFINITY;
+            }
+            if (record(error, tolerance + quantizationSlack(tables))) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    // Q(s, a) + alpha * (r + gamma * max_a' Q(s', a') - Q(s, a)) from the mirrored table
+    private double expectedValue(RLValueStore tables) {
+        double current = tables.getQ(pendingState, pendingAction);
+        double target = pendingReward + gamma * tables.maxQ(pendingNextState);
+        return current + alpha * (target - current);
+    }
+
+    // Quantized tables read back values up to their error bound away from what the client holds, both Q(s, a) and max Q(s', .) enter the update
+    private double quantizationSlack(RLValueStore tables) {
+        if (tables instanceof RLQuantizedTableStore) {
+            return 2 * ((RLQuantizedTableStore) tables).getQErrorBound();
+        }
+        return 0.0;
+    }
+
+    // Adds one error to the statistics, returns true if it is a mismatch
+    private boolean record(double error, double allowed) {
+        audited++;
+        double absError = Math.abs(error);
+        boolean mismatch = !(absError <= allowed);
+        if (mismatch) {
+            mismatches++;
+        }
+        if (absError > maxAbsError) {
+            maxAbsError = absError;
+        }
+        if (!Double.isInfinite(error)) {
+            finite++;
+            double delta = error - meanError;
+            meanError += delta / finite;
+            m2 += delta * (error - meanError);
+        }
+        if (!flagged && audited >= minUpdates && mismatches > flagRate * audited) {
+            flagged = true;
+            System.err.println("TD auditor flagged user " + userName + ": " + describe());
+        }
+        return mismatch;
+    }
+
+    // Number of Q-updates checked against a served transition
+    public synchronized long getAuditedCount() {
+        return audited;
+    }
+
+    // Number of audited Q-updates that differed from the recomputed update by more than the tolerance
+    public synchronized long getMismatchCount() {
+        return mismatches;
+    }
+
+    // Number of Q-updates that did not match the last served transition
+    public synchronized long getUnmatchedCount() {
+        return unmatched;
+    }
+
+    // Mean of (reported - expected) over the audited updates with a finite value (non-finite values only count as mismatches)
+    public synchronized double getMeanError() {
+        return meanError;
+    }
+
+    // Sample variance of (reported - expected) over the finite errors, 0 with fewer than two of them
+    public synchronized double getErrorVariance() {
+        return finite > 1 ? m2 / (finite - 1) : 0.0;
+    }
+
+    public synchronized double getMaxAbsError() {
+        return maxAbsError;
+    }
+
+    public synchronized double getMismatchRate() {
+        return audited == 0 ? 0.0 : (double) mismatches / audited;
+    }
+
+    // Checks if the user's mismatch rate went over AUDIT_FLAG_RATE, a flag stays until reset
+    public synchronized boolean isFlagged() {
+        return flagged;
+    }
+
+    // Clears the statistics and the flag
+    public synchronized void reset() {
+        pending = false;
+        audited = 0;
+        mismatches = 0;
+        unmatched = 0;
+        finite = 0;
+        meanError = 0.0;
+        m2 = 0.0;
+        maxAbsError = 0.0;
+        flagged = false;
+    }
+
+    public synchronized String describe() {
+        return mismatches + " of " + audited + " Q-updates mismatched (rate " + getMismatchRate() + "), mean error " + meanError
+                + ", std " + Math.sqrt(getErrorVariance()) + ", max |error| " + maxAbsError + ", " + unmatched + " unmatched";
+    }
+}
@@ -0,0 +1,126 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.SplittableRandom;
+
+// This interface decides when an episode ends before the goal is reached, reaching the goal always ends the episode
+// A policy is resolved once per session from STOP_METHOD in the configuration (see RLConfig):
+// 0 - MaxSteps: the episode ends after MAX_STEPS steps
+// 1 - GoalOnly: the episode only ends at the goal
+// 2 - Geometric: after the first step the episode ends with probability STOP_PROB per step, the length is drawn once per episode
+// 3 - custom: STOP_POLICY_CLASS names a class implementing this interface with a public no-argument constructor
+// beginEpisode is called once at the start of every episode, shouldStop after every step, so policies precompute whatever they can in beginEpisode
+public interface RLTerminationPolicy {
+
+    // Prepares the policy for a new episode, random is the session's stopping stream for that episode
+    void beginEpisode(SplittableRandom random);
+
+    // Checks if the episode ends after the given number of steps
+    boolean shouldStop(int stepsThisEpisode);
+
+    // Short description for logs
+    String describe();
+
+    // Resolves the policy configured by STOP_METHOD, STOP_PROB and STOP_POLICY_CLASS
+    static RLTerminationPolicy fromConfig(RLConfig config, int maxSteps) {
+        int stopMethod = config.getStopMethod();
+        switch (stopMethod) {
+            case 0:
+                return new MaxSteps(maxSteps);
+            case 1:
+                return new GoalOnly();
+            case 2:
+                return new Geometric(config.getStopProb());
+            case 3:
+                String className = config.getStopPolicyClass();
+                try {
+                    return (RLTerminationPolicy) Class.forName(className).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    System.err.println("Failed to load STOP_POLICY_CLASS " + className + ": " + e + ". Using MaxSteps.");
+                    return new MaxSteps(maxSteps);
+                }
+            default:
+                System.err.println("Unknown STOP_METHOD: " + stopMethod + ". Using MaxSteps.");
+                return new MaxSteps(maxSteps);
+        }
+    }
+
+    // Ends the episode after a fixed number of steps
+    final class MaxSteps implements RLTerminationPolicy {
+        private final int maxSteps;
+
+        public MaxSteps(int maxSteps) {
+            this.maxSteps = maxSteps;
+        }
+
+        public void beginEpisode(SplittableRandom random) {
+        }
+
+        public boolean shouldStop(int stepsThisEpisode) {
+            return stepsThisEpisode >= maxSteps;
+        }
+
+        public String describe() {
+            return "MaxSteps(" + maxSteps + ")";
+        }
+
+        public int getMaxSteps() {
+            return maxSteps;
+        }
+    }
+
+    // Only the goal ends the episode
+    final class GoalOnly implements RLTerminationPolicy {
+        public void beginEpisode(SplittableRandom random) {
+        }
+
+        public boolean shouldStop(int stepsThisEpisode) {
+            return false;
+        }
+
+        public String describe() {
+            return "GoalOnly";
+        }
+    }
+
+    // Stops with probability stopProb after every step but the first, which makes the episode length 1 + G with G ~ Geometric(stopProb) on {1, 2, ...}
+    // G is drawn once per episode by inversion: G = ceil(ln(1 - u) / ln(1 - stopProb)) for one uniform u, so the per-step check is a single integer compare
+    final class Geometric implements RLTerminationPolicy {
+        private final double stopProb;
+        private final double logContinue;
+        private int stopStep;
+
+        public Geometric(double stopProb) {
+            if (stopProb < 0 || stopProb > 1 || Double.isNaN(stopProb)) {
+                throw new IllegalArgumentException("STOP_PROB must be in [0, 1]: " + stopProb);
+            }
+            this.stopProb = stopProb;
+            this.logContinue = Math.log1p(-stopProb);
+        }
+
+        public void beginEpisode(SplittableRandom random) {
+            if (stopProb <= 0) {
+                stopStep = Integer.MAX_VALUE;
+                return;
+            }
+            if (stopProb >= 1) {
+                stopStep = 2;
+                return;
+            }
+            double g = Math.ceil(Math.log1p(-random.nextDouble()) / logContinue);
+            stopStep = 1 + (int) Math.min(Math.max(g, 1.0), Integer.MAX_VALUE - 1);
+        }
+
+        public boolean shouldStop(int stepsThisEpisode) {
+            return stepsThisEpisode >= stopStep;
+        }
+
+        public String describe() {
+            return "Geometric(" + stopProb + ")";
+        }
+
+        // Step count at which the current episode stops
+        public int getStopStep() {
+            return stopStep;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.List;
+
+// This interface is the step contract RLWorld needs from a compiled puddle layout
+// RLLayout implements it with dense per-state tables, RLCompressedLayout with run-length encoded puddle rows for grids too large for dense tables
+// State IDs follow the usual flattening: stateId = row * gridSize + col
+public interface RLTransitionModel {
+
+    // Gets the state ID reached by taking an action from a state
+    int nextState(int stateId, int action);
+
+    // Gets the reward for taking an action from a state
+    double reward(int stateId, int action);
+
+    // Gets the reward for entering a state (goal reward, puddle reward or default reward)
+    // Any int is accepted, a state off the grid gets the default reward since clients send state IDs that are not validated
+    double stateReward(int stateId);
+
+    // Checks if a state is covered by a puddle, false for a state off the grid
+    boolean isPuddle(int stateId);
+
+    // Checks if a state is terminal
+    boolean isTerminal(int stateId);
+
+    // Checks if a state ID lies within the grid
+    boolean isValidState(int stateId);
+
+    // Gets the 4-bit valid action mask of a state
+    int validActionMask(int stateId);
+
+    // Gets the valid action indices of a state, the returned array is shared and must not be modified
+    int[] validActions(int stateId);
+
+    int getGridSize();
+
+    int getStateCount();
+
+    int getGoalStateId();
+
+    int getPuddleSize();
+
+    // Gets the (row, col) top-left corners of the puddles, the list is read-only
+    List<int[]> getPuddlePositions();
+
+    double getDefaultReward();
+
+    double getPuddleReward();
+
+    double getGoalReward();
+
+    // Approximate heap size of the compiled tables in bytes, used to bound RLLayoutCache
+    long getMemoryUsageBytes();
+
+    // Compiles puddle positions into a dense RLLayout, or into an RLCompressedLayout when large is true
+    static RLTransitionModel compile(boolean large, int gridSize, int puddleSize, List<int[]> puddles,
+                                     double defaultReward, double puddleReward, double goalReward) {
+        if (large) {
+            return RLCompressedLayout.compile(gridSize, puddleSize, puddles, defaultReward, puddleReward, goalReward);
+        }
+        return RLLayout.compile(gridSize, puddleSize, puddles, defaultReward, puddleReward, goalReward);
+    }
+}
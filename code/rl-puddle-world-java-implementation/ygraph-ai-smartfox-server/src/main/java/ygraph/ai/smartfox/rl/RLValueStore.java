@@ -0,0 +1,152 @@
+package ygraph.ai.smartfox.rl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+// This interface is the contract for the master Q and V tables mirrored from a client
+// Q-values are addressed by (stateId, action) with action in [0, ACTION_COUNT), V-values by stateId, states that were never written read as 0
+// RLTableStore keeps dense flat arrays, RLSparseTableStore only keeps the states that were written, RLMappedTableStore keeps the values in a memory-mapped file
+public interface RLValueStore {
+    int ACTION_COUNT = RLTableStore.ACTION_COUNT;
+    // Longest session name, in UTF-8 bytes, whose table file name is its plain hex (see tableFileName)
+    int TABLE_NAME_HEX_BYTES = 64;
+
+    // Number of states addressable in the tables
+    int getStateCount();
+
+    // Checks if a state ID lies within the tables
+    boolean isValidState(int stateId);
+
+    // Checks if a state-action pair lies within the Q-table
+    boolean isValidStateAction(int stateId, int action);
+
+    // Gets the Q-value for a state-action pair (callers validate with isValidStateAction)
+    double getQ(int stateId, int action);
+
+    // Gets the V-value for a state
+    double getV(int stateId);
+
+    // Sets the Q-value for a state-action pair and returns false if the pair is out of range
+    boolean setQ(int stateId, int action, double qValue);
+
+    // Sets the V-value for a state and returns false if the state is out of range
+    boolean setV(int stateId, double vValue);
+
+    // Applies a batch of Q-updates, skipping out of range entries, and returns the number of applied entries
+    int setQValues(int[] stateIds, int[] actions, double[] values);
+
+    // Applies a batch of V-updates, skipping out of range entries, and returns the number of applied entries
+    int setVValues(int[] stateIds, double[] values);
+
+    // Copies the 4 action values of a state into the given array (length >= 4) and returns it
+    double[] getQRow(int stateId, double[] out);
+
+    // Overwrites the 4 action values of a state from the given array (length >= 4)
+    void setQRow(int stateId, double[] row);
+
+    // Gets the action with the highest Q-value for a state (ties go to the lowest action index)
+    int argmaxQ(int stateId);
+
+    // Gets the highest Q-value for a state
+    double maxQ(int stateId);
+
+    // Fills policyOut with the greedy action of every state (length >= stateCount) and returns it
+    int[] greedyPolicy(int[] policyOut);
+
+    // Copies the whole Q-table (row-major, stateCount * 4 entries) into a new array
+    double[] copyQValues();
+
+    // Copies the whole V-table (stateCount entries) into a new array
+    double[] copyVValues();
+
+    // Sets every Q and V value back to 0
+    void clear();
+
+    // Number of states that have storage allocated (every state for a dense store)
+    int getStoredStateCount();
+
+    // Approximate heap size of the stored values in bytes, used to compare table modes
+    long getMemoryUsageBytes();
+
+    // Writes any buffered values out to their backing storage, a no-op for heap stores
+    default void flush() {
+    }
+
+    // Writes the values out and releases the backing storage, the tables are not written after close, a no-op for heap stores
+    default void close() {
+    }
+
+    // Version of the tables, incremented by every write that changes them, a store at version 0 holds only zeros
+    long getVersion();
+
+    // Checks if the tables were written since a version was read
+    default boolean hasChangedSince(long version) {
+        return getVersion() != version;
+    }
+
+    // Gets an immutable consistent view of the tables at the current version
+    // Repeated calls without writes in between return the same snapshot
+    RLTableSnapshot snapshot();
+
+    // Creates the tables of a gridSize x gridSize world in the given mode
+    static RLValueStore create(RLTableMode mode, int gridSize) {
+        if (mode == RLTableMode.SPARSE) {
+            return new RLSparseTableStore(gridSize);
+        }
+        return new RLTableStore(gridSize);
+    }
+
+    // Creates the tables of a session, MAPPED mode maps <tableDir>/<tableFileName(sessionName)> and falls back to DENSE if the file cannot be mapped
+    // precision other than DOUBLE quantizes DENSE tables, SPARSE and MAPPED tables always store doubles
+    static RLValueStore create(RLTableMode mode, RLTablePrecision precision, int gridSize, String tableDir, String sessionName) {
+        if (precision != RLTablePrecision.DOUBLE) {
+            if (mode == RLTableMode.DENSE) {
+                return new RLQuantizedTableStore(gridSize, precision);
+            }
+            System.err.println("TABLE_PRECISION " + precision + " only applies to DENSE tables. Using DOUBLE for " + mode + " tables.");
+        }
+        if (mode == RLTableMode.MAPPED) {
+            if (sessionName == null) {
+                System.err.println("MAPPED table mode needs a session name. Using DENSE tables.");
+                return new RLTableStore(gridSize);
+            }
+            File file = new File(tableDir, tableFileName(sessionName));
+            try {
+                RLMappedTableStore store = new RLMappedTableStore(gridSize, file, sessionName);
+                System.out.println((store.isReattached() ? "Reattached to" : "Created") + " mapped table file: " + file.getAbsolutePath());
+                return store;
+            } catch (IOException e) {
+                System.err.println("Failed to map table file " + file.getAbsolutePath() + ": " + e.getMessage() + ". Using DENSE tables.");
+                return new RLTableStore(gridSize);
+            }
+        }
+        return create(mode, gridSize);
+    }
+
+    // Name of a session's table file: the lowercase hex of the UTF-8 session name and .qtable,
+    // distinct session names always get distinct file names, also on case-insensitive file systems
+    // Names longer than TABLE_NAME_HEX_BYTES bytes keep the hex of their first TABLE_NAME_HEX_BYTES bytes and add "-" and a 64-bit FNV-1a hash of the whole name,
+    // so the file name stays under the usual 255-byte limit; two long names that collide share a file name but not a header session identity,
+    // so RLMappedTableStore resets the file instead of reading the other session's values
+    static String tableFileName(String sessionName) {
+        byte[] bytes = sessionName.getBytes(StandardCharsets.UTF_8);
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < Math.min(bytes.length, TABLE_NAME_HEX_BYTES); i++) {
+            name.append(Character.forDigit((bytes[i] >> 4) & 0xF, 16)).append(Character.forDigit(bytes[i] & 0xF, 16));
+        }
+        if (bytes.length > TABLE_NAME_HEX_BYTES) {
+            long hash = 0xCBF29CE484222325L;
+            for (byte b : bytes) {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+            }
+            String hex = Long.toHexString(hash);
+            name.append('-');
+            for (int i = hex.length(); i < 16; i++) {
+                name.append('0');
+            }
+            name.append(hex);
+        }
+        return name.append(".qtable").toString();
+    }
+}
@@ -1,15 +1,8 @@
 package ygraph.ai.smartfox.rl;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.SplittableRandom;
 
 import com.smartfoxserver.v2.entities.User;
 
@@ -19,183 +12,232 @@ import com.smartfoxserver.v2.entities.User;
 // stateId = row * gridSize + col
 // row = stateId / gridSize
 // col = stateId % gridSize
-// Puddle positions stored as a List of (row, col) coordinates of the top left of the squares that become the puddles
+// Puddle positions stored as a List of (row, col) coordinates of the top left of the squares that become the puddles, compiled into an immutable RLLayout
+// Layouts can be shared between worlds through an RLLayoutCache, and the layout mode decides whether reset() keeps the layout or swaps in another one
 // Some of this code needs to be refactored to maintain only the logic for moving the RL agent around based on the client's sent actions and respond with valid actions, etc. and store a copy of the Q and V tables (not decide actions by itself), it will be done soon
 public class RLWorld {
-    private final Map<Integer, double[]> qTable = new ConcurrentHashMap<>();
-    private final Map<Integer, Double> vTable = new ConcurrentHashMap<>();
-    private static final HashMap<String, String> ENV = loadEnv();
+    // Configuration the world was created with, later reloads only affect worlds created after them
+    private final RLConfig config = RLConfig.get();
+    // Logs every move and table update when LOG_LEVEL=DEBUG
+    private final boolean debugLogging = config.isDebugLogging();
 
     // Learning parameter - exploration rate
     private double epsilon;
 
-    private final int gridSize = Integer.parseInt(ENV.getOrDefault("GRID_SIZE", "5"));
+    private final int gridSize = config.getGridSize();
+
+    // Master Q and V tables mirrored from the client, dense flat arrays or a sparse hash depending on TABLE_MODE (SPARSE by default for large worlds)
+    private final RLValueStore tables;
     private final int maxPuddles;
     private final int puddleSize;
 
-    // List of puddle top-left positions to stretch downward and rightward by puddleSize x puddleSize squares for the puddles
-    private final List<int[]> puddlePositions;
+    // Compiled puddle bitmap, transition, reward and terminal tables for the current puddle positions
+    // The puddle positions (top-left corners stretched downward and rightward into puddleSize x puddleSize squares) are kept in the layout
+    // Large worlds (WORLD_MODE=LARGE or GRID_SIZE above LARGE_GRID_THRESHOLD) use a run-length compressed layout instead of dense tables
+    private RLTransitionModel layout;
+    private final boolean largeWorld;
+
+    // Slippery dynamics (TRANSITION_MODE=SLIPPERY): outcome distributions and alias tables compiled for the current layout, null for deterministic moves
+    private final boolean slippery;
+    private final double slipProb;
+    private final double puddleSlipProb;
+    private final double stayProb;
+    private RLStochasticTransitions transitions;
+
+    // Layout and transitions of the last reference solution handed out, later layouts are re-solved incrementally from it
+    private RLTransitionModel solvedLayout;
+    private RLStochasticTransitions solvedTransitions;
+
+    // Potential-based shaping (REWARD_SHAPING=POTENTIAL): the goal distance field of the current layout, null when shaping is off
+    // The shaping term gamma * potential(s') - potential(s) leaves the optimal policy unchanged (Ng, Harada and Russell, 1999)
+    private final boolean potentialShaping;
+    private final double shapingScale;
+    private RLGoalDistanceField distanceField;
+
+    // Shared layout cache (null for a standalone world), how often the layout changes, and the seed the cached layouts are drawn from
+    private final RLLayoutCache layoutCache;
+    private final RLLayoutMode layoutMode;
+    private final long layoutSeed;
+    private final int layoutPoolSize;
 
     private final int goalStateId = gridSize * gridSize - 1;
 
     private int currentStateId;
 
-    private final Random random;
+    // Seed of this session and of the current episode, the random streams below are derived from the episode seed (see RLSeeds)
+    private final long sessionSeed;
+    private int episode;
+    private long episodeSeed;
+    private SplittableRandom layoutRandom;
+    private SplittableRandom explorationRandom;
+    private SplittableRandom transitionRandom;
 
     // Rewards for each type of transitions from state to state
     private final double defaultReward;
     private final double puddleReward;
     private final double goalReward;
 
-    // Possible actions are up, down, left, and right
-    private final String[] actions = {"UP", "DOWN", "LEFT", "RIGHT"};
 
+    // Last reward handed to the agent (raw plus shaping) and its two parts
     private double lastReward;
+    private double lastRawReward;
+    private double lastShapingReward;
     private boolean isTerminal;
 
     private double gamma;
 
     // Constructors
     public RLWorld() {
-        random = new Random();
-        this.maxPuddles = Integer.parseInt(ENV.getOrDefault("MAX_PUDDLES", "2"));
-        this.puddleSize = Integer.parseInt(ENV.getOrDefault("PUDDLE_SIZE", "2"));
-        this.epsilon = Double.parseDouble(ENV.getOrDefault("EPSILON", "1"));
-        this.defaultReward = Double.parseDouble(ENV.getOrDefault("DEFAULT_REWARD", "-0.01"));
-        this.puddleReward = Double.parseDouble(ENV.getOrDefault("PUDDLE_REWARD", "-1.0"));
-        this.goalReward = Double.parseDouble(ENV.getOrDefault("GOAL_REWARD", "10.0"));
-        this.gamma = Double.parseDouble(ENV.getOrDefault("GAMMA", "0.9"));
-        puddlePositions = new ArrayList<>();
-        initializeQTable();
-        initializeVTable();
-        initializePuddles();
-        reset();
+        this(null, RLConfig.get().getLayoutMode(), new SplittableRandom().nextLong());
         System.out.println("RLWorld initialized with defaultReward: " + this.defaultReward);
     }
 
     public RLWorld(User user, double alpha, double gamma, double epsilon) {
-        this.epsilon = epsilon;
-        this.maxPuddles = Integer.parseInt(ENV.getOrDefault("MAX_PUDDLES", "2"));
-        this.puddleSize = Integer.parseInt(ENV.getOrDefault("PUDDLE_SIZE", "2"));
-        this.epsilon = Double.parseDouble(ENV.getOrDefault("EPSILON", "1"));
-        this.defaultReward = Double.parseDouble(ENV.getOrDefault("DEFAULT_REWARD", "-0.01"));
-        this.puddleReward = Double.parseDouble(ENV.getOrDefault("PUDDLE_REWARD", "-1.0"));
-        this.goalReward = Double.parseDouble(ENV.getOrDefault("GOAL_REWARD", "10.0"));
-        this.gamma = Double.parseDouble(ENV.getOrDefault("GAMMA", "0.9"));
-        this.random = new Random();
-        this.puddlePositions = new ArrayList<>();
-        initializeQTable();
-        initializeVTable();
-        initializePuddles();
-        reset();
-        System.out.println("RLWorld initialized with actions: " + String.join(", ", actions));
-    }
-
-    // Loading in .env file
-    private static HashMap<String, String> loadEnv() {
-        HashMap<String, String> env = new HashMap<>();
-        String workingDir = System.getProperty("user.dir");
-        System.out.println("Current Working Directory: " + workingDir);
-        try (BufferedReader br = new BufferedReader(new FileReader(".env"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                line = line.trim();
-                if (line.isEmpty() || line.startsWith("#")) 
-                    continue;
-                String[] parts = line.split("=", 2);
-                if (parts.length == 2) {
-                    env.put(parts[0].trim(), parts[1].trim());
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to read .env file: " + e.getMessage());
-        }
-        return env;
+        this(null, RLConfig.get().getLayoutMode(), new SplittableRandom().nextLong());
+        System.out.println("RLWorld initialized with actions: " + String.join(", ", RLLayout.actionNamesForMask((1 << RLLayout.ACTION_COUNT) - 1)));
     }
 
-    // Initializes the master Q-table with values set to 0 for each state-action pair
-    private void initializeQTable() {
-        for (int state = 0; state < gridSize * gridSize; state++) {
-            double[] actions = new double[4];
-            for (int a = 0; a < 4; a++) {
-                actions[a] = 0.0;
-            }
-            qTable.put(state, actions);
-        }
+    // Creates a world whose layouts come from a shared cache, without a session name (MAPPED table mode falls back to DENSE)
+    // The session seed is derived from the layout seed
+    public RLWorld(RLLayoutCache layoutCache, RLLayoutMode layoutMode, long layoutSeed) {
+        this(layoutCache, layoutMode, layoutSeed, null, RLSeeds.mix(layoutSeed));
     }
 
-    // Initialize the master V-table with default values of 0
-    private void initializeVTable() {
-        for (int state = 0; state < gridSize * gridSize; state++) {
-            vTable.put(state, 0.0);
+    // Creates a world whose layouts come from a shared cache
+    // SESSION mode draws the layout from layoutSeed once, CLASS mode does the same with a seed shared by the class, and EPISODE mode picks one of LAYOUT_POOL_SIZE layouts derived from layoutSeed on every reset
+    // With a null cache the world generates its own layouts and EPISODE mode regenerates on every reset
+    // sessionName names the table file in MAPPED table mode, so a world created for the same session after an extension reload reattaches to its Q and V values
+    // sessionSeed is the root of the session's random streams, the world starts in episode 0
+    public RLWorld(RLLayoutCache layoutCache, RLLayoutMode layoutMode, long layoutSeed, String sessionName, long sessionSeed) {
+        this.sessionSeed = sessionSeed;
+        beginEpisodeStreams(0);
+        this.maxPuddles = config.getMaxPuddles();
+        this.puddleSize = config.getPuddleSize();
+        this.epsilon = config.getEpsilon();
+        this.defaultReward = config.getDefaultReward();
+        this.puddleReward = config.getPuddleReward();
+        this.goalReward = config.getGoalReward();
+        this.gamma = config.getGamma();
+        this.layoutCache = layoutCache;
+        this.layoutMode = layoutMode;
+        this.layoutSeed = layoutSeed;
+        this.layoutPoolSize = config.getLayoutPoolSize();
+        this.largeWorld = config.isLargeWorld(gridSize);
+        this.tables = RLValueStore.create(config.getTableMode(largeWorld), config.getTablePrecision(), gridSize, config.getTableDir(), sessionName);
+        this.slippery = config.isSlippery();
+        this.slipProb = config.getSlipProb();
+        this.puddleSlipProb = config.getPuddleSlipProb();
+        this.stayProb = config.getStayProb();
+        this.potentialShaping = config.isPotentialShaping();
+        this.shapingScale = config.getShapingScale();
+        if (layoutCache != null) {
+            useLayout(cachedLayout(layoutMode == RLLayoutMode.EPISODE ? poolSeed(layoutRandom.nextInt(layoutPoolSize)) : layoutSeed), true);
+        } else {
+            initializePuddles();
+        }
+        this.currentStateId = 0;
+        System.out.println("RLWorld session seed: " + sessionSeed + ", episode 0 seed: " + episodeSeed + ".");
+        System.out.println("RLWorld layout mode: " + layoutMode + (largeWorld ? " (large, compressed)" : "") + " with " + layout.getPuddlePositions().size() + " puddles.");
+        if (slippery) {
+            System.out.println("RLWorld transitions: slippery with slip " + slipProb + ", puddle slip " + puddleSlipProb + ", stay " + stayProb + ".");
+        }
+        if (potentialShaping) {
+            System.out.println("RLWorld reward shaping: potential with scale " + shapingScale + (distanceField.isExact() ? ", puddle cost " + distanceField.getPuddleCost() : ", Manhattan distance") + ".");
         }
+        System.out.println("RLWorld tables: " + tables.getClass().getSimpleName() + " using " + tables.getMemoryUsageBytes() + " bytes.");
     }
 
     // Initializes the puddle positions randomly within the grid
+    // Placement is constructive (each anchor cell drawn at most once) and keeps a puddle-free path from the start to the goal, see RLPuddleGenerator
+    // The generated layout belongs to this world only and is not put in the layout cache
     public void initializePuddles() {
-        puddlePositions.clear();
-        while (puddlePositions.size() < maxPuddles) {
-            int row = random.nextInt(gridSize - puddleSize + 1);
-            int col = random.nextInt(gridSize - puddleSize + 1);
-            int[] puddle = {row, col};
-            if (row == 0 && col == 0) {
-                continue;
-            }
-            if (!isOverlapping(puddle)) {
-                if (!(row <= (goalStateId / gridSize) && (goalStateId / gridSize) < row + puddleSize &&
-                  col <= (goalStateId % gridSize) && (goalStateId % gridSize) < col + puddleSize)) 
-                {
-                    puddlePositions.add(puddle);
-                    System.out.println("Puddle added at row: " + row + ", col: " + col);
-                }
-            }
+        List<int[]> puddles = RLPuddleGenerator.generate(gridSize, maxPuddles, puddleSize, layoutRandom);
+        for (int[] puddle : puddles) {
+            System.out.println("Puddle added at row: " + puddle[0] + ", col: " + puddle[1]);
+        }
+        if (puddles.size() < maxPuddles) {
+            System.out.println("Only " + puddles.size() + " of " + maxPuddles + " puddles fit in the grid.");
         }
-        System.out.println("Total Puddles Initialized: " + puddlePositions.size());
+        compileLayout(puddles);
+        System.out.println("Total Puddles Initialized: " + puddles.size());
     }    
 
-    // Checks if a puddle overlaps with existing puddles or the terminal state and returns true if so
-    private boolean isOverlapping(int[] newPuddle) {
-        for (int[] existingPuddle : puddlePositions) {
-            if (newPuddle[0] < existingPuddle[0] + puddleSize &&
-                newPuddle[0] + puddleSize > existingPuddle[0] &&
-                newPuddle[1] < existingPuddle[1] + puddleSize &&
-                newPuddle[1] + puddleSize > existingPuddle[1]) {
-                return true;
-            }
+    // Compiles puddle positions and rewards into the lookup tables used for stepping, simulating and reward queries
+    private void compileLayout(List<int[]> puddles) {
+        useLayout(RLTransitionModel.compile(largeWorld, gridSize, puddleSize, puddles, defaultReward, puddleReward, goalReward), false);
+    }
+
+    // Switches to a layout, getting its slippery outcome tables when TRANSITION_MODE=SLIPPERY and looking up its goal distance field when shaping
+    // The outcome tables of a shared layout come from the layout cache, a layout owned by this world compiles its own
+    private void useLayout(RLTransitionModel newLayout, boolean shared) {
+        if (slippery && (transitions == null || transitions.getLayout() != newLayout)) {
+            this.transitions = shared
+                    ? layoutCache.getTransitions(newLayout, slipProb, puddleSlipProb, stayProb)
+                    : RLStochasticTransitions.compile(newLayout, slipProb, puddleSlipProb, stayProb);
         }
-        // Goal state cover check
-        int goalRow = goalStateId / gridSize;
-        int goalCol = goalStateId % gridSize;
-        for (int[] puddle : puddlePositions) {
-            if (goalRow >= puddle[0] && goalRow < puddle[0] + puddleSize &&
-                goalCol >= puddle[1] && goalCol < puddle[1] + puddleSize) {
-                return true;
-            }
+        if (potentialShaping) {
+            this.distanceField = RLGoalDistanceField.forLayout(newLayout);
         }
-        return false;
+        this.layout = newLayout;
+    }
+
+    // Shaping term for a transition, 0 when shaping is off
+    // The goal has potential 0, so the shaped return of an episode that reaches the goal differs from the raw one by -potential(start) only
+    public double shapingReward(int stateId, int nextStateId) {
+        if (distanceField == null) {
+            return 0.0;
+        }
+        return gamma * distanceField.potential(nextStateId, shapingScale) - distanceField.potential(stateId, shapingScale);
+    }
+
+    // Gets the shared layout for a seed from the layout cache
+    private RLTransitionModel cachedLayout(long seed) {
+        return layoutCache.getLayout(seed, largeWorld, gridSize, maxPuddles, puddleSize, defaultReward, puddleReward, goalReward);
     }
 
-    // Resets the RLWorld to the initial state with current state starting with state ID = 0 and initialize the puddles
+    // Seed of the i-th layout in the EPISODE mode pool
+    private long poolSeed(int index) {
+        return layoutSeed + 0x9E3779B97F4A7C15L * (index + 1);
+    }
+
+    // Derives the episode seed and the per-purpose streams of an episode
+    private void beginEpisodeStreams(int episode) {
+        this.episode = episode;
+        this.episodeSeed = RLSeeds.episodeSeed(sessionSeed, episode);
+        this.layoutRandom = RLSeeds.stream(episodeSeed, RLSeeds.Purpose.LAYOUT);
+        this.explorationRandom = RLSeeds.stream(episodeSeed, RLSeeds.Purpose.EXPLORATION);
+        this.transitionRandom = RLSeeds.stream(episodeSeed, RLSeeds.Purpose.TRANSITION);
+    }
+
+    // Resets the RLWorld for the next episode
     public void reset() {
-        initializePuddles();
-        System.out.println("World reset. Current state set to 0.");
-        for (int[] puddle : puddlePositions) {
-            System.out.println("Puddle at row: " + puddle[0] + ", col: " + puddle[1]);
+        startEpisode(episode + 1);
+    }
+
+    // Resets the RLWorld to the initial state of an episode with current state starting with state ID = 0
+    // The episode's random streams are derived from the session seed and the episode index, so starting the same episode again replays it exactly
+    // SESSION and CLASS modes keep the current layout, EPISODE mode swaps in another pooled layout (or regenerates one for a standalone world)
+    public void startEpisode(int episode) {
+        beginEpisodeStreams(episode);
+        if (layoutMode == RLLayoutMode.EPISODE) {
+            if (layoutCache != null) {
+                useLayout(cachedLayout(poolSeed(layoutRandom.nextInt(layoutPoolSize))), true);
+            } else {
+                initializePuddles();
+            }
         }
         this.currentStateId = 0;
+        System.out.println("World reset for episode " + episode + " (seed " + episodeSeed + "). Current state set to 0 with " + layout.getPuddlePositions().size() + " puddles.");
     }
 
     // Sets Q-value for a given state-action pair for managing client updates to Q-table
     public void setQValue(int stateId, int action, double qValue) {
-        double[] currentQ = qTable.get(stateId);
-        if (currentQ != null) {
-            if (action >= 0 && action < currentQ.length) {
-                currentQ[action] = qValue;
-                qTable.put(stateId, currentQ);
+        if (tables.setQ(stateId, action, qValue)) {
+            if (debugLogging) {
                 System.out.println("Q-Table Updated: StateID=" + stateId + ", Action=" + action + ", QValue=" + qValue);
-            } else {
-                System.err.println("Invalid action index: " + action + " for StateID: " + stateId);
             }
+        } else if (tables.isValidState(stateId)) {
+            System.err.println("Invalid action index: " + action + " for StateID: " + stateId);
         } else {
             System.err.println("Invalid stateId: " + stateId + " when setting Q-value.");
         }
@@ -203,9 +245,10 @@ public class RLWorld {
 
     // Sets V-value for a given state for managing client updates to V-table
     public void setVValue(int stateId, double vValue) {
-        if (vTable.containsKey(stateId)) {
-            vTable.put(stateId, vValue);
-            System.out.println("V-Table Updated: StateID=" + stateId + ", VValue=" + vValue);
+        if (tables.setV(stateId, vValue)) {
+            if (debugLogging) {
+                System.out.println("V-Table Updated: StateID=" + stateId + ", VValue=" + vValue);
+            }
         } else {
             System.err.println("Invalid stateId: " + stateId + " when setting V-value.");
         }
@@ -214,7 +257,7 @@ public class RLWorld {
     // Completes an action selection using epsilon-greedy policy and updates the current state ID to the next state ID by calling the helper method moveAgentWithAction that takes the current state and action
     public int moveAgent(int stateId) {
         int action;
-        if (random.nextDouble() < epsilon) {
+        if (explorationRandom.nextDouble() < epsilon) {
             // random action chosen -> exploration
             action = getRandomAction();
         } else {
@@ -226,30 +269,18 @@ public class RLWorld {
 
     // Gets a random action index to select a random action
     private int getRandomAction() {
-        return random.nextInt(actions.length);
+        return explorationRandom.nextInt(RLLayout.ACTION_COUNT);
     }
 
     // Finds the best action's index based on maximum Q-value and returns that action
     private int getBestAction(int stateId) {
-        double[] qValues = qTable.get(stateId);
-        double maxQValue = Double.NEGATIVE_INFINITY;
-        int bestAction = 0;
-
-        for (int i = 0; i < qValues.length; i++) {
-            if (qValues[i] > maxQValue) {
-                maxQValue = qValues[i];
-                bestAction = i;
-            }
-        }
-
-        return bestAction;
+        return tables.argmaxQ(stateId);
     }
 
     // Gets the Q-value for a specific state-action pair
     public double getMasterQValue(int stateId, int actionIndex) {
-        double[] qValues = qTable.get(stateId);
-        if (qValues != null && actionIndex >= 0 && actionIndex < qValues.length) {
-            return qValues[actionIndex];
+        if (tables.isValidStateAction(stateId, actionIndex)) {
+            return tables.getQ(stateId, actionIndex);
         }
         System.err.println("Invalid stateId or actionIndex in getMasterQValue: stateId=" + stateId + ", actionIndex=" + actionIndex);
         return 0.0;
@@ -257,164 +288,118 @@ public class RLWorld {
 
     // Gets the V-value for a specific state
     public double getMasterVValue(int stateId) {
-        return vTable.getOrDefault(stateId, 0.0);
+        return tables.isValidState(stateId) ? tables.getV(stateId) : 0.0;
+    }
+
+    // Gets the master Q and V tables for bulk reads and writes
+    public RLValueStore getTables() {
+        return tables;
+    }
+
+    // Reports how much memory the master tables use and how many states have storage, for comparing the table modes
+    // Quantized tables also report their observed and worst case errors against the values sent by the client
+    public String getTableMemoryReport() {
+        String report = tables.getClass().getSimpleName() + ": " + tables.getStoredStateCount() + " of " + tables.getStateCount()
+                + " states stored, " + tables.getMemoryUsageBytes() + " bytes";
+        if (tables instanceof RLQuantizedTableStore) {
+            report += ", " + ((RLQuantizedTableStore) tables).getErrorReport();
+        }
+        return report;
     }
 
     // Move the RL agent, update its reward and state
     public int moveAgentWithAction(int stateId, int action) {
-        String actionStr = getActionString(action);
-        if (actionStr == null) {
-            System.err.println("Invalid action index: " + action);
+        if (action < 0 || action >= RLLayout.ACTION_COUNT || !layout.isValidState(stateId)) {
+            System.err.println("Invalid action index: " + action + " or stateId: " + stateId);
             setLastReward(-0.1);
             setTerminal(true);
             return stateId;
         }
-    
-        // Get current position
-        int row = stateId / gridSize;
-        int col = stateId % gridSize;
-    
-        // Get the new position based on action string
-        switch (actionStr) {
-            case "UP":
-                row = Math.max(row - 1, 0);
-                break;
-            case "DOWN":
-                row = Math.min(row + 1, gridSize - 1);
-                break;
-            case "LEFT":
-                col = Math.max(col - 1, 0);
-                break;
-            case "RIGHT":
-                col = Math.min(col + 1, gridSize - 1);
-                break;
-        }
 
-        int newStateId = row * gridSize + col;
-        double reward = defaultReward;
-        if (newStateId == goalStateId) {
-            reward = goalReward;
-        } else if (isPuddle(newStateId)) {
-            reward = puddleReward;
+        // Precompiled transition and reward lookups for the current layout, slippery moves sample the outcome with one uniform draw
+        int newStateId;
+        double reward;
+        if (transitions != null) {
+            newStateId = transitions.sample(stateId, action, transitionRandom.nextDouble());
+            reward = layout.stateReward(newStateId);
+        } else {
+            newStateId = layout.nextState(stateId, action);
+            reward = layout.reward(stateId, action);
         }
 
-        System.out.println("moveAgentWithAction: stateId=" + stateId + ", action=" + action + " (" + actionStr + ")");
-        System.out.println("Action '" + actionStr + "' from (" + row + ", " + col + ") leads to newStateId=" + newStateId + " with reward=" + reward);
+        double shaping = shapingReward(stateId, newStateId);
+        this.lastRawReward = reward;
+        this.lastShapingReward = shaping;
+        this.lastReward = reward + shaping;
+        setTerminal(layout.isTerminal(newStateId));
 
-        setLastReward(reward);
-        if (isTerminalState(newStateId)) {
-            setTerminal(true);
-        } else {
-            setTerminal(false);
+        if (debugLogging) {
+            System.out.println("moveAgentWithAction: stateId=" + stateId + ", action=" + action + " -> newStateId=" + newStateId + " with reward=" + reward
+                    + (distanceField != null ? " (shaping " + shaping + ")" : ""));
         }
-    
-        System.out.println("Moved to state ID: " + newStateId + " with Reward: " + reward);
         this.currentStateId = newStateId;
         return newStateId;
     }
 
+    // Move the RL agent with an action string, kept for older callers that work with action strings
+    public int moveAgentWithAction(int stateId, String action) {
+        return moveAgentWithAction(stateId, getActionIndex(action));
+    }
+
     // Performs a move using the current state ID and action string within the 1D array representing the puddle world
     // Returns the new state ID post action
     public int simulateAction(int stateId, String action) {
-        int row = stateId / gridSize;
-        int col = stateId % gridSize;
-        System.out.println("Simulating action '" + action + "' from state (" + row + ", " + col + ")");
-        switch (action) {
-            case "UP":
-                row = Math.max(row - 1, 0);
-                break;
-            case "DOWN":
-                row = Math.min(row + 1, gridSize - 1);
-                break;
-            case "LEFT":
-                col = Math.max(col - 1, 0);
-                break;
-            case "RIGHT":
-                col = Math.min(col + 1, gridSize - 1);
-                break;
-            default:
-                System.out.println("Invalid action string: " + action);
-                break;
+        int actionIndex = getActionIndex(action);
+        if (actionIndex == -1 || !layout.isValidState(stateId)) {
+            System.out.println("Invalid action string: " + action + " for stateId: " + stateId);
+            return stateId;
         }
-
-        int newStateId = row * gridSize + col;
-        System.out.println("Action '" + action + "' results in new state ID: " + newStateId);
-        return newStateId;
+        return layout.nextState(stateId, actionIndex);
     }
 
     // Gets the reward from moving from a certain state ID to the next state ID via some action
     public double getReward(int stateId, String action, int nextStateId) {
-        if (nextStateId == goalStateId) {
-            System.out.println("Reached goal state: " + goalStateId + ". Assigning reward: " + goalReward);
-            return goalReward;
-        }
-    
-        if (isPuddle(nextStateId)) {
-            System.out.println("Entered puddle state: " + nextStateId + ". Assigning reward: " + puddleReward);
-            return puddleReward;
-        }
-    
-        System.out.println("Normal state transition. Assigning reward: " + defaultReward);
-        return defaultReward;
+        return layout.stateReward(nextStateId);
     }    
 
     // Checks if the current state is a puddle
     public boolean isPuddle(int stateId) {
-        int row = stateId / gridSize; // each row has gridSize elements, so index/gridSize = row
-        int col = stateId % gridSize; // each row has gridSize elements, so the remainder gives position in the row (which is the column)
-        boolean inPuddle = false;
-        for (int[] puddle : puddlePositions) {
-            if (row >= puddle[0] && row < puddle[0] + puddleSize &&
-                col >= puddle[1] && col < puddle[1] + puddleSize) {
-                inPuddle = true;
-                System.out.println("State " + stateId + " is a puddle at row: " + row + ", col: " + col);
-                break;
-            }
+        return layout.isPuddle(stateId);
+    }
+
+    // Gets the valid action indices from a state using the precomputed action masks
+    // The returned array is shared between states with the same mask and must not be modified
+    public int[] getAvailableActionIndices(int stateId) {
+        if (!layout.isValidState(stateId)) {
+            return RLLayout.actionsForMask(0);
         }
-    
-        if (!inPuddle) {
-            System.out.println("State " + stateId + " is not a puddle.");
+        return layout.validActions(stateId);
+    }
+
+    // Gets the reward of each valid action from a state, in the same order as getAvailableActionIndices
+    // With slippery transitions this is the expected reward over the outcomes of the action
+    // These are raw rewards, the shaping term is only added to the reward of the move actually taken
+    public double[] getAvailableRewards(int stateId) {
+        int[] available = getAvailableActionIndices(stateId);
+        double[] rewards = new double[available.length];
+        for (int i = 0; i < available.length; i++) {
+            rewards[i] = transitions != null ? transitions.expectedReward(stateId, available[i]) : layout.reward(stateId, available[i]);
         }
-    
-        return inPuddle;
+        return rewards;
     }
 
     // Gets the list of possible actions from the current state
+    // Kept for older callers that work with action strings
     public String[] getAvailableActions(int stateId) {
-        if (actions == null) {
-            System.err.println("Error: Actions array is null for stateId: " + stateId);
+        if (!layout.isValidState(stateId)) {
             return new String[0];
         }
-
-        List<String> available = new ArrayList<>(Arrays.asList(actions));
-        int row = stateId / gridSize;
-        int col = stateId % gridSize;
-        
-        if (row == 0) {
-            available.remove("UP");
-        }
-        if (row == gridSize - 1) {
-            available.remove("DOWN");
-        }
-        if (col == 0) {
-            available.remove("LEFT");
-        }
-        if (col == gridSize - 1) {
-            available.remove("RIGHT");
-        }
-        
-        System.out.println("Available Actions for state " + stateId + ": " + String.join(", ", available));
-        return available.toArray(new String[0]);
+        return RLLayout.actionNamesForMask(layout.validActionMask(stateId)).clone();
     }
 
     // Gets the index of the action in the actions array from the action string
     public int getActionIndex(String action) {
-        for (int i = 0; i < actions.length; i++) {
-            if (actions[i].equals(action)) {
-                return i;
-            }
-        }
-        return -1;
+        return RLLayout.actionIndex(action);
     }
 
     // Gets the list of state IDs in the state space of the puddle world
@@ -428,16 +413,7 @@ public class RLWorld {
 
     // Checks if a given state is a terminal state
     public boolean isTerminalState(int stateId) {
-        int terminalStateId = (gridSize * gridSize) - 1;
-        return stateId == terminalStateId;
-    }
-
-    // Converts an action index to its corresponding action string
-    private String getActionString(int actionIndex) {
-        if (actionIndex >= 0 && actionIndex < actions.length) {
-            return actions[actionIndex];
-        }
-        return null;
+        return layout.isValidState(stateId) && layout.isTerminal(stateId);
     }
 
     // Gets the current state ID of the agent
@@ -446,9 +422,12 @@ public class RLWorld {
     }
 
     // Resets the world to its initial state, and clears puddle positions
+    // Shared layouts are never modified, the world just drops its reference to them
+    // The master tables are closed, which writes a MAPPED table file out to disk and drops its mapping, the world is not used after cleanup
     public void cleanup() {
-        reset();
-        puddlePositions.clear();
+        this.currentStateId = 0;
+        tables.close();
+        compileLayout(new ArrayList<>());
         System.out.println("RL World has been cleaned up.");
     }
 
@@ -462,7 +441,7 @@ public class RLWorld {
     }
 
     // Check for if a puddle overlaps with an existing puddle
-    private boolean isOverlappingExistingPuddle(int row, int col) {
+    private boolean isOverlappingExistingPuddle(List<int[]> puddlePositions, int row, int col) {
         for (int[] existingPuddle : puddlePositions) {
             int existingRow = existingPuddle[0];
             int existingCol = existingPuddle[1];
@@ -481,7 +460,7 @@ public class RLWorld {
             throw new IllegalArgumentException("Puddle positions list cannot be null.");
         }
         
-        this.puddlePositions.clear();
+        List<int[]> puddlePositions = new ArrayList<>();
         
         // Adding new puddle positions
         for (int[] puddle : puddles) {
@@ -504,22 +483,37 @@ public class RLWorld {
             }
             
             // Existing puddle state overlap check for puddles inserted
-            if (isOverlappingExistingPuddle(row, col)) {
+            if (isOverlappingExistingPuddle(puddlePositions, row, col)) {
                 throw new IllegalArgumentException("Puddle position overlaps with an existing puddle at (" 
                     + row + ", " + col + ")");
             }
             
             // Adding puddle position
-            this.puddlePositions.add(new int[]{row, col});
+            puddlePositions.add(new int[]{row, col});
         }
+        compileLayout(puddlePositions);
     }
     
+    // Gets the last reward handed to the agent, raw plus shaping
     public double getLastReward() {
         return lastReward;
     }
 
+    // Gets the environment's reward for the last move, without shaping
+    public double getLastRawReward() {
+        return lastRawReward;
+    }
+
+    // Gets the shaping term of the last move, 0 when shaping is off
+    public double getLastShapingReward() {
+        return lastShapingReward;
+    }
+
+    // Sets an unshaped last reward
     public void setLastReward(double reward) {
         this.lastReward = reward;
+        this.lastRawReward = reward;
+        this.lastShapingReward = 0.0;
     }
 
     public boolean isTerminal() {
@@ -533,4 +527,71 @@ public class RLWorld {
     public double getGamma() {
         return this.gamma;
     }    
+
+    // Gets the compiled layout for the current puddle positions
+    public RLTransitionModel getLayout() {
+        return layout;
+    }
+
+    public long getSessionSeed() {
+        return sessionSeed;
+    }
+
+    // Index of the current episode
+    public int getEpisode() {
+        return episode;
+    }
+
+    // Seed of the current episode, enough to replay it with the same session settings
+    public long getEpisodeSeed() {
+        return episodeSeed;
+    }
+
+    // Gets the reference solution (V*, Q* and an optimal policy) of the current layout and dynamics for this world's discount, solved once per layout (see RLPlanner)
+    // After the layout changed, the new solution is re-solved from the previous one with prioritized sweeping (see RLPrioritizedSweeper)
+    // Callers that can race with a reset capture the layout and transitions under the user's lock and use the method below instead
+    public RLSolution getReferenceSolution() {
+        return getReferenceSolution(layout, transitions);
+    }
+
+    // Gets the reference solution of a layout and its transitions read together from this world (see getLayout and getTransitions),
+    // so a caller that captured the pair under the user's lock solves exactly that pair even if the world was reset since
+    public synchronized RLSolution getReferenceSolution(RLTransitionModel solveLayout, RLStochasticTransitions solveTransitions) {
+        if (solveTransitions != null && solveTransitions.getLayout() != solveLayout) {
+            throw new IllegalArgumentException("Transitions were compiled for a different layout.");
+        }
+        RLSolution solution = RLPrioritizedSweeper.resolveCached(solvedLayout, solvedTransitions, solveLayout, solveTransitions, gamma);
+        solvedLayout = solveLayout;
+        solvedTransitions = solveTransitions;
+        return solution;
+    }
+
+    // Gets the goal distance field used for shaping, or null if shaping is off
+    public RLGoalDistanceField getDistanceField() {
+        return distanceField;
+    }
+
+    // Gets the slippery outcome distributions of the current layout for solvers, or null if moves are deterministic
+    public RLStochasticTransitions getTransitions() {
+        return transitions;
+    }
+
+    // Checks if this world uses the compressed large-world layout
+    public boolean isLargeWorld() {
+        return largeWorld;
+    }
+
+    // Gets the puddle positions of the current layout, the list is read-only
+    public List<int[]> getPuddlePositions() {
+        return layout.getPuddlePositions();
+    }
+
+    public RLLayoutMode getLayoutMode() {
+        return layoutMode;
+    }
+
+    // Gets the configuration this world was created with
+    public RLConfig getConfig() {
+        return config;
+    }
 }
\ No newline at end of file
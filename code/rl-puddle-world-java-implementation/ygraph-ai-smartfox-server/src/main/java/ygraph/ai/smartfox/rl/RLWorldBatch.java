@@ -0,0 +1,250 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+// This class steps N puddle world environments per call for offline training and grading runs
+// The environments are stored in struct-of-arrays form: environment i has its state, step count, discounted return and terminal flag at index i of the primitive arrays below
+// Layouts are held by reference, so many environments can share one compiled layout, dense (RLLayout) or large (RLCompressedLayout)
+// An environment with slippery transitions samples its next state from their alias tables with one uniform draw of the batch's TRANSITION stream,
+// so a batch created with the same seed replays the same steps
+// step validates every action before any environment moves, a rejected call leaves the batch and the random stream unchanged
+// An environment that ends an episode (goal reached or maxSteps taken) is automatically reset to state 0 inside the same step call
+public class RLWorldBatch {
+    private final int size;
+    private final RLTransitionModel[] layouts;
+    // Slippery transitions of every environment, null entries move deterministically
+    private final RLStochasticTransitions[] transitions;
+    private final SplittableRandom random;
+    private final double gamma;
+    private final int maxSteps;
+
+    // Per-environment episode state
+    private final int[] states;
+    private final int[] steps;
+    private final double[] returns;
+    private final double[] discounts;
+    private final boolean[] terminal;
+
+    // Per-environment results of finished episodes
+    private final double[] lastEpisodeReturns;
+    private final int[] lastEpisodeSteps;
+    private final int[] episodeCounts;
+    private final int[] successCounts;
+
+    // Creates a batch of environments that all share one layout with deterministic moves
+    public RLWorldBatch(RLTransitionModel layout, int size, double gamma, int maxSteps) {
+        this(layout, null, size, gamma, maxSteps, 0L);
+    }
+
+    // Creates a batch of environments that all share one layout and its transitions (null for deterministic moves)
+    public RLWorldBatch(RLTransitionModel layout, RLStochasticTransitions transitions, int size, double gamma, int maxSteps, long seed) {
+        this(filled(new RLTransitionModel[checkedSize(size)], layout), filled(new RLStochasticTransitions[size], transitions), gamma, maxSteps, seed);
+    }
+
+    // Creates a batch with one environment per given layout (layouts may repeat) and transitions (null, or null entries, for deterministic moves)
+    // maxSteps <= 0 means episodes only end at the goal, seed is the parent seed of the batch's TRANSITION stream
+    public RLWorldBatch(RLTransitionModel[] layouts, RLStochasticTransitions[] transitions, double gamma, int maxSteps, long seed) {
+        if (layouts == null || layouts.length == 0) {
+            throw new IllegalArgumentException("Batch needs at least one layout.");
+        }
+        if (transitions != null && transitions.length != layouts.length) {
+            throw new IllegalArgumentException("Batch has " + layouts.length + " layouts but " + transitions.length + " transitions.");
+        }
+        this.size = layouts.length;
+        this.layouts = layouts.clone();
+        this.transitions = transitions != null ? transitions.clone() : new RLStochasticTransitions[size];
+        for (int i = 0; i < size; i++) {
+            checkLayout(this.layouts[i], this.transitions[i]);
+        }
+        this.random = RLSeeds.stream(seed, RLSeeds.Purpose.TRANSITION);
+        this.gamma = gamma;
+        this.maxSteps = maxSteps;
+        this.states = new int[size];
+        this.steps = new int[size];
+        this.returns = new double[size];
+        this.discounts = new double[size];
+        this.terminal = new boolean[size];
+        this.lastEpisodeReturns = new double[size];
+        this.lastEpisodeSteps = new int[size];
+        this.episodeCounts = new int[size];
+        this.successCounts = new int[size];
+        reset();
+    }
+
+    private static int checkedSize(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + size);
+        }
+        return size;
+    }
+
+    private static <T> T[] filled(T[] array, T value) {
+        Arrays.fill(array, value);
+        return array;
+    }
+
+    // Checks that an environment has a layout and that its transitions were compiled for that layout
+    private static void checkLayout(RLTransitionModel layout, RLStochasticTransitions transitions) {
+        if (layout == null) {
+            throw new IllegalArgumentException("Batch layouts cannot be null.");
+        }
+        if (transitions != null && transitions.getLayout() != layout) {
+            throw new IllegalArgumentException("Batch transitions must be compiled for the layout of their environment.");
+        }
+    }
+
+    // Puts every environment back at state 0 and clears the episode statistics
+    public void reset() {
+        Arrays.fill(states, 0);
+        Arrays.fill(steps, 0);
+        Arrays.fill(returns, 0.0);
+        Arrays.fill(discounts, 1.0);
+        Arrays.fill(terminal, false);
+        Arrays.fill(lastEpisodeReturns, 0.0);
+        Arrays.fill(lastEpisodeSteps, 0);
+        Arrays.fill(episodeCounts, 0);
+        Arrays.fill(successCounts, 0);
+    }
+
+    // Steps every environment with its action (0=UP, 1=DOWN, 2=LEFT, 3=RIGHT)
+    // nextStates, rewards and dones receive the transition of each environment, an environment with dones[i] == true has already been reset to state 0
+    public void step(int[] actions, int[] nextStates, double[] rewards, boolean[] dones) {
+        if (actions.length < size || nextStates.length < size || rewards.length < size || dones.length < size) {
+            throw new IllegalArgumentException("Batch arrays must have at least " + size + " entries.");
+        }
+        final int[] states = this.states;
+        final int[] steps = this.steps;
+        final double[] returns = this.returns;
+        final double[] discounts = this.discounts;
+        final RLTransitionModel[] layouts = this.layouts;
+        final RLStochasticTransitions[] transitions = this.transitions;
+        final int maxSteps = this.maxSteps;
+        final double gamma = this.gamma;
+
+        for (int i = 0; i < size; i++) {
+            if (actions[i] < 0 || actions[i] >= RLLayout.ACTION_COUNT) {
+                throw new IllegalArgumentException("Invalid action index " + actions[i] + " for environment " + i);
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            int action = actions[i];
+            RLTransitionModel layout = layouts[i];
+            int state = states[i];
+            int next;
+            double reward;
+            if (transitions[i] != null) {
+                next = transitions[i].sample(state, action, random.nextDouble());
+                reward = layout.stateReward(next);
+            } else {
+                next = layout.nextState(state, action);
+                reward = layout.reward(state, action);
+            }
+            int stepCount = steps[i] + 1;
+            double episodeReturn = returns[i] + discounts[i] * reward;
+            boolean reachedGoal = layout.isTerminal(next);
+            boolean done = reachedGoal || (maxSteps > 0 && stepCount >= maxSteps);
+
+            nextStates[i] = next;
+            rewards[i] = reward;
+            dones[i] = done;
+
+            if (done) {
+                lastEpisodeReturns[i] = episodeReturn;
+                lastEpisodeSteps[i] = stepCount;
+                episodeCounts[i]++;
+                if (reachedGoal) {
+                    successCounts[i]++;
+                }
+                terminal[i] = reachedGoal;
+                states[i] = 0;
+                steps[i] = 0;
+                returns[i] = 0.0;
+                discounts[i] = 1.0;
+            } else {
+                terminal[i] = false;
+                states[i] = next;
+                steps[i] = stepCount;
+                returns[i] = episodeReturn;
+                discounts[i] *= gamma;
+            }
+        }
+    }
+
+    // Number of environments in the batch
+    public int size() {
+        return size;
+    }
+
+    // Gets the layout of an environment
+    public RLTransitionModel getLayout(int index) {
+        return layouts[index];
+    }
+
+    // Gets the transitions of an environment, null for deterministic moves
+    public RLStochasticTransitions getTransitions(int index) {
+        return transitions[index];
+    }
+
+    // Swaps the layout and transitions (null for deterministic moves) of an environment and restarts its episode
+    public void setLayout(int index, RLTransitionModel layout, RLStochasticTransitions transitions) {
+        checkLayout(layout, transitions);
+        layouts[index] = layout;
+        this.transitions[index] = transitions;
+        states[index] = 0;
+        steps[index] = 0;
+        returns[index] = 0.0;
+        discounts[index] = 1.0;
+        terminal[index] = false;
+    }
+
+    // The arrays below are the live batch state and must not be modified by callers
+
+    // Current state of every environment
+    public int[] getStates() {
+        return states;
+    }
+
+    // Steps taken in the current episode of every environment
+    public int[] getSteps() {
+        return steps;
+    }
+
+    // Discounted return so far in the current episode of every environment
+    public double[] getReturns() {
+        return returns;
+    }
+
+    // Whether the most recent step of every environment entered the terminal goal state (the environment has since been reset)
+    public boolean[] getTerminal() {
+        return terminal;
+    }
+
+    // Discounted return of the last finished episode of every environment
+    public double[] getLastEpisodeReturns() {
+        return lastEpisodeReturns;
+    }
+
+    // Step count of the last finished episode of every environment
+    public int[] getLastEpisodeSteps() {
+        return lastEpisodeSteps;
+    }
+
+    // Number of finished episodes of every environment
+    public int[] getEpisodeCounts() {
+        return episodeCounts;
+    }
+
+    // Number of finished episodes that reached the goal for every environment
+    public int[] getSuccessCounts() {
+        return successCounts;
+    }
+
+    public double getGamma() {
+        return gamma;
+    }
+
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+}
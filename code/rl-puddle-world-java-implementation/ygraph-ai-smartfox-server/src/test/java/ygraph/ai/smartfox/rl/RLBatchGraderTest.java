@@ -0,0 +1,115 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests the greedy path lengths, the regret against the reference planner and the grade cache of RLBatchGrader
+public class RLBatchGraderTest {
+    private static final int GRID_SIZE = 4;
+    private static final double GAMMA = 0.9;
+
+    private static RLLayout layout() {
+        return RLLayout.compile(GRID_SIZE, 1, Collections.singletonList(new int[]{1, 1}), -0.01, -1.0, 10.0);
+    }
+
+    private static RLPlanner planner() {
+        return new RLPlanner(RLPlanner.Method.GAUSS_SEIDEL, 1e-10, 10000);
+    }
+
+    // Fills a store with the Q-values of a solution, optionally with one state's greedy action replaced
+    private static RLTableStore tablesOf(RLSolution solution, int stateCount, int changedState, int changedAction) {
+        RLTableStore tables = new RLTableStore(GRID_SIZE);
+        for (int s = 0; s < stateCount; s++) {
+            for (int a = 0; a < RLLayout.ACTION_COUNT; a++) {
+                tables.setQ(s, a, solution.getQ(s, a));
+            }
+        }
+        if (changedState >= 0) {
+            tables.setQ(changedState, changedAction, 100.0);
+        }
+        return tables;
+    }
+
+    @Test
+    public void testPathLengthsFollowThePolicy() {
+        RLLayout layout = RLLayout.compile(GRID_SIZE, 1, Collections.<int[]>emptyList(), -0.01, -1.0, 10.0);
+        int[] policy = new int[GRID_SIZE * GRID_SIZE];
+        for (int s = 0; s < policy.length; s++) {
+            policy[s] = s % GRID_SIZE == GRID_SIZE - 1 ? RLLayout.ACTION_DOWN : RLLayout.ACTION_RIGHT;
+        }
+        int[] steps = RLBatchGrader.pathLengths(layout, policy);
+        assertEquals(2 * (GRID_SIZE - 1), steps[0]);
+        assertEquals(1, steps[GRID_SIZE * GRID_SIZE - 2]);
+        assertEquals(0, steps[GRID_SIZE * GRID_SIZE - 1]);
+
+        // States 0 and 1 point at each other, every state that walks into them loops too
+        policy[0] = RLLayout.ACTION_RIGHT;
+        policy[1] = RLLayout.ACTION_LEFT;
+        policy[GRID_SIZE] = RLLayout.ACTION_UP;
+        steps = RLBatchGrader.pathLengths(layout, policy);
+        assertEquals(-1, steps[0]);
+        assertEquals(-1, steps[1]);
+        assertEquals(-1, steps[GRID_SIZE]);
+        assertEquals(GRID_SIZE - 3 + GRID_SIZE - 1, steps[2]);
+    }
+
+    @Test
+    public void testOptimalTablesHaveNoRegret() {
+        RLLayout layout = layout();
+        RLSolution solution = planner().solve(layout, null, GAMMA);
+        RLBatchGrader grader = new RLBatchGrader(planner());
+        RLGrade grade = grader.grade("optimal", tablesOf(solution, layout.getStateCount(), -1, 0).snapshot(), layout, null, solution, 30);
+        assertEquals(0.0, grade.getRegret(), 1e-8);
+        assertEquals(0.0, grade.getMeanRegret(), 1e-8);
+        assertEquals(1.0, grade.getSuccessRate(), 0.0);
+        assertEquals(1.0, grade.getOptimalActionRate(), 0.0);
+        assertEquals(grade.getOptimalPathLength(), grade.getPathLength());
+        assertEquals(0.0, grade.getQDistance(), 0.0);
+    }
+
+    @Test
+    public void testRegretMatchesThePlannerEvaluation() {
+        RLLayout layout = layout();
+        RLPlanner planner = planner();
+        RLSolution solution = planner.solve(layout, null, GAMMA);
+        // State 1 steps back towards the start instead of towards the goal
+        RLGrade grade = new RLBatchGrader(planner).grade("detour", tablesOf(solution, layout.getStateCount(), 1, RLLayout.ACTION_LEFT).snapshot(),
+                layout, null, solution, 30);
+
+        int[] policy = new int[layout.getStateCount()];
+        for (int s = 0; s < policy.length; s++) {
+            policy[s] = s == 1 ? RLLayout.ACTION_LEFT : solution.getAction(s);
+        }
+        double[] values = planner.evaluate(layout, null, GAMMA, policy);
+        double regretSum = 0.0;
+        for (int s = 0; s < policy.length; s++) {
+            if (!layout.isTerminal(s)) {
+                regretSum += solution.getV(s) - values[s];
+            }
+        }
+        assertTrue(solution.getV(1) - values[1] > 0.1);
+        assertEquals(solution.getV(0) - values[0], grade.getRegret(), 1e-9);
+        assertEquals(regretSum / (policy.length - 1), grade.getMeanRegret(), 1e-9);
+        assertEquals(1.0 - 1.0 / (layout.getStateCount() - 1), grade.getOptimalActionRate(), 1e-12);
+        assertEquals(RLBatchGrader.pathLengths(layout, policy)[0], grade.getPathLength());
+    }
+
+    @Test
+    public void testUnchangedTablesReuseTheirGrade() {
+        RLWorld world = new RLWorld(null, RLLayoutMode.SESSION, 7L);
+        RLBatchGrader grader = new RLBatchGrader(planner());
+        RLTransitionModel layout = world.getLayout();
+        RLGrade first = grader.grade("user", world, layout, world.getTransitions(), 30);
+        assertSame(first, grader.grade("user", world, layout, world.getTransitions(), 30));
+
+        world.setQValue(0, layout.validActions(0)[0], 1.0);
+        RLGrade second = grader.grade("user", world, layout, world.getTransitions(), 30);
+        assertNotSame(first, second);
+        assertEquals(world.getTables().getVersion(), second.getTableVersion());
+        assertSame(second, grader.grade("user", world, layout, world.getTransitions(), 30));
+        // A different step limit is graded again
+        assertNotSame(second, grader.grade("user", world, layout, world.getTransitions(), 10));
+    }
+}
@@ -0,0 +1,63 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests that the run-length encoded layout answers every step query like the dense layout on small grids
+public class RLCompressedLayoutTest {
+
+    private static void assertSameLayout(int gridSize, int puddleSize, List<int[]> puddles) {
+        RLTransitionModel dense = RLTransitionModel.compile(false, gridSize, puddleSize, puddles, -0.01, -1.0, 10.0);
+        RLTransitionModel compressed = RLTransitionModel.compile(true, gridSize, puddleSize, puddles, -0.01, -1.0, 10.0);
+        assertTrue(dense instanceof RLLayout);
+        assertTrue(compressed instanceof RLCompressedLayout);
+        assertEquals(dense.getStateCount(), compressed.getStateCount());
+        assertEquals(dense.getGoalStateId(), compressed.getGoalStateId());
+
+        int puddleCells = 0;
+        for (int stateId = -1; stateId <= dense.getStateCount(); stateId++) {
+            String state = "state " + stateId;
+            assertEquals(state, dense.isValidState(stateId), compressed.isValidState(stateId));
+            assertEquals(state, dense.isPuddle(stateId), compressed.isPuddle(stateId));
+            assertEquals(state, dense.stateReward(stateId), compressed.stateReward(stateId), 0.0);
+            if (!dense.isValidState(stateId)) {
+                continue;
+            }
+            puddleCells += dense.isPuddle(stateId) ? 1 : 0;
+            assertEquals(state, dense.isTerminal(stateId), compressed.isTerminal(stateId));
+            assertEquals(state, dense.validActionMask(stateId), compressed.validActionMask(stateId));
+            assertArrayEquals(state, dense.validActions(stateId), compressed.validActions(stateId));
+            for (int action = 0; action < RLLayout.ACTION_COUNT; action++) {
+                assertEquals(state + " action " + action, dense.nextState(stateId, action), compressed.nextState(stateId, action));
+                assertEquals(state + " action " + action, dense.reward(stateId, action), compressed.reward(stateId, action), 0.0);
+            }
+        }
+        assertEquals(puddleCells, ((RLCompressedLayout) compressed).getPuddleCellCount());
+    }
+
+    @Test
+    public void testMatchesDenseLayoutWithoutPuddles() {
+        assertSameLayout(1, 2, Arrays.<int[]>asList());
+        assertSameLayout(5, 2, Arrays.<int[]>asList());
+    }
+
+    @Test
+    public void testMatchesDenseLayoutWithOverlappingAndClippedPuddles() {
+        // Overlapping squares, squares on the grid edge and a square over the goal, one partly above the grid
+        List<int[]> puddles = Arrays.asList(new int[]{1, 1}, new int[]{2, 2}, new int[]{1, 4}, new int[]{0, 8}, new int[]{8, 0}, new int[]{8, 8}, new int[]{5, 5}, new int[]{-1, 3});
+        assertSameLayout(10, 3, puddles);
+        assertSameLayout(9, 1, puddles);
+    }
+
+    @Test
+    public void testMatchesDenseLayoutWithGeneratedPuddles() {
+        for (long seed = 1; seed <= 5; seed++) {
+            List<int[]> puddles = RLPuddleGenerator.generate(16, 6, 2, new SplittableRandom(seed));
+            assertSameLayout(16, 2, puddles);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ygraph.ai.smartfox.rl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+// Tests that the configuration is reloaded when its .env file changes and kept when it does not,
+// and that system properties set keys the .env file does not mention
+public class RLConfigTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final String previousEnvFile = System.getProperty(RLConfig.ENV_FILE_KEY);
+
+    @After
+    public void restore() {
+        if (previousEnvFile == null) {
+            System.clearProperty(RLConfig.ENV_FILE_KEY);
+        } else {
+            System.setProperty(RLConfig.ENV_FILE_KEY, previousEnvFile);
+        }
+        RLConfig.reload();
+    }
+
+    private static void write(File file, String text, long modified) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        assertTrue(file.setLastModified(modified));
+    }
+
+    @Test
+    public void testReloadsOnlyWhenEnvFileChanges() throws IOException {
+        File env = folder.newFile(".env");
+        write(env, "GRID_SIZE=7\n", 1_000_000L);
+        System.setProperty(RLConfig.ENV_FILE_KEY, env.getPath());
+        RLConfig.reload();
+        assertEquals(7, RLConfig.get().getGridSize());
+        assertFalse(RLConfig.reloadIfChanged());
+
+        write(env, "GRID_SIZE=9\n", 2_000_000L);
+        assertTrue(RLConfig.reloadIfChanged());
+        assertEquals(9, RLConfig.get().getGridSize());
+        assertFalse(RLConfig.reloadIfChanged());
+    }
+
+    @Test
+    public void testInvalidChangeKeepsCurrentConfiguration() throws IOException {
+        File env = folder.newFile(".env");
+        write(env, "GRID_SIZE=6\n", 1_000_000L);
+        System.setProperty(RLConfig.ENV_FILE_KEY, env.getPath());
+        RLConfig.reload();
+
+        write(env, "GRID_SIZE=-3\n", 2_000_000L);
+        assertTrue(RLConfig.reloadIfChanged());
+        assertEquals(6, RLConfig.get().getGridSize());
+        assertFalse(RLConfig.reloadIfChanged());
+    }
+
+    @Test
+    public void testSystemPropertiesSetEveryParsedKey() throws IOException {
+        File env = folder.newFile(".env");
+        write(env, "GRID_SIZE=6\n", 1_000_000L);
+        System.setProperty(RLConfig.ENV_FILE_KEY, env.getPath());
+        // Keys parsed last and added most recently, which a hand-kept key list was most likely to miss
+        System.setProperty("GRADE_INTERVAL_SECONDS", "17");
+        System.setProperty("LOG_LEVEL", "debug");
+        try {
+            RLConfig.reload();
+            assertEquals(17, RLConfig.get().getGradeIntervalSeconds());
+            assertTrue(RLConfig.get().isDebugLogging());
+            assertEquals(6, RLConfig.get().getGridSize());
+        } finally {
+            System.clearProperty("GRADE_INTERVAL_SECONDS");
+            System.clearProperty("LOG_LEVEL");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package ygraph.ai.smartfox.rl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests the capsule puddles, batch stepping and grid adapter of the continuous puddle world
+public class RLContinuousWorldTest {
+
+    @Test
+    public void testPuddleDepthAndReward() {
+        RLContinuousWorld world = RLContinuousWorld.classic(1L);
+        assertEquals(0.1, world.puddleDepth(0.30, 0.25), 1e-12);
+        assertEquals(0.05, world.puddleDepth(0.30, 0.30), 1e-12);
+        assertEquals(0.0, world.puddleDepth(0.90, 0.10), 0.0);
+        assertEquals(-1.0 - 400.0 * 0.05, world.reward(0.30, 0.30), 1e-9);
+        assertEquals(0.0, world.reward(1.0, 1.0), 0.0);
+    }
+
+    @Test
+    public void testStepMovesWithoutNoise() {
+        RLContinuousWorld world = new RLContinuousWorld(new double[0][], 0.1, 400.0, 0.05, 0.0, -1.0, 5.0, 1.9, 1L);
+        double[] xs = {0.5, 0.0, 0.97};
+        double[] ys = {0.5, 0.5, 0.97};
+        double[] rewards = new double[3];
+        boolean[] dones = new boolean[3];
+        world.step(3, xs, ys, new int[]{RLLayout.ACTION_UP, RLLayout.ACTION_LEFT, RLLayout.ACTION_RIGHT}, rewards, dones);
+        assertEquals(0.45, ys[0], 1e-12);
+        assertEquals(0.0, xs[1], 0.0);
+        assertEquals(-1.0, rewards[0], 0.0);
+        assertTrue(dones[2]);
+        assertEquals(5.0, rewards[2], 0.0);
+        assertFalse(world.isGoal(xs[2], ys[2]));
+    }
+
+    @Test
+    public void testInvalidActionChangesNothing() {
+        RLContinuousWorld world = RLContinuousWorld.classic(7L);
+        RLContinuousWorld reference = RLContinuousWorld.classic(7L);
+        double[] xs = {0.2, 0.6};
+        double[] ys = {0.2, 0.6};
+        try {
+            world.step(2, xs, ys, new int[]{RLLayout.ACTION_DOWN, 9}, new double[2], new boolean[2]);
+            fail("An invalid action should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertArrayEquals(new double[]{0.2, 0.6}, xs, 0.0);
+        assertArrayEquals(new double[]{0.2, 0.6}, ys, 0.0);
+
+        double[] referenceXs = xs.clone();
+        double[] referenceYs = ys.clone();
+        int[] actions = {RLLayout.ACTION_DOWN, RLLayout.ACTION_RIGHT};
+        world.step(2, xs, ys, actions, new double[2], new boolean[2]);
+        reference.step(2, referenceXs, referenceYs, actions, new double[2], new boolean[2]);
+        assertArrayEquals(referenceXs, xs, 0.0);
+        assertArrayEquals(referenceYs, ys, 0.0);
+    }
+
+    @Test
+    public void testAdapterReportsGridStates() {
+        RLContinuousGridAdapter adapter = new RLContinuousGridAdapter(RLContinuousWorld.classic(3L), 10);
+        assertEquals(0, adapter.toStateId(0.0, 0.0));
+        assertEquals(2 * 10 + 7, adapter.toStateId(0.75, 0.25));
+        assertEquals(99, adapter.toStateId(1.0, 1.0));
+        assertEquals(2, adapter.getAvailableActionIndices(0).length);
+        for (int step = 0; step < 1000 && !adapter.isTerminal(); step++) {
+            int stateId = adapter.moveAgentWithAction(step % 2 == 0 ? RLLayout.ACTION_RIGHT : RLLayout.ACTION_DOWN);
+            assertEquals(adapter.isTerminal() ? 99 : adapter.toStateId(adapter.getX(), adapter.getY()), stateId);
+        }
+        assertTrue(adapter.isTerminal());
+    }
+}
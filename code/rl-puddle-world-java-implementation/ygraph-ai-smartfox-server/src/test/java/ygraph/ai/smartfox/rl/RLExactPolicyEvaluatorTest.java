@@ -0,0 +1,105 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests the exact policy values of RLExactPolicyEvaluator, its sweep limit and the RLPolicyValueCache in front of it
+public class RLExactPolicyEvaluatorTest {
+    private static final int GRID_SIZE = 5;
+    private static final int STATES = GRID_SIZE * GRID_SIZE;
+
+    private final RLLayout layout = RLLayout.compile(GRID_SIZE, 1, Collections.<int[]>emptyList(), -0.01, -1.0, 10.0);
+
+    // Moves right along the top row, then down the last column to the goal
+    private static byte[] pathToGoal() {
+        byte[] actions = new byte[STATES];
+        for (int s = 0; s < actions.length; s++) {
+            actions[s] = (byte) (s % GRID_SIZE == GRID_SIZE - 1 ? RLLayout.ACTION_DOWN : RLLayout.ACTION_RIGHT);
+        }
+        return actions;
+    }
+
+    private RLPolicyMatrix greedyMatrix(byte[] actions) {
+        int[] policy = new int[actions.length];
+        for (int s = 0; s < actions.length; s++) {
+            policy[s] = actions[s];
+        }
+        return RLPolicyMatrix.forPolicy(layout, null, policy);
+    }
+
+    private static byte[] uniformWeights() {
+        byte[] weights = new byte[STATES * RLTableStore.ACTION_COUNT];
+        Arrays.fill(weights, (byte) 1);
+        return weights;
+    }
+
+    @Test
+    public void testDeterministicPathMatchesRollout() {
+        byte[] actions = pathToGoal();
+        RLExactPolicyEvaluator.Result result = new RLExactPolicyEvaluator(1e-9, 100).solve(greedyMatrix(actions), 0.9);
+        RLPolicyEvaluation rollout = new RLPolicyEvaluator(layout, null, 0.9, 100).evaluateGreedy(actions, 1, 1L);
+
+        assertTrue(result.isConverged());
+        assertEquals(0, result.getSweeps());
+        assertEquals(rollout.getMeanReturn(), result.getStartValue(), 1e-12);
+    }
+
+    @Test
+    public void testSweepLimitReportsNotConverged() {
+        RLPolicyMatrix matrix = RLPolicyMatrix.forWeights(layout, null, uniformWeights());
+        RLExactPolicyEvaluator.Result limited = new RLExactPolicyEvaluator(1e-9, 1).solve(matrix, 0.99);
+        assertFalse(limited.isConverged());
+        assertEquals(1, limited.getSweeps());
+
+        RLExactPolicyEvaluator.Result full = new RLExactPolicyEvaluator(1e-9, 100000).solve(matrix, 0.99);
+        assertTrue(full.isConverged());
+        assertTrue(full.getResidual() < 1e-9);
+    }
+
+    @Test
+    public void testCacheReusesSolveForEqualPolicy() {
+        RLPolicyValueCache cache = new RLPolicyValueCache(1000);
+        RLExactPolicyEvaluator evaluator = new RLExactPolicyEvaluator(1e-9, 100);
+        AtomicInteger solves = new AtomicInteger();
+
+        RLExactPolicyEvaluator.Result first = cache.get(layout, null, 0.9, true, pathToGoal(), evaluator, () -> {
+            solves.incrementAndGet();
+            return greedyMatrix(pathToGoal());
+        });
+        RLExactPolicyEvaluator.Result second = cache.get(layout, null, 0.9, true, pathToGoal(), evaluator, () -> {
+            solves.incrementAndGet();
+            return greedyMatrix(pathToGoal());
+        });
+        assertSame(first, second);
+        assertEquals(1, solves.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // A different discount is a different key
+        cache.get(layout, null, 0.5, true, pathToGoal(), evaluator, () -> greedyMatrix(pathToGoal()));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyUsedBeyondCapacity() {
+        RLPolicyValueCache cache = new RLPolicyValueCache(STATES);
+        RLExactPolicyEvaluator evaluator = new RLExactPolicyEvaluator(1e-9, 100);
+        byte[] stay = new byte[STATES];
+        cache.get(layout, null, 0.9, true, pathToGoal(), evaluator, () -> greedyMatrix(pathToGoal()));
+        cache.get(layout, null, 0.9, true, stay, evaluator, () -> greedyMatrix(stay));
+        assertEquals(1, cache.size());
+        assertEquals(STATES, cache.getStoredStates());
+
+        cache.get(layout, null, 0.9, true, pathToGoal(), evaluator, () -> greedyMatrix(pathToGoal()));
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getMisses());
+
+        RLPolicyValueCache disabled = new RLPolicyValueCache(0);
+        disabled.get(layout, null, 0.9, true, stay, evaluator, () -> greedyMatrix(stay));
+        assertEquals(0, disabled.size());
+    }
+}
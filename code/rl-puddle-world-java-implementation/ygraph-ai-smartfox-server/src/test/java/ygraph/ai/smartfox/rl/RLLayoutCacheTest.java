@@ -0,0 +1,74 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests that the layout cache compiles each key once under concurrent requests, retries failed compiles and respects its memory bound
+public class RLLayoutCacheTest {
+    private static final int GRID_SIZE = 32;
+
+    private static RLTransitionModel layout(RLLayoutCache cache, long seed) {
+        return cache.getLayout(seed, false, GRID_SIZE, 4, 2, -0.01, -1.0, 10.0);
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneCompile() throws Exception {
+        RLLayoutCache cache = new RLLayoutCache(8);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<RLTransitionModel>> results = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                results.add(pool.submit((Callable<RLTransitionModel>) () -> layout(cache, 11L)));
+            }
+            RLTransitionModel first = results.get(0).get();
+            for (Future<RLTransitionModel> result : results) {
+                assertSame(first, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(1, cache.getMisses());
+        assertEquals(31, cache.getHits());
+    }
+
+    @Test
+    public void testFailedCompileIsRetried() {
+        RLLayoutCache cache = new RLLayoutCache(8);
+        RLTransitionModel shared = layout(cache, 3L);
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                cache.getTransitions(shared, 0.8, 0.8, 0.5);
+                fail("Invalid probabilities should be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assertEquals(0, cache.transitionsSize());
+        assertNotNull(cache.getTransitions(shared, 0.2, 0.2, 0.0));
+    }
+
+    @Test
+    public void testMemoryBoundEvictsLeastRecentlyUsed() {
+        long layoutBytes = layout(new RLLayoutCache(1), 1L).getMemoryUsageBytes();
+        RLLayoutCache cache = new RLLayoutCache(100, layoutBytes * 3 + layoutBytes / 2);
+        RLTransitionModel first = layout(cache, 1L);
+        layout(cache, 2L);
+        layout(cache, 3L);
+        assertSame(first, layout(cache, 1L));
+        layout(cache, 4L);
+        assertEquals(3, cache.size());
+        assertTrue(cache.getMemoryUsageBytes() <= cache.getMaxBytes());
+        assertSame(first, layout(cache, 1L));
+
+        RLStochasticTransitions transitions = cache.getTransitions(first, 0.1, 0.1, 0.0);
+        assertTrue(transitions.getMemoryUsageBytes() > layoutBytes);
+        assertEquals(1, cache.transitionsSize());
+        assertEquals(transitions.getMemoryUsageBytes(), cache.getMemoryUsageBytes());
+    }
+}
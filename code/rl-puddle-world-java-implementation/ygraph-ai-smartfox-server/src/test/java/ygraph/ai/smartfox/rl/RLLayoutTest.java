@@ -0,0 +1,25 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests that both layout kinds answer reward and puddle queries for state IDs off the grid instead of throwing
+public class RLLayoutTest {
+    private static final int GRID_SIZE = 8;
+
+    @Test
+    public void testStatesOffTheGridGetTheDefaultReward() {
+        for (boolean large : new boolean[]{false, true}) {
+            RLTransitionModel layout = RLTransitionModel.compile(large, GRID_SIZE, 2, Collections.singletonList(new int[]{0, 0}), -0.01, -1.0, 10.0);
+            assertTrue(layout.isPuddle(0));
+            assertEquals(-1.0, layout.stateReward(0), 0.0);
+            assertEquals(10.0, layout.stateReward(GRID_SIZE * GRID_SIZE - 1), 0.0);
+            for (int stateId : new int[]{-1, -64, GRID_SIZE * GRID_SIZE, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+                assertFalse(layout.isPuddle(stateId));
+                assertEquals(-0.01, layout.stateReward(stateId), 0.0);
+            }
+        }
+    }
+}
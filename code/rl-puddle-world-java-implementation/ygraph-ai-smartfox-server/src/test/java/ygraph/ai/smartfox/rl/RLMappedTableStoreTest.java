@@ -0,0 +1,87 @@
+package ygraph.ai.smartfox.rl;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+// Tests that mapped table files are named (also for long session names) and reattached per session and that a closed store keeps its snapshots readable
+public class RLMappedTableStoreTest {
+    private static final int GRID_SIZE = 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTableFileNamesAreDistinctPerSession() {
+        assertNotEquals(RLValueStore.tableFileName("a.b"), RLValueStore.tableFileName("a_b"));
+        assertNotEquals(RLValueStore.tableFileName("Alice"), RLValueStore.tableFileName("alice"));
+        assertEquals("612e62.qtable", RLValueStore.tableFileName("a.b"));
+    }
+
+    @Test
+    public void testLongSessionNamesGetShortFileNames() throws IOException {
+        StringBuilder prefix = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            prefix.append('\u00e9');
+        }
+        String first = prefix + "a";
+        String second = prefix + "b";
+        String name = RLValueStore.tableFileName(first);
+        assertTrue(name.length() < 255);
+        assertEquals(name, RLValueStore.tableFileName(first));
+        assertNotEquals(name, RLValueStore.tableFileName(second));
+        assertFalse(RLValueStore.tableFileName(prefix.substring(0, 32)).contains("-"));
+
+        RLMappedTableStore store = new RLMappedTableStore(GRID_SIZE, new File(folder.getRoot(), name), first);
+        store.setV(3, 1.5);
+        store.close();
+        RLValueStore reopened = RLValueStore.create(RLTableMode.MAPPED, RLTablePrecision.DOUBLE, GRID_SIZE, folder.getRoot().getPath(), first);
+        assertTrue(reopened instanceof RLMappedTableStore);
+        assertEquals(1.5, reopened.getV(3), 0.0);
+        reopened.close();
+    }
+
+    @Test
+    public void testReattachesOnlyToTheSameSession() throws IOException {
+        File file = new File(folder.getRoot(), RLValueStore.tableFileName("alice"));
+        RLMappedTableStore first = new RLMappedTableStore(GRID_SIZE, file, "alice");
+        assertFalse(first.isReattached());
+        first.setQ(7, 1, 2.5);
+        first.close();
+
+        RLMappedTableStore same = new RLMappedTableStore(GRID_SIZE, file, "alice");
+        assertTrue(same.isReattached());
+        assertEquals(2.5, same.getQ(7, 1), 0.0);
+        same.close();
+
+        RLMappedTableStore other = new RLMappedTableStore(GRID_SIZE, file, "bob");
+        assertFalse(other.isReattached());
+        assertEquals(0.0, other.getQ(7, 1), 0.0);
+        other.close();
+    }
+
+    @Test
+    public void testClosedStoreKeepsSnapshotsAndRejectsWrites() throws IOException {
+        RLMappedTableStore store = new RLMappedTableStore(GRID_SIZE, folder.newFile(), "carol");
+        store.setQ(3, 2, 1.5);
+        store.setV(200, -4.0);
+        RLTableSnapshot snapshot = store.snapshot();
+        store.close();
+        store.close();
+
+        assertTrue(store.isClosed());
+        assertEquals(1.5, snapshot.getQ(3, 2), 0.0);
+        assertEquals(-4.0, snapshot.getV(200), 0.0);
+        assertSame(snapshot, store.snapshot());
+        store.flush();
+        try {
+            store.setQ(3, 2, 9.0);
+            fail("Writes to a closed store should fail");
+        } catch (IllegalStateException expected) {
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests that every planning method reaches the same reference solution, sequentially and with parallel block sweeps
+public class RLPlannerTest {
+    private static final double TOLERANCE = 1e-9;
+
+    private static RLLayout puddleLayout() {
+        return RLLayout.compile(8, 2, Arrays.asList(new int[]{1, 1}, new int[]{4, 5}), -0.01, -1.0, 10.0);
+    }
+
+    private static RLPlanner planner(RLPlanner.Method method) {
+        return new RLPlanner(method, TOLERANCE, 100000);
+    }
+
+    @Test
+    public void testMethodsAgreeOnDeterministicLayout() {
+        RLLayout layout = puddleLayout();
+        RLSolution reference = planner(RLPlanner.Method.VALUE_ITERATION).solve(layout, null, 0.9);
+        assertTrue(reference.isConverged());
+        for (RLPlanner.Method method : RLPlanner.Method.values()) {
+            RLSolution solution = planner(method).solve(layout, null, 0.9);
+            for (int s = 0; s < layout.getStateCount(); s++) {
+                assertEquals(method + " state " + s, reference.getV(s), solution.getV(s), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testMethodsAgreeOnSlipperyLayout() {
+        RLLayout layout = puddleLayout();
+        RLStochasticTransitions transitions = RLStochasticTransitions.compile(layout, 0.2, 0.5, 0.1);
+        RLSolution reference = planner(RLPlanner.Method.GAUSS_SEIDEL).solve(layout, transitions, 0.95);
+        for (RLPlanner.Method method : RLPlanner.Method.values()) {
+            RLSolution solution = planner(method).solve(layout, transitions, 0.95);
+            assertEquals(method.toString(), reference.getV(0), solution.getV(0), 1e-6);
+        }
+    }
+
+    @Test
+    public void testParallelSweepsMatchShortestPathValue() {
+        // At least PARALLEL_THRESHOLD states, so the sweeps run over blocks of rows
+        int gridSize = 130;
+        RLLayout layout = RLLayout.compile(gridSize, 1, Collections.<int[]>emptyList(), -0.01, -1.0, 10.0);
+        assertTrue(layout.getStateCount() >= RLPlanner.PARALLEL_THRESHOLD);
+        double gamma = 0.99;
+        int steps = 2 * (gridSize - 1);
+        double expected = -0.01 * (1 - Math.pow(gamma, steps - 1)) / (1 - gamma) + Math.pow(gamma, steps - 1) * 10.0;
+        for (RLPlanner.Method method : new RLPlanner.Method[]{RLPlanner.Method.VALUE_ITERATION, RLPlanner.Method.GAUSS_SEIDEL}) {
+            RLSolution solution = planner(method).solve(layout, null, gamma);
+            assertTrue(method.toString(), solution.isConverged());
+            assertEquals(method.toString(), expected, solution.getV(0), 1e-6);
+            int action = solution.getAction(0);
+            assertTrue(action == RLLayout.ACTION_DOWN || action == RLLayout.ACTION_RIGHT);
+        }
+    }
+
+    @Test
+    public void testRefusesLayoutAboveDenseLimit() {
+        RLCompressedLayout layout = RLCompressedLayout.compile(40000, 1, Collections.<int[]>emptyList(), -0.01, -1.0, 10.0);
+        assertTrue(layout.getStateCount() > RLPlanner.MAX_STATES);
+        try {
+            planner(RLPlanner.Method.GAUSS_SEIDEL).solve(layout, null, 0.9);
+            fail("Expected the layout to be refused.");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("too large"));
+        }
+    }
+}
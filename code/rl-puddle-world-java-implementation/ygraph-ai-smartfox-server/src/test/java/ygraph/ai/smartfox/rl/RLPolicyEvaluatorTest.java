@@ -0,0 +1,64 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests the rollouts of RLPolicyEvaluator and the step limits a request is held to
+public class RLPolicyEvaluatorTest {
+    private static final int GRID_SIZE = 5;
+
+    private final RLLayout layout = RLLayout.compile(GRID_SIZE, 1, Collections.<int[]>emptyList(), -0.01, -1.0, 10.0);
+
+    // Moves right along the top row, then down the last column to the goal
+    private static byte[] pathToGoal() {
+        byte[] actions = new byte[GRID_SIZE * GRID_SIZE];
+        for (int s = 0; s < actions.length; s++) {
+            actions[s] = (byte) (s % GRID_SIZE == GRID_SIZE - 1 ? RLLayout.ACTION_DOWN : RLLayout.ACTION_RIGHT);
+        }
+        return actions;
+    }
+
+    @Test
+    public void testGreedyPolicyReachesGoal() {
+        RLPolicyEvaluator evaluator = new RLPolicyEvaluator(layout, null, 0.9, 100);
+        RLPolicyEvaluation evaluation = evaluator.evaluateGreedy(pathToGoal(), 10, 1L);
+        assertEquals(10, evaluation.getEpisodes());
+        assertEquals(10, evaluation.getSuccesses());
+        assertEquals(2 * (GRID_SIZE - 1), evaluation.getMeanSteps(), 0.0);
+    }
+
+    @Test
+    public void testLargestStepLimitDoesNotOverflowHistogram() {
+        RLPolicyEvaluator evaluator = new RLPolicyEvaluator(layout, null, 0.9, Integer.MAX_VALUE);
+        RLPolicyEvaluation evaluation = evaluator.evaluateGreedy(pathToGoal(), 1, 1L);
+        assertEquals(1, evaluation.getSuccesses());
+        assertTrue(evaluation.getBinWidth() > 0);
+        assertTrue(evaluation.getStepHistogram().length <= RLPolicyEvaluator.HISTOGRAM_BINS);
+    }
+
+    @Test
+    public void testLoopingPolicyStopsAtStepLimit() {
+        byte[] actions = new byte[GRID_SIZE * GRID_SIZE];
+        RLPolicyEvaluator evaluator = new RLPolicyEvaluator(layout, null, 0.9, 1000);
+        RLPolicyEvaluation evaluation = evaluator.evaluateGreedy(actions, 5, 1L);
+        assertEquals(0, evaluation.getSuccesses());
+        assertEquals(1000, evaluation.getMeanSteps(), 0.0);
+    }
+
+    @Test
+    public void testWorstCaseSteps() {
+        RLPolicyEvaluator deterministic = new RLPolicyEvaluator(layout, null, 0.9, 1000);
+        assertEquals(1000L, deterministic.getWorstCaseSteps(true, 50000));
+        assertEquals(50_000_000L, deterministic.getWorstCaseSteps(false, 50000));
+
+        RLPolicyEvaluator longest = new RLPolicyEvaluator(layout, null, 0.9, Integer.MAX_VALUE);
+        assertEquals((long) Integer.MAX_VALUE * Integer.MAX_VALUE, longest.getWorstCaseSteps(false, Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonPositiveStepLimit() {
+        new RLPolicyEvaluator(layout, null, 0.9, 0);
+    }
+}
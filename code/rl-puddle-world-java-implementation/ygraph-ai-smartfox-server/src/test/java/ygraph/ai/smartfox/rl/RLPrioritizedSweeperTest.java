@@ -0,0 +1,103 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests that re-solving after a puddle edit matches a fresh solve and shares the unchanged pages of the previous solution,
+// and that a reward change re-solves from the previous values in fewer sweeps
+public class RLPrioritizedSweeperTest {
+    private static final int GRID_SIZE = 64;
+    private static final double GAMMA = 0.95;
+    private static final double TOLERANCE = 1e-10;
+
+    private static RLLayout layout(List<int[]> puddles) {
+        return RLLayout.compile(GRID_SIZE, 2, puddles, -0.01, -1.0, 10.0);
+    }
+
+    private static void assertSameSolution(RLSolution expected, RLSolution actual, int stateCount) {
+        for (int s = 0; s < stateCount; s++) {
+            assertEquals("V of state " + s, expected.getV(s), actual.getV(s), 1e-6);
+            for (int a = 0; a < RLLayout.ACTION_COUNT; a++) {
+                assertEquals("Q of state " + s + " action " + a, expected.getQ(s, a), actual.getQ(s, a), 1e-6);
+            }
+        }
+    }
+
+    @Test
+    public void testResolveMatchesFreshSolve() {
+        RLPrioritizedSweeper sweeper = new RLPrioritizedSweeper(TOLERANCE, 100_000_000L);
+        RLPlanner planner = new RLPlanner(RLPlanner.Method.GAUSS_SEIDEL, TOLERANCE, 100000);
+        RLLayout before = layout(Arrays.asList(new int[]{10, 10}, new int[]{40, 50}));
+        RLSolution previous = sweeper.solve(before, null, GAMMA);
+        assertSameSolution(planner.solve(before, null, GAMMA), previous, before.getStateCount());
+
+        // Several edits in a row, each re-solve reuses the workspace of the one before
+        List<List<int[]>> edits = Arrays.asList(
+                Arrays.asList(new int[]{10, 10}, new int[]{40, 50}, new int[]{62, 60}),
+                Arrays.asList(new int[]{40, 50}, new int[]{62, 60}),
+                Arrays.asList(new int[]{30, 30}));
+        RLLayout current = before;
+        for (List<int[]> puddles : edits) {
+            RLLayout next = layout(puddles);
+            int[] changed = RLPrioritizedSweeper.changedStates(current, null, next, null);
+            RLSolution resolved = sweeper.resolve(previous, next, null, GAMMA, changed);
+            assertTrue(resolved.isConverged());
+            assertSameSolution(planner.solve(next, null, GAMMA), resolved, next.getStateCount());
+            previous = resolved;
+            current = next;
+        }
+    }
+
+    @Test
+    public void testResolveSharesUnchangedPages() {
+        RLPrioritizedSweeper sweeper = new RLPrioritizedSweeper(TOLERANCE, 100_000_000L);
+        RLLayout before = layout(Arrays.asList(new int[]{20, 20}));
+        RLLayout after = layout(Arrays.asList(new int[]{20, 20}, new int[]{60, 2}));
+        RLSolution previous = sweeper.solve(before, null, GAMMA);
+        RLSolution resolved = sweeper.resolve(previous, after, null, GAMMA, RLPrioritizedSweeper.changedStates(before, null, after, null));
+
+        // The new puddle is in the last page of states and off every shortest path of the first page
+        assertSame(previous.vPages()[0], resolved.vPages()[0]);
+        assertSame(previous.qPages()[0], resolved.qPages()[0]);
+        assertSame(previous.policyPages()[0], resolved.policyPages()[0]);
+        int last = RLTableSnapshot.pageCount(after.getStateCount()) - 1;
+        assertNotSame(previous.qPages()[last], resolved.qPages()[last]);
+
+        int puddle = 60 * GRID_SIZE + 2;
+        assertTrue(resolved.getV(puddle) < previous.getV(puddle));
+        assertEquals(previous.getV(0), resolved.getV(0), 0.0);
+    }
+
+    @Test
+    public void testCopiesJoinPages() {
+        RLSolution solution = new RLPrioritizedSweeper(TOLERANCE, 100_000_000L).solve(layout(Arrays.<int[]>asList()), null, GAMMA);
+        double[] v = solution.copyVValues();
+        double[] q = solution.copyQValues();
+        int[] policy = solution.copyPolicy();
+        for (int s = 0; s < solution.getStateCount(); s += 997) {
+            assertEquals(solution.getV(s), v[s], 0.0);
+            assertEquals(solution.getQ(s, 3), q[s * RLLayout.ACTION_COUNT + 3], 0.0);
+            assertEquals(solution.getAction(s), policy[s]);
+        }
+    }
+
+    @Test
+    public void testRewardChangeResolvesFromThePreviousValues() {
+        RLPrioritizedSweeper sweeper = new RLPrioritizedSweeper(TOLERANCE, 100_000_000L);
+        RLPlanner planner = new RLPlanner(RLPlanner.Method.GAUSS_SEIDEL, TOLERANCE, 100000);
+        List<int[]> puddles = Arrays.asList(new int[]{10, 10}, new int[]{40, 50});
+        RLLayout before = layout(puddles);
+        RLSolution previous = planner.solve(before, RLStochasticTransitions.compile(before, 0.2, 0.2, 0.0), GAMMA);
+        RLLayout changed = RLLayout.compile(GRID_SIZE, 2, puddles, -0.008, -1.0, 10.0);
+        RLStochasticTransitions transitions = RLStochasticTransitions.compile(changed, 0.2, 0.2, 0.0);
+
+        RLSolution cold = planner.solve(changed, transitions, GAMMA);
+        RLSolution warm = sweeper.resolve(previous, changed, transitions, GAMMA, null);
+        assertTrue(warm.isConverged());
+        assertTrue("warm " + warm.getSweeps() + " sweeps, cold " + cold.getSweeps(), warm.getSweeps() < cold.getSweeps());
+        assertSameSolution(cold, warm, changed.getStateCount());
+    }
+}
@@ -0,0 +1,61 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests that generated puddles never cover the start or goal, never overlap and always leave the goal reachable
+public class RLPuddleGeneratorTest {
+
+    private static BitSet cells(List<int[]> puddles, int puddleSize, int gridSize) {
+        BitSet cells = new BitSet(gridSize * gridSize);
+        for (int[] puddle : puddles) {
+            for (int r = puddle[0]; r < puddle[0] + puddleSize; r++) {
+                for (int c = puddle[1]; c < puddle[1] + puddleSize; c++) {
+                    assertFalse("overlapping puddles", cells.get(r * gridSize + c));
+                    cells.set(r * gridSize + c);
+                }
+            }
+        }
+        return cells;
+    }
+
+    @Test
+    public void testCrowdedGridsKeepGoalReachable() {
+        for (int puddleSize = 1; puddleSize <= 3; puddleSize++) {
+            for (long seed = 0; seed < 200; seed++) {
+                int gridSize = 12;
+                List<int[]> puddles = RLPuddleGenerator.generate(gridSize, 200, puddleSize, new SplittableRandom(seed));
+                BitSet cells = cells(puddles, puddleSize, gridSize);
+                assertFalse(cells.get(0));
+                assertFalse(cells.get(gridSize * gridSize - 1));
+                assertTrue("seed " + seed + " size " + puddleSize, RLPuddleGenerator.isGoalReachable(cells, gridSize));
+            }
+        }
+    }
+
+    @Test
+    public void testSameSeedGivesSamePuddles() {
+        List<int[]> first = RLPuddleGenerator.generate(20, 30, 2, new SplittableRandom(42));
+        List<int[]> second = RLPuddleGenerator.generate(20, 30, 2, new SplittableRandom(42));
+        assertEquals(first.size(), second.size());
+        for (int i = 0; i < first.size(); i++) {
+            assertArrayEquals(first.get(i), second.get(i));
+        }
+    }
+
+    @Test
+    public void testWallBlocksGoal() {
+        int gridSize = 5;
+        BitSet wall = new BitSet(gridSize * gridSize);
+        for (int c = 0; c < gridSize; c++) {
+            wall.set(2 * gridSize + c);
+        }
+        assertFalse(RLPuddleGenerator.isGoalReachable(wall, gridSize));
+        wall.clear(2 * gridSize + 3);
+        assertTrue(RLPuddleGenerator.isGoalReachable(wall, gridSize));
+    }
+}
@@ -0,0 +1,103 @@
+package ygraph.ai.smartfox.rl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests the FIXED16 and FLOAT32 tables of RLQuantizedTableStore, in particular writes that do not fit the stored range
+public class RLQuantizedTableStoreTest {
+
+    @Test
+    public void testFixed16RoundTripWithinErrorBound() {
+        RLQuantizedTableStore store = new RLQuantizedTableStore(4, RLTablePrecision.FIXED16);
+        double[] values = {0.0, 1.0, -0.37, 12.5, -31.9};
+        for (int i = 0; i < values.length; i++) {
+            assertTrue(store.setQ(i, i % 4, values[i]));
+        }
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i], store.getQ(i, i % 4), store.getQErrorBound());
+        }
+        assertEquals(0, store.getClampedWrites());
+    }
+
+    @Test
+    public void testLargeFiniteValueGrowsScaleAndKeepsSmallValues() {
+        RLQuantizedTableStore store = new RLQuantizedTableStore(4, RLTablePrecision.FIXED16);
+        store.setQ(0, 0, 1.0);
+        store.setQ(1, 1, 1000.0);
+        assertTrue(store.getQScale() > Math.scalb(1.0, -10));
+        assertEquals(1000.0, store.getQ(1, 1), store.getQErrorBound());
+        assertEquals(1.0, store.getQ(0, 0), store.getQErrorBound());
+        assertEquals(0, store.getClampedWrites());
+    }
+
+    @Test
+    public void testInfiniteValueIsClampedWithoutRescaling() {
+        RLQuantizedTableStore store = new RLQuantizedTableStore(4, RLTablePrecision.FIXED16);
+        store.setQ(0, 0, 1.0);
+        store.setQ(0, 1, -2.5);
+        double scale = store.getQScale();
+
+        assertTrue(store.setQ(1, 0, Double.POSITIVE_INFINITY));
+        assertTrue(store.setQ(1, 1, Double.NEGATIVE_INFINITY));
+
+        assertEquals(scale, store.getQScale(), 0.0);
+        assertEquals(Short.MAX_VALUE * scale, store.getQ(1, 0), 0.0);
+        assertEquals(Short.MIN_VALUE * scale, store.getQ(1, 1), 0.0);
+        assertEquals(1.0, store.getQ(0, 0), store.getQErrorBound());
+        assertEquals(-2.5, store.getQ(0, 1), store.getQErrorBound());
+        assertEquals(2, store.getClampedWrites());
+    }
+
+    @Test
+    public void testHugeFiniteValueStopsAtLargestScale() {
+        RLQuantizedTableStore store = new RLQuantizedTableStore(4, RLTablePrecision.FIXED16);
+        store.setQ(0, 0, 5.0);
+        store.setQ(1, 0, 1e300);
+
+        double largestScale = store.getQScale();
+        assertEquals(Math.scalb(1.0, 16), largestScale, 0.0);
+        assertEquals(Short.MAX_VALUE * largestScale, store.getQ(1, 0), 0.0);
+        assertEquals(1, store.getClampedWrites());
+        // Small values lose precision to the larger scale but are not wiped out to a power of two
+        assertEquals(5.0, store.getQ(0, 0), largestScale);
+    }
+
+    @Test
+    public void testNaNIsRejected() {
+        RLQuantizedTableStore store = new RLQuantizedTableStore(4, RLTablePrecision.FIXED16);
+        store.setQ(2, 3, 4.0);
+        store.setV(2, 4.0);
+        long version = store.getVersion();
+
+        assertFalse(store.setQ(2, 3, Double.NaN));
+        assertFalse(store.setV(2, Double.NaN));
+        assertEquals(1, store.setQValues(new int[] {2, 3}, new int[] {3, 0}, new double[] {Double.NaN, 1.0}));
+
+        assertEquals(4.0, store.getQ(2, 3), store.getQErrorBound());
+        assertEquals(4.0, store.getV(2), store.getVErrorBound());
+        assertEquals(3, store.getRejectedWrites());
+        assertTrue(store.hasChangedSince(version));
+    }
+
+    @Test
+    public void testFloat32ClampsAndRejects() {
+        RLQuantizedTableStore store = new RLQuantizedTableStore(4, RLTablePrecision.FLOAT32);
+        assertTrue(store.setQ(0, 0, 1e300));
+        assertEquals(Float.MAX_VALUE, store.getQ(0, 0), 0.0);
+        assertTrue(store.setQ(0, 1, Double.NEGATIVE_INFINITY));
+        assertEquals(Double.NEGATIVE_INFINITY, store.getQ(0, 1), 0.0);
+        assertFalse(store.setQ(0, 2, Double.NaN));
+        assertEquals(1, store.getClampedWrites());
+        assertEquals(1, store.getRejectedWrites());
+    }
+
+    @Test
+    public void testClearResetsScale() {
+        RLQuantizedTableStore store = new RLQuantizedTableStore(4, RLTablePrecision.FIXED16);
+        store.setQ(0, 0, 1e6);
+        store.clear();
+        assertEquals(Math.scalb(1.0, -10), store.getQScale(), 0.0);
+        assertEquals(0.0, store.getQ(0, 0), 0.0);
+        assertEquals(0, store.getClampedWrites());
+    }
+}
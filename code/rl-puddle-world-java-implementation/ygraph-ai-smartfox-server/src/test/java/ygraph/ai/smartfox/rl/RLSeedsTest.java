@@ -0,0 +1,77 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests that the seed tree replays the same streams for the same root, session and episode and separates everything else
+public class RLSeedsTest {
+    private static final long ROOT = 20240917L;
+
+    private static long[] draw(SplittableRandom random, int count) {
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = random.nextLong();
+        }
+        return values;
+    }
+
+    private static long[] episodeStream(long root, String sessionName, int episode, RLSeeds.Purpose purpose) {
+        long episodeSeed = RLSeeds.episodeSeed(RLSeeds.sessionSeed(root, sessionName), episode);
+        return draw(RLSeeds.stream(episodeSeed, purpose), 16);
+    }
+
+    @Test
+    public void testSameRootSessionAndEpisodeReplay() {
+        for (RLSeeds.Purpose purpose : RLSeeds.Purpose.values()) {
+            assertArrayEquals(episodeStream(ROOT, "alice", 3, purpose), episodeStream(ROOT, "alice", 3, purpose));
+        }
+        // Seeds are pure functions of their inputs, so a logged ROOT_SEED replays a run on any machine
+        assertEquals(RLSeeds.sessionSeed(ROOT, "alice"), RLSeeds.sessionSeed(ROOT, new String("alice")));
+    }
+
+    @Test
+    public void testWorldsWithTheSameSeedsReplayAnEpisode() {
+        long sessionSeed = RLSeeds.sessionSeed(ROOT, "alice");
+        long layoutSeed = RLSeeds.purposeSeed(sessionSeed, RLSeeds.Purpose.LAYOUT);
+        RLWorld first = new RLWorld(null, RLLayoutMode.EPISODE, layoutSeed, null, sessionSeed);
+        RLWorld second = new RLWorld(null, RLLayoutMode.EPISODE, layoutSeed, null, sessionSeed);
+        first.startEpisode(5);
+        second.startEpisode(5);
+        assertEquals(RLSeeds.episodeSeed(sessionSeed, 5), first.getEpisodeSeed());
+        assertEquals(first.getEpisodeSeed(), second.getEpisodeSeed());
+        assertEquals(first.getLayout().getPuddlePositions().size(), second.getLayout().getPuddlePositions().size());
+        for (int i = 0; i < first.getLayout().getPuddlePositions().size(); i++) {
+            assertArrayEquals(first.getLayout().getPuddlePositions().get(i), second.getLayout().getPuddlePositions().get(i));
+        }
+    }
+
+    @Test
+    public void testEveryLevelSeparatesTheStreams() {
+        Set<Long> firstValues = new HashSet<>();
+        String[] sessions = {"alice", "bob", "Alice", "alice "};
+        int streams = 0;
+        for (long root : new long[]{ROOT, ROOT + 1}) {
+            for (String session : sessions) {
+                for (int episode = 0; episode < 4; episode++) {
+                    for (RLSeeds.Purpose purpose : RLSeeds.Purpose.values()) {
+                        firstValues.add(episodeStream(root, session, episode, purpose)[0]);
+                        streams++;
+                    }
+                }
+            }
+        }
+        assertEquals(streams, firstValues.size());
+    }
+
+    @Test
+    public void testClassWideStreamsDoNotRepeatSessionStreams() {
+        long sessionSeed = RLSeeds.sessionSeed(ROOT, "alice");
+        assertNotEquals(RLSeeds.purposeSeed(ROOT, RLSeeds.Purpose.LAYOUT), RLSeeds.purposeSeed(sessionSeed, RLSeeds.Purpose.LAYOUT));
+        assertNotEquals(RLSeeds.episodeSeed(sessionSeed, 0), RLSeeds.episodeSeed(sessionSeed, 1));
+        assertNotEquals(RLSeeds.purposeSeed(sessionSeed, RLSeeds.Purpose.STOPPING), RLSeeds.purposeSeed(sessionSeed, RLSeeds.Purpose.EXPLORATION));
+    }
+}
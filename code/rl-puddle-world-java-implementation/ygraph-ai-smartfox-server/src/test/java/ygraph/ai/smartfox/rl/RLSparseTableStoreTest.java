@@ -0,0 +1,114 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests that the sparse store reads like the dense store through rehashes, and that its snapshots keep their values while the store grows and is cleared
+public class RLSparseTableStoreTest {
+    private static final int GRID_SIZE = 200;
+    private static final int STATE_COUNT = GRID_SIZE * GRID_SIZE;
+
+    // Writes the same scattered Q- and V-values to both stores and returns the distinct states written
+    private static Set<Integer> writeScattered(RLValueStore sparse, RLValueStore dense, SplittableRandom random, int writes) {
+        Set<Integer> states = new HashSet<>();
+        for (int i = 0; i < writes; i++) {
+            int stateId = random.nextInt(STATE_COUNT);
+            int action = random.nextInt(RLValueStore.ACTION_COUNT);
+            double value = random.nextDouble(-5.0, 5.0);
+            assertTrue(sparse.setQ(stateId, action, value));
+            dense.setQ(stateId, action, value);
+            if (i % 3 == 0) {
+                sparse.setV(stateId, -value);
+                dense.setV(stateId, -value);
+            }
+            states.add(stateId);
+        }
+        return states;
+    }
+
+    private static void assertSameTables(RLValueStore expected, RLValueStore actual) {
+        assertArrayEquals(expected.copyQValues(), actual.copyQValues(), 0.0);
+        assertArrayEquals(expected.copyVValues(), actual.copyVValues(), 0.0);
+        for (int stateId = 0; stateId < STATE_COUNT; stateId += 97) {
+            assertEquals(expected.maxQ(stateId), actual.maxQ(stateId), 0.0);
+            assertEquals(expected.argmaxQ(stateId), actual.argmaxQ(stateId));
+        }
+    }
+
+    @Test
+    public void testGrowsAndRehashesLikeTheDenseStore() {
+        RLSparseTableStore sparse = new RLSparseTableStore(GRID_SIZE);
+        RLTableStore dense = new RLTableStore(GRID_SIZE);
+        long emptyBytes = sparse.getMemoryUsageBytes();
+        SplittableRandom random = new SplittableRandom(5L);
+        Set<Integer> states = new HashSet<>();
+        // Check the contents after every few rehashes, the capacity starts at 64 and doubles at half load
+        for (int round = 0; round < 4; round++) {
+            states.addAll(writeScattered(sparse, dense, random, 1500));
+            assertEquals(states.size(), sparse.getStoredStateCount());
+            assertSameTables(dense, sparse);
+        }
+        assertTrue(sparse.getMemoryUsageBytes() > emptyBytes);
+        // Half load means at most 4 slots per stored state once the table has grown
+        assertTrue(sparse.getMemoryUsageBytes() < 44L * 4 * states.size() + 48L * 64);
+
+        // Out of range writes are refused without creating entries
+        assertFalse(sparse.setQ(-1, 0, 1.0));
+        assertFalse(sparse.setQ(STATE_COUNT, 0, 1.0));
+        assertFalse(sparse.setQ(0, RLValueStore.ACTION_COUNT, 1.0));
+        assertFalse(sparse.setV(STATE_COUNT, 1.0));
+        assertEquals(states.size(), sparse.getStoredStateCount());
+    }
+
+    @Test
+    public void testGreedyPolicyMatchesTheDenseStore() {
+        RLSparseTableStore sparse = new RLSparseTableStore(GRID_SIZE);
+        RLTableStore dense = new RLTableStore(GRID_SIZE);
+        writeScattered(sparse, dense, new SplittableRandom(11L), 3000);
+        // A visited row with only negative values must not fall back to the unvisited default of action 0
+        double[] negativeRow = {-4.0, -3.0, -1.0, -2.0};
+        sparse.setQRow(123, negativeRow);
+        dense.setQRow(123, negativeRow);
+
+        int[] expected = dense.greedyPolicy(new int[STATE_COUNT]);
+        int[] actual = new int[STATE_COUNT];
+        Arrays.fill(actual, -1);
+        assertArrayEquals(expected, sparse.greedyPolicy(actual));
+        assertEquals(2, actual[123]);
+        assertArrayEquals(expected, sparse.snapshot().greedyPolicy(new int[STATE_COUNT]));
+    }
+
+    @Test
+    public void testSnapshotIsIsolatedFromLaterWritesRehashesAndClear() {
+        RLSparseTableStore sparse = new RLSparseTableStore(GRID_SIZE);
+        RLTableStore dense = new RLTableStore(GRID_SIZE);
+        SplittableRandom random = new SplittableRandom(23L);
+        Set<Integer> states = writeScattered(sparse, dense, random, 20);
+        RLTableSnapshot snapshot = sparse.snapshot();
+        double[] qAtSnapshot = dense.copyQValues();
+        double[] vAtSnapshot = dense.copyVValues();
+
+        // Overwrite existing entries and insert enough new ones to rehash several times
+        for (int stateId : states) {
+            sparse.setQ(stateId, 0, 99.0);
+            dense.setQ(stateId, 0, 99.0);
+        }
+        writeScattered(sparse, dense, random, 2000);
+        assertArrayEquals(qAtSnapshot, snapshot.copyQValues(), 0.0);
+        assertArrayEquals(vAtSnapshot, snapshot.copyVValues(), 0.0);
+
+        RLTableSnapshot later = sparse.snapshot();
+        assertNotSame(snapshot, later);
+        sparse.clear();
+        assertEquals(0, sparse.getStoredStateCount());
+        assertEquals(0.0, sparse.getQ(123, 0), 0.0);
+        assertArrayEquals(qAtSnapshot, snapshot.copyQValues(), 0.0);
+        assertArrayEquals(dense.copyQValues(), later.copyQValues(), 0.0);
+        assertArrayEquals(dense.copyVValues(), later.copyVValues(), 0.0);
+    }
+}
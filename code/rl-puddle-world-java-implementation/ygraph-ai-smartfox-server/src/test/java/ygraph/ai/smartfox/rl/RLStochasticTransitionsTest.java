@@ -0,0 +1,68 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests the alias tables of RLStochasticTransitions and their sharing through RLLayoutCache
+public class RLStochasticTransitionsTest {
+    private static final int GRID_SIZE = 6;
+    private static final int DRAWS = 100000;
+
+    private final RLLayout layout = RLLayout.compile(GRID_SIZE, 2, Collections.singletonList(new int[]{2, 2}), -0.01, -1.0, 10.0);
+
+    @Test
+    public void testAliasSamplingMatchesOutcomeProbabilities() {
+        RLStochasticTransitions transitions = RLStochasticTransitions.compile(layout, 0.2, 0.5, 0.1);
+        int stateCount = layout.getStateCount();
+        for (int s = 0; s < stateCount; s++) {
+            for (int a = 0; a < RLLayout.ACTION_COUNT; a++) {
+                int count = transitions.outcomeCount(s, a);
+                assertTrue(count >= 1 && count <= RLStochasticTransitions.MAX_OUTCOMES);
+                // Evenly spaced draws hit every outcome in proportion to its probability, up to one draw per alias slot boundary
+                int[] hits = new int[stateCount];
+                for (int i = 0; i < DRAWS; i++) {
+                    hits[transitions.sample(s, a, (i + 0.5) / DRAWS)]++;
+                }
+                double total = 0.0;
+                for (int k = 0; k < count; k++) {
+                    double p = transitions.outcomeProbability(s, a, k);
+                    total += p;
+                    assertEquals("state " + s + " action " + a, p, (double) hits[transitions.outcomeState(s, a, k)] / DRAWS, 2.0 * count / DRAWS);
+                }
+                assertEquals(1.0, total, 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testPuddleCellsUseTheirOwnSlip() {
+        RLStochasticTransitions transitions = RLStochasticTransitions.compile(layout, 0.0, 0.4, 0.0);
+        int open = 4 * GRID_SIZE + 4;
+        int puddle = 2 * GRID_SIZE + 2;
+        assertTrue(layout.isPuddle(puddle));
+        assertEquals(1, transitions.outcomeCount(open, RLLayout.ACTION_UP));
+        assertEquals(3, transitions.outcomeCount(puddle, RLLayout.ACTION_UP));
+        assertEquals(0.6, transitions.outcomeProbability(puddle, RLLayout.ACTION_UP, 0), 1e-12);
+    }
+
+    @Test
+    public void testLayoutCacheSharesCompiledTransitions() {
+        RLLayoutCache cache = new RLLayoutCache(4);
+        RLTransitionModel shared = cache.getLayout(7L, false, GRID_SIZE, 3, 1, -0.01, -1.0, 10.0);
+        RLStochasticTransitions first = cache.getTransitions(shared, 0.2, 0.5, 0.1);
+        assertSame(first, cache.getTransitions(shared, 0.2, 0.5, 0.1));
+        assertSame(shared, first.getLayout());
+        assertNotSame(first, cache.getTransitions(shared, 0.3, 0.5, 0.1));
+        assertEquals(2, cache.transitionsSize());
+
+        cache.clear();
+        assertEquals(0, cache.transitionsSize());
+        RLStochasticTransitions recompiled = cache.getTransitions(shared, 0.2, 0.5, 0.1);
+        assertNotSame(first, recompiled);
+        for (int a = 0; a < RLLayout.ACTION_COUNT; a++) {
+            assertEquals(first.outcomeCount(0, a), recompiled.outcomeCount(0, a));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ygraph.ai.smartfox.rl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+// Tests that near-identical Q-tables share a signature band and unrelated ones do not, and that the sketch follows updates without a rebuild
+public class RLTableSketchTest {
+    private static final int GRID_SIZE = 16;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static void fill(RLValueStore tables, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        for (int s = 0; s < tables.getStateCount(); s++) {
+            for (int a = 0; a < RLValueStore.ACTION_COUNT; a++) {
+                tables.setQ(s, a, random.nextDouble() * 2 - 1);
+            }
+        }
+    }
+
+    // Checks if two signatures agree on every bit of at least one band, which makes them a candidate pair in RLSimilarityIndex
+    private static boolean shareBand(long first, long second) {
+        int bandBits = Long.SIZE / RLSimilarityIndex.BANDS;
+        for (int band = 0; band < RLSimilarityIndex.BANDS; band++) {
+            if (((first ^ second) >>> (band * bandBits) & ((1L << bandBits) - 1)) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testNearIdenticalTablesShareABand() {
+        RLTableStore original = new RLTableStore(GRID_SIZE);
+        fill(original, 1L);
+        RLTableStore copy = new RLTableStore(GRID_SIZE);
+        fill(copy, 1L);
+        // The copy rescales every value and nudges a few, the greedy policy barely moves
+        SplittableRandom random = new SplittableRandom(2L);
+        for (int s = 0; s < copy.getStateCount(); s++) {
+            for (int a = 0; a < RLValueStore.ACTION_COUNT; a++) {
+                double q = copy.getQ(s, a) * 3.0;
+                copy.setQ(s, a, s % 50 == 0 ? q + random.nextDouble() * 0.01 : q);
+            }
+        }
+        RLTableStore unrelated = new RLTableStore(GRID_SIZE);
+        fill(unrelated, 3L);
+
+        long signature = new RLTableSketch(original).getSignature();
+        long copySignature = new RLTableSketch(copy).getSignature();
+        long unrelatedSignature = new RLTableSketch(unrelated).getSignature();
+        assertTrue(Long.bitCount(signature ^ copySignature) < RLSimilarityIndex.BANDS);
+        assertTrue(shareBand(signature, copySignature));
+        assertFalse(shareBand(signature, unrelatedSignature));
+        assertTrue(Long.bitCount(signature ^ unrelatedSignature) > 16);
+    }
+
+    @Test
+    public void testUpdatesMatchARebuild() {
+        RLTableStore tables = new RLTableStore(GRID_SIZE);
+        RLTableSketch sketch = new RLTableSketch(tables);
+        assertEquals(0L, sketch.getSignature());
+        SplittableRandom random = new SplittableRandom(4L);
+        for (int i = 0; i < 2000; i++) {
+            int[] stateIds = {random.nextInt(tables.getStateCount()), random.nextInt(tables.getStateCount())};
+            double[] rows = sketch.captureRows(tables, stateIds);
+            for (int stateId : stateIds) {
+                tables.setQ(stateId, random.nextInt(RLValueStore.ACTION_COUNT), random.nextDouble() * 2 - 1);
+            }
+            sketch.update(tables, stateIds, rows);
+        }
+        assertEquals(new RLTableSketch(tables).getSignature(), sketch.getSignature());
+    }
+
+    @Test
+    public void testReattachedTablesAreSketched() throws IOException {
+        File file = new File(folder.getRoot(), RLValueStore.tableFileName("alice"));
+        RLMappedTableStore first = new RLMappedTableStore(GRID_SIZE, file, "alice");
+        assertEquals(0L, first.getVersion());
+        fill(first, 5L);
+        long signature = new RLTableSketch(first).getSignature();
+        first.close();
+
+        RLMappedTableStore reattached = new RLMappedTableStore(GRID_SIZE, file, "alice");
+        assertTrue(reattached.getVersion() != 0);
+        assertEquals(signature, new RLTableSketch(reattached).getSignature());
+        reattached.close();
+    }
+}
@@ -0,0 +1,120 @@
+package ygraph.ai.smartfox.rl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+// Tests that snapshots of every table store are isolated from later writes, including writes running concurrently with the reader
+public class RLTableSnapshotTest {
+    private static final int GRID_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<RLValueStore> stores() throws IOException {
+        List<RLValueStore> stores = new ArrayList<>();
+        stores.add(new RLTableStore(GRID_SIZE));
+        stores.add(new RLSparseTableStore(GRID_SIZE));
+        stores.add(new RLQuantizedTableStore(GRID_SIZE, RLTablePrecision.FIXED16));
+        stores.add(new RLQuantizedTableStore(GRID_SIZE, RLTablePrecision.FLOAT32));
+        stores.add(new RLMappedTableStore(GRID_SIZE, folder.newFile()));
+        return stores;
+    }
+
+    @Test
+    public void testSnapshotKeepsValuesAfterWrites() throws IOException {
+        for (RLValueStore store : stores()) {
+            store.setQ(5, 2, 1.5);
+            store.setV(5, 3.0);
+            RLTableSnapshot snapshot = store.snapshot();
+            assertSame(snapshot, store.snapshot());
+
+            store.setQ(5, 2, 7.0);
+            store.setV(5, -1.0);
+            store.setQ(GRID_SIZE * GRID_SIZE - 1, 3, 9.0);
+            RLTableSnapshot later = store.snapshot();
+            store.clear();
+
+            String name = store.getClass().getSimpleName();
+            assertEquals(name, 1.5, snapshot.getQ(5, 2), 1e-3);
+            assertEquals(name, 3.0, snapshot.getV(5), 1e-3);
+            assertEquals(name, 0.0, snapshot.getQ(GRID_SIZE * GRID_SIZE - 1, 3), 0.0);
+            assertEquals(name, 7.0, later.getQ(5, 2), 1e-3);
+            assertEquals(name, 9.0, later.getQ(GRID_SIZE * GRID_SIZE - 1, 3), 1e-3);
+            assertEquals(name, 0.0, store.getQ(5, 2), 0.0);
+            assertTrue(name, later.getVersion() > snapshot.getVersion());
+        }
+    }
+
+    @Test
+    public void testSnapshotIsolationUnderConcurrentWrites() throws Exception {
+        for (RLValueStore store : stores()) {
+            int states = store.getStateCount();
+            int[] stateIds = new int[states];
+            int[] actions = new int[states];
+            for (int s = 0; s < states; s++) {
+                stateIds[s] = s;
+                actions[s] = s % RLValueStore.ACTION_COUNT;
+            }
+            // Every batch writes the same value to one action of every state, so a consistent snapshot holds a single value
+            AtomicBoolean done = new AtomicBoolean();
+            Thread writer = new Thread(() -> {
+                double[] values = new double[states];
+                for (int k = 1; k <= 400; k++) {
+                    Arrays.fill(values, k);
+                    store.setQValues(stateIds, actions, values);
+                }
+                done.set(true);
+            });
+            writer.start();
+            int checked = 0;
+            while (!done.get() || checked == 0) {
+                RLTableSnapshot snapshot = store.snapshot();
+                double first = snapshot.getQ(0, 0);
+                for (int s = 0; s < states; s++) {
+                    assertEquals(store.getClass().getSimpleName(), first, snapshot.getQ(s, actions[s]), 0.0);
+                }
+                checked++;
+            }
+            writer.join();
+            assertEquals(400.0, store.snapshot().getQ(states - 1, actions[states - 1]), 0.0);
+        }
+    }
+
+    @Test
+    public void testSparseSnapshotOfHugeGridOnlyHoldsVisitedStates() {
+        RLSparseTableStore store = new RLSparseTableStore(40000);
+        store.setQ(1_234_567_890, 1, 2.5);
+        RLTableSnapshot snapshot = store.snapshot();
+        store.setQ(1_234_567_890, 1, 4.0);
+
+        assertEquals(1_600_000_000, snapshot.getStateCount());
+        assertEquals(2.5, snapshot.getQ(1_234_567_890, 1), 0.0);
+        assertEquals(1, snapshot.argmaxQ(1_234_567_890));
+        assertEquals(0.0, snapshot.getV(7), 0.0);
+    }
+
+    @Test
+    public void testOldMappedSnapshotReadsThroughNewerSnapshot() throws IOException {
+        RLMappedTableStore store = new RLMappedTableStore(GRID_SIZE, folder.newFile());
+        store.setQ(3, 0, 1.0);
+        RLTableSnapshot first = store.snapshot();
+        store.setQ(2000, 0, 2.0);
+        RLTableSnapshot second = store.snapshot();
+        store.setQ(3, 0, 3.0);
+        store.setQ(2000, 0, 4.0);
+
+        assertEquals(1.0, first.getQ(3, 0), 0.0);
+        assertEquals(0.0, first.getQ(2000, 0), 0.0);
+        assertEquals(1.0, second.getQ(3, 0), 0.0);
+        assertEquals(2.0, second.getQ(2000, 0), 0.0);
+        assertEquals(3.0, store.getQ(3, 0), 0.0);
+    }
+}
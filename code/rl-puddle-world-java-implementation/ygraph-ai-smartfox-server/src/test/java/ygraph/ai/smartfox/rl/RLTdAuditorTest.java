@@ -0,0 +1,159 @@
+package ygraph.ai.smartfox.rl;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests the matched, unmatched and non-finite paths of RLTdAuditor, its flag threshold and quantization slack,
+// and that the reward it audits against is the shaped reward the server hands to the client
+public class RLTdAuditorTest {
+    private static final double ALPHA = 0.5;
+    private static final double GAMMA = 0.9;
+
+    private final String previousShaping = System.getProperty("REWARD_SHAPING");
+
+    @After
+    public void restore() {
+        if (previousShaping == null) {
+            System.clearProperty("REWARD_SHAPING");
+        } else {
+            System.setProperty("REWARD_SHAPING", previousShaping);
+        }
+        RLConfig.reload();
+    }
+
+    private static RLTdAuditor auditor(double tolerance, double flagRate, int minUpdates) {
+        return new RLTdAuditor("tester", ALPHA, GAMMA, tolerance, flagRate, minUpdates);
+    }
+
+    // The update the reference client computes from its own copy of the table
+    private static double clientUpdate(RLValueStore tables, int stateId, int action, double reward, int nextStateId) {
+        double current = tables.getQ(stateId, action);
+        return current + ALPHA * (reward + GAMMA * tables.maxQ(nextStateId) - current);
+    }
+
+    private static int audit(RLTdAuditor auditor, RLValueStore tables, int stateId, int action, double value) {
+        return auditor.audit(tables, new int[]{stateId}, new int[]{action}, new double[]{value});
+    }
+
+    @Test
+    public void testMatchingUpdatesPass() {
+        RLTableStore tables = new RLTableStore(4);
+        tables.setQ(1, 3, 0.4);
+        tables.setQ(5, 1, 2.0);
+        tables.setQ(5, 2, -1.0);
+        RLTdAuditor auditor = auditor(1e-9, 0.2, 1);
+        auditor.recordTransition(1, 3, -0.01, 5);
+        assertEquals(0, audit(auditor, tables, 1, 3, clientUpdate(tables, 1, 3, -0.01, 5)));
+        assertEquals(1, auditor.getAuditedCount());
+        assertEquals(0, auditor.getMismatchCount());
+        assertEquals(0, auditor.getUnmatchedCount());
+        assertEquals(0.0, auditor.getMeanError(), 1e-12);
+        assertFalse(auditor.isFlagged());
+    }
+
+    @Test
+    public void testUpdatesForOtherPairsAreUnmatched() {
+        RLTableStore tables = new RLTableStore(4);
+        RLTdAuditor auditor = auditor(1e-9, 0.2, 1);
+        // Nothing served yet
+        audit(auditor, tables, 0, 1, 0.0);
+        auditor.recordTransition(0, 3, 1.0, 1);
+        // Another pair in the same batch is unmatched, the served pair is audited once and consumed
+        assertEquals(0, auditor.audit(tables, new int[]{2, 0, 0}, new int[]{3, 3, 3}, new double[]{9.0, ALPHA, ALPHA}));
+        assertEquals(1, auditor.getAuditedCount());
+        assertEquals(0, auditor.getMismatchCount());
+        assertEquals(3, auditor.getUnmatchedCount());
+    }
+
+    @Test
+    public void testNonFiniteValuesAreMismatchesOutsideTheMean() {
+        RLTableStore tables = new RLTableStore(4);
+        RLTdAuditor auditor = auditor(1e-9, 1.0, 100);
+        auditor.recordTransition(0, 3, 1.0, 1);
+        assertEquals(1, audit(auditor, tables, 0, 3, Double.NaN));
+        auditor.recordTransition(0, 3, 1.0, 1);
+        assertEquals(1, audit(auditor, tables, 0, 3, ALPHA + 0.25));
+        auditor.recordTransition(0, 3, 1.0, 1);
+        assertEquals(1, audit(auditor, tables, 0, 3, ALPHA + 0.75));
+
+        assertEquals(3, auditor.getMismatchCount());
+        assertEquals(Double.POSITIVE_INFINITY, auditor.getMaxAbsError(), 0.0);
+        assertEquals(0.5, auditor.getMeanError(), 1e-12);
+        assertEquals(0.125, auditor.getErrorVariance(), 1e-12);
+    }
+
+    @Test
+    public void testFlagNeedsTheMinimumUpdatesAndTheRate() {
+        RLTableStore tables = new RLTableStore(4);
+        RLTdAuditor auditor = auditor(1e-9, 0.5, 5);
+        boolean[] wrong = {true, true, false, true, false, false};
+        boolean[] flaggedAfter = {false, false, false, false, true, true};
+        for (int i = 0; i < wrong.length; i++) {
+            auditor.recordTransition(0, 3, 1.0, 1);
+            audit(auditor, tables, 0, 3, wrong[i] ? 5.0 : ALPHA);
+            assertEquals("after update " + (i + 1), flaggedAfter[i], auditor.isFlagged());
+        }
+        // Exactly the flag rate does not flag
+        RLTdAuditor even = auditor(1e-9, 0.5, 4);
+        for (int i = 0; i < 4; i++) {
+            even.recordTransition(0, 3, 1.0, 1);
+            audit(even, tables, 0, 3, i % 2 == 0 ? 5.0 : ALPHA);
+        }
+        assertFalse(even.isFlagged());
+        auditor.reset();
+        assertFalse(auditor.isFlagged());
+        assertEquals(0, auditor.getAuditedCount());
+    }
+
+    @Test
+    public void testQuantizedTablesGetSlack() {
+        // The client holds the exact values, the FIXED16 mirror holds them rounded to its scale
+        RLTableStore exact = new RLTableStore(4);
+        RLQuantizedTableStore quantized = new RLQuantizedTableStore(4, RLTablePrecision.FIXED16);
+        for (RLValueStore tables : new RLValueStore[]{exact, quantized}) {
+            tables.setQ(1, 3, 0.3);
+            tables.setQ(5, 1, 1.7);
+        }
+        double reported = clientUpdate(exact, 1, 3, -0.01, 5);
+
+        RLTableStore rounded = new RLTableStore(4);
+        rounded.setQ(1, 3, quantized.getQ(1, 3));
+        rounded.setQ(5, 1, quantized.getQ(5, 1));
+        RLTdAuditor strict = auditor(1e-12, 0.2, 1);
+        strict.recordTransition(1, 3, -0.01, 5);
+        assertEquals(1, audit(strict, rounded, 1, 3, reported));
+
+        RLTdAuditor slack = auditor(1e-12, 0.2, 1);
+        slack.recordTransition(1, 3, -0.01, 5);
+        assertEquals(0, audit(slack, quantized, 1, 3, reported));
+        assertTrue(slack.getMaxAbsError() > 0);
+        assertTrue(slack.getMaxAbsError() <= 2 * quantized.getQErrorBound());
+    }
+
+    @Test
+    public void testAuditsTheShapedRewardServedToTheClient() {
+        System.setProperty("REWARD_SHAPING", "POTENTIAL");
+        RLConfig.reload();
+        RLWorld world = new RLWorld(null, RLLayoutMode.SESSION, 3L);
+        RLValueStore tables = world.getTables();
+        RLTdAuditor auditor = auditor(1e-9, 0.2, 1);
+
+        int stateId = 0;
+        int action = world.getAvailableActionIndices(stateId)[0];
+        int nextStateId = world.moveAgentWithAction(stateId, action);
+        // RLGameUser.takeAction records getLastReward and the action move handler sends the same value as "reward", which the client learns from
+        double served = world.getLastReward();
+        assertTrue(world.getLastShapingReward() != 0);
+        assertEquals(world.getLastRawReward() + world.getLastShapingReward(), served, 0.0);
+        auditor.recordTransition(stateId, action, served, nextStateId);
+        assertEquals(0, audit(auditor, tables, stateId, action, clientUpdate(tables, stateId, action, served, nextStateId)));
+
+        // A client that learned from the raw reward instead is caught
+        int secondAction = world.getAvailableActionIndices(nextStateId)[0];
+        int secondState = world.moveAgentWithAction(nextStateId, secondAction);
+        auditor.recordTransition(nextStateId, secondAction, world.getLastReward(), secondState);
+        assertEquals(1, audit(auditor, tables, nextStateId, secondAction,
+                clientUpdate(tables, nextStateId, secondAction, world.getLastRawReward(), secondState)));
+    }
+}
@@ -0,0 +1,111 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests the stop steps of the built-in termination policies, the inverse-CDF draw of Geometric and how STOP_METHOD resolves a policy
+public class RLTerminationPolicyTest {
+    private static final long SESSION_SEED = RLSeeds.sessionSeed(20240917L, "alice");
+
+    private static SplittableRandom stoppingStream(int episode) {
+        return RLSeeds.stream(RLSeeds.episodeSeed(SESSION_SEED, episode), RLSeeds.Purpose.STOPPING);
+    }
+
+    private static RLConfig config(String... keyValues) {
+        Map<String, String> values = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            values.put(keyValues[i], keyValues[i + 1]);
+        }
+        return RLConfig.fromMap(values);
+    }
+
+    @Test
+    public void testGeometricStopStepIsTheInverseCdfOfOneUniform() {
+        double stopProb = 0.1;
+        RLTerminationPolicy.Geometric policy = new RLTerminationPolicy.Geometric(stopProb);
+        for (int episode = 0; episode < 1000; episode++) {
+            SplittableRandom random = stoppingStream(episode);
+            double u = stoppingStream(episode).nextDouble();
+            policy.beginEpisode(random);
+            int expected = 1 + (int) Math.max(Math.ceil(Math.log(1 - u) / Math.log(1 - stopProb)), 1.0);
+            assertEquals("episode " + episode, expected, policy.getStopStep());
+            assertFalse(policy.shouldStop(expected - 1));
+            assertTrue(policy.shouldStop(expected));
+        }
+    }
+
+    @Test
+    public void testGeometricReplaysAndHasTheExpectedMeanLength() {
+        double stopProb = 0.2;
+        RLTerminationPolicy.Geometric first = new RLTerminationPolicy.Geometric(stopProb);
+        RLTerminationPolicy.Geometric second = new RLTerminationPolicy.Geometric(stopProb);
+        int episodes = 20000;
+        long total = 0;
+        for (int episode = 0; episode < episodes; episode++) {
+            first.beginEpisode(stoppingStream(episode));
+            second.beginEpisode(stoppingStream(episode));
+            assertEquals(first.getStopStep(), second.getStopStep());
+            assertTrue(first.getStopStep() >= 2);
+            total += first.getStopStep();
+        }
+        // The length is 1 + G with E[G] = 1 / stopProb, the standard deviation of the mean is about 0.03 here
+        assertEquals(1 + 1 / stopProb, (double) total / episodes, 0.15);
+    }
+
+    @Test
+    public void testGeometricEdgeProbabilities() {
+        RLTerminationPolicy.Geometric never = new RLTerminationPolicy.Geometric(0.0);
+        never.beginEpisode(stoppingStream(0));
+        assertEquals(Integer.MAX_VALUE, never.getStopStep());
+        assertFalse(never.shouldStop(Integer.MAX_VALUE - 1));
+
+        RLTerminationPolicy.Geometric always = new RLTerminationPolicy.Geometric(1.0);
+        always.beginEpisode(stoppingStream(0));
+        assertEquals(2, always.getStopStep());
+        assertFalse(always.shouldStop(1));
+        assertTrue(always.shouldStop(2));
+
+        for (double stopProb : new double[]{-0.1, 1.1, Double.NaN}) {
+            try {
+                new RLTerminationPolicy.Geometric(stopProb);
+                fail("STOP_PROB " + stopProb + " should be rejected");
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    @Test
+    public void testMaxStepsAndGoalOnly() {
+        RLTerminationPolicy maxSteps = new RLTerminationPolicy.MaxSteps(5);
+        maxSteps.beginEpisode(stoppingStream(0));
+        assertFalse(maxSteps.shouldStop(4));
+        assertTrue(maxSteps.shouldStop(5));
+
+        RLTerminationPolicy goalOnly = new RLTerminationPolicy.GoalOnly();
+        goalOnly.beginEpisode(stoppingStream(0));
+        assertFalse(goalOnly.shouldStop(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testFromConfigResolvesStopMethod() {
+        RLTerminationPolicy policy = RLTerminationPolicy.fromConfig(config("STOP_METHOD", "0"), 7);
+        assertTrue(policy instanceof RLTerminationPolicy.MaxSteps);
+        assertEquals(7, ((RLTerminationPolicy.MaxSteps) policy).getMaxSteps());
+
+        assertTrue(RLTerminationPolicy.fromConfig(config("STOP_METHOD", "1"), 7) instanceof RLTerminationPolicy.GoalOnly);
+
+        policy = RLTerminationPolicy.fromConfig(config("STOP_METHOD", "2", "STOP_PROB", "0.25"), 7);
+        assertEquals("Geometric(0.25)", policy.describe());
+
+        policy = RLTerminationPolicy.fromConfig(config("STOP_METHOD", "3", "STOP_POLICY_CLASS", RLTerminationPolicy.GoalOnly.class.getName()), 7);
+        assertTrue(policy instanceof RLTerminationPolicy.GoalOnly);
+
+        policy = RLTerminationPolicy.fromConfig(config("STOP_METHOD", "3", "STOP_POLICY_CLASS", "no.such.Policy"), 7);
+        assertTrue(policy instanceof RLTerminationPolicy.MaxSteps);
+        assertEquals(7, ((RLTerminationPolicy.MaxSteps) policy).getMaxSteps());
+    }
+}
@@ -0,0 +1,124 @@
+package ygraph.ai.smartfox.rl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+// Tests the step, reset and episode accounting of RLWorldBatch on dense, compressed and slippery worlds
+public class RLWorldBatchTest {
+    private static final double GAMMA = 0.9;
+
+    private static RLLayout emptyLayout(int gridSize) {
+        return RLLayout.compile(gridSize, 1, Collections.<int[]>emptyList(), -0.01, -1.0, 10.0);
+    }
+
+    @Test
+    public void testStepsAndEpisodeAccounting() {
+        RLWorldBatch batch = new RLWorldBatch(emptyLayout(2), 2, GAMMA, 10);
+        int[] next = new int[2];
+        double[] rewards = new double[2];
+        boolean[] dones = new boolean[2];
+
+        batch.step(new int[]{RLLayout.ACTION_RIGHT, RLLayout.ACTION_RIGHT}, next, rewards, dones);
+        assertArrayEquals(new int[]{1, 1}, batch.getStates());
+        assertArrayEquals(new int[]{1, 1}, batch.getSteps());
+
+        batch.step(new int[]{RLLayout.ACTION_DOWN, RLLayout.ACTION_UP}, next, rewards, dones);
+        assertArrayEquals(new int[]{3, 1}, next);
+        assertEquals(10.0, rewards[0], 0.0);
+        assertTrue(dones[0]);
+        assertFalse(dones[1]);
+        assertArrayEquals(new int[]{0, 1}, batch.getStates());
+        assertArrayEquals(new int[]{1, 0}, batch.getEpisodeCounts());
+        assertArrayEquals(new int[]{1, 0}, batch.getSuccessCounts());
+        assertArrayEquals(new int[]{2, 0}, batch.getLastEpisodeSteps());
+        assertEquals(-0.01 + GAMMA * 10.0, batch.getLastEpisodeReturns()[0], 1e-12);
+        assertTrue(batch.getTerminal()[0]);
+
+        batch.reset();
+        assertArrayEquals(new int[]{0, 0}, batch.getStates());
+        assertArrayEquals(new int[]{0, 0}, batch.getEpisodeCounts());
+    }
+
+    @Test
+    public void testEpisodeEndsAtMaxStepsWithoutSuccess() {
+        RLWorldBatch batch = new RLWorldBatch(emptyLayout(4), 1, GAMMA, 2);
+        boolean[] dones = new boolean[1];
+        batch.step(new int[]{RLLayout.ACTION_LEFT}, new int[1], new double[1], dones);
+        assertFalse(dones[0]);
+        batch.step(new int[]{RLLayout.ACTION_LEFT}, new int[1], new double[1], dones);
+        assertTrue(dones[0]);
+        assertEquals(1, batch.getEpisodeCounts()[0]);
+        assertEquals(0, batch.getSuccessCounts()[0]);
+        assertFalse(batch.getTerminal()[0]);
+    }
+
+    @Test
+    public void testInvalidActionLeavesTheBatchUnchanged() {
+        RLWorldBatch batch = new RLWorldBatch(emptyLayout(4), 3, GAMMA, 10);
+        int[] next = {-1, -1, -1};
+        batch.step(new int[]{RLLayout.ACTION_RIGHT, RLLayout.ACTION_DOWN, RLLayout.ACTION_RIGHT}, new int[3], new double[3], new boolean[3]);
+        int[] states = batch.getStates().clone();
+        double[] returns = batch.getReturns().clone();
+        try {
+            batch.step(new int[]{RLLayout.ACTION_RIGHT, RLLayout.ACTION_RIGHT, 4}, next, new double[3], new boolean[3]);
+            fail("An invalid action should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertArrayEquals(states, batch.getStates());
+        assertArrayEquals(returns, batch.getReturns(), 0.0);
+        assertArrayEquals(new int[]{1, 1, 1}, batch.getSteps());
+        assertArrayEquals(new int[]{-1, -1, -1}, next);
+    }
+
+    @Test
+    public void testCompressedLayoutStepsLikeTheDenseLayout() {
+        List<int[]> puddles = Arrays.asList(new int[]{1, 1}, new int[]{4, 2});
+        RLTransitionModel dense = RLTransitionModel.compile(false, 8, 2, puddles, -0.01, -1.0, 10.0);
+        RLTransitionModel compressed = RLTransitionModel.compile(true, 8, 2, puddles, -0.01, -1.0, 10.0);
+        RLWorldBatch batch = new RLWorldBatch(new RLTransitionModel[]{dense, compressed}, null, GAMMA, 50, 0L);
+        int[] next = new int[2];
+        double[] rewards = new double[2];
+        for (int step = 0; step < 200; step++) {
+            int action = (step * 7 + step / 3) % RLLayout.ACTION_COUNT;
+            batch.step(new int[]{action, action}, next, rewards, new boolean[2]);
+            assertEquals(next[0], next[1]);
+            assertEquals(rewards[0], rewards[1], 0.0);
+        }
+        assertTrue(batch.getEpisodeCounts()[0] > 0);
+        assertEquals(batch.getEpisodeCounts()[0], batch.getEpisodeCounts()[1]);
+        assertEquals(batch.getLastEpisodeReturns()[0], batch.getLastEpisodeReturns()[1], 0.0);
+    }
+
+    @Test
+    public void testSlipperyBatchReplaysWithTheSameSeed() {
+        RLLayout layout = emptyLayout(6);
+        RLStochasticTransitions transitions = RLStochasticTransitions.compile(layout, 0.3, 0.3, 0.1);
+        RLWorldBatch first = new RLWorldBatch(layout, transitions, 4, GAMMA, 30, 42L);
+        RLWorldBatch second = new RLWorldBatch(layout, transitions, 4, GAMMA, 30, 42L);
+        int[] actions = {RLLayout.ACTION_RIGHT, RLLayout.ACTION_DOWN, RLLayout.ACTION_RIGHT, RLLayout.ACTION_DOWN};
+        boolean slipped = false;
+        for (int step = 0; step < 100; step++) {
+            int[] nextFirst = new int[4];
+            int[] nextSecond = new int[4];
+            int[] before = first.getStates().clone();
+            first.step(actions, nextFirst, new double[4], new boolean[4]);
+            second.step(actions, nextSecond, new double[4], new boolean[4]);
+            assertArrayEquals(nextFirst, nextSecond);
+            for (int i = 0; i < 4; i++) {
+                slipped |= nextFirst[i] != layout.nextState(before[i], actions[i]);
+            }
+        }
+        assertTrue(slipped);
+        assertArrayEquals(first.getEpisodeCounts(), second.getEpisodeCounts());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTransitionsMustMatchTheirLayout() {
+        RLStochasticTransitions transitions = RLStochasticTransitions.compile(emptyLayout(4), 0.2, 0.2, 0.0);
+        new RLWorldBatch(emptyLayout(4), transitions, 1, GAMMA, 10, 0L);
+    }
+}